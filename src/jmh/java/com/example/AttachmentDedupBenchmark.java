@@ -0,0 +1,110 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sending the same 100 MB attachment {@value #SENDS} times through {@link HelloModel#uploadFile} to
+ * an in-process ntfy stub, with and without an {@link AttachmentIndex}. Each operation starts with
+ * an empty index, so with dedup on the first send uploads and the rest only post their chat
+ * message. {@code requestMegabytes} is what the stub received, summed over the measurement
+ * iterations (JMH adds up event counters in single-shot mode), so divide by the count per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class AttachmentDedupBenchmark {
+
+    private static final int SIZE = 100 * 1024 * 1024;
+    private static final int SENDS = 5;
+
+    @Param({"false", "true"})
+    public boolean dedup;
+
+    private Path dir;
+    private File file;
+    private FakeNtfyServer server;
+    private HttpClientTransport transport;
+    private HelloModel model;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Traffic {
+        public double requestMegabytes;
+    }
+
+    @Setup(Level.Trial)
+    public void createFile() throws IOException {
+        dir = Files.createTempDirectory("dedup");
+        file = dir.resolve("video.bin").toFile();
+        byte[] block = new byte[1024 * 1024];
+        Random random = new Random(42);
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            for (int i = 0; i < SIZE / block.length; i++) {
+                random.nextBytes(block);
+                out.write(block);
+            }
+        }
+        server = new FakeNtfyServer();
+        transport = new HttpClientTransport();
+        model = new HelloModel(server.topicUrl("bench"), transport);
+    }
+
+    @Setup(Level.Invocation)
+    public void freshIndex() {
+        model.getUploads().setAttachmentIndex(dedup ? new AttachmentIndex() : null);
+    }
+
+    @TearDown(Level.Invocation)
+    public void dropFiles() {
+        server.clearFiles();
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        model.close();
+        transport.close();
+        server.close();
+        Files.delete(file.toPath());
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public void sendRepeatedly(Traffic traffic) throws Exception {
+        long before = server.bytesReceived();
+        long chats = chatMessages() + SENDS;
+        for (int i = 0; i < SENDS; i++) {
+            if (!model.uploadFile("bench", file, null).result().get().isSuccess()) throw new IllegalStateException("upload failed");
+        }
+        // The chat messages announcing each attachment are part of a send.
+        while (chatMessages() < chats) Thread.sleep(1);
+        traffic.requestMegabytes += (server.bytesReceived() - before) / (1024.0 * 1024.0);
+    }
+
+    private long chatMessages() {
+        return server.messages("bench").stream().filter(m -> m.attachment() == null).count();
+    }
+}
@@ -0,0 +1,106 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * History load of 500k messages spread over three weeks from an in-process ntfy stub: the serial
+ * {@code since=all} stream that {@link HelloModel#loadHistory} reads, against {@link HistoryBackfill}.
+ * For the serial loader the newest messages, which the UI shows first, arrive last, so its time to
+ * first page is its total time; {@code backfillFirstPage} stops once the newest window is delivered.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = "-Xmx3g")
+public class BackfillBenchmark {
+
+    private static final int MESSAGES = 500_000;
+
+    @Param({"16"})
+    public int windows;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private FakeNtfyServer server;
+    private HttpClientTransport transport;
+    private String topicUrl;
+
+    @Setup(Level.Trial)
+    public void fill() throws IOException {
+        server = new FakeNtfyServer();
+        transport = new HttpClientTransport();
+        topicUrl = server.topicUrl("bench");
+        long start = Instant.now().getEpochSecond() - MESSAGES * 4L;
+        for (int i = 0; i < MESSAGES; i++) {
+            server.seed("bench", start + i * 4L, "{\"username\":\"user" + (i % 7) + "\",\"message\":\"history message number "
+                    + i + " with a few more words\"}");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        transport.close();
+        server.close();
+    }
+
+    @Benchmark
+    public List<ChatMessage> serialSinceAll() throws IOException {
+        List<ChatMessage> messages = new ArrayList<>(MESSAGES);
+        try (InputStream in = transport.openStream(topicUrl + "/json?since=all")) {
+            new NdjsonDecoder().decode(in, line -> {
+                if (!line.isMessageEvent()) return;
+                ChatMessage msg = line.toChatMessage();
+                if (msg != null) messages.add(msg);
+                if (messages.size() == MESSAGES) throw new Done();
+            });
+        } catch (Done ignored) {
+            // A live stream never ends by itself; stop once the history is in.
+        }
+        return messages;
+    }
+
+    @Benchmark
+    public HistoryBackfill.Result backfillTotal() throws Exception {
+        try (HistoryBackfill backfill = new HistoryBackfill(transport, topicUrl, windows, parallelism)) {
+            return backfill.start(page -> { }).get();
+        }
+    }
+
+    @Benchmark
+    public HistoryBackfill.Page backfillFirstPage() throws Exception {
+        CompletableFuture<HistoryBackfill.Page> first = new CompletableFuture<>();
+        try (HistoryBackfill backfill = new HistoryBackfill(transport, topicUrl, windows, parallelism)) {
+            backfill.start(first::complete);
+            return first.get();
+        }
+    }
+
+    private static final class Done extends RuntimeException {
+        Done() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares a JMH JSON result file ({@code -rf json -rff target/jmh-result.json}) with a baseline
+ * result and exits with status 1 if any benchmark got worse by more than the threshold (default
+ * 10%) and more than the two runs' combined error. Throughput scores are better when higher, the
+ * time-based modes when lower.
+ *
+ * <p>No baseline is checked in, as scores only compare on the same machine and JDK: record one by
+ * running the benchmarks on the commit to compare against with {@code -rff target/jmh-baseline.json}.
+ * Files recorded on different JDKs are refused with status 2.
+ */
+public final class BaselineComparison {
+
+    record Score(String mode, double value, double error, String unit) {
+        boolean higherIsBetter() { return "thrpt".equals(mode); }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: BaselineComparison <baseline.json> <result.json> [thresholdPercent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) / 100 : 0.10;
+        String baselineJdk = jdkVersion(Path.of(args[0])), currentJdk = jdkVersion(Path.of(args[1]));
+        if (!baselineJdk.equals(currentJdk)) {
+            System.err.println("Baseline was recorded on JDK " + baselineJdk + ", this run on JDK " + currentJdk);
+            System.exit(2);
+        }
+        Map<String, Score> baseline = read(Path.of(args[0]));
+        Map<String, Score> current = read(Path.of(args[1]));
+        int regressions = 0;
+        System.out.printf("%-60s %14s %14s %9s%n", "Benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, Score> e : current.entrySet()) {
+            Score now = e.getValue();
+            Score then = baseline.get(e.getKey());
+            if (then == null || !then.unit().equals(now.unit())) {
+                System.out.printf("%-60s %14s %14.3f %9s  %s%n", e.getKey(), "-", now.value(), "", "not in baseline");
+                continue;
+            }
+            double change = (now.value() - then.value()) / then.value();
+            double worse = then.higherIsBetter() ? -change : change;
+            boolean regressed = worse > threshold && Math.abs(now.value() - then.value()) > then.error() + now.error();
+            if (regressed) regressions++;
+            System.out.printf("%-60s %14.3f %14.3f %+8.1f%%  %s%s%n", e.getKey(), then.value(), now.value(), change * 100,
+                    now.unit(), regressed ? "  REGRESSION" : "");
+        }
+        System.out.println(regressions == 0 ? "No regressions beyond " + Math.round(threshold * 100) + "%"
+                : regressions + " regression(s) beyond " + Math.round(threshold * 100) + "%");
+        if (regressions > 0) System.exit(1);
+    }
+
+    /** The JDK the first result in {@code file} ran on, or an empty string if it does not say. */
+    static String jdkVersion(Path file) throws IOException {
+        JSONArray results = new JSONArray(Files.readString(file));
+        return results.isEmpty() ? "" : results.getJSONObject(0).optString("jdkVersion", "");
+    }
+
+    /** Keys results by benchmark method and parameters, e.g. {@code FilterBenchmark.indexed[size=100000]}. */
+    static Map<String, Score> read(Path file) throws IOException {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        JSONArray results = new JSONArray(Files.readString(file));
+        for (int i = 0; i < results.length(); i++) {
+            JSONObject result = results.getJSONObject(i);
+            String name = result.getString("benchmark").replaceFirst("^com\\.example\\.", "");
+            JSONObject params = result.optJSONObject("params");
+            if (params != null && !params.isEmpty()) {
+                StringBuilder sb = new StringBuilder("[");
+                for (String key : params.keySet().stream().sorted().toList()) {
+                    if (sb.length() > 1) sb.append(',');
+                    sb.append(key).append('=').append(params.get(key));
+                }
+                name += sb.append(']');
+            }
+            JSONObject metric = result.getJSONObject("primaryMetric");
+            double error = metric.optDouble("scoreError", 0);
+            scores.put(name, new Score(result.getString("mode"), metric.getDouble("score"),
+                    Double.isNaN(error) ? 0 : error, metric.getString("scoreUnit")));
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,183 @@
+package com.example;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.scene.Scene;
+import javafx.scene.control.Hyperlink;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+import javafx.stage.Stage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scrolls a 100k-message ListView in a headless stage, one frame per invocation: jump a screenful
+ * down, then run the CSS and layout passes a pulse would. Compares the old inline cell (new nodes
+ * and inline styles on every update) with {@link ChatCell}. Besides the JMH score it prints FX
+ * thread allocation per frame and how many frames missed a 60 Hz budget, since that work happens
+ * on the FX thread where {@code -prof gc} does not look.
+ *
+ * <p>Runs on Monocle's headless platform from the jmh profile. On JavaFX 25 the built-in headless
+ * platform works too: {@code -Djmh.args="ChatCellScroll -jvmArgsAppend -Dglass.platform=Headless"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dprism.order=sw", "-Dtestfx.headless=true"})
+public class ChatCellScrollBenchmark {
+
+    private static final int MESSAGES = 100_000;
+    private static final int ROWS_PER_FRAME = 23;
+    private static final long FRAME_BUDGET_NANOS = 16_666_667L;
+
+    @Param({"legacy", "chatCell"})
+    public String cell;
+
+    private Stage stage;
+    private ListView<ChatMessage> list;
+    private int position;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final LatencyHistogram frameTimes = new LatencyHistogram();
+    private long frames;
+    private long slowFrames;
+    private long allocatedBytes;
+
+    @Setup(Level.Trial)
+    public void startStage() throws Exception {
+        if (System.getProperty("glass.platform") == null) {
+            System.setProperty("glass.platform", "Monocle");
+            System.setProperty("monocle.platform", "Headless");
+        }
+        CountDownLatch started = new CountDownLatch(1);
+        try {
+            Platform.startup(started::countDown);
+        } catch (IllegalStateException alreadyRunning) {
+            started.countDown();
+        }
+        started.await();
+
+        List<ChatMessage> messages = new ArrayList<>(MESSAGES);
+        String[] users = {"alice", "bob", "Åsa", "dave"};
+        for (int i = 0; i < MESSAGES; i++) {
+            String user = users[i % users.length];
+            long time = 1_735_732_800L + i * 60L;
+            if (i % 20 == 0) {
+                messages.add(new ChatMessage("m" + i, user, "Sent file: report" + i + ".pdf", time, new ChatMessage.Attachment(
+                        "report" + i + ".pdf", "https://ntfy.example/file/report" + i + ".pdf", "application/pdf")));
+            } else {
+                String text = (i % 7 == 0)
+                        ? "A longer message number " + i + " that wraps over more than one line in a 400 pixel wide list, "
+                          + "like the occasional paragraph people paste into chat."
+                        : "message " + i;
+                messages.add(new ChatMessage("m" + i, user, text, time));
+            }
+        }
+
+        onFx(() -> {
+            list = new ListView<>(FXCollections.observableArrayList(messages));
+            ChatCell.LayoutCache layoutCache = new ChatCell.LayoutCache(10_000);
+            list.setCellFactory("legacy".equals(cell) ? l -> new LegacyCell() : l -> new ChatCell(null, layoutCache));
+            stage = new Stage();
+            Scene scene = new Scene(list, 400, 600);
+            scene.getStylesheets().add(HelloFX.class.getResource("/css/style.css").toExternalForm());
+            stage.setScene(scene);
+            stage.show();
+            return null;
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void report() throws Exception {
+        System.out.printf("%n%s: %d frames, FX thread %.0f bytes/frame, p50 %d us, p99 %d us, %d over 16.7 ms%n",
+                cell, frames, frames == 0 ? 0.0 : (double) allocatedBytes / frames,
+                frameTimes.percentileMicros(50), frameTimes.percentileMicros(99), slowFrames);
+        onFx(() -> {
+            stage.close();
+            return null;
+        });
+    }
+
+    @Benchmark
+    public int scrollOneFrame() throws Exception {
+        return onFx(() -> {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            position = (position + ROWS_PER_FRAME) % MESSAGES;
+            list.scrollTo(position);
+            list.getScene().getRoot().applyCss();
+            list.getScene().getRoot().layout();
+            long elapsed = System.nanoTime() - start;
+            allocatedBytes += threads.getCurrentThreadAllocatedBytes() - before;
+            frameTimes.recordNanos(elapsed);
+            frames++;
+            if (elapsed > FRAME_BUDGET_NANOS) slowFrames++;
+            return position;
+        });
+    }
+
+    private static <T> T onFx(java.util.concurrent.Callable<T> work) throws Exception {
+        FutureTask<T> task = new FutureTask<>(work);
+        Platform.runLater(task);
+        return task.get(30, TimeUnit.SECONDS);
+    }
+
+    /** The cell factory HelloController used before ChatCell, minus image loading. */
+    static final class LegacyCell extends ListCell<ChatMessage> {
+        @Override
+        protected void updateItem(ChatMessage msg, boolean empty) {
+            super.updateItem(msg, empty);
+            if (empty || msg == null) { setGraphic(null); return; }
+
+            Text user = new Text(msg.getUsername());
+            user.setStyle("-fx-font-weight: bold;");
+            Text time = new Text(" (" + msg.getTimestamp() + ")\n");
+            time.setStyle("-fx-fill: gray; -fx-font-size: 12px;");
+
+            if (msg.getFileName() != null && msg.getFileUrl() != null) {
+                if (msg.getMimeType() != null && msg.getMimeType().startsWith("image/")) {
+                    ImageView imageView = new ImageView((Image) null);
+                    imageView.setFitWidth(200);
+                    imageView.setPreserveRatio(true);
+                    Text messageText = new Text(msg.getMessage() + "\n");
+                    messageText.setStyle("-fx-font-size: 14px;");
+                    setGraphic(new TextFlow(user, time, messageText, imageView));
+                } else {
+                    Hyperlink link = new Hyperlink(msg.getFileName());
+                    Text messageText = new Text(msg.getMessage() + "\n");
+                    messageText.setStyle("-fx-font-size: 14px;");
+                    setGraphic(new TextFlow(user, time, messageText, link));
+                }
+            } else {
+                Text text = new Text(msg.getMessage());
+                text.setStyle("-fx-font-size: 14px;");
+                setGraphic(new TextFlow(user, time, text));
+            }
+        }
+    }
+}
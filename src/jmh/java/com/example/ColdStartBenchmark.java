@@ -0,0 +1,99 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cold-start time to first render with 100k messages of history: everything up to the point where
+ * the controller has the newest window in hand. Compares reading the {@link MessageCache} with
+ * replaying {@code since=all} from an in-process ntfy stub. Each iteration opens the cache anew,
+ * but the OS page cache stays warm, so this measures decode cost rather than disk latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class ColdStartBenchmark {
+
+    private static final int MESSAGES = 100_000;
+    private static final int WINDOW = 500;
+
+    private Path dir;
+    private Path cacheFile;
+    private FakeNtfyServer server;
+    private HttpClientTransport transport;
+
+    @Setup(Level.Trial)
+    public void fill() throws IOException {
+        dir = Files.createTempDirectory("coldstart");
+        cacheFile = dir.resolve("bench.cache");
+        server = new FakeNtfyServer();
+        transport = new HttpClientTransport();
+        try (MessageCache cache = new MessageCache(cacheFile, MESSAGES)) {
+            for (int i = 0; i < MESSAGES; i++) {
+                String json = "{\"username\":\"user" + (i % 7) + "\",\"message\":\"history message number " + i
+                        + " with a few more words\",\"time\":" + (1_700_000_000L + i) + "}";
+                FakeNtfyServer.Message m = server.publish("bench", new FakeNtfyServer.Request("POST", "/bench", "",
+                        Map.of(), json.getBytes(StandardCharsets.UTF_8)));
+                cache.append(new ChatMessage(m.id(), "user" + (i % 7), "history message number " + i + " with a few more words",
+                        m.time()));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        transport.close();
+        server.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+        }
+    }
+
+    @Benchmark
+    public List<ChatMessage> fromCache() throws IOException {
+        MessageStore store = new MessageStore(MESSAGES, null);
+        try (MessageCache cache = new MessageCache(cacheFile, MESSAGES)) {
+            store.appendAll(cache.readAll());
+        }
+        return store.newest(WINDOW);
+    }
+
+    @Benchmark
+    public List<ChatMessage> fromNetworkReplay() throws IOException {
+        MessageStore store = new MessageStore(MESSAGES, null);
+        List<ChatMessage> batch = new ArrayList<>(MESSAGES);
+        try (InputStream in = transport.openStream(server.topicUrl("bench") + "/json?since=all&poll=1")) {
+            new NdjsonDecoder().decode(in, line -> {
+                ChatMessage msg = line.toChatMessage();
+                if (msg != null) batch.add(msg);
+            });
+        }
+        store.appendAll(batch);
+        return store.newest(WINDOW);
+    }
+}
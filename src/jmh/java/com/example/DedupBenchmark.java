@@ -0,0 +1,93 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous {@code Collections.synchronizedSet(new HashSet<>())} with {@link DedupIndex}
+ * at 1, 2 and 8 concurrent producers. Producers walk a shared pool of ntfy-style ids from random
+ * offsets, so the mix contains both first sightings and duplicates, like history plus live stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DedupBenchmark {
+
+    private static final int ID_POOL = 1 << 20;
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+    private String[] ids;
+    private Set<String> synchronizedSet;
+    private DedupIndex dedupIndex;
+
+    @Setup(Level.Trial)
+    public void createIds() {
+        Random random = new Random(42);
+        ids = new String[ID_POOL];
+        char[] buf = new char[12];
+        for (int i = 0; i < ID_POOL; i++) {
+            for (int c = 0; c < buf.length; c++) buf[c] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            ids[i] = new String(buf);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void resetSets() {
+        synchronizedSet = Collections.synchronizedSet(new HashSet<>());
+        dedupIndex = new DedupIndex();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        @Setup(Level.Iteration)
+        public void start() {
+            next = ThreadLocalRandom.current().nextInt(ID_POOL);
+        }
+
+        String nextId(String[] ids) {
+            String id = ids[next];
+            next = (next + 1) & (ID_POOL - 1);
+            return id;
+        }
+    }
+
+    @Benchmark @Threads(1)
+    public boolean synchronizedSet1(Cursor cursor) { return synchronizedSet.add(cursor.nextId(ids)); }
+
+    @Benchmark @Threads(2)
+    public boolean synchronizedSet2(Cursor cursor) { return synchronizedSet.add(cursor.nextId(ids)); }
+
+    @Benchmark @Threads(8)
+    public boolean synchronizedSet8(Cursor cursor) { return synchronizedSet.add(cursor.nextId(ids)); }
+
+    @Benchmark @Threads(1)
+    public boolean dedupIndex1(Cursor cursor) { return dedupIndex.add(cursor.nextId(ids)); }
+
+    @Benchmark @Threads(2)
+    public boolean dedupIndex2(Cursor cursor) { return dedupIndex.add(cursor.nextId(ids)); }
+
+    @Benchmark @Threads(8)
+    public boolean dedupIndex8(Cursor cursor) { return dedupIndex.add(cursor.nextId(ids)); }
+}
@@ -0,0 +1,88 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one filter change at 10k, 100k and 1M stored messages: rescanning every message with
+ * the query as a predicate (what replacing the FilteredList predicate amounts to) against
+ * {@link MessageStore#search}. Both produce the newest window of matches. Message words follow a
+ * skewed distribution over a 5000 word vocabulary so there are both common and rare terms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class FilterBenchmark {
+
+    private static final int WINDOW = 500;
+    private static final int USERS = 200;
+    private static final int VOCABULARY = 5000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int messages;
+
+    @Param({"hideMine", "fromUser", "commonPrefix", "rareWord"})
+    public String filter;
+
+    private MessageStore store;
+    private List<ChatMessage> all;
+    private MessageQuery query;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        Random random = new Random(42);
+        store = new MessageStore(messages, null);
+        all = new ArrayList<>(messages);
+        long start = 1_735_689_600L;
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < messages; i++) {
+            text.setLength(0);
+            for (int w = 0; w < 6; w++) {
+                // Squaring a uniform index skews usage towards the start of the vocabulary.
+                double u = random.nextDouble();
+                text.append(w == 0 ? "" : " ").append("w").append((int) (u * u * VOCABULARY));
+            }
+            ChatMessage msg = new ChatMessage("id-" + i, "user" + random.nextInt(USERS), text.toString(), start + i * 5L);
+            store.append(msg);
+            all.add(msg);
+        }
+        query = switch (filter) {
+            case "hideMine" -> MessageQuery.ALL.excluding("user7");
+            case "fromUser" -> MessageQuery.parse("from:user7");
+            case "commonPrefix" -> MessageQuery.parse("w1");
+            default -> MessageQuery.parse("w4999");
+        };
+    }
+
+    @Benchmark
+    public List<ChatMessage> rescan() {
+        List<ChatMessage> matches = new ArrayList<>();
+        for (ChatMessage msg : all) {
+            if (query.matches(msg)) matches.add(msg);
+        }
+        return matches.size() > WINDOW ? matches.subList(matches.size() - WINDOW, matches.size()) : matches;
+    }
+
+    @Benchmark
+    public List<ChatMessage> indexed() {
+        return store.search(query, WINDOW);
+    }
+}
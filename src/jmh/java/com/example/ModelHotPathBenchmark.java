@@ -0,0 +1,106 @@
+package com.example;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The receive path piece by piece, over the recorded {@link TopicFixture}: envelope parsing,
+ * the NDJSON read loop, dedup of ids, {@link ChatMessage} construction and timestamp formatting.
+ * The per-message benchmarks cycle through the fixture's messages so that text, file and image
+ * payloads are all included; {@code readLoop} and {@code dedupReplay} process the whole fixture
+ * per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelHotPathBenchmark {
+
+    private TopicFixture fixture;
+    private HelloModel model;
+    private JSONObject[] envelopes;
+    private ChatMessage[] messages;
+    private String[] ids;
+    private long[] times;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        fixture = TopicFixture.load(TopicFixture.CHAT);
+        model = new HelloModel("http://localhost:1/bench");
+        envelopes = fixture.chatEnvelopes.toArray(JSONObject[]::new);
+        ids = fixture.ids.toArray(String[]::new);
+        messages = new ChatMessage[envelopes.length];
+        times = new long[envelopes.length];
+        for (int i = 0; i < envelopes.length; i++) {
+            messages[i] = model.parseEnvelopeToChatMessage(envelopes[i]);
+            times[i] = envelopes[i].getLong("time");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        model.close();
+    }
+
+    private int next() {
+        if (++cursor == envelopes.length) cursor = 0;
+        return cursor;
+    }
+
+    @Benchmark
+    public ChatMessage parseEnvelope() {
+        return model.parseEnvelopeToChatMessage(envelopes[next()]);
+    }
+
+    /** Decodes the whole fixture the way a subscription does, building a message per chat line. */
+    @Benchmark
+    public void readLoop(Blackhole bh) throws IOException {
+        new NdjsonDecoder().decode(new ByteArrayInputStream(fixture.bytes), line -> {
+            if (!line.isValid() || !line.isMessageEvent() || !line.hasJsonPayload()) return;
+            bh.consume(line.id());
+            bh.consume(line.toChatMessage());
+        });
+    }
+
+    /** History followed by a reconnect that replays it: every id is seen once new and once as a duplicate. */
+    @Benchmark
+    public int dedupReplay() {
+        DedupIndex seenIds = new DedupIndex();
+        int fresh = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (String id : ids) if (seenIds.add(id)) fresh++;
+        }
+        return fresh;
+    }
+
+    @Benchmark
+    public ChatMessage constructMessage() {
+        ChatMessage m = messages[next()];
+        return new ChatMessage(m.getId(), m.getUsername(), m.getMessage(), m.getTime(), m.getAttachment());
+    }
+
+    @Benchmark
+    public String formatTimestamp() {
+        return ChatMessage.TIMESTAMP_FORMAT.format(Instant.ofEpochSecond(times[next()]));
+    }
+}
@@ -0,0 +1,123 @@
+package com.example;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes a 100k-line {@code /json} dump the old way (BufferedReader lines, then a JSONObject for
+ * the envelope and another for the chat payload) and with {@link NdjsonDecoder}. The dump mixes
+ * text messages, attachments, plain-text notifications and keepalive events. Run with
+ * {@code -Djmh.args="NdjsonDecode -prof gc"} to see bytes allocated per line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NdjsonDecodeBenchmark {
+
+    static final int LINES = 100_000;
+
+    private byte[] dump;
+    private HelloModel model;
+
+    @Setup(Level.Trial)
+    public void createDump() {
+        dump = syntheticDump(LINES, 42);
+        model = new HelloModel("http://localhost:1/bench");
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        model.close();
+    }
+
+    static byte[] syntheticDump(int lines, long seed) {
+        Random random = new Random(seed);
+        String[] users = {"alice", "bob", "Åsa", "dave", "émile", "frank"};
+        ByteArrayOutputStream out = new ByteArrayOutputStream(lines * 200);
+        long time = 1_700_000_000L;
+        for (int i = 0; i < lines; i++) {
+            JSONObject envelope = new JSONObject();
+            envelope.put("id", String.format("m%011d", i));
+            envelope.put("time", time += random.nextInt(3));
+            envelope.put("topic", "chat");
+            int kind = random.nextInt(100);
+            if (kind < 2) {
+                envelope.put("event", "keepalive");
+            } else {
+                envelope.put("event", "message");
+                if (kind < 7) {
+                    envelope.put("message", "Plain notification number " + i);
+                } else {
+                    JSONObject chat = new JSONObject();
+                    chat.put("username", users[random.nextInt(users.length)]);
+                    chat.put("time", time);
+                    if (kind < 15) {
+                        chat.put("message", "Sent file: photo" + i + ".jpg");
+                        chat.put("fileName", "photo" + i + ".jpg");
+                        chat.put("fileUrl", "https://ntfy.sh/file/" + i + "-photo.jpg");
+                        chat.put("mimeType", "image/jpeg");
+                    } else {
+                        chat.put("message", "message " + i + " with \"quotes\" and some more words to be typical");
+                    }
+                    envelope.put("message", chat.toString());
+                }
+            }
+            out.writeBytes(envelope.toString().getBytes(StandardCharsets.UTF_8));
+            out.write('\n');
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void jsonObject(Blackhole bh) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(dump), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                JSONObject envelope = new JSONObject(line);
+                if (!"message".equals(envelope.optString("event", "message"))) continue;
+                bh.consume(envelope.optString("id", null));
+                String rawMsg = envelope.optString("message", "").trim();
+                if (!rawMsg.startsWith("{") || !rawMsg.endsWith("}")) continue;
+                bh.consume(model.parseEnvelopeToChatMessage(envelope));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void ndjsonDecoder(Blackhole bh) throws IOException {
+        new NdjsonDecoder().decode(new ByteArrayInputStream(dump), line -> {
+            if (!line.hasJsonPayload()) return;
+            bh.consume(line.id());
+            bh.consume(line.toChatMessage());
+        });
+    }
+}
@@ -0,0 +1,91 @@
+package com.example;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One user's backlog of {@value #BACKLOG} messages, as left by an outage, flushed by the
+ * {@link Outbox} to an in-process ntfy stub, one message per post and joined. Divide the backlog
+ * by the time per operation for the messages per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class OutboxFlushBenchmark {
+
+    private static final int BACKLOG = 1_000;
+
+    @Param({"1", "32"})
+    public int maxCoalesce;
+
+    private Path dir;
+    private FakeNtfyServer server;
+    private HttpClientTransport transport;
+    private HelloModel model;
+    private CompletableFuture<Void> online;
+    private Outbox outbox;
+    private List<CompletableFuture<NtfyTransport.Response>> sent;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        dir = Files.createTempDirectory("outbox");
+        server = new FakeNtfyServer();
+        transport = new HttpClientTransport();
+        model = new HelloModel(server.topicUrl("bench"), transport);
+    }
+
+    @Setup(Level.Invocation)
+    public void queueBacklog() throws IOException {
+        online = new CompletableFuture<>();
+        outbox = new Outbox(dir.resolve("bench.outbox"), json -> online.thenCompose(v -> model.sendJsonAsync(json)),
+                Outbox.DEFAULT_MAX_CONCURRENT, maxCoalesce, Outbox.DEFAULT_RETRY_BASE, Outbox.DEFAULT_RETRY_MAX);
+        sent = new ArrayList<>(BACKLOG);
+        for (int i = 0; i < BACKLOG; i++) {
+            sent.add(outbox.send(new JSONObject().put("username", "bench").put("message", "queued message " + i)));
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeOutbox() throws IOException {
+        outbox.close();
+        Files.deleteIfExists(outbox.getFile());
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        model.close();
+        transport.close();
+        server.close();
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public void flush() throws Exception {
+        online.complete(null);
+        CompletableFuture.allOf(sent.toArray(CompletableFuture[]::new)).get(1, TimeUnit.MINUTES);
+    }
+}
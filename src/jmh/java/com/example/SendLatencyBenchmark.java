@@ -0,0 +1,87 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-message send latency against an in-process ntfy stub: the previous HttpURLConnection-per-message
+ * code path versus the shared {@link HttpClientTransport}, and the full {@link HelloModel} send
+ * (JSON building, task tracking, metrics) on top of it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SendLatencyBenchmark {
+
+    private static final byte[] PAYLOAD = "{\"username\":\"bench\",\"message\":\"Hello from JMH\",\"time\":1700000000}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private FakeNtfyServer server;
+    private HttpClientTransport transport;
+    private String topicUrl;
+    private HelloModel model;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException {
+        server = new FakeNtfyServer();
+        transport = new HttpClientTransport();
+        topicUrl = server.topicUrl("bench");
+        model = new HelloModel(topicUrl, transport);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        model.close();
+        transport.close();
+        server.close();
+    }
+
+    /** What sendJsonToNtfy did before: a new connection and handshake for every message. */
+    @Benchmark
+    public int urlConnectionPerMessage() throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) URI.create(topicUrl).toURL().openConnection();
+        conn.setDoOutput(true);
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", "application/json");
+        conn.setFixedLengthStreamingMode(PAYLOAD.length);
+        try (OutputStream os = conn.getOutputStream()) {
+            os.write(PAYLOAD);
+        }
+        int rc = conn.getResponseCode();
+        try (InputStream is = conn.getInputStream()) { is.readAllBytes(); }
+        conn.disconnect();
+        return rc;
+    }
+
+    @Benchmark
+    public int sharedHttpClient() throws Exception {
+        return transport.postAsync(topicUrl, PAYLOAD, Map.of("Content-Type", "application/json")).get().statusCode();
+    }
+
+    @Benchmark
+    public int helloModel() throws Exception {
+        return model.sendMessageAsync("bench", "Hello from JMH").get().statusCode();
+    }
+}
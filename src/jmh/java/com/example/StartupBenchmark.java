@@ -0,0 +1,67 @@
+package com.example;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Time-to-window and time-to-first-message of the chat app, over fresh JVMs. Not a JMH benchmark:
+ * every run is a new process, started by {@link AppLauncher} against an in-process ntfy stub seeded
+ * with history, and the two times are read from what {@link Startup} logs, in milliseconds since
+ * JVM start.
+ *
+ * <pre>
+ * ./mvnw -Pjmh test-compile exec:exec -Djmh.main=com.example.StartupBenchmark -Djmh.args="10"
+ * </pre>
+ *
+ * Runs the app on this JVM with the project's module path and, once {@code ./mvnw -Paot package}
+ * has built them, from the jlink image in {@code target/hellofx} with and without its AOT cache.
+ * Needs a display.
+ */
+public final class StartupBenchmark {
+
+    private static final Duration LIMIT = Duration.ofSeconds(60);
+
+    public static void main(String[] args) throws Exception {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        Map<String, List<String>> configs = configurations(Path.of("target"));
+        try (FakeNtfyServer server = new FakeNtfyServer()) {
+            AppLauncher.seed(server, "startup");
+            System.out.printf("%-12s %6s %12s %12s %12s %12s%n", "config", "runs", "window p50", "window max", "message p50", "message max");
+            for (Map.Entry<String, List<String>> config : configs.entrySet()) {
+                // The first launch warms the OS file cache and is not counted.
+                AppLauncher.launch(config.getValue(), server.topicUrl("startup"), LIMIT);
+                List<AppLauncher.Run> results = new ArrayList<>();
+                for (int i = 0; i < runs; i++) results.add(AppLauncher.launch(config.getValue(), server.topicUrl("startup"), LIMIT));
+                long[] window = results.stream().mapToLong(AppLauncher.Run::windowMillis).sorted().toArray();
+                long[] message = results.stream().mapToLong(AppLauncher.Run::firstMessageMillis).sorted().toArray();
+                System.out.printf("%-12s %6d %12d %12d %12d %12d%n", config.getKey(), runs,
+                        window[window.length / 2], window[window.length - 1], message[message.length / 2], message[message.length - 1]);
+            }
+        }
+    }
+
+    /** Command lines by name, up to the module to launch. */
+    static Map<String, List<String>> configurations(Path target) {
+        Map<String, List<String>> configs = new LinkedHashMap<>();
+        String modulePath = Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+                .filter(p -> p.endsWith("classes") && !p.endsWith("test-classes") || p.contains("org/json") || p.contains("org/openjfx"))
+                .collect(Collectors.joining(File.pathSeparator));
+        String java = ProcessHandle.current().info().command().orElse("java");
+        configs.put("module-path", List.of(java, "-p", modulePath));
+        Path image = target.resolve("hellofx");
+        if (Files.isExecutable(image.resolve("bin/java"))) {
+            configs.put("image", List.of(image.resolve("bin/java").toString()));
+            Path cache = image.resolve("lib/hellofx.aot");
+            if (Files.exists(cache)) configs.put("image+aot", List.of(image.resolve("bin/java").toString(), "-XX:AOTCache=" + cache));
+        }
+        return configs;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@code /json?since=all} dump of a chat topic, stored under {@code src/jmh/resources/fixtures}.
+ * {@code mats_notiser.ndjson} has 1,500 lines in ntfy's wire format: mostly chat text (including
+ * long lines, Swedish characters and emoji), image and file attachments as the app sends them,
+ * plain-text notifications from other publishers, plus the stream's open and keepalive events.
+ */
+final class TopicFixture {
+
+    static final String CHAT = "fixtures/mats_notiser.ndjson";
+
+    final byte[] bytes;
+    final List<String> lines = new ArrayList<>();
+    /** Envelopes of message events whose payload is a chat JSON object, as the model receives them. */
+    final List<JSONObject> chatEnvelopes = new ArrayList<>();
+    final List<String> ids = new ArrayList<>();
+
+    private TopicFixture(byte[] bytes) {
+        this.bytes = bytes;
+        for (String line : new String(bytes, StandardCharsets.UTF_8).split("\n")) {
+            if (line.isBlank()) continue;
+            lines.add(line);
+            JSONObject envelope = new JSONObject(line);
+            if (!"message".equals(envelope.optString("event"))) continue;
+            ids.add(envelope.getString("id"));
+            if (envelope.optString("message").startsWith("{")) chatEnvelopes.add(envelope);
+        }
+    }
+
+    static TopicFixture load(String resource) {
+        try (InputStream in = TopicFixture.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) throw new IllegalStateException(resource + " not on the test classpath; run with -Pjmh");
+            return new TopicFixture(in.readAllBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
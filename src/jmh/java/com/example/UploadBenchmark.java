@@ -0,0 +1,85 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two 8 MB attachments uploaded side by side through {@link UploadManager} to an in-process ntfy
+ * stub, uncapped and under a shared bandwidth cap. Divide the 16 MB by the time per operation for
+ * the throughput; under a cap it should sit just below {@code capKilobytes}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UploadBenchmark {
+
+    private static final int SIZE = 8 * 1024 * 1024;
+
+    /** Shared cap in KB/s; 0 for none. */
+    @Param({"0", "16384"})
+    public long capKilobytes;
+
+    private Path dir;
+    private Path[] files;
+    private FakeNtfyServer server;
+    private HttpClientTransport transport;
+    private UploadManager uploads;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("upload");
+        byte[] data = new byte[SIZE];
+        new Random(42).nextBytes(data);
+        files = new Path[] {Files.write(dir.resolve("a.bin"), data), Files.write(dir.resolve("b.bin"), data)};
+        server = new FakeNtfyServer();
+        transport = new HttpClientTransport();
+        uploads = new UploadManager(transport, UploadManager.DEFAULT_MAX_CONCURRENT, capKilobytes * 1024, UploadManager.DEFAULT_CHUNK_SIZE);
+    }
+
+    @TearDown(Level.Invocation)
+    public void dropFiles() {
+        server.clearFiles();
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        uploads.close();
+        transport.close();
+        server.close();
+        for (Path f : files) Files.delete(f);
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public void uploadTwo() throws Exception {
+        UploadManager.Upload[] running = new UploadManager.Upload[files.length];
+        for (int i = 0; i < files.length; i++) {
+            running[i] = uploads.upload(server.topicUrl("bench"), files[i],
+                    Map.of("Filename", files[i].getFileName().toString()), null);
+        }
+        for (UploadManager.Upload u : running) {
+            if (!u.result().get().isSuccess()) throw new IllegalStateException("upload failed");
+        }
+    }
+}
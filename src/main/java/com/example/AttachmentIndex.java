@@ -0,0 +1,159 @@
+package com.example;
+
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which file contents have already been uploaded to which topic: the SHA-256 of the
+ * bytes maps to the attachment URL and MIME type ntfy answered with, so sending the same file again
+ * can reuse the URL instead of uploading it again.
+ *
+ * <p>Entries are kept in memory and, if a file is given, appended to it as tab-separated lines
+ * ({@code sha256, size, expires, topicUrl, url, mimeType}); later lines win. ntfy deletes
+ * attachments after a while, so entries that expire within {@link #EXPIRY_MARGIN_SECONDS} count as
+ * missing, and expired ones are dropped when the file is next opened.
+ */
+public class AttachmentIndex implements AutoCloseable {
+
+    public static final long EXPIRY_MARGIN_SECONDS = 600;
+    private static final int MAP_WINDOW = 64 * 1024 * 1024;
+
+    private static final Log LOG = Log.get(AttachmentIndex.class);
+
+    /** {@code expires} is epoch seconds, or 0 if the server did not say. */
+    public record Entry(String sha256, long size, long expires, String topicUrl, String url, String mimeType) {
+        boolean isLive(long nowSeconds) {
+            return expires == 0 || expires - EXPIRY_MARGIN_SECONDS > nowSeconds;
+        }
+
+        /** A response shaped like ntfy's answer to the original upload, for callers that read the URL from it. */
+        NtfyTransport.Response toResponse() {
+            JSONObject attachment = new JSONObject();
+            attachment.put("url", url);
+            if (mimeType != null) attachment.put("type", mimeType);
+            attachment.put("size", size);
+            if (expires > 0) attachment.put("expires", expires);
+            return new NtfyTransport.Response(200, new JSONObject().put("attachment", attachment).toString(), Map.of());
+        }
+
+        private String toLine() {
+            return String.join("\t", sha256, Long.toString(size), Long.toString(expires), topicUrl, url,
+                    mimeType == null ? "" : mimeType);
+        }
+
+        private static Entry parse(String line) {
+            String[] f = line.split("\t", -1);
+            if (f.length != 6 || f[0].length() != 64) return null;
+            try {
+                return new Entry(f[0], Long.parseLong(f[1]), Long.parseLong(f[2]), f[3], f[4], f[5].isEmpty() ? null : f[5]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private BufferedWriter writer;
+
+    /** An index that lives only as long as this object. */
+    public AttachmentIndex() {
+        this.file = null;
+    }
+
+    public AttachmentIndex(Path file) throws IOException {
+        this.file = file;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        load();
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /** {@code attachments.idx} next to the message caches. */
+    public static Path defaultFile() {
+        return MessageCache.defaultDirectory().resolve("attachments.idx");
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(file)) return;
+        long now = Instant.now().getEpochSecond();
+        int lines = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lines++;
+            Entry e = Entry.parse(line);
+            if (e != null) entries.put(key(e.topicUrl(), e.sha256()), e);
+        }
+        entries.values().removeIf(e -> !e.isLive(now));
+        if (entries.size() == lines) return;
+        // Rewrite without the expired, superseded and unreadable lines.
+        List<String> live = new ArrayList<>();
+        for (Entry e : entries.values()) live.add(e.toLine());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, live, StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOG.debug("Dropped {} stale lines from {}", lines - live.size(), file);
+    }
+
+    private static String key(String topicUrl, String sha256) {
+        return topicUrl + ' ' + sha256;
+    }
+
+    /** SHA-256 of the whole channel as lowercase hex, read through memory-mapped windows. */
+    public static String sha256(FileChannel channel) throws IOException {
+        return sha256(channel, MAP_WINDOW);
+    }
+
+    static String sha256(FileChannel channel, int window) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required of every JVM", e);
+        }
+        long size = channel.size();
+        for (long position = 0; position < size; position += window) {
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(window, size - position)));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /** The live upload of these contents to {@code topicUrl}, or {@code null}. */
+    public Entry find(String topicUrl, String sha256) {
+        Entry e = entries.get(key(topicUrl, sha256));
+        return e != null && e.isLive(Instant.now().getEpochSecond()) ? e : null;
+    }
+
+    public synchronized void put(Entry entry) throws IOException {
+        entries.put(key(entry.topicUrl(), entry.sha256()), entry);
+        if (writer == null) return;
+        writer.write(entry.toLine());
+        writer.newLine();
+        writer.flush();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) writer.close();
+        writer = null;
+    }
+}
@@ -0,0 +1,167 @@
+package com.example;
+
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.control.Hyperlink;
+import javafx.scene.control.ListCell;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * List cell for chat messages. The node graph is built once per cell and only its content is
+ * rebound in {@link #updateItem}; styling comes from the {@code chat-*} classes in style.css.
+ * Measured heights are remembered per message id in a {@link LayoutCache} shared by all cells
+ * of a list, so scrolling back over messages does not lay their text out again.
+ */
+public class ChatCell extends ListCell<ChatMessage> {
+
+    public static final int THUMBNAIL_WIDTH = 200;
+
+    private final ThumbnailCache<Image> thumbnails;
+    private final LayoutCache layoutCache;
+
+    private final Text user = new Text();
+    private final Text time = new Text();
+    private final Text body = new Text();
+    private final Hyperlink link = new Hyperlink();
+    private final ImageView image = new ImageView();
+    private final TextFlow flow = new TextFlow(user, time, body, link, image);
+
+    /** Whether the current height depends on a thumbnail that has not arrived yet. */
+    private boolean awaitingImage;
+
+    public ChatCell(ThumbnailCache<Image> thumbnails, LayoutCache layoutCache) {
+        this.thumbnails = thumbnails;
+        this.layoutCache = layoutCache;
+        getStyleClass().add("chat-cell");
+        user.getStyleClass().add("chat-user");
+        time.getStyleClass().add("chat-time");
+        body.getStyleClass().add("chat-text");
+        link.getStyleClass().add("chat-link");
+        image.getStyleClass().add("chat-image");
+        image.setFitWidth(THUMBNAIL_WIDTH);
+        image.setPreserveRatio(true);
+        link.setOnAction(e -> {
+            ChatMessage msg = getItem();
+            if (msg != null && msg.getFileUrl() != null) HelloFX.hostServices().showDocument(msg.getFileUrl());
+        });
+        show(link, false);
+        show(image, false);
+    }
+
+    @Override
+    protected void updateItem(ChatMessage msg, boolean empty) {
+        super.updateItem(msg, empty);
+        awaitingImage = false;
+        if (empty || msg == null) {
+            setGraphic(null);
+            image.setImage(null);
+            return;
+        }
+
+        user.setText(msg.getUsername());
+        time.setText(" (" + msg.getTimestamp() + ")\n");
+        ChatMessage.Attachment file = msg.getAttachment();
+        boolean attachment = file != null && file.fileName() != null && file.url() != null;
+        boolean isImage = attachment && file.isImage();
+        body.setText(attachment ? msg.getMessage() + "\n" : msg.getMessage());
+
+        show(link, attachment && !isImage);
+        if (attachment && !isImage) link.setText(file.fileName());
+
+        show(image, isImage);
+        image.setImage(null);
+        if (isImage && thumbnails != null) {
+            Image cached = thumbnails.getIfPresent(msg.getFileUrl());
+            if (cached != null) {
+                image.setImage(cached);
+            } else {
+                awaitingImage = true;
+                thumbnails.load(msg.getFileUrl()).whenComplete((img, error) -> Platform.runLater(() -> {
+                    // The cell may have been reused for another message meanwhile.
+                    if (getItem() != msg) return;
+                    // Without a thumbnail (404, undecodable) the message is laid out as text only.
+                    if (img != null) image.setImage(img);
+                    else show(image, false);
+                    awaitingImage = false;
+                    layoutCache.invalidate(msg.getId());
+                    requestLayout();
+                }));
+            }
+        }
+        if (getGraphic() != flow) setGraphic(flow);
+    }
+
+    private static void show(Node node, boolean visible) {
+        node.setVisible(visible);
+        node.setManaged(visible);
+    }
+
+    @Override
+    protected double computePrefHeight(double width) {
+        ChatMessage msg = getItem();
+        if (msg == null || msg.getId() == null || isEmpty() || width <= 0) return super.computePrefHeight(width);
+        double cached = layoutCache.get(msg.getId(), width);
+        if (cached >= 0) return cached;
+        double height = super.computePrefHeight(width);
+        // Before the first CSS pass the text is measured with default fonts; do not remember that.
+        if (!awaitingImage && getSkin() != null) layoutCache.put(msg.getId(), width, height);
+        return height;
+    }
+
+    /**
+     * Pref heights by message id for one list width; a width change clears it. Only touched on
+     * the FX thread.
+     */
+    public static final class LayoutCache {
+        private final Map<String, Double> heights;
+        private double width = -1;
+        private long hits;
+        private long misses;
+
+        public LayoutCache(int capacity) {
+            this.heights = new LinkedHashMap<>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Double> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        /** The cached height, or -1. */
+        double get(String id, double width) {
+            if (width != this.width) {
+                heights.clear();
+                this.width = width;
+            }
+            Double height = heights.get(id);
+            if (height == null) {
+                misses++;
+                return -1;
+            }
+            hits++;
+            return height;
+        }
+
+        void put(String id, double width, double height) {
+            if (width == this.width) heights.put(id, height);
+        }
+
+        public void invalidate(String id) {
+            heights.remove(id);
+        }
+
+        public void clear() {
+            heights.clear();
+        }
+
+        public int size() { return heights.size(); }
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+    }
+}
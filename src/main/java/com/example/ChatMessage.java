@@ -1,34 +1,65 @@
 package com.example;
 
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * One chat message, kept small because the store may hold a million of them: the time is epoch
+ * seconds, formatted only when {@link #getTimestamp()} is called; sender names go through a
+ * shared {@link InternTable}, so a topic's few senders are stored once; and file fields live in an
+ * {@link Attachment} that text messages do not have.
+ */
 public class ChatMessage {
+
+    /** How {@link #getTimestamp()} renders the time, in the system zone. */
+    public static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+            .withZone(ZoneId.systemDefault());
+
+    static final InternTable SENDERS = new InternTable(4096);
+
+    /** The file a message links to. */
+    public record Attachment(String fileName, String url, String mimeType) {
+        /** Returns {@code null} when there is no file, so text messages carry no attachment object. */
+        public static Attachment of(String fileName, String url, String mimeType) {
+            return fileName == null && url == null && mimeType == null ? null : new Attachment(fileName, url, mimeType);
+        }
+
+        public boolean isImage() {
+            return mimeType != null && mimeType.startsWith("image/");
+        }
+    }
+
     private final String id;
     private final String username;
     private final String message;
-    private final String timestamp;
-    private final String fileName;
-    private final String fileUrl;
-    private final String mimeType;
+    private final long time;
+    private final Attachment attachment;
 
-    public ChatMessage(String id, String username, String message, String timestamp,
-                       String fileName, String fileUrl, String mimeType) {
-        this.id = id;
-        this.username = username;
-        this.message = message;
-        this.timestamp = timestamp;
-        this.fileName = fileName;
-        this.fileUrl = fileUrl;
-        this.mimeType = mimeType;
+    public ChatMessage(String id, String username, String message, long time) {
+        this(id, username, message, time, null);
     }
 
-    public ChatMessage(String id, String username, String message, String timestamp) {
-        this(id, username, message, timestamp, null, null, null);
+    public ChatMessage(String id, String username, String message, long time, Attachment attachment) {
+        this.id = id;
+        this.username = SENDERS.intern(username);
+        this.message = message;
+        this.time = time;
+        this.attachment = attachment;
     }
 
     public String getId() { return id; }
     public String getUsername() { return username; }
     public String getMessage() { return message; }
-    public String getTimestamp() { return timestamp; }
-    public String getFileName() { return fileName; }
-    public String getFileUrl() { return fileUrl; }
-    public String getMimeType() { return mimeType; }
+    /** Epoch seconds. */
+    public long getTime() { return time; }
+    public Attachment getAttachment() { return attachment; }
+
+    public String getTimestamp() {
+        return TIMESTAMP_FORMAT.format(Instant.ofEpochSecond(time));
+    }
+
+    public String getFileName() { return attachment == null ? null : attachment.fileName(); }
+    public String getFileUrl() { return attachment == null ? null : attachment.url(); }
+    public String getMimeType() { return attachment == null ? null : attachment.mimeType(); }
 }
@@ -0,0 +1,175 @@
+package com.example;
+
+/**
+ * Bounded, lock-striped set of recently seen ntfy message ids.
+ *
+ * <p>Ids are not stored as strings: each id is reduced to a 64-bit hash kept in an open-addressing
+ * table, plus a ring that remembers insertion order. The policies are explicit:
+ * <ul>
+ *   <li><b>False positives:</b> two different ids with the same 64-bit hash are treated as duplicates.
+ *       At the default capacity the chance of any collision is below one in a billion.</li>
+ *   <li><b>Eviction:</b> each stripe is FIFO. Once a stripe is full, adding an id forgets the oldest id
+ *       in that stripe, so a replay of a very old message is no longer recognised as a duplicate.</li>
+ * </ul>
+ */
+public class DedupIndex {
+
+    public static final int DEFAULT_CAPACITY = 1 << 17;
+    public static final int DEFAULT_STRIPES = 16;
+
+    private final Stripe[] stripes;
+    private final int stripeShift;
+
+    public DedupIndex() {
+        this(DEFAULT_CAPACITY, DEFAULT_STRIPES);
+    }
+
+    public DedupIndex(int capacity, int stripeCount) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        if (stripeCount <= 0 || Integer.bitCount(stripeCount) != 1) throw new IllegalArgumentException("stripeCount must be a power of two");
+        int perStripe = Math.max(1, (capacity + stripeCount - 1) / stripeCount);
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) stripes[i] = new Stripe(perStripe);
+        this.stripeShift = 64 - Integer.numberOfTrailingZeros(stripeCount);
+    }
+
+    /** Returns {@code true} if the id was not seen before (and is now remembered). */
+    public boolean add(String id) {
+        long h = hash(id);
+        return stripeFor(h).add(h);
+    }
+
+    public boolean contains(String id) {
+        long h = hash(id);
+        return stripeFor(h).contains(h);
+    }
+
+    public void remove(String id) {
+        long h = hash(id);
+        stripeFor(h).remove(h);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe s : stripes) size += s.size();
+        return size;
+    }
+
+    public long getEvictions() {
+        long evictions = 0;
+        for (Stripe s : stripes) evictions += s.evictions();
+        return evictions;
+    }
+
+    private Stripe stripeFor(long h) {
+        return stripes.length == 1 ? stripes[0] : stripes[(int) (h >>> stripeShift)];
+    }
+
+    /** FNV-1a over the UTF-16 chars followed by a murmur3 finalizer; 0 is reserved as the empty slot. */
+    static long hash(String id) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            h ^= id.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    private static final class Stripe {
+        private final long[] table;
+        /** Ring position of the id in the same table slot, so {@link #remove} can clear it. */
+        private final int[] positions;
+        private final int mask;
+        private final long[] ring;
+        private int head;
+        private int ringCount;
+        private int size;
+        private long evictions;
+
+        Stripe(int capacity) {
+            int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+            this.table = new long[tableSize];
+            this.positions = new int[tableSize];
+            this.mask = tableSize - 1;
+            this.ring = new long[capacity];
+        }
+
+        synchronized boolean add(long h) {
+            if (indexOf(h) >= 0) return false;
+            if (ringCount == ring.length) {
+                // Ids removed explicitly left an empty ring slot behind.
+                long oldest = ring[head];
+                if (oldest != 0) {
+                    deleteAt(indexOf(oldest));
+                    evictions++;
+                }
+                head = (head + 1) % ring.length;
+                ringCount--;
+            }
+            int position = (head + ringCount) % ring.length;
+            insert(h, position);
+            ring[position] = h;
+            ringCount++;
+            return true;
+        }
+
+        synchronized boolean contains(long h) {
+            return indexOf(h) >= 0;
+        }
+
+        synchronized void remove(long h) {
+            int i = indexOf(h);
+            if (i < 0) return;
+            ring[positions[i]] = 0;
+            deleteAt(i);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long evictions() {
+            return evictions;
+        }
+
+        private int indexOf(long h) {
+            for (int i = (int) h & mask; ; i = (i + 1) & mask) {
+                long k = table[i];
+                if (k == h) return i;
+                if (k == 0) return -1;
+            }
+        }
+
+        private void insert(long h, int position) {
+            int i = (int) h & mask;
+            while (table[i] != 0) i = (i + 1) & mask;
+            table[i] = h;
+            positions[i] = position;
+            size++;
+        }
+
+        // Backward-shift deletion keeps linear probe chains intact without tombstones.
+        private void deleteAt(int i) {
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                long k = table[j];
+                if (k == 0) break;
+                int ideal = (int) k & mask;
+                boolean staysPut = i <= j ? (i < ideal && ideal <= j) : (i < ideal || ideal <= j);
+                if (!staysPut) {
+                    table[i] = k;
+                    positions[i] = positions[j];
+                    i = j;
+                }
+            }
+            table[i] = 0;
+            size--;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import java.util.Map;
 
 public class EnvLoader {
 
+    private static final Log LOG = Log.get(EnvLoader.class);
     private static Map<String, String> env = new HashMap<>();
 
     static {
@@ -22,11 +23,22 @@ public class EnvLoader {
                 }
             }
         } catch (IOException e) {
-            System.err.println("Warning: .env file not found or could not be read");
+            LOG.info(".env file not found or could not be read");
         }
     }
 
     public static String get(String key) {
         return env.get(key);
     }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = env.get(key);
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn("{} is not a number, using {}", key, defaultValue);
+            return defaultValue;
+        }
+    }
 }
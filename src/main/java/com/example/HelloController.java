@@ -1,38 +1,72 @@
 package com.example;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.collections.transformation.FilteredList;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
-import javafx.scene.control.Hyperlink;
-import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.IndexedCell;
+import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
+import javafx.scene.control.skin.VirtualFlow;
 import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
-import javafx.scene.text.Text;
-import javafx.scene.text.TextFlow;
+import javafx.scene.input.ScrollEvent;
 import javafx.stage.FileChooser;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
-import java.time.format.DateTimeFormatter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
-import java.util.function.Predicate;
 
 public class HelloController implements Initializable {
 
     @FXML private ListView<ChatMessage> chatList;
     @FXML private TextField inputField;
     @FXML private TextField usernameField;
+    @FXML private TextField searchField;
     @FXML private CheckBox hideMyMessagesCheck;
+    @FXML private Label statusLabel;
+    @FXML private ProgressBar uploadProgress;
+    @FXML private Button cancelUploadButton;
 
-    private final HelloModel model = new HelloModel();
+    private static final Log LOG = Log.get(HelloController.class);
+    private static final int WINDOW_SIZE = EnvLoader.getInt("CHAT_WINDOW_SIZE", 500);
+    private static final int PAGE_SIZE = 200;
+    private static final int FILTER_DEBOUNCE_MS = 200;
+
+    private final Startup startup;
+    private HelloModel model;
+    private final MessageStore store = new MessageStore(
+            EnvLoader.getInt("CHAT_MAX_MESSAGES", MessageStore.DEFAULT_MAX_MESSAGES),
+            EnvLoader.getInt("CHAT_MAX_AGE_HOURS", 0) > 0 ? Duration.ofHours(EnvLoader.getInt("CHAT_MAX_AGE_HOURS", 0)) : null);
     private final ObservableList<ChatMessage> masterList = FXCollections.observableArrayList();
-    private FilteredList<ChatMessage> filteredList;
+    private MessageQuery query = MessageQuery.ALL;
+    private final PauseTransition filterDebounce = new PauseTransition(javafx.util.Duration.millis(FILTER_DEBOUNCE_MS));
+    private final MessageBatcher<ChatMessage> incoming = new MessageBatcher<>(this::appendToWindow, Platform::runLater);
+    private int windowLimit = WINDOW_SIZE;
+    private MessageCache cache;
+    private AttachmentIndex attachments;
+    private ThumbnailCache<Image> thumbnails;
+    private final ChatCell.LayoutCache layoutCache = new ChatCell.LayoutCache(10_000);
+    private final List<UploadManager.Upload> activeUploads = new ArrayList<>();
+
+    public HelloController() {
+        this(Startup.begin());
+    }
+
+    /** Takes over a pipeline that has been connecting since before the FXML was loaded. */
+    public HelloController(Startup startup) {
+        this.startup = startup;
+    }
 
     private String getCurrentUsername() {
         String u = usernameField.getText();
@@ -43,58 +77,138 @@ public class HelloController implements Initializable {
 
     @Override
     public void initialize(URL url, ResourceBundle rb) {
-        filteredList = new FilteredList<>(masterList, msg -> true);
-        chatList.setItems(filteredList);
-
-        chatList.setCellFactory(list -> new ListCell<>() {
-            @Override
-            protected void updateItem(ChatMessage msg, boolean empty) {
-                super.updateItem(msg, empty);
-                if (empty || msg == null) { setGraphic(null); return; }
-
-                Text user = new Text(msg.getUsername());
-                user.setStyle("-fx-font-weight: bold;");
-                Text time = new Text(" (" + msg.getTimestamp() + ")\n");
-                time.setStyle("-fx-fill: gray; -fx-font-size: 12px;");
-
-                if (msg.getFileName() != null && msg.getFileUrl() != null) {
-                    if (msg.getMimeType() != null && msg.getMimeType().startsWith("image/")) {
-                        try {
-                            ImageView imageView = new ImageView(new Image(msg.getFileUrl(), true));
-                            imageView.setFitWidth(200);
-                            imageView.setPreserveRatio(true);
-                            Text messageText = new Text(msg.getMessage() + "\n");
-                            messageText.setStyle("-fx-font-size: 14px;");
-                            setGraphic(new TextFlow(user, time, messageText, imageView));
-                        } catch (Exception e) { e.printStackTrace(); }
-                    } else {
-                        Hyperlink link = new Hyperlink(msg.getFileName());
-                        final String fileUrl = msg.getFileUrl();
-                        link.setOnAction(ev -> HelloFX.hostServices().showDocument(fileUrl));
-                        Text messageText = new Text(msg.getMessage() + "\n");
-                        messageText.setStyle("-fx-font-size: 14px;");
-                        setGraphic(new TextFlow(user, time, messageText, link));
-                    }
-                } else {
-                    Text text = new Text(msg.getMessage());
-                    text.setStyle("-fx-font-size: 14px;");
-                    setGraphic(new TextFlow(user, time, text));
-                }
-            }
+        chatList.setItems(masterList);
+
+        chatList.setCellFactory(list -> new ChatCell(thumbnails, layoutCache));
+
+        filterDebounce.setOnFinished(e -> applyFilter());
+        hideMyMessagesCheck.selectedProperty().addListener((obs, oldVal, newVal) -> applyFilter());
+        usernameField.textProperty().addListener((obs, oldVal, newVal) -> {
+            if (hideMyMessagesCheck.isSelected()) filterDebounce.playFromStart();
+        });
+        searchField.textProperty().addListener((obs, oldVal, newVal) -> filterDebounce.playFromStart());
+
+        chatList.addEventFilter(ScrollEvent.SCROLL, e -> {
+            if (e.getDeltaY() > 0 && isScrolledToTop()) loadOlderPage();
         });
 
-        hideMyMessagesCheck.selectedProperty().addListener((obs, oldVal, newVal) -> updateFilterPredicate());
-        usernameField.textProperty().addListener((obs, oldVal, newVal) -> updateFilterPredicate());
+        // Waits as late as possible: the pipeline has been running since before the FXML was loaded.
+        Startup.Ready ready = startup.await();
+        model = ready.model();
+        cache = ready.cache();
+        attachments = ready.attachments();
+        thumbnails = openThumbnails();
+        if (model.getOutbox() != null) model.getOutbox().setListener((pending, offline) -> Platform.runLater(() ->
+                statusLabel.setText(offline ? "Offline, " + pending + (pending == 1 ? " message" : " messages") + " waiting to be sent"
+                        : "Back online")));
+        store.setEvictionListener(msg -> model.forgetId(msg.getId()));
+        store.appendAll(ready.cached());
+        masterList.setAll(store.newest(windowLimit));
+        if (!masterList.isEmpty()) {
+            chatList.scrollTo(masterList.size() - 1);
+            // After the stage is shown.
+            Platform.runLater(this::messageShown);
+        }
+        startup.attach(this::onMessage, older -> Platform.runLater(() -> prependHistory(older)));
+    }
 
-        model.loadHistory(msg -> Platform.runLater(() -> masterList.add(msg)));
-        model.listenForMessages(msg -> Platform.runLater(() -> masterList.add(msg)));
+    /** Stops network work owned by this window: subscriptions, sends, uploads and image loads. */
+    public void shutdown() {
+        filterDebounce.stop();
+        if (model != null) model.close();
+        if (thumbnails != null) thumbnails.close();
+        if (cache != null) {
+            try {
+                cache.close();
+            } catch (IOException e) {
+                LOG.warn("Could not close message cache: {}", e.getMessage());
+            }
+        }
+        if (attachments != null) {
+            try {
+                attachments.close();
+            } catch (IOException e) {
+                LOG.warn("Could not close attachment index: {}", e.getMessage());
+            }
+        }
     }
 
-    private void updateFilterPredicate() {
-        final String current = getCurrentUsername();
-        final boolean hideMine = hideMyMessagesCheck.isSelected();
-        Predicate<ChatMessage> pred = msg -> !hideMine || !current.equals(msg.getUsername());
-        filteredList.setPredicate(pred);
+    private ThumbnailCache<Image> openThumbnails() {
+        try {
+            return new ThumbnailCache<>(model.getTransport(), MessageCache.defaultDirectory().resolve("images"),
+                    EnvLoader.getInt("IMAGE_DISK_CACHE_MB", 256) * 1024L * 1024L,
+                    EnvLoader.getInt("IMAGE_CACHE_MB", 64) * 1024L * 1024L,
+                    ChatCell.THUMBNAIL_WIDTH, HelloController::decodeThumbnail,
+                    img -> (long) img.getWidth() * (long) img.getHeight() * 4);
+        } catch (IOException e) {
+            LOG.warn("Image cache disabled: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /** Decodes straight to thumbnail size; runs on a ThumbnailCache worker, not the FX thread. */
+    private static Image decodeThumbnail(InputStream in, int width) throws IOException {
+        Image image = new Image(in, width, 0, true, true);
+        if (image.isError()) throw new IOException("Could not decode image", image.getException());
+        return image;
+    }
+
+    private void onMessage(ChatMessage msg) {
+        store.append(msg);
+        incoming.offer(msg);
+    }
+
+    /** Puts backfilled history in front of what is shown, filling the window if it has room. */
+    private void prependHistory(List<ChatMessage> older) {
+        store.prependAll(older);
+        int room = windowLimit - masterList.size();
+        if (room <= 0) return;
+        // Taken from the history itself: live messages already in the store may not have reached the window yet.
+        List<ChatMessage> shown = query.isAll() ? older : older.stream().filter(query::matches).toList();
+        masterList.addAll(0, shown.subList(Math.max(0, shown.size() - room), shown.size()));
+        if (!masterList.isEmpty()) {
+            chatList.scrollTo(masterList.size() - 1);
+            messageShown();
+        }
+    }
+
+    private void appendToWindow(List<ChatMessage> batch) {
+        if (!query.isAll()) batch = batch.stream().filter(query::matches).toList();
+        List<ChatMessage> tail = batch.size() > windowLimit ? batch.subList(batch.size() - windowLimit, batch.size()) : batch;
+        int overflow = masterList.size() + tail.size() - windowLimit;
+        if (overflow > 0) masterList.remove(0, Math.min(overflow, masterList.size()));
+        masterList.addAll(tail);
+        if (!masterList.isEmpty()) messageShown();
+    }
+
+    private void messageShown() {
+        if (startup.messageShown() && Startup.EXIT_AFTER_FIRST_MESSAGE) Platform.exit();
+    }
+
+    private boolean isScrolledToTop() {
+        if (chatList.lookup(".virtual-flow") instanceof VirtualFlow<?> flow) {
+            IndexedCell<?> first = flow.getFirstVisibleCell();
+            return first != null && first.getIndex() == 0;
+        }
+        return false;
+    }
+
+    private void loadOlderPage() {
+        if (masterList.isEmpty()) return;
+        List<ChatMessage> older = store.pageBefore(masterList.get(0), query, PAGE_SIZE);
+        if (older.isEmpty()) return;
+        windowLimit = Math.min(store.getCapacity(), windowLimit + older.size());
+        masterList.addAll(0, older);
+        chatList.scrollTo(older.size());
+    }
+
+    /** Rebuilds the visible window from the store's index for the current search and filters. */
+    private void applyFilter() {
+        filterDebounce.stop();
+        query = MessageQuery.parse(searchField.getText()).excluding(hideMyMessagesCheck.isSelected() ? getCurrentUsername() : null);
+        windowLimit = WINDOW_SIZE;
+        masterList.setAll(store.search(query, windowLimit));
+        if (!masterList.isEmpty()) chatList.scrollTo(masterList.size() - 1);
     }
 
     @FXML
@@ -104,10 +218,10 @@ public class HelloController implements Initializable {
         if (msg.isEmpty()) return;
         inputField.clear();
 
-        new Thread(() -> {
-            try { model.sendMessage(user, msg); }
-            catch (Exception e) { e.printStackTrace(); }
-        }).start();
+        model.enqueueMessage(user, msg).whenComplete((resp, err) -> {
+            if (err != null) Platform.runLater(() -> statusLabel.setText("Send failed: " + err.getMessage()));
+            else if (!resp.isSuccess()) Platform.runLater(() -> statusLabel.setText("Send failed: HTTP " + resp.statusCode()));
+        });
     }
 
     @FXML
@@ -115,6 +229,38 @@ public class HelloController implements Initializable {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Select a file to send");
         File file = fileChooser.showOpenDialog(chatList.getScene().getWindow());
-        if (file != null) new Thread(() -> model.sendFile(getCurrentUsername(), file)).start();
+        if (file == null) return;
+        UploadManager.Upload upload = model.uploadFile(getCurrentUsername(), file,
+                progress -> Platform.runLater(this::updateUploadStatus));
+        if (upload == null) return;
+        activeUploads.add(upload);
+        updateUploadStatus();
+        upload.result().whenComplete((resp, err) -> Platform.runLater(() -> {
+            activeUploads.remove(upload);
+            if (err != null) statusLabel.setText("Upload failed: " + file.getName());
+            else if (!resp.isSuccess()) statusLabel.setText("Upload failed: HTTP " + resp.statusCode());
+            else statusLabel.setText((upload.wasReused() ? "Sent " : "Uploaded ") + file.getName());
+            updateUploadStatus();
+        }));
+    }
+
+    @FXML
+    private void onCancelUpload() {
+        for (UploadManager.Upload upload : List.copyOf(activeUploads)) upload.cancel();
+    }
+
+    /** Shows combined progress of all running uploads. */
+    private void updateUploadStatus() {
+        boolean busy = !activeUploads.isEmpty();
+        uploadProgress.setVisible(busy);
+        cancelUploadButton.setVisible(busy);
+        if (!busy) return;
+        long sent = 0, total = 0;
+        for (UploadManager.Upload upload : activeUploads) {
+            sent += upload.sent();
+            total += Math.max(upload.total(), 0);
+        }
+        uploadProgress.setProgress(total == 0 ? ProgressBar.INDETERMINATE_PROGRESS : (double) sent / total);
+        statusLabel.setText("Uploading " + activeUploads.size() + (activeUploads.size() == 1 ? " file" : " files"));
     }
 }
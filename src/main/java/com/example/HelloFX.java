@@ -7,8 +7,13 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
+import java.util.List;
+
 public class HelloFX extends Application {
     public static HostServices hostServices;
+    private static Startup startup;
+    private HelloController controller;
+    private List<MetricsExporter> exporters = List.of();
 
     public static HostServices hostServices() {
         return hostServices;
@@ -17,16 +22,32 @@ public class HelloFX extends Application {
     @Override
     public void start(Stage stage) throws Exception {
         hostServices = getHostServices();
+        exporters = MetricsExporter.fromEnv(Metrics.shared());
+        Startup pipeline = startup != null ? startup : Startup.begin();
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/com/example/hello-view.fxml"));
+        loader.setControllerFactory(type -> new HelloController(pipeline));
         Parent root = loader.load();
+        controller = loader.getController();
         Scene scene = new Scene(root, 720, 520);
         scene.getStylesheets().add(getClass().getResource("/css/style.css").toExternalForm());
         stage.setTitle("JavaFX NTFY Chat — mats_notiser");
         stage.setScene(scene);
         stage.show();
+        pipeline.windowShown();
+    }
+
+    /** Cancels all background work so the JVM can exit once the window is closed. */
+    @Override
+    public void stop() {
+        if (controller != null) controller.shutdown();
+        for (MetricsExporter exporter : exporters) exporter.close();
+        Tasks.shared().close();
+        HttpClientTransport.shared().close();
     }
 
+    /** Starts connecting before the toolkit is up, see {@link Startup}. */
     public static void main(String[] args) {
+        startup = Startup.begin();
         launch(args);
     }
 }
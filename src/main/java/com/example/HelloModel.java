@@ -3,225 +3,345 @@ package com.example;
 import org.json.JSONObject;
 
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 
-public class HelloModel {
+public class HelloModel implements AutoCloseable {
+    private static final Log LOG = Log.get(HelloModel.class);
+    private static final Metrics.Histogram SEND_LATENCY = Metrics.shared().histogram("ntfy_send_latency_us",
+            "Time from posting a message to ntfy's response", "us");
+    private static final Metrics.Counter SEND_FAILURES = Metrics.shared().counter("ntfy_send_failures_total",
+            "Messages ntfy rejected or that could not be posted");
+    static final Metrics.Counter DEDUP_HITS = Metrics.shared().counter("ntfy_dedup_hits_total",
+            "Messages dropped because their id had been seen before");
+
     private final String TOPIC_URL;
-    private final Set<String> seenIds = Collections.synchronizedSet(new HashSet<>());
+    private final NtfyTransport transport;
+    private final DedupIndex seenIds = new DedupIndex();
+    private final DedupIndex seenCids = new DedupIndex();
+    private final SendPipeline outbound;
+    private final UploadManager uploads;
+    private volatile Outbox outbox;
+    private final List<NtfySubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final List<TopicMultiplexer> multiplexers = new CopyOnWriteArrayList<>();
+    private final List<HistoryBackfill> backfills = new CopyOnWriteArrayList<>();
 
     public HelloModel() {
-        TOPIC_URL = EnvLoader.get("NTFY_URL");
-        if (TOPIC_URL == null || TOPIC_URL.isBlank()) {
-            throw new IllegalStateException("NTFY_URL not found in .env file");
-        }
+        this(EnvLoader.get("NTFY_URL"));
     }
 
     public HelloModel(String topicUrl) {
+        this(topicUrl, HttpClientTransport.shared());
+    }
+
+    public HelloModel(String topicUrl, NtfyTransport transport) {
         if (topicUrl == null || topicUrl.isBlank()) {
             throw new IllegalStateException("NTFY_URL not found in .env file");
         }
         this.TOPIC_URL = topicUrl;
+        this.transport = transport;
+        this.outbound = new SendPipeline(this::sendJsonAsync);
+        this.uploads = new UploadManager(transport,
+                EnvLoader.getInt("UPLOAD_MAX_CONCURRENT", UploadManager.DEFAULT_MAX_CONCURRENT),
+                EnvLoader.getInt("UPLOAD_MAX_KBPS", 0) * 1024L,
+                UploadManager.DEFAULT_CHUNK_SIZE);
     }
 
     public void sendMessage(String username, String message) throws IOException {
+        sendJsonToNtfy(messageJson(username, message));
+    }
+
+    public CompletableFuture<NtfyTransport.Response> sendMessageAsync(String username, String message) {
+        return sendJsonAsync(messageJson(username, message));
+    }
+
+    /**
+     * Queues a message for sending. With an {@linkplain #openOutbox outbox} it is journaled first and
+     * kept until ntfy accepts it; otherwise it goes on the outbound pipeline, where messages from one
+     * user are published in order.
+     */
+    public CompletableFuture<NtfyTransport.Response> enqueueMessage(String username, String message) {
+        JSONObject json = messageJson(username, message);
+        return post(json.getString("username"), json);
+    }
+
+    private CompletableFuture<NtfyTransport.Response> post(String username, JSONObject json) {
+        Outbox box = outbox;
+        if (box == null) return outbound.offer(username, json);
+        return box.send(json).exceptionallyCompose(e -> {
+            if (!(e instanceof IOException)) return CompletableFuture.failedFuture(e);
+            LOG.warn("Could not journal message, sending without the outbox: {}", e.getMessage());
+            return outbound.offer(username, json);
+        });
+    }
+
+    public SendPipeline getOutbound() {
+        return outbound;
+    }
+
+    /**
+     * Journals outgoing messages in {@code file} from now on and resends what an earlier run left
+     * there; see {@link Outbox}. {@code OUTBOX_MAX_CONCURRENT} caps the posts in flight during a flush
+     * and {@code OUTBOX_MAX_COALESCE} the queued messages of a user joined into one post.
+     */
+    public Outbox openOutbox(Path file) throws IOException {
+        return openOutbox(file, EnvLoader.getInt("OUTBOX_MAX_CONCURRENT", Outbox.DEFAULT_MAX_CONCURRENT),
+                EnvLoader.getInt("OUTBOX_MAX_COALESCE", Outbox.DEFAULT_MAX_COALESCE),
+                Outbox.DEFAULT_RETRY_BASE, Outbox.DEFAULT_RETRY_MAX);
+    }
+
+    Outbox openOutbox(Path file, int maxConcurrent, int maxCoalesce, Duration retryBase, Duration retryMax) throws IOException {
+        Outbox box = new Outbox(file, this::sendJsonAsync, maxConcurrent, maxCoalesce, retryBase, retryMax);
+        outbox = box;
+        return box;
+    }
+
+    public Outbox getOutbox() {
+        return outbox;
+    }
+
+    private static JSONObject messageJson(String username, String message) {
         JSONObject json = new JSONObject();
         json.put("username", username == null || username.isBlank() ? "Anonymous" : username);
         json.put("message", message == null ? "" : message);
         json.put("time", Instant.now().getEpochSecond());
-        sendJsonToNtfy(json);
+        return json;
     }
 
     protected void sendFile(String username, File file) {
-        if (file == null || !file.exists()) return;
-        final String safeUsername = (username == null || username.isBlank()) ? "Anonymous" : username;
-
-        new Thread(() -> {
-            HttpURLConnection conn = null;
-            try {
-                URL url = new URL(TOPIC_URL);
-                conn = (HttpURLConnection) url.openConnection();
-                conn.setDoOutput(true);
-                conn.setRequestMethod("PUT");
-
-                String mimeType = Files.probeContentType(file.toPath());
-                if (mimeType == null) mimeType = "application/octet-stream";
-
-                conn.setRequestProperty("Filename", file.getName());
-                conn.setRequestProperty("Content-Type", mimeType);
-                conn.setRequestProperty("X-Hide", "true");
-                conn.setFixedLengthStreamingMode(file.length());
-                conn.connect();
-
-                try (OutputStream os = conn.getOutputStream()) {
-                    Files.copy(file.toPath(), os);
-                    os.flush();
-                }
+        uploadFile(username, file, null);
+    }
 
-                int rc = conn.getResponseCode();
-                InputStream respStream = rc >= 400 ? conn.getErrorStream() : conn.getInputStream();
-                String responseJson = "";
-                if (respStream != null) responseJson = new String(respStream.readAllBytes(), StandardCharsets.UTF_8);
-                System.out.println("PUT upload response code: " + rc);
-                if (!responseJson.isBlank()) System.out.println("PUT upload response body: " + responseJson);
+    /**
+     * Uploads {@code file} through the upload manager and then posts the chat message that links
+     * to it. Returns {@code null} if there is no such file.
+     */
+    public UploadManager.Upload uploadFile(String username, File file, Consumer<UploadManager.Progress> listener) {
+        if (file == null || !file.exists()) return null;
+        final String safeUsername = (username == null || username.isBlank()) ? "Anonymous" : username;
 
-                String fileUrl = null;
-                try {
-                    if (!responseJson.isBlank()) {
-                        JSONObject resp = new JSONObject(responseJson);
-                        if (resp.has("attachment")) {
-                            JSONObject attach = resp.getJSONObject("attachment");
-                            if (attach.has("url")) fileUrl = attach.getString("url");
-                        } else if (resp.has("url")) {
-                            fileUrl = resp.getString("url");
-                        }
-                    }
-                } catch (Exception ex) {
-                    System.err.println("Failed to parse upload response JSON: " + ex.getMessage());
-                }
+        String probed = null;
+        try {
+            probed = Files.probeContentType(file.toPath());
+        } catch (IOException e) {
+            LOG.warn("Could not probe content type of {}: {}", file, e.getMessage());
+        }
+        final String mimeType = probed == null ? "application/octet-stream" : probed;
+
+        UploadManager.Upload upload = uploads.upload(TOPIC_URL, file.toPath(), Map.of(
+                "Filename", file.getName(),
+                "Content-Type", mimeType,
+                "X-Hide", "true"), listener);
+        upload.result().thenCompose(resp -> {
+            LOG.debug("PUT upload response code: {}", resp.statusCode());
+            if (!resp.isSuccess()) return CompletableFuture.completedFuture(resp);
+            String fileUrl = attachmentUrl(resp, file.getName());
+            JSONObject msg = new JSONObject();
+            msg.put("username", safeUsername);
+            msg.put("message", "Sent file: " + file.getName());
+            msg.put("time", Instant.now().getEpochSecond());
+            msg.put("fileName", file.getName());
+            msg.put("fileUrl", fileUrl);
+            msg.put("mimeType", mimeType);
+            return post(safeUsername, msg);
+        }).exceptionally(e -> {
+            LOG.warn("Upload of {} failed: {}", file.getName(), e.getMessage());
+            return null;
+        });
+        return upload;
+    }
 
-                if (fileUrl == null && rc >= 200 && rc < 300) {
-                    if (!TOPIC_URL.endsWith("/")) fileUrl = TOPIC_URL + "/" + file.getName();
-                    else fileUrl = TOPIC_URL + file.getName();
+    private String attachmentUrl(NtfyTransport.Response resp, String fileName) {
+        String responseJson = resp.body() == null ? "" : resp.body();
+        if (!responseJson.isBlank()) LOG.debug("PUT upload response body: {}", responseJson);
+        try {
+            if (!responseJson.isBlank()) {
+                JSONObject body = new JSONObject(responseJson);
+                if (body.has("attachment")) {
+                    JSONObject attach = body.getJSONObject("attachment");
+                    if (attach.has("url")) return attach.getString("url");
+                } else if (body.has("url")) {
+                    return body.getString("url");
                 }
-
-                JSONObject msg = new JSONObject();
-                msg.put("username", safeUsername);
-                msg.put("message", "Sent file: " + file.getName());
-                msg.put("time", Instant.now().getEpochSecond());
-                msg.put("fileName", file.getName());
-                msg.put("fileUrl", fileUrl);
-                msg.put("mimeType", mimeType);
-
-                sendJsonToNtfy(msg);
-
-            } catch (Exception e) {
-                e.printStackTrace();
-            } finally {
-                if (conn != null) conn.disconnect();
             }
-        }).start();
+        } catch (Exception ex) {
+            LOG.warn("Failed to parse upload response JSON: {}", ex.getMessage());
+        }
+        return TOPIC_URL.endsWith("/") ? TOPIC_URL + fileName : TOPIC_URL + "/" + fileName;
+    }
+
+    public UploadManager getUploads() {
+        return uploads;
     }
 
     protected void sendJsonToNtfy(JSONObject json) throws IOException {
+        try {
+            sendJsonAsync(json).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sending message", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException(e.getCause());
+        }
+    }
+
+    protected CompletableFuture<NtfyTransport.Response> sendJsonAsync(JSONObject json) {
         byte[] out = json.toString().getBytes(StandardCharsets.UTF_8);
+        long start = System.nanoTime();
+        return Tasks.shared().track(Tasks.Kind.SEND, transport.postAsync(TOPIC_URL, out, Map.of("Content-Type", "application/json")))
+                .whenComplete((resp, e) -> {
+                    SEND_LATENCY.record((System.nanoTime() - start) / 1_000);
+                    if (e != null || !resp.isSuccess()) SEND_FAILURES.increment();
+                })
+                .thenApply(resp -> {
+                    LOG.debug("sendJsonToNtfy() -> response: {}", resp.statusCode());
+                    if (!resp.isSuccess() && resp.body() != null && !resp.body().isBlank()) {
+                        LOG.warn("ntfy error body: {}", resp.body());
+                    }
+                    return resp;
+                });
+    }
+
+    /**
+     * Subscribes to the topic with one long-lived stream that replays history from {@code since}
+     * and then follows live messages, reconnecting and resuming from the last seen id.
+     */
+    public NtfySubscription subscribe(String since, Consumer<ChatMessage> callback) {
+        NtfySubscription subscription = new NtfySubscription(transport, TOPIC_URL, since,
+                line -> handleEnvelope(line, callback));
+        subscriptions.add(subscription);
+        return subscription.start();
+    }
 
-        URL url = new URL(TOPIC_URL);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setDoOutput(true);
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setFixedLengthStreamingMode(out.length);
-        conn.connect();
-
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(out);
-            os.flush();
+    /**
+     * Reads the cached history for this topic and marks it as seen, so it can be rendered before
+     * {@link #subscribe(MessageCache, Consumer)} fetches what arrived since.
+     */
+    public List<ChatMessage> loadCached(MessageCache cache) throws IOException {
+        List<ChatMessage> cached = cache.readAll();
+        for (ChatMessage msg : cached) {
+            if (msg.getId() != null) seenIds.add(msg.getId());
         }
+        return cached;
+    }
 
-        int rc = conn.getResponseCode();
-        System.out.println("sendJsonToNtfy() -> response: " + rc);
-        if (rc < 200 || rc >= 300) {
-            InputStream err = conn.getErrorStream();
-            if (err != null) {
-                String body = new String(err.readAllBytes(), StandardCharsets.UTF_8);
-                System.err.println("ntfy error body: " + body);
+    /** Subscribes from the newest cached message (or all history if the cache is empty) and caches new messages. */
+    public NtfySubscription subscribe(MessageCache cache, Consumer<ChatMessage> callback) {
+        String since = cache.getLastId() != null ? cache.getLastId() : "all";
+        return subscribe(since, msg -> {
+            try {
+                cache.append(msg);
+            } catch (IOException e) {
+                LOG.warn("Failed to cache message: {}", e.getMessage());
             }
-        }
+            callback.accept(msg);
+        });
+    }
 
-        try (InputStream is = conn.getInputStream()) { if (is != null) is.readAllBytes(); } catch (IOException ignored) {}
-        conn.disconnect();
+    /**
+     * Follows this model's topic plus any topics added to the returned multiplexer later, all over
+     * one connection to the same ntfy server. Call {@link TopicMultiplexer#start()} to connect.
+     */
+    public TopicMultiplexer multiplex(String since, int maxMessagesPerTopic, TopicMultiplexer.Listener listener) {
+        String[] serverAndTopic = TopicMultiplexer.splitTopicUrl(TOPIC_URL);
+        TopicMultiplexer multiplexer = new TopicMultiplexer(transport, serverAndTopic[0], since, maxMessagesPerTopic, listener);
+        multiplexer.addTopic(serverAndTopic[1]);
+        multiplexer.setActive(serverAndTopic[1]);
+        multiplexers.add(multiplexer);
+        return multiplexer;
     }
 
-    public void loadHistory(Consumer<ChatMessage> callback) {
-        new Thread(() -> {
-            HttpURLConnection conn = null;
-            try {
-                URL url = new URL(TOPIC_URL + "/json?since=all");
-                conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("GET");
-                conn.connect();
-
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        if (line.isBlank()) continue;
-
-                        try {
-                            JSONObject envelope = new JSONObject(line);
-                            String id = envelope.optString("id", null);
-                            if (id != null && !seenIds.add(id)) continue;
-
-                            String rawMsg = envelope.optString("message", "").trim();
-                            if (!rawMsg.startsWith("{") || !rawMsg.endsWith("}")) continue;
-
-                            ChatMessage msg = parseEnvelopeToChatMessage(envelope);
-                            if (msg != null) callback.accept(msg);
-
-                        } catch (Exception ex) {
-                            ex.printStackTrace();
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            } finally {
-                if (conn != null) conn.disconnect();
+    public NtfyTransport getTransport() {
+        return transport;
+    }
+
+    public String getTopicUrl() {
+        return TOPIC_URL;
+    }
+
+    /**
+     * Loads history in parallel time windows, newest page first; see {@link HistoryBackfill}.
+     * Delivered messages are marked as seen, so a subscription started afterwards from the newest
+     * id does not repeat them. {@code BACKFILL_WINDOWS} and {@code BACKFILL_PARALLELISM} tune the split.
+     */
+    public CompletableFuture<HistoryBackfill.Result> backfillHistory(Consumer<HistoryBackfill.Page> listener) {
+        HistoryBackfill backfill = new HistoryBackfill(transport, TOPIC_URL,
+                EnvLoader.getInt("BACKFILL_WINDOWS", HistoryBackfill.DEFAULT_WINDOWS),
+                EnvLoader.getInt("BACKFILL_PARALLELISM", HistoryBackfill.DEFAULT_PARALLELISM));
+        backfills.add(backfill);
+        return backfill.start(page -> {
+            List<ChatMessage> fresh = new ArrayList<>(page.messages().size());
+            for (ChatMessage msg : page.messages()) {
+                if (msg.getId() == null || seenIds.add(msg.getId())) fresh.add(msg);
+                else DEDUP_HITS.increment();
             }
-        }).start();
+            listener.accept(new HistoryBackfill.Page(page.index(), page.windowCount(), page.fromTime(), page.untilTime(), fresh));
+        }).whenComplete((r, e) -> backfills.remove(backfill));
     }
 
+    public void loadHistory(Consumer<ChatMessage> callback) {
+        Tasks.shared().start(Tasks.Kind.HISTORY, () -> readStream(TOPIC_URL + "/json?since=all", callback));
+    }
 
     public void listenForMessages(Consumer<ChatMessage> callback) {
-        new Thread(() -> {
-            HttpURLConnection conn = null;
-            try {
-                URL url = new URL(TOPIC_URL + "/json");
-                conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("GET");
-                conn.setRequestProperty("Accept", "application/json");
-                conn.connect();
-
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        if (line.isBlank()) continue;
-
-                        try {
-                            JSONObject envelope = new JSONObject(line);
-                            String id = envelope.optString("id", null);
-                            if (id != null && !seenIds.add(id)) continue;
-
-                            String rawMsg = envelope.optString("message", "").trim();
-                            if (!rawMsg.startsWith("{") || !rawMsg.endsWith("}")) continue;
-
-                            ChatMessage msg = parseEnvelopeToChatMessage(envelope);
-                            if (msg != null) callback.accept(msg);
-
-                        } catch (Exception ex) {
-                            ex.printStackTrace();
-                        }
-                    }
+        Tasks.shared().start(Tasks.Kind.SUBSCRIPTION, () -> readStream(TOPIC_URL + "/json", callback));
+    }
+
+    private void readStream(String url, Consumer<ChatMessage> callback) {
+        try (InputStream in = transport.openStream(url)) {
+            new NdjsonDecoder().decode(in, line -> {
+                try {
+                    if (line.isMessageEvent()) handleEnvelope(line, callback);
+                } catch (Exception ex) {
+                    LOG.error("Could not handle message from {}", url, ex);
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
-            } finally {
-                if (conn != null) conn.disconnect();
-            }
-        }, "ntfy-listener-thread").start();
+            });
+        } catch (Exception e) {
+            LOG.error("Could not read {}", url, e);
+        }
     }
 
+    private void handleEnvelope(NdjsonDecoder line, Consumer<ChatMessage> callback) {
+        // Plain-text notifications are rejected before their id is recorded or any string is built.
+        if (!line.hasJsonPayload()) return;
+        String id = line.id();
+        if (id != null && !seenIds.add(id)) {
+            DEDUP_HITS.increment();
+            return;
+        }
+
+        ChatMessage msg = line.toChatMessage();
+        if (msg == null) return;
+        Outbox box = outbox;
+        if (box != null) box.wake();
+        String cid = line.cid();
+        if (cid != null) {
+            if (box != null) box.acknowledgeEcho(cid);
+            // A message resent after its response was lost reaches ntfy twice, under two ids.
+            if (!seenCids.add(cid)) {
+                DEDUP_HITS.increment();
+                return;
+            }
+        }
+        callback.accept(msg);
+    }
 
+    public void forgetId(String id) {
+        if (id != null) seenIds.remove(id);
+    }
 
+    /** Tree-based equivalent of {@link NdjsonDecoder#toChatMessage()} for callers that already hold a JSONObject. */
     protected ChatMessage parseEnvelopeToChatMessage(JSONObject envelope) {
         String rawMsg = envelope.optString("message", null);
         if (rawMsg == null) return null;
@@ -229,9 +349,6 @@ public class HelloModel {
         try {
             String id = envelope.optString("id", null);
             long envelopeTime = envelope.optLong("time", Instant.now().getEpochSecond());
-            String timestamp = Instant.ofEpochSecond(envelopeTime)
-                    .atZone(ZoneId.systemDefault())
-                    .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
 
             String username = envelope.optString("username", "unknown");
 
@@ -247,16 +364,33 @@ public class HelloModel {
                     String fileUrl = inner.optString("fileUrl", null);
                     String mimeType = inner.optString("mimeType", null);
 
-                    if (fileName != null || fileUrl != null)
-                        return new ChatMessage(id, username, messageText, timestamp, fileName, fileUrl, mimeType);
-                    else
-                        return new ChatMessage(id, username, messageText, timestamp);
+                    return new ChatMessage(id, username, messageText, envelopeTime, ChatMessage.Attachment.of(fileName, fileUrl, mimeType));
                 } else {
-                    return new ChatMessage(id, username, rawMsg, timestamp);
+                    return new ChatMessage(id, username, rawMsg, envelopeTime);
                 }
             }
-        } catch (Exception e) { e.printStackTrace(); }
+        } catch (Exception e) { LOG.error("Could not parse envelope {}", envelope.optString("id"), e); }
         return null;
     }
 
+    @Override
+    public void close() {
+        for (NtfySubscription subscription : subscriptions) subscription.close();
+        subscriptions.clear();
+        for (TopicMultiplexer multiplexer : multiplexers) multiplexer.close();
+        multiplexers.clear();
+        for (HistoryBackfill backfill : backfills) backfill.close();
+        backfills.clear();
+        uploads.close();
+        outbound.close();
+        Outbox box = outbox;
+        outbox = null;
+        if (box != null) {
+            try {
+                box.close();
+            } catch (IOException e) {
+                LOG.warn("Could not close outbox: {}", e.getMessage());
+            }
+        }
+    }
 }
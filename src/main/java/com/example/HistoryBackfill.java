@@ -0,0 +1,178 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Loads a topic's history as several time windows fetched at once, instead of one serial
+ * {@code since=all} stream. A probe finds the oldest message; the span from there to now is cut
+ * into windows, and each window is a {@code since=<start>&poll=1} request read until the first
+ * message at or after the window's end (ntfy has no upper bound, so the rest of the response is
+ * dropped by closing it). The newest window is fetched first and pages are delivered from newest
+ * to oldest, each in chronological order, so the visible end of the chat fills while older windows
+ * are still loading; prepending pages as they arrive rebuilds the history in order.
+ *
+ * <p>Windows are decoded on the task that fetched them. Those are virtual threads, which the JDK
+ * runs on a fork-join pool sized to the cores, so decoding of different windows runs in parallel.
+ */
+public class HistoryBackfill implements AutoCloseable {
+
+    public static final int DEFAULT_WINDOWS = 16;
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private static final Log LOG = Log.get(HistoryBackfill.class);
+
+    /** One window of history; {@code index} counts from 0 for the oldest window. */
+    public record Page(int index, int windowCount, long fromTime, long untilTime, List<ChatMessage> messages) {
+        /** True for the last page delivered. */
+        public boolean isOldest() { return index == 0; }
+    }
+
+    public record Result(int messages, int windows, long firstPageMillis, long totalMillis) { }
+
+    private final NtfyTransport transport;
+    private final String topicUrl;
+    private final int windows;
+    private final int parallelism;
+    private CompletableFuture<Result> result;
+
+    public HistoryBackfill(NtfyTransport transport, String topicUrl) {
+        this(transport, topicUrl, DEFAULT_WINDOWS, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * @param windows     how many time windows to split history into; more windows than
+     *                    {@code parallelism} keeps requests busy when messages cluster in time
+     * @param parallelism how many windows are fetched at once
+     */
+    public HistoryBackfill(NtfyTransport transport, String topicUrl, int windows, int parallelism) {
+        if (windows < 1 || parallelism < 1) throw new IllegalArgumentException("windows and parallelism must be positive");
+        this.transport = transport;
+        this.topicUrl = topicUrl.endsWith("/") ? topicUrl.substring(0, topicUrl.length() - 1) : topicUrl;
+        this.windows = windows;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Starts loading; {@code listener} is called once per window, newest first, from a single
+     * background thread. The result fails with the first fetch error, after which no more pages
+     * are delivered.
+     */
+    public synchronized CompletableFuture<Result> start(Consumer<Page> listener) {
+        if (result != null) throw new IllegalStateException("Backfill already started");
+        result = Tasks.shared().submit(Tasks.Kind.HISTORY, () -> run(listener));
+        return result;
+    }
+
+    private Result run(Consumer<Page> listener) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        long oldest = oldestTime();
+        if (oldest < 0) return new Result(0, 0, -1, (System.nanoTime() - start) / 1_000_000);
+        long[] bounds = windowBounds(oldest, Instant.now().getEpochSecond(), windows);
+        int count = bounds.length - 1;
+
+        List<CompletableFuture<List<ChatMessage>>> pages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) pages.add(new CompletableFuture<>());
+        AtomicInteger next = new AtomicInteger(count - 1);
+        try (Tasks.Scope fetchers = Tasks.shared().openScope(Tasks.Kind.HISTORY)) {
+            for (int f = 0; f < Math.min(parallelism, count); f++) {
+                fetchers.fork(() -> {
+                    for (int i; (i = next.getAndDecrement()) >= 0; ) {
+                        try {
+                            pages.get(i).complete(fetch(bounds[i], bounds[i + 1]));
+                        } catch (Exception e) {
+                            // Unblocks the delivery loop below whichever page it is waiting on.
+                            for (CompletableFuture<List<ChatMessage>> page : pages) page.completeExceptionally(e);
+                            throw e;
+                        }
+                    }
+                    return null;
+                });
+            }
+
+            int total = 0;
+            long firstPage = -1;
+            for (int i = count - 1; i >= 0; i--) {
+                List<ChatMessage> messages;
+                try {
+                    messages = pages.get(i).get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException io) throw io;
+                    throw new IOException("Backfill of " + topicUrl + " failed", e.getCause());
+                }
+                listener.accept(new Page(i, count, bounds[i], bounds[i + 1], messages));
+                if (firstPage < 0) firstPage = (System.nanoTime() - start) / 1_000_000;
+                total += messages.size();
+            }
+            Result done = new Result(total, count, firstPage, (System.nanoTime() - start) / 1_000_000);
+            LOG.info("Backfilled {} messages from {} in {} windows: first page after {} ms, all after {} ms",
+                    done.messages(), topicUrl, count, done.firstPageMillis(), done.totalMillis());
+            return done;
+        }
+    }
+
+    /**
+     * Splits {@code [oldest, newest]} (epoch seconds) into at most {@code windows} windows of at least
+     * a second each. Returns their start times followed by {@link Long#MAX_VALUE}, so the newest window
+     * also takes whatever is published while the backfill runs.
+     */
+    static long[] windowBounds(long oldest, long newest, int windows) {
+        long span = Math.max(1, newest - oldest + 1);
+        int count = (int) Math.min(windows, span);
+        long[] bounds = new long[count + 1];
+        for (int i = 0; i < count; i++) bounds[i] = oldest + span * i / count;
+        bounds[count] = Long.MAX_VALUE;
+        return bounds;
+    }
+
+    /** Time of the first message in the topic, or -1 if there is none. */
+    private long oldestTime() throws IOException {
+        long[] oldest = {-1};
+        try (InputStream in = transport.openStream(topicUrl + "/json?since=all&poll=1")) {
+            new NdjsonDecoder().decode(in, line -> {
+                if (!line.isMessageEvent() || !line.hasTime()) return;
+                oldest[0] = line.time();
+                throw new WindowEnd();
+            });
+        } catch (WindowEnd ignored) {
+            // Found it; the rest of the response is not needed.
+        }
+        return oldest[0];
+    }
+
+    /** Chat messages with {@code from <= time < until}, in the order ntfy returns them. */
+    List<ChatMessage> fetch(long from, long until) throws IOException {
+        List<ChatMessage> messages = new ArrayList<>();
+        try (InputStream in = transport.openStream(topicUrl + "/json?since=" + from + "&poll=1")) {
+            new NdjsonDecoder().decode(in, line -> {
+                if (!line.isMessageEvent()) return;
+                if (line.hasTime() && line.time() >= until) throw new WindowEnd();
+                ChatMessage msg = line.toChatMessage();
+                if (msg != null) messages.add(msg);
+            });
+        } catch (WindowEnd ignored) {
+            // The rest of the response belongs to newer windows.
+        }
+        return messages;
+    }
+
+    /** Unwinds the decode loop at the end of a window. */
+    private static final class WindowEnd extends RuntimeException {
+        WindowEnd() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** Stops fetching; pages not delivered yet are dropped. */
+    @Override
+    public synchronized void close() {
+        if (result != null) result.cancel(true);
+    }
+}
@@ -0,0 +1,114 @@
+package com.example;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+
+/**
+ * {@link NtfyTransport} on top of a single {@link HttpClient}. The client keeps connections alive
+ * and negotiates HTTP/2 where the server supports it, so consecutive calls skip the TCP/TLS handshake.
+ */
+public class HttpClientTransport implements NtfyTransport {
+
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private static HttpClientTransport shared;
+
+    private final HttpClient client;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Duration requestTimeout;
+
+    public HttpClientTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    public HttpClientTransport(Duration connectTimeout, Duration requestTimeout) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                // The default executor is an unbounded platform-thread pool; async callbacks are short.
+                .executor(executor)
+                .build();
+        this.requestTimeout = requestTimeout;
+    }
+
+    /** Process-wide transport used by models that are not given one explicitly. */
+    public static synchronized HttpClientTransport shared() {
+        if (shared == null) shared = new HttpClientTransport();
+        return shared;
+    }
+
+    @Override
+    public CompletableFuture<Response> postAsync(String url, byte[] body, Map<String, String> headers) {
+        return send(request(url, headers).POST(HttpRequest.BodyPublishers.ofByteArray(body)).build());
+    }
+
+    @Override
+    public CompletableFuture<Response> putAsync(String url, Path file, Map<String, String> headers) {
+        try {
+            return send(request(url, headers).PUT(HttpRequest.BodyPublishers.ofFile(file)).build());
+        } catch (FileNotFoundException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Response> putAsync(String url, Flow.Publisher<ByteBuffer> body, long contentLength,
+                                                Map<String, String> headers) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url));
+        headers.forEach(builder::header);
+        return send(builder.PUT(HttpRequest.BodyPublishers.fromPublisher(body, contentLength)).build());
+    }
+
+    @Override
+    public InputStream openStream(String url) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+        try {
+            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            if (response.statusCode() >= 400) {
+                response.body().close();
+                throw new IOException("GET " + url + " -> " + response.statusCode());
+            }
+            return response.body();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while opening " + url, e);
+        }
+    }
+
+    private HttpRequest.Builder request(String url, Map<String, String> headers) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url)).timeout(requestTimeout);
+        headers.forEach(builder::header);
+        return builder;
+    }
+
+    private CompletableFuture<Response> send(HttpRequest request) {
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .thenApply(r -> new Response(r.statusCode(), r.body(), r.headers().map()));
+    }
+
+    @Override
+    public void close() {
+        // close() would wait for open /json streams, which never complete on their own.
+        client.shutdownNow();
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,36 @@
+package com.example;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-size, lock-free string cache for values that repeat a lot, such as sender names.
+ * Each string hashes to one slot: a hit returns the copy already stored there, a miss stores the
+ * new string in the slot and returns it. Memory is bounded by the slot count, and an evicted name
+ * only costs a duplicate copy, never a wrong answer.
+ */
+final class InternTable {
+
+    private final AtomicReferenceArray<String> slots;
+    private final int mask;
+
+    InternTable(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    String intern(String s) {
+        if (s == null) return null;
+        int h = s.hashCode();
+        int index = (h ^ (h >>> 16)) & mask;
+        String cached = slots.getPlain(index);
+        if (s.equals(cached)) return cached;
+        // Strings are immutable with final fields, so a plain publish is safe.
+        slots.setPlain(index, s);
+        return s;
+    }
+
+    int capacity() {
+        return slots.length();
+    }
+}
@@ -0,0 +1,122 @@
+package com.example;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Exposes the registry as one MBean, {@value #OBJECT_NAME}, for JConsole or VisualVM. Every
+ * counter and gauge is a read-only {@code long} attribute; a histogram contributes
+ * {@code _count}, {@code _p50}, {@code _p99} and {@code _max} attributes. The attribute set is
+ * read from the registry on each call, so metrics registered later show up too.
+ */
+public class JmxMetricsExporter implements MetricsExporter {
+
+    public static final String OBJECT_NAME = "com.example:type=Metrics";
+
+    private final MBeanServer server;
+    private final ObjectName name;
+
+    public JmxMetricsExporter(Metrics metrics) throws JMException {
+        this(metrics, ManagementFactory.getPlatformMBeanServer(), new ObjectName(OBJECT_NAME));
+    }
+
+    JmxMetricsExporter(Metrics metrics, MBeanServer server, ObjectName name) throws JMException {
+        this.server = server;
+        this.name = name;
+        if (server.isRegistered(name)) server.unregisterMBean(name);
+        server.registerMBean(new Bean(metrics), name);
+    }
+
+    /** {@code ntfy_tasks_active{kind="send"}} becomes {@code ntfy_tasks_active_kind_send}. */
+    static String attributeName(String metricName) {
+        return metricName.replaceAll("[^A-Za-z0-9_]+", "_").replaceAll("_+$", "");
+    }
+
+    private record Bean(Metrics metrics) implements DynamicMBean {
+
+        private Map<String, LongSupplier> attributes() {
+            Map<String, LongSupplier> attrs = new LinkedHashMap<>();
+            for (Metrics.Metric metric : metrics.all()) {
+                String base = attributeName(metric.name());
+                switch (metric) {
+                    case Metrics.Counter c -> attrs.put(base, c::get);
+                    case Metrics.Gauge g -> attrs.put(base, g::get);
+                    case Metrics.Histogram h -> {
+                        attrs.put(base + "_count", h::count);
+                        attrs.put(base + "_p50", () -> h.percentile(50));
+                        attrs.put(base + "_p99", () -> h.percentile(99));
+                        attrs.put(base + "_max", h::max);
+                    }
+                }
+            }
+            return attrs;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            LongSupplier value = attributes().get(attribute);
+            if (value == null) throw new AttributeNotFoundException(attribute);
+            return value.getAsLong();
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            Map<String, LongSupplier> attrs = attributes();
+            AttributeList list = new AttributeList();
+            for (String n : names) {
+                LongSupplier value = attrs.get(n);
+                if (value != null) list.add(new Attribute(n, value.getAsLong()));
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> infos = new ArrayList<>();
+            for (String n : attributes().keySet()) {
+                infos.add(new MBeanAttributeInfo(n, "long", n, true, false, false));
+            }
+            return new MBeanInfo(Metrics.class.getName(), "ntfy chat client metrics",
+                    infos.toArray(MBeanAttributeInfo[]::new), null, null, null);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+        } catch (JMException ignored) {
+            // Already gone.
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example;
+
+import java.lang.System.Logger.Level;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Leveled logging on top of {@link System.Logger}, so the JDK's logging configuration decides
+ * what is printed. Messages use {@code {}} placeholders, filled in only when the level is enabled;
+ * a trailing {@link Throwable} argument is logged with its stack trace.
+ *
+ * <p>Each message template may log {@link #BURST} times per {@link #WINDOW_NANOS}. Anything beyond
+ * that is counted instead of printed, and the count is appended to the next message of the same
+ * template that gets through, so a reconnect storm or a stream of bad lines cannot flood the console.
+ */
+public final class Log {
+
+    public static final int BURST = 5;
+    public static final long WINDOW_NANOS = 1_000_000_000L;
+
+    private static final Metrics.Counter SUPPRESSED = Metrics.shared().counter("log_messages_suppressed_total",
+            "Log messages dropped by rate limiting");
+
+    private final System.Logger logger;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    Log(System.Logger logger) {
+        this.logger = logger;
+    }
+
+    public static Log get(Class<?> owner) {
+        return new Log(System.getLogger(owner.getName()));
+    }
+
+    public void debug(String template, Object... args) { log(Level.DEBUG, template, args); }
+    public void info(String template, Object... args) { log(Level.INFO, template, args); }
+    public void warn(String template, Object... args) { log(Level.WARNING, template, args); }
+    public void error(String template, Object... args) { log(Level.ERROR, template, args); }
+
+    public boolean isDebugEnabled() {
+        return logger.isLoggable(Level.DEBUG);
+    }
+
+    private void log(Level level, String template, Object[] args) {
+        if (!logger.isLoggable(level)) return;
+        long suppressed = windows.computeIfAbsent(template, t -> new Window()).tryAcquire(System.nanoTime());
+        if (suppressed < 0) {
+            SUPPRESSED.increment();
+            return;
+        }
+        Throwable thrown = args.length > 0 && args[args.length - 1] instanceof Throwable t ? t : null;
+        String text = format(template, args);
+        if (suppressed > 0) text += " (" + suppressed + " similar messages suppressed)";
+        if (thrown != null) logger.log(level, text, thrown);
+        else logger.log(level, text);
+    }
+
+    /** Replaces each {@code {}} in {@code template} with the next argument. */
+    static String format(String template, Object... args) {
+        if (args.length == 0) return template;
+        StringBuilder sb = new StringBuilder(template.length() + 32);
+        int from = 0;
+        int arg = 0;
+        int at;
+        while (arg < args.length && (at = template.indexOf("{}", from)) >= 0) {
+            sb.append(template, from, at).append(args[arg++]);
+            from = at + 2;
+        }
+        return sb.append(template, from, template.length()).toString();
+    }
+
+    /** A fixed window per template: {@link #BURST} messages, then silence until the window rolls over. */
+    private static final class Window {
+        private long start = Long.MIN_VALUE;
+        private int used;
+        private long suppressed;
+
+        /** Returns -1 if the message is dropped, otherwise how many were dropped since the last one logged. */
+        synchronized long tryAcquire(long now) {
+            if (start == Long.MIN_VALUE || now - start >= WINDOW_NANOS) {
+                start = now;
+                used = 0;
+            }
+            if (used == BURST) {
+                suppressed++;
+                return -1;
+            }
+            used++;
+            long dropped = suppressed;
+            suppressed = 0;
+            return dropped;
+        }
+    }
+}
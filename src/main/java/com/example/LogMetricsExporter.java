@@ -0,0 +1,74 @@
+package com.example;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Logs one line per interval with every metric that has seen activity: counters with their rate
+ * since the previous snapshot, histograms as count, p50, p99 and max, and gauges as their value.
+ */
+public class LogMetricsExporter implements MetricsExporter {
+
+    private static final Log LOG = Log.get(LogMetricsExporter.class);
+
+    private final Metrics metrics;
+    private final Duration interval;
+    private final Map<String, Long> previous = new HashMap<>();
+    private long previousNanos = System.nanoTime();
+    private final Thread thread;
+
+    public LogMetricsExporter(Metrics metrics, Duration interval) {
+        this.metrics = metrics;
+        this.interval = interval;
+        this.thread = Tasks.shared().start(Tasks.Kind.WORKER, this::run);
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(interval);
+                String line = snapshot();
+                if (!line.isEmpty()) LOG.info("metrics: {}", line);
+            }
+        } catch (InterruptedException ignored) {
+            // Closed.
+        }
+    }
+
+    /** Formats the current values, with counter rates relative to the previous call. */
+    synchronized String snapshot() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - previousNanos) / 1e9);
+        previousNanos = now;
+        StringBuilder sb = new StringBuilder();
+        for (Metrics.Metric metric : metrics.all()) {
+            switch (metric) {
+                case Metrics.Counter c -> {
+                    long value = c.get();
+                    long delta = value - previous.getOrDefault(c.name(), 0L);
+                    previous.put(c.name(), value);
+                    if (value == 0) continue;
+                    sb.append(' ').append(c.name()).append('=').append(value)
+                            .append(String.format(" (%.1f/s)", delta / seconds));
+                }
+                case Metrics.Histogram h -> {
+                    if (h.count() == 0) continue;
+                    sb.append(' ').append(h.name()).append("{n=").append(h.count())
+                            .append(" p50=").append(h.percentile(50)).append(" p99=").append(h.percentile(99))
+                            .append(" max=").append(h.max()).append(' ').append(h.unit()).append('}');
+                }
+                case Metrics.Gauge g -> {
+                    long value = g.get();
+                    if (value != 0) sb.append(' ').append(g.name()).append('=').append(value);
+                }
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+    }
+}
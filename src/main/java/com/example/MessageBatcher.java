@@ -0,0 +1,105 @@
+package com.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces items produced on background threads into batches delivered on the UI executor.
+ * An item is handed over at most {@code maxLatency} after it was offered, and a single
+ * delivery never contains more than {@code maxBatchSize} items.
+ */
+public class MessageBatcher<T> {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 10_000;
+    public static final Duration DEFAULT_MAX_LATENCY = Duration.ofMillis(16);
+
+    private static final Metrics.Histogram BATCH_SIZES = Metrics.shared().histogram("chat_ui_batch_size",
+            "Items handed to the UI thread per batch", "items");
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "message-batcher-timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicBoolean drainPending = new AtomicBoolean();
+    private final Consumer<List<T>> sink;
+    private final Executor uiExecutor;
+    private final int maxBatchSize;
+    private final long maxLatencyNanos;
+
+    private final AtomicLong batchesDelivered = new AtomicLong();
+    private final AtomicLong itemsDelivered = new AtomicLong();
+    private final AtomicInteger lastBatchSize = new AtomicInteger();
+    private final AtomicInteger largestBatchSize = new AtomicInteger();
+
+    public MessageBatcher(Consumer<List<T>> sink, Executor uiExecutor) {
+        this(sink, uiExecutor, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_LATENCY);
+    }
+
+    public MessageBatcher(Consumer<List<T>> sink, Executor uiExecutor, int maxBatchSize, Duration maxLatency) {
+        if (maxBatchSize <= 0) throw new IllegalArgumentException("maxBatchSize must be positive");
+        if (maxLatency == null || maxLatency.isNegative()) throw new IllegalArgumentException("maxLatency must not be negative");
+        this.sink = sink;
+        this.uiExecutor = uiExecutor;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLatencyNanos = maxLatency.toNanos();
+    }
+
+    public void offer(T item) {
+        if (item == null) return;
+        queue.offer(item);
+        int depth = queueDepth.incrementAndGet();
+        if (drainPending.compareAndSet(false, true)) {
+            scheduleDrain(depth >= maxBatchSize ? 0 : maxLatencyNanos);
+        }
+    }
+
+    private void scheduleDrain(long delayNanos) {
+        if (delayNanos <= 0) uiExecutor.execute(this::drain);
+        else TIMER.schedule(() -> uiExecutor.execute(this::drain), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void drain() {
+        List<T> batch = new ArrayList<>(Math.min(queueDepth.get(), maxBatchSize));
+        T item;
+        while (batch.size() < maxBatchSize && (item = queue.poll()) != null) batch.add(item);
+        queueDepth.addAndGet(-batch.size());
+
+        try {
+            if (!batch.isEmpty()) {
+                batchesDelivered.incrementAndGet();
+                itemsDelivered.addAndGet(batch.size());
+                lastBatchSize.set(batch.size());
+                largestBatchSize.accumulateAndGet(batch.size(), Math::max);
+                BATCH_SIZES.record(batch.size());
+                sink.accept(batch);
+            }
+        } finally {
+            drainPending.set(false);
+            // Items offered while we were draining saw drainPending == true and did not schedule.
+            if (!queue.isEmpty() && drainPending.compareAndSet(false, true)) scheduleDrain(0);
+        }
+    }
+
+    public int getQueueDepth() { return queueDepth.get(); }
+    public long getBatchesDelivered() { return batchesDelivered.get(); }
+    public long getItemsDelivered() { return itemsDelivered.get(); }
+    public int getLastBatchSize() { return lastBatchSize.get(); }
+    public int getLargestBatchSize() { return largestBatchSize.get(); }
+    public int getMaxBatchSize() { return maxBatchSize; }
+    public Duration getMaxLatency() { return Duration.ofNanos(maxLatencyNanos); }
+}
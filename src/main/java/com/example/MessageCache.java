@@ -0,0 +1,248 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only on-disk cache of the chat messages of one topic, so a restart can render history
+ * without replaying the topic over the network.
+ *
+ * <p>The file starts with an 8 byte header (magic, version) followed by records of
+ * {@code [int length][int crc32][payload]}. A record is written with a single channel write; on
+ * open the file is scanned and everything from the first short or corrupt record onwards is
+ * truncated, so a crash mid-append only loses that record. Once the file holds more than twice
+ * {@code maxRecords} records it is compacted to the newest {@code maxRecords} by copying the tail
+ * into a temporary file and atomically moving it over the original.
+ */
+public class MessageCache implements AutoCloseable {
+
+    private static final Log LOG = Log.get(MessageCache.class);
+    private static final int MAGIC = 0x48465843; // "HFXC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    private final Path file;
+    private final int maxRecords;
+    private FileChannel channel;
+    private long size;
+    private int recordCount;
+    private String lastId;
+    private long truncatedBytes;
+    private int compactions;
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(4096);
+
+    public MessageCache(Path file, int maxRecords) throws IOException {
+        if (maxRecords <= 0) throw new IllegalArgumentException("maxRecords must be positive");
+        this.file = file;
+        this.maxRecords = maxRecords;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        open();
+        if (recordCount > 2L * maxRecords) compact();
+    }
+
+    /** Cache file for a topic inside {@code directory}; the name is derived from the topic URL. */
+    public static Path fileFor(Path directory, String topicUrl) {
+        return directory.resolve(String.format("%016x.cache", DedupIndex.hash(topicUrl)));
+    }
+
+    /** {@code CHAT_CACHE_DIR} from .env, or {@code ~/.hellofx/cache}. */
+    public static Path defaultDirectory() {
+        String dir = EnvLoader.get("CHAT_CACHE_DIR");
+        if (dir != null && !dir.isBlank()) return Path.of(dir);
+        return Path.of(System.getProperty("user.home"), ".hellofx", "cache");
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long fileSize = channel.size();
+        recordCount = 0;
+        lastId = null;
+        if (fileSize < HEADER_SIZE || !headerValid()) {
+            if (fileSize > 0) LOG.warn("Message cache {} has an unknown format, starting empty", file);
+            truncatedBytes += fileSize;
+            channel.truncate(0);
+            channel.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip(), 0);
+            size = HEADER_SIZE;
+            return;
+        }
+
+        long validEnd = HEADER_SIZE;
+        long lastRecord = -1;
+        if (fileSize > HEADER_SIZE) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            CRC32 crc = new CRC32();
+            int pos = HEADER_SIZE;
+            while (pos + RECORD_HEADER_SIZE <= fileSize) {
+                int length = map.getInt(pos);
+                if (length <= 0 || length > MAX_RECORD_SIZE || pos + RECORD_HEADER_SIZE + (long) length > fileSize) break;
+                crc.reset();
+                crc.update(map.slice(pos + RECORD_HEADER_SIZE, length));
+                if ((int) crc.getValue() != map.getInt(pos + 4)) break;
+                lastRecord = pos;
+                recordCount++;
+                pos += RECORD_HEADER_SIZE + length;
+            }
+            validEnd = pos;
+            if (lastRecord >= 0) lastId = readRecord(map, (int) lastRecord).getId();
+        }
+        if (validEnd < fileSize) {
+            LOG.warn("Message cache {}: dropping {} bytes after a torn or corrupt record", file, fileSize - validEnd);
+            truncatedBytes += fileSize - validEnd;
+            channel.truncate(validEnd);
+            channel.force(true);
+        }
+        size = validEnd;
+    }
+
+    private boolean headerValid() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        return header.getInt() == MAGIC && header.getInt() == VERSION;
+    }
+
+    /** Reads every cached message, oldest first, through a read-only mapping of the file. */
+    public synchronized List<ChatMessage> readAll() throws IOException {
+        List<ChatMessage> messages = new ArrayList<>(recordCount);
+        if (size <= HEADER_SIZE) return messages;
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        int pos = HEADER_SIZE;
+        while (pos < size) {
+            messages.add(readRecord(map, pos));
+            pos += RECORD_HEADER_SIZE + map.getInt(pos);
+        }
+        return messages;
+    }
+
+    public synchronized void append(ChatMessage msg) throws IOException {
+        writeBuffer.clear();
+        encode(msg);
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) size += channel.write(writeBuffer, size);
+        recordCount++;
+        if (msg.getId() != null) lastId = msg.getId();
+        if (recordCount > 2L * maxRecords) compact();
+    }
+
+    public synchronized void appendAll(Collection<ChatMessage> messages) throws IOException {
+        for (ChatMessage msg : messages) append(msg);
+    }
+
+    /** Keeps only the newest {@code maxRecords} records. */
+    public synchronized void compact() throws IOException {
+        if (recordCount <= maxRecords) return;
+        int skip = recordCount - maxRecords;
+        long pos = HEADER_SIZE;
+        ByteBuffer length = ByteBuffer.allocate(4);
+        for (int i = 0; i < skip; i++) {
+            length.clear();
+            channel.read(length, pos);
+            pos += RECORD_HEADER_SIZE + length.getInt(0);
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip());
+            long copied = 0, tail = size - pos;
+            while (copied < tail) copied += channel.transferTo(pos + copied, tail - copied, out);
+            out.force(true);
+        }
+        channel.close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        compactions++;
+        open();
+    }
+
+    /** Forces appended records to disk. */
+    public synchronized void flush() throws IOException {
+        channel.force(false);
+    }
+
+    public synchronized String getLastId() { return lastId; }
+    public synchronized int size() { return recordCount; }
+    public synchronized long getFileSize() { return size; }
+    public synchronized long getTruncatedBytes() { return truncatedBytes; }
+    public synchronized int getCompactions() { return compactions; }
+    public Path getFile() { return file; }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) return;
+        channel.force(false);
+        channel.close();
+    }
+
+    // ---- record encoding -------------------------------------------------------------------
+
+    private void encode(ChatMessage msg) {
+        writeBuffer.position(RECORD_HEADER_SIZE);
+        ensureCapacity(8);
+        writeBuffer.putLong(msg.getTime());
+        putString(msg.getId());
+        putString(msg.getUsername());
+        putString(msg.getMessage());
+        putString(msg.getFileName());
+        putString(msg.getFileUrl());
+        putString(msg.getMimeType());
+
+        int length = writeBuffer.position() - RECORD_HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(writeBuffer.array(), RECORD_HEADER_SIZE, length);
+        writeBuffer.putInt(0, length);
+        writeBuffer.putInt(4, (int) crc.getValue());
+    }
+
+    private void putString(String s) {
+        if (s == null) {
+            ensureCapacity(4);
+            writeBuffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(4 + bytes.length);
+        writeBuffer.putInt(bytes.length).put(bytes);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (writeBuffer.remaining() >= extra) return;
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(writeBuffer.capacity() * 2, writeBuffer.position() + extra));
+        writeBuffer.flip();
+        bigger.put(writeBuffer);
+        writeBuffer = bigger;
+    }
+
+    private ChatMessage readRecord(MappedByteBuffer map, int pos) {
+        ByteBuffer record = map.slice(pos + RECORD_HEADER_SIZE, map.getInt(pos));
+        long time = record.getLong();
+        String id = getString(record);
+        String username = getString(record);
+        String message = getString(record);
+        String fileName = getString(record);
+        String fileUrl = getString(record);
+        String mimeType = getString(record);
+        return new ChatMessage(id, username, message, time, ChatMessage.Attachment.of(fileName, fileUrl, mimeType));
+    }
+
+    private static String getString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,204 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Posting lists over {@link MessageStore} sequence numbers: one per username, per hour of message
+ * time and per word of message text and attachment name. Words live in a sorted map so a search
+ * term can be looked up as a prefix. The store updates the index as messages are appended and
+ * evicted, and uses it to pick a short list of candidates for a {@link MessageQuery}.
+ *
+ * <p>Not thread-safe; the store calls it while holding its own lock.
+ */
+class MessageIndex {
+
+    static final long BUCKET_SECONDS = 3600;
+
+    private final Map<String, Postings> byUser = new HashMap<>();
+    private final NavigableMap<Long, Postings> byHour = new TreeMap<>();
+    private final NavigableMap<String, Postings> byWord = new TreeMap<>();
+
+    /** Sequences below this have been evicted from the store. */
+    private long floor;
+    private long evictedSinceSweep;
+    private long indexed;
+
+    void add(long seq, ChatMessage msg, long timeSeconds) {
+        if (msg.getUsername() != null) byUser.computeIfAbsent(msg.getUsername(), k -> new Postings()).add(seq);
+        byHour.computeIfAbsent(Math.floorDiv(timeSeconds, BUCKET_SECONDS), k -> new Postings()).add(seq);
+        MessageQuery.tokenize(msg.getMessage(), word -> byWord.computeIfAbsent(word, k -> new Postings()).add(seq));
+        MessageQuery.tokenize(msg.getFileName(), word -> byWord.computeIfAbsent(word, k -> new Postings()).add(seq));
+        indexed++;
+    }
+
+    /**
+     * Forgets everything below {@code firstSeq}. Posting lists are trimmed lazily; once as many
+     * messages have been evicted as remain, a sweep drops dead entries and empty lists.
+     */
+    void evictBefore(long firstSeq) {
+        if (firstSeq <= floor) return;
+        evictedSinceSweep += firstSeq - floor;
+        floor = firstSeq;
+        if (evictedSinceSweep > Math.max(1024, indexed - floor)) sweep();
+    }
+
+    private void sweep() {
+        sweep(byUser.values());
+        sweep(byHour.values());
+        sweep(byWord.values());
+        evictedSinceSweep = 0;
+    }
+
+    private void sweep(Collection<Postings> lists) {
+        lists.removeIf(p -> {
+            p.trim(floor);
+            return p.isEmpty();
+        });
+    }
+
+    /**
+     * Candidate sequences below {@code before}, newest first, drawn from the most selective posting
+     * lists the query allows. Candidates still have to be checked against the query. Returns
+     * {@code null} when nothing in the query is indexed (only hiding a user), so every message is
+     * a candidate.
+     */
+    Cursor candidates(MessageQuery query, long before) {
+        if (query.until() <= query.since()) return new Cursor(List.of(), before, floor);
+        List<Postings> best = null;
+        long bestSize = Long.MAX_VALUE;
+        if (query.fromUser() != null) {
+            Postings p = byUser.get(query.fromUser());
+            best = p == null ? List.of() : List.of(p);
+            bestSize = p == null ? 0 : p.size();
+        }
+        for (String term : query.terms()) {
+            if (bestSize == 0) break;
+            List<Postings> lists = new ArrayList<>();
+            long size = 0;
+            for (Postings p : byWord.subMap(term, true, term + Character.MAX_VALUE, false).values()) {
+                lists.add(p);
+                size += p.size();
+                if (size >= bestSize) break;
+            }
+            if (size < bestSize) {
+                best = lists;
+                bestSize = size;
+            }
+        }
+        if (query.hasTimeRange() && bestSize > 0) {
+            long from = Math.floorDiv(query.since(), BUCKET_SECONDS);
+            long to = Math.floorDiv(query.until() - 1, BUCKET_SECONDS);
+            List<Postings> lists = new ArrayList<>();
+            long size = 0;
+            for (Postings p : byHour.subMap(from, true, to, true).values()) {
+                lists.add(p);
+                size += p.size();
+                if (size >= bestSize) break;
+            }
+            if (size < bestSize) best = lists;
+        }
+        return best == null ? null : new Cursor(best, before, floor);
+    }
+
+    /** Number of distinct words currently indexed, including ones only held by evicted messages. */
+    int wordCount() { return byWord.size(); }
+
+    /** Merges posting lists newest first, skipping duplicates (one message matching several prefixes). */
+    static final class Cursor {
+        private final PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> Long.compare(b.seq, a.seq));
+        private final long floor;
+        private long last = Long.MAX_VALUE;
+
+        private Cursor(List<Postings> lists, long before, long floor) {
+            this.floor = floor;
+            for (Postings p : new HashSet<>(lists)) {
+                Head head = new Head(p, p.lastBelow(before));
+                if (head.advance(floor)) heads.add(head);
+            }
+        }
+
+        /** The next older candidate, or -1 when there are none left. */
+        long next() {
+            while (!heads.isEmpty()) {
+                Head head = heads.poll();
+                long seq = head.seq;
+                head.pos--;
+                if (head.advance(floor)) heads.add(head);
+                if (seq < last) {
+                    last = seq;
+                    return seq;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static final class Head {
+        final Postings postings;
+        int pos;
+        long seq;
+
+        Head(Postings postings, int pos) {
+            this.postings = postings;
+            this.pos = pos;
+        }
+
+        /** Loads the entry at {@code pos}; false once the list is exhausted or evicted. */
+        boolean advance(long floor) {
+            if (pos < postings.head || postings.seqs[pos] < floor) return false;
+            seq = postings.seqs[pos];
+            return true;
+        }
+    }
+
+    /** Ascending sequence numbers; entries before {@code head} are evicted. */
+    static final class Postings {
+        long[] seqs = new long[4];
+        int head;
+        int size;
+
+        void add(long seq) {
+            // A word repeated within one message is posted once.
+            if (size > head && seqs[size - 1] == seq) return;
+            if (size == seqs.length) {
+                if (head > size / 2) compact();
+                else seqs = Arrays.copyOf(seqs, size * 2);
+            }
+            seqs[size++] = seq;
+        }
+
+        void trim(long floor) {
+            while (head < size && seqs[head] < floor) head++;
+            if (head == size) {
+                head = size = 0;
+                seqs = new long[4];
+            } else if (head > size / 2) {
+                compact();
+            }
+        }
+
+        private void compact() {
+            System.arraycopy(seqs, head, seqs, 0, size - head);
+            size -= head;
+            head = 0;
+        }
+
+        /** Index of the last entry below {@code bound}, or {@code head - 1}. */
+        int lastBelow(long bound) {
+            int i = Arrays.binarySearch(seqs, head, size, bound);
+            return (i >= 0 ? i : -i - 1) - 1;
+        }
+
+        boolean isEmpty() { return size == head; }
+        int size() { return size - head; }
+    }
+}
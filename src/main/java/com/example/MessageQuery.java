@@ -0,0 +1,102 @@
+package com.example;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * What the chat list should show. Every search term must be a prefix of some word in the message
+ * text or attachment name, so results narrow as the user types. Times are epoch seconds,
+ * {@code since} inclusive and {@code until} exclusive.
+ */
+public record MessageQuery(List<String> terms, String fromUser, String excludeUser, long since, long until) {
+
+    public static final MessageQuery ALL = new MessageQuery(List.of(), null, null, Long.MIN_VALUE, Long.MAX_VALUE);
+
+    public MessageQuery {
+        terms = List.copyOf(terms);
+    }
+
+    /**
+     * Parses search box input: plain words are search terms, {@code from:name} keeps one user's
+     * messages, and {@code after:2025-01-31} / {@code before:2025-02-01} bound the date.
+     */
+    public static MessageQuery parse(String input) {
+        if (input == null || input.isBlank()) return ALL;
+        List<String> terms = new ArrayList<>();
+        String from = null;
+        long since = Long.MIN_VALUE, until = Long.MAX_VALUE;
+        for (String word : input.trim().split("\\s+")) {
+            if (word.startsWith("from:") && word.length() > 5) from = word.substring(5);
+            else if (word.startsWith("after:") && parseDay(word.substring(6)) != null) since = parseDay(word.substring(6));
+            else if (word.startsWith("before:") && parseDay(word.substring(7)) != null) until = parseDay(word.substring(7));
+            else tokenize(word, terms::add);
+        }
+        return new MessageQuery(terms, from, null, since, until);
+    }
+
+    private static Long parseDay(String day) {
+        try {
+            return LocalDate.parse(day).atStartOfDay(ZoneId.systemDefault()).toEpochSecond();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /** The same query, additionally hiding messages from {@code user} ({@code null} hides nothing). */
+    public MessageQuery excluding(String user) {
+        return new MessageQuery(terms, fromUser, user, since, until);
+    }
+
+    public boolean isAll() {
+        return terms.isEmpty() && fromUser == null && excludeUser == null && since == Long.MIN_VALUE && until == Long.MAX_VALUE;
+    }
+
+    public boolean hasTimeRange() {
+        return since != Long.MIN_VALUE || until != Long.MAX_VALUE;
+    }
+
+    /** Matches a message as the store would file it; a message without a time counts as sent now. */
+    public boolean matches(ChatMessage msg) {
+        return matches(msg, msg.getTime() > 0 ? msg.getTime() : System.currentTimeMillis() / 1000);
+    }
+
+    public boolean matches(ChatMessage msg, long timeSeconds) {
+        if (fromUser != null && !fromUser.equals(msg.getUsername())) return false;
+        if (excludeUser != null && excludeUser.equals(msg.getUsername())) return false;
+        if (timeSeconds < since || timeSeconds >= until) return false;
+        if (terms.isEmpty()) return true;
+        List<String> words = new ArrayList<>();
+        tokenize(msg.getMessage(), words::add);
+        tokenize(msg.getFileName(), words::add);
+        for (String term : terms) {
+            boolean found = false;
+            for (String word : words) {
+                if (word.startsWith(term)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    /** Splits text into lower-cased runs of letters and digits. */
+    static void tokenize(String text, Consumer<String> out) {
+        if (text == null) return;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) start = i;
+            else if (!word && start >= 0) {
+                out.accept(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.example;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Bounded, chronologically ordered message store. Messages are kept in a ring buffer and the
+ * oldest ones are evicted once the count or age cap is exceeded; every evicted message is
+ * reported to the eviction listener so dependent state (like seen ids) can be dropped with it.
+ * A {@link MessageIndex} is kept in step with the buffer so {@link #search} does not have to
+ * scan every message.
+ */
+public class MessageStore {
+
+    public static final int DEFAULT_MAX_MESSAGES = 50_000;
+
+    private final ChatMessage[] ring;
+    private final long[] times;
+    private final long maxAgeSeconds;
+    private MessageIndex index = new MessageIndex();
+    private Consumer<ChatMessage> evictionListener = msg -> {};
+
+    // Sequence numbers grow monotonically; the slot of a sequence is seq % capacity.
+    private long firstSeq;
+    private long nextSeq;
+    private long evictedCount;
+
+    public MessageStore() {
+        this(DEFAULT_MAX_MESSAGES, null);
+    }
+
+    /**
+     * @param maxMessages maximum number of retained messages
+     * @param maxAge      maximum message age, or {@code null} to only cap by count
+     */
+    public MessageStore(int maxMessages, Duration maxAge) {
+        if (maxMessages <= 0) throw new IllegalArgumentException("maxMessages must be positive");
+        this.ring = new ChatMessage[maxMessages];
+        this.times = new long[maxMessages];
+        this.maxAgeSeconds = maxAge == null ? Long.MAX_VALUE : Math.max(0, maxAge.toSeconds());
+    }
+
+    public synchronized void setEvictionListener(Consumer<ChatMessage> listener) {
+        this.evictionListener = listener == null ? msg -> {} : listener;
+    }
+
+    public void append(ChatMessage msg) {
+        if (msg == null) return;
+        List<ChatMessage> evicted = new ArrayList<>(1);
+        Consumer<ChatMessage> listener;
+        synchronized (this) {
+            long now = System.currentTimeMillis() / 1000;
+            if (nextSeq - firstSeq == ring.length) evicted.add(evictOldest());
+            put(msg, now);
+            evictExpired(now, evicted);
+            index.evictBefore(firstSeq);
+            listener = evictionListener;
+        }
+        // Listeners run outside the lock so they may call back into other synchronized state.
+        for (ChatMessage e : evicted) listener.accept(e);
+    }
+
+    public void appendAll(List<ChatMessage> batch) {
+        for (ChatMessage msg : batch) append(msg);
+    }
+
+    /**
+     * Puts {@code older} (oldest first, all older than what is stored) in front of the stored
+     * messages, for history that arrives after newer messages. Rebuilds the buffer, so call it with
+     * whole pages rather than per message; older messages that do not fit are dropped as evicted.
+     */
+    public void prependAll(List<ChatMessage> older) {
+        if (older.isEmpty()) return;
+        List<ChatMessage> evicted = new ArrayList<>();
+        Consumer<ChatMessage> listener;
+        synchronized (this) {
+            List<ChatMessage> current = range(firstSeq, nextSeq);
+            int keep = Math.min(older.size(), ring.length - current.size());
+            evicted.addAll(older.subList(0, older.size() - keep));
+            Arrays.fill(ring, null);
+            index = new MessageIndex();
+            long now = System.currentTimeMillis() / 1000;
+            nextSeq = firstSeq;
+            for (ChatMessage msg : older.subList(older.size() - keep, older.size())) put(msg, now);
+            for (ChatMessage msg : current) put(msg, now);
+            evictedCount += evicted.size();
+            evictExpired(now, evicted);
+            index.evictBefore(firstSeq);
+            listener = evictionListener;
+        }
+        for (ChatMessage e : evicted) listener.accept(e);
+    }
+
+    private void put(ChatMessage msg, long now) {
+        long seq = nextSeq++;
+        int slot = slot(seq);
+        ring[slot] = msg;
+        times[slot] = msg.getTime() > 0 ? msg.getTime() : now;
+        index.add(seq, msg, times[slot]);
+    }
+
+    public void evictExpired() {
+        List<ChatMessage> evicted = new ArrayList<>();
+        Consumer<ChatMessage> listener;
+        synchronized (this) {
+            evictExpired(System.currentTimeMillis() / 1000, evicted);
+            index.evictBefore(firstSeq);
+            listener = evictionListener;
+        }
+        for (ChatMessage e : evicted) listener.accept(e);
+    }
+
+    private void evictExpired(long nowSeconds, List<ChatMessage> evicted) {
+        if (maxAgeSeconds == Long.MAX_VALUE) return;
+        long cutoff = nowSeconds - maxAgeSeconds;
+        while (firstSeq < nextSeq && times[slot(firstSeq)] < cutoff) evicted.add(evictOldest());
+    }
+
+    private ChatMessage evictOldest() {
+        int slot = slot(firstSeq++);
+        ChatMessage msg = ring[slot];
+        ring[slot] = null;
+        evictedCount++;
+        return msg;
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % ring.length);
+    }
+
+    /** Returns up to {@code count} of the newest messages, oldest first. */
+    public synchronized List<ChatMessage> newest(int count) {
+        long from = Math.max(firstSeq, nextSeq - Math.max(0, count));
+        return range(from, nextSeq);
+    }
+
+    /**
+     * Returns up to {@code count} messages immediately older than {@code anchor}, oldest first.
+     * The search starts from the newest end since the anchor is normally the top of the visible window.
+     */
+    public synchronized List<ChatMessage> pageBefore(ChatMessage anchor, int count) {
+        for (long seq = nextSeq - 1; seq >= firstSeq; seq--) {
+            if (ring[slot(seq)] == anchor) return range(Math.max(firstSeq, seq - Math.max(0, count)), seq);
+        }
+        return List.of();
+    }
+
+    /** Returns up to {@code limit} of the newest messages matching {@code query}, oldest first. */
+    public synchronized List<ChatMessage> search(MessageQuery query, int limit) {
+        return searchBefore(nextSeq, query, limit);
+    }
+
+    /** Like {@link #pageBefore(ChatMessage, int)}, but only counting messages that match {@code query}. */
+    public synchronized List<ChatMessage> pageBefore(ChatMessage anchor, MessageQuery query, int count) {
+        for (long seq = nextSeq - 1; seq >= firstSeq; seq--) {
+            if (ring[slot(seq)] == anchor) return searchBefore(seq, query, count);
+        }
+        return List.of();
+    }
+
+    private List<ChatMessage> searchBefore(long before, MessageQuery query, int limit) {
+        if (query.isAll()) return range(Math.max(firstSeq, before - Math.max(0, limit)), before);
+        List<ChatMessage> out = new ArrayList<>();
+        MessageIndex.Cursor candidates = index.candidates(query, before);
+        long seq = candidates == null ? before - 1 : candidates.next();
+        while (seq >= firstSeq && out.size() < limit) {
+            int slot = slot(seq);
+            if (query.matches(ring[slot], times[slot])) out.add(ring[slot]);
+            seq = candidates == null ? seq - 1 : candidates.next();
+        }
+        return out.reversed();
+    }
+
+    private List<ChatMessage> range(long fromInclusive, long toExclusive) {
+        List<ChatMessage> out = new ArrayList<>((int) Math.max(0, toExclusive - fromInclusive));
+        for (long seq = fromInclusive; seq < toExclusive; seq++) out.add(ring[slot(seq)]);
+        return out;
+    }
+
+    public synchronized int size() { return (int) (nextSeq - firstSeq); }
+    public synchronized long getEvictedCount() { return evictedCount; }
+    public int getCapacity() { return ring.length; }
+}
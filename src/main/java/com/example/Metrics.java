@@ -0,0 +1,137 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Named counters, histograms and gauges that the hot paths update without locks and that
+ * {@link MetricsExporter}s read. Components look their metrics up once, into static fields, and
+ * then only pay for a {@link LongAdder} increment or a histogram bucket update per event.
+ *
+ * <p>Names follow Prometheus conventions ({@code ntfy_lines_parsed_total}) and may carry labels,
+ * e.g. {@code ntfy_tasks_active{kind="send"}}; registering an existing name returns the same metric.
+ */
+public final class Metrics {
+
+    public sealed interface Metric permits Counter, Histogram, Gauge {
+        String name();
+        String help();
+
+        /** The name without its labels. */
+        default String family() {
+            int brace = name().indexOf('{');
+            return brace < 0 ? name() : name().substring(0, brace);
+        }
+    }
+
+    /** A monotonically increasing count. */
+    public static final class Counter implements Metric {
+        private final String name;
+        private final String help;
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        public void increment() { value.increment(); }
+        public void add(long n) { value.add(n); }
+        public long get() { return value.sum(); }
+        @Override public String name() { return name; }
+        @Override public String help() { return help; }
+    }
+
+    /**
+     * A distribution of non-negative values in {@code unit}, kept in a {@link LatencyHistogram}
+     * (about 6% precision over the whole long range, whatever the unit).
+     */
+    public static final class Histogram implements Metric {
+        private final String name;
+        private final String help;
+        private final String unit;
+        private final LatencyHistogram values = new LatencyHistogram();
+
+        private Histogram(String name, String help, String unit) {
+            this.name = name;
+            this.help = help;
+            this.unit = unit;
+        }
+
+        public void record(long value) { values.recordMicros(value); }
+        public long count() { return values.getCount(); }
+        public long sum() { return values.getSumMicros(); }
+        public long max() { return values.getMaxMicros(); }
+        public long percentile(double p) { return values.percentileMicros(p); }
+        public String unit() { return unit; }
+        @Override public String name() { return name; }
+        @Override public String help() { return help; }
+    }
+
+    /** A value read on demand, such as a queue depth. */
+    public static final class Gauge implements Metric {
+        private final String name;
+        private final String help;
+        private final LongSupplier value;
+
+        private Gauge(String name, String help, LongSupplier value) {
+            this.name = name;
+            this.help = help;
+            this.value = value;
+        }
+
+        public long get() { return value.getAsLong(); }
+        @Override public String name() { return name; }
+        @Override public String help() { return help; }
+    }
+
+    private static final Metrics SHARED = new Metrics();
+
+    private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    /** The registry the application's components record into and the exporters read. */
+    public static Metrics shared() {
+        return SHARED;
+    }
+
+    public Counter counter(String name, String help) {
+        return register(Counter.class, name, () -> new Counter(name, help));
+    }
+
+    public Histogram histogram(String name, String help, String unit) {
+        return register(Histogram.class, name, () -> new Histogram(name, help, unit));
+    }
+
+    /** Registers {@code value} under {@code name}, replacing an earlier gauge of that name. */
+    public Gauge gauge(String name, String help, LongSupplier value) {
+        Gauge gauge = new Gauge(name, help, value);
+        Metric previous = metrics.put(name, gauge);
+        if (previous != null && !(previous instanceof Gauge)) {
+            metrics.put(name, previous);
+            throw new IllegalArgumentException(name + " is already registered as a " + previous.getClass().getSimpleName());
+        }
+        return gauge;
+    }
+
+    private <M extends Metric> M register(Class<M> type, String name, Supplier<M> create) {
+        Metric metric = metrics.computeIfAbsent(name, n -> create.get());
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException(name + " is already registered as a " + metric.getClass().getSimpleName());
+        }
+        return type.cast(metric);
+    }
+
+    public Metric get(String name) {
+        return metrics.get(name);
+    }
+
+    /** All metrics, sorted by name so labelled series of one family are adjacent. */
+    public List<Metric> all() {
+        return new ArrayList<>(metrics.values());
+    }
+}
@@ -0,0 +1,40 @@
+package com.example;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Publishes a {@link Metrics} registry somewhere; starts when constructed and stops on {@link #close()}. */
+public interface MetricsExporter extends AutoCloseable {
+
+    @Override
+    void close();
+
+    /**
+     * The exporters configured in {@code .env}: {@code METRICS_LOG_SECONDS} logs a snapshot at that
+     * interval, {@code METRICS_JMX=0} turns off the MBean (on by default) and {@code METRICS_PORT}
+     * serves Prometheus text on {@code 127.0.0.1}. An exporter that cannot start is logged and skipped.
+     */
+    static List<MetricsExporter> fromEnv(Metrics metrics) {
+        List<MetricsExporter> exporters = new ArrayList<>();
+        int logSeconds = EnvLoader.getInt("METRICS_LOG_SECONDS", 0);
+        if (logSeconds > 0) exporters.add(new LogMetricsExporter(metrics, Duration.ofSeconds(logSeconds)));
+        if (EnvLoader.getInt("METRICS_JMX", 1) != 0) {
+            try {
+                exporters.add(new JmxMetricsExporter(metrics));
+            } catch (Exception e) {
+                Log.get(MetricsExporter.class).warn("JMX metrics disabled: {}", e.getMessage());
+            }
+        }
+        int port = EnvLoader.getInt("METRICS_PORT", 0);
+        if (port > 0) {
+            try {
+                exporters.add(new PrometheusMetricsExporter(metrics, port));
+            } catch (IOException e) {
+                Log.get(MetricsExporter.class).warn("Prometheus endpoint on port {} disabled: {}", port, e.getMessage());
+            }
+        }
+        return exporters;
+    }
+}
@@ -0,0 +1,476 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Streaming decoder for the ntfy {@code /json} NDJSON stream. It scans each line's bytes in place
+ * and only remembers where the envelope fields HelloModel needs are; strings are materialised on
+ * demand, and the chat payload nested inside {@code message} is decoded only when asked for.
+ * Payloads that are not JSON objects are rejected before any object is built.
+ *
+ * <p>A decoder is stateful and not thread-safe; use one per stream.
+ */
+public class NdjsonDecoder {
+
+    /** Called once per non-blank line; the decoder is positioned on that line. */
+    @FunctionalInterface
+    public interface LineListener {
+        void onLine(NdjsonDecoder line);
+    }
+
+    private static final Metrics.Counter LINES_PARSED = Metrics.shared().counter("ntfy_lines_parsed_total",
+            "Non-blank NDJSON lines decoded from ntfy streams");
+    private static final Metrics.Counter PARSE_FAILURES = Metrics.shared().counter("ntfy_parse_failures_total",
+            "NDJSON lines that were not a valid ntfy JSON object");
+
+    private static final byte[] KEY_ID = ascii("id");
+    private static final byte[] KEY_TIME = ascii("time");
+    private static final byte[] KEY_EVENT = ascii("event");
+    private static final byte[] KEY_TOPIC = ascii("topic");
+    private static final byte[] KEY_MESSAGE = ascii("message");
+    private static final byte[] KEY_USERNAME = ascii("username");
+    private static final byte[] KEY_FILE_NAME = ascii("fileName");
+    private static final byte[] KEY_FILE_URL = ascii("fileUrl");
+    private static final byte[] KEY_MIME_TYPE = ascii("mimeType");
+    private static final byte[] KEY_CID = ascii("cid");
+    private static final byte[] EVENT_MESSAGE = ascii("message");
+
+    private byte[] readBuffer = new byte[64 * 1024];
+
+    // Current line and the spans of its envelope fields; a span start of -1 means "absent".
+    private byte[] line;
+    private boolean valid;
+    private final Span id = new Span();
+    private final Span event = new Span();
+    private final Span topic = new Span();
+    private final Span message = new Span();
+    private long time;
+    private boolean hasTime;
+
+    // The unescaped chat payload and the spans of its fields.
+    private byte[] payload = new byte[1024];
+    private int payloadLength = -1;
+    private final Span username = new Span();
+    private final Span text = new Span();
+    private final Span fileName = new Span();
+    private final Span fileUrl = new Span();
+    private final Span mimeType = new Span();
+    private final Span cid = new Span();
+    private String lastCid;
+    private int payloadFields;
+
+    private byte[] scratch = new byte[256];
+
+    // Scanner output: end of the last parsed string and whether it contained escapes.
+    private int stringStart;
+    private int stringEnd;
+    private boolean stringEscaped;
+
+    private static final class Span {
+        int start = -1;
+        int end;
+        boolean escaped;
+
+        void set(int start, int end, boolean escaped) {
+            this.start = start;
+            this.end = end;
+            this.escaped = escaped;
+        }
+
+        boolean present() {
+            return start >= 0;
+        }
+    }
+
+    /** Reads NDJSON until end of stream, calling the listener for every non-blank line. */
+    public void decode(InputStream in, LineListener listener) throws IOException {
+        int filled = 0;
+        int lineStart = 0;
+        while (true) {
+            if (filled == readBuffer.length) {
+                if (lineStart > 0) {
+                    System.arraycopy(readBuffer, lineStart, readBuffer, 0, filled - lineStart);
+                    filled -= lineStart;
+                    lineStart = 0;
+                } else {
+                    readBuffer = Arrays.copyOf(readBuffer, readBuffer.length * 2);
+                }
+            }
+            int n = in.read(readBuffer, filled, readBuffer.length - filled);
+            if (n < 0) break;
+            int scanFrom = filled;
+            filled += n;
+            // Counted per read rather than per line, so the shared counters stay off the per-line path.
+            int lines = 0;
+            int malformed = 0;
+            try {
+                for (int i = scanFrom; i < filled; i++) {
+                    if (readBuffer[i] == '\n') {
+                        if (decodeLine(readBuffer, lineStart, i)) {
+                            lines++;
+                            if (!valid) malformed++;
+                            listener.onLine(this);
+                        }
+                        lineStart = i + 1;
+                    }
+                }
+            } finally {
+                countLines(lines, malformed);
+            }
+            if (lineStart == filled) {
+                filled = 0;
+                lineStart = 0;
+            }
+        }
+        if (lineStart < filled && decodeLine(readBuffer, lineStart, filled)) {
+            countLines(1, valid ? 0 : 1);
+            listener.onLine(this);
+        }
+    }
+
+    private static void countLines(int lines, int malformed) {
+        if (lines > 0) LINES_PARSED.add(lines);
+        if (malformed > 0) PARSE_FAILURES.add(malformed);
+    }
+
+    /**
+     * Positions the decoder on {@code buf[from, to)}. Returns {@code false} for blank lines;
+     * malformed lines return {@code true} but report {@link #isValid()} as {@code false}.
+     */
+    public boolean decodeLine(byte[] buf, int from, int to) {
+        line = buf;
+        id.start = event.start = topic.start = message.start = -1;
+        hasTime = false;
+        payloadLength = -1;
+
+        int pos = skipWhitespace(buf, from, to);
+        if (pos >= to) return false;
+        valid = scanEnvelope(buf, pos, to);
+        return true;
+    }
+
+    private boolean scanEnvelope(byte[] b, int pos, int end) {
+        if (b[pos] != '{') return false;
+        pos = skipWhitespace(b, pos + 1, end);
+        if (pos < end && b[pos] == '}') return true;
+        while (pos < end) {
+            if (b[pos] != '"') return false;
+            pos = scanString(b, pos, end);
+            if (pos < 0) return false;
+            int keyStart = stringStart, keyEnd = stringEnd;
+            pos = skipWhitespace(b, pos, end);
+            if (pos >= end || b[pos] != ':') return false;
+            pos = skipWhitespace(b, pos + 1, end);
+            if (pos >= end) return false;
+
+            if (b[pos] == '"' && (keyIs(b, keyStart, keyEnd, KEY_ID) || keyIs(b, keyStart, keyEnd, KEY_EVENT)
+                    || keyIs(b, keyStart, keyEnd, KEY_TOPIC) || keyIs(b, keyStart, keyEnd, KEY_MESSAGE))) {
+                pos = scanString(b, pos, end);
+                if (pos < 0) return false;
+                Span target = keyIs(b, keyStart, keyEnd, KEY_ID) ? id
+                        : keyIs(b, keyStart, keyEnd, KEY_EVENT) ? event
+                        : keyIs(b, keyStart, keyEnd, KEY_TOPIC) ? topic : message;
+                target.set(stringStart, stringEnd, stringEscaped);
+            } else if (keyIs(b, keyStart, keyEnd, KEY_TIME) && (b[pos] == '-' || isDigit(b[pos]))) {
+                pos = scanLong(b, pos, end);
+                if (pos < 0) return false;
+                hasTime = true;
+            } else {
+                pos = skipValue(b, pos, end);
+                if (pos < 0) return false;
+            }
+
+            pos = skipWhitespace(b, pos, end);
+            if (pos >= end) return false;
+            if (b[pos] == '}') return true;
+            if (b[pos] != ',') return false;
+            pos = skipWhitespace(b, pos + 1, end);
+        }
+        return false;
+    }
+
+    public boolean isValid() { return valid; }
+
+    /** True for {@code message} events (ntfy also sends {@code open} and {@code keepalive}). */
+    public boolean isMessageEvent() {
+        if (!valid) return false;
+        if (!event.present()) return message.present();
+        return !event.escaped && keyIs(line, event.start, event.end, EVENT_MESSAGE);
+    }
+
+    public String id() { return materialize(line, id); }
+    public String topic() { return materialize(line, topic); }
+    public boolean hasTime() { return hasTime; }
+    public long time() { return time; }
+
+    /** True when the envelope's {@code message} is itself a JSON object, i.e. one of our chat messages. */
+    public boolean hasJsonPayload() {
+        if (!isMessageEvent() || !message.present()) return false;
+        if (!message.escaped) return looksLikeObject(line, message.start, message.end);
+        return unescapePayload() && looksLikeObject(payload, 0, payloadLength);
+    }
+
+    /** Builds the chat message for the current line, or returns {@code null} if it is not one. */
+    public ChatMessage toChatMessage() {
+        lastCid = null;
+        if (!hasJsonPayload()) return null;
+        byte[] src;
+        int from, to;
+        if (message.escaped) {
+            src = payload;
+            from = 0;
+            to = payloadLength;
+        } else {
+            src = line;
+            from = message.start;
+            to = message.end;
+        }
+
+        String envelopeId = id();
+        long seconds = hasTime ? time : Instant.now().getEpochSecond();
+
+        if (!scanPayload(src, from, to) || payloadFields == 0) {
+            // Looks like an object but does not parse: show the raw text like the old parser did.
+            return new ChatMessage(envelopeId, "unknown", new String(src, from, to - from, StandardCharsets.UTF_8), seconds);
+        }
+        lastCid = materialize(src, cid);
+        String user = username.present() ? materialize(src, username) : "unknown";
+        String body = text.present() ? materialize(src, text) : "";
+        return new ChatMessage(envelopeId, user, body, seconds,
+                ChatMessage.Attachment.of(materialize(src, fileName), materialize(src, fileUrl), materialize(src, mimeType)));
+    }
+
+    /** The sender's client id ({@code cid}, see {@link Outbox}) of the message last built by {@link #toChatMessage()}, or {@code null}. */
+    public String cid() { return lastCid; }
+
+    private boolean scanPayload(byte[] b, int from, int to) {
+        username.start = text.start = fileName.start = fileUrl.start = mimeType.start = cid.start = -1;
+        payloadFields = 0;
+        int pos = skipWhitespace(b, from, to);
+        if (pos >= to || b[pos] != '{') return false;
+        pos = skipWhitespace(b, pos + 1, to);
+        if (pos < to && b[pos] == '}') return true;
+        while (pos < to) {
+            if (b[pos] != '"') return false;
+            pos = scanString(b, pos, to);
+            if (pos < 0) return false;
+            int keyStart = stringStart, keyEnd = stringEnd;
+            pos = skipWhitespace(b, pos, to);
+            if (pos >= to || b[pos] != ':') return false;
+            pos = skipWhitespace(b, pos + 1, to);
+            if (pos >= to) return false;
+            payloadFields++;
+
+            Span target = null;
+            if (b[pos] == '"') {
+                if (keyIs(b, keyStart, keyEnd, KEY_USERNAME)) target = username;
+                else if (keyIs(b, keyStart, keyEnd, KEY_MESSAGE)) target = text;
+                else if (keyIs(b, keyStart, keyEnd, KEY_FILE_NAME)) target = fileName;
+                else if (keyIs(b, keyStart, keyEnd, KEY_FILE_URL)) target = fileUrl;
+                else if (keyIs(b, keyStart, keyEnd, KEY_MIME_TYPE)) target = mimeType;
+                else if (keyIs(b, keyStart, keyEnd, KEY_CID)) target = cid;
+            }
+            if (target != null) {
+                pos = scanString(b, pos, to);
+                if (pos < 0) return false;
+                target.set(stringStart, stringEnd, stringEscaped);
+            } else {
+                pos = skipValue(b, pos, to);
+                if (pos < 0) return false;
+            }
+
+            pos = skipWhitespace(b, pos, to);
+            if (pos >= to) return false;
+            if (b[pos] == '}') return true;
+            if (b[pos] != ',') return false;
+            pos = skipWhitespace(b, pos + 1, to);
+        }
+        return false;
+    }
+
+    private boolean unescapePayload() {
+        if (payloadLength >= 0) return true;
+        int needed = message.end - message.start;
+        if (payload.length < needed) payload = new byte[Math.max(needed, payload.length * 2)];
+        payloadLength = unescape(line, message.start, message.end, payload);
+        return payloadLength >= 0;
+    }
+
+    private String materialize(byte[] src, Span span) {
+        if (!span.present()) return null;
+        if (!span.escaped) return new String(src, span.start, span.end - span.start, StandardCharsets.UTF_8);
+        int needed = span.end - span.start;
+        if (scratch.length < needed) scratch = new byte[Math.max(needed, scratch.length * 2)];
+        int n = unescape(src, span.start, span.end, scratch);
+        return n < 0 ? null : new String(scratch, 0, n, StandardCharsets.UTF_8);
+    }
+
+    // ---- byte-level scanning helpers -------------------------------------------------------
+
+    /** Scans a string starting at the opening quote; returns the position after the closing quote or -1. */
+    private int scanString(byte[] b, int pos, int end) {
+        boolean escaped = false;
+        int i = pos + 1;
+        while (i < end) {
+            byte c = b[i];
+            if (c == '"') {
+                stringStart = pos + 1;
+                stringEnd = i;
+                stringEscaped = escaped;
+                return i + 1;
+            }
+            if (c == '\\') {
+                escaped = true;
+                i += 2;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    private int scanLong(byte[] b, int pos, int end) {
+        boolean negative = b[pos] == '-';
+        int i = negative ? pos + 1 : pos;
+        long value = 0;
+        int digitsStart = i;
+        while (i < end && isDigit(b[i])) value = value * 10 + (b[i++] - '0');
+        if (i == digitsStart) return -1;
+        // Tolerate a fractional part or exponent by skipping it.
+        while (i < end && (b[i] == '.' || b[i] == 'e' || b[i] == 'E' || b[i] == '+' || b[i] == '-' || isDigit(b[i]))) i++;
+        time = negative ? -value : value;
+        return i;
+    }
+
+    private int skipValue(byte[] b, int pos, int end) {
+        byte c = b[pos];
+        if (c == '"') return scanString(b, pos, end);
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            int i = pos;
+            while (i < end) {
+                byte d = b[i];
+                if (d == '"') {
+                    i = scanString(b, i, end);
+                    if (i < 0) return -1;
+                    continue;
+                }
+                if (d == '{' || d == '[') depth++;
+                else if (d == '}' || d == ']') {
+                    if (--depth == 0) return i + 1;
+                }
+                i++;
+            }
+            return -1;
+        }
+        int i = pos;
+        while (i < end && b[i] != ',' && b[i] != '}' && b[i] != ']' && !isWhitespace(b[i])) i++;
+        return i == pos ? -1 : i;
+    }
+
+    /** Decodes JSON string escapes from {@code src[from, to)} into UTF-8 in {@code dst}; returns the length or -1. */
+    static int unescape(byte[] src, int from, int to, byte[] dst) {
+        int o = 0;
+        for (int i = from; i < to; i++) {
+            byte c = src[i];
+            if (c != '\\') {
+                dst[o++] = c;
+                continue;
+            }
+            if (++i >= to) return -1;
+            switch (src[i]) {
+                case '"' -> dst[o++] = '"';
+                case '\\' -> dst[o++] = '\\';
+                case '/' -> dst[o++] = '/';
+                case 'b' -> dst[o++] = '\b';
+                case 'f' -> dst[o++] = '\f';
+                case 'n' -> dst[o++] = '\n';
+                case 'r' -> dst[o++] = '\r';
+                case 't' -> dst[o++] = '\t';
+                case 'u' -> {
+                    if (i + 4 >= to) return -1;
+                    int cp = hex4(src, i + 1);
+                    if (cp < 0) return -1;
+                    i += 4;
+                    if (Character.isHighSurrogate((char) cp) && i + 6 < to && src[i + 1] == '\\' && src[i + 2] == 'u') {
+                        int low = hex4(src, i + 3);
+                        if (low >= 0 && Character.isLowSurrogate((char) low)) {
+                            cp = Character.toCodePoint((char) cp, (char) low);
+                            i += 6;
+                        }
+                    }
+                    o = writeUtf8(cp, dst, o);
+                }
+                default -> { return -1; }
+            }
+        }
+        return o;
+    }
+
+    private static int hex4(byte[] b, int pos) {
+        int v = 0;
+        for (int i = pos; i < pos + 4; i++) {
+            int d = Character.digit(b[i], 16);
+            if (d < 0) return -1;
+            v = (v << 4) | d;
+        }
+        return v;
+    }
+
+    // A \\uXXXX escape is 6 input bytes and at most 3 UTF-8 bytes (4 for a 12-byte surrogate pair),
+    // so the output never outgrows the escaped input.
+    private static int writeUtf8(int cp, byte[] dst, int o) {
+        if (cp < 0x80) {
+            dst[o++] = (byte) cp;
+        } else if (cp < 0x800) {
+            dst[o++] = (byte) (0xC0 | (cp >> 6));
+            dst[o++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (cp < 0x10000) {
+            dst[o++] = (byte) (0xE0 | (cp >> 12));
+            dst[o++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            dst[o++] = (byte) (0x80 | (cp & 0x3F));
+        } else {
+            dst[o++] = (byte) (0xF0 | (cp >> 18));
+            dst[o++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            dst[o++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            dst[o++] = (byte) (0x80 | (cp & 0x3F));
+        }
+        return o;
+    }
+
+    private static boolean looksLikeObject(byte[] b, int from, int to) {
+        int start = skipWhitespace(b, from, to);
+        int end = to - 1;
+        while (end >= start && isWhitespace(b[end])) end--;
+        return start < end && b[start] == '{' && b[end] == '}';
+    }
+
+    private static boolean keyIs(byte[] b, int start, int end, byte[] key) {
+        if (end - start != key.length) return false;
+        for (int i = 0; i < key.length; i++) {
+            if (b[start + i] != key[i]) return false;
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(byte[] b, int pos, int end) {
+        while (pos < end && isWhitespace(b[pos])) pos++;
+        return pos;
+    }
+
+    private static boolean isWhitespace(byte c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
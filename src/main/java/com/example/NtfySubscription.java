@@ -0,0 +1,222 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Long-lived {@code /json} subscription for one topic. History replay and live messages arrive on
+ * the same stream: the first connection asks for {@code since=<initialSince>}, and every reconnect
+ * resumes from the id of the last message seen. A connection that stays silent longer than the
+ * keepalive timeout (ntfy sends keepalive events every 45 s) is treated as stalled and reopened.
+ * Lines are decoded with {@link NdjsonDecoder}, so the handler sees the decoder positioned on the
+ * current message and only materialises the fields it reads.
+ */
+public class NtfySubscription implements AutoCloseable {
+
+    public static final Duration DEFAULT_KEEPALIVE_TIMEOUT = Duration.ofSeconds(90);
+    public static final Duration DEFAULT_MIN_BACKOFF = Duration.ofSeconds(1);
+    public static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds(60);
+
+    private static final Log LOG = Log.get(NtfySubscription.class);
+    private static final Metrics.Counter RECONNECTS = Metrics.shared().counter("ntfy_stream_reconnects_total",
+            "Times a subscription stream was reopened");
+    private static final Metrics.Counter STALLS = Metrics.shared().counter("ntfy_stream_stalls_total",
+            "Streams aborted because no keepalive arrived in time");
+
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ntfy-subscription-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final NtfyTransport transport;
+    private final String topicUrl;
+    private final String initialSince;
+    private final Consumer<NdjsonDecoder> handler;
+    private final long keepaliveTimeoutNanos;
+    private final long minBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private volatile boolean closed;
+    private volatile String lastId;
+    private volatile InputStream current;
+    private volatile long lastActivityNanos;
+    private final NdjsonDecoder decoder = new NdjsonDecoder();
+    private final CompletableFuture<Void> connected = new CompletableFuture<>();
+    private boolean delivered;
+    private Thread reader;
+    private ScheduledFuture<?> watchdog;
+
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong stalls = new AtomicLong();
+    private final AtomicLong gapFill = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+
+    public NtfySubscription(NtfyTransport transport, String topicUrl, String initialSince, Consumer<NdjsonDecoder> handler) {
+        this(transport, topicUrl, initialSince, handler, DEFAULT_KEEPALIVE_TIMEOUT, DEFAULT_MIN_BACKOFF, DEFAULT_MAX_BACKOFF);
+    }
+
+    /**
+     * @param initialSince ntfy {@code since} value for the first connection ({@code all}, an id, a unix time),
+     *                     or {@code null} for live messages only
+     * @param handler      called for every {@code message} event, in stream order; the decoder is only
+     *                     valid for the duration of the call
+     */
+    public NtfySubscription(NtfyTransport transport, String topicUrl, String initialSince, Consumer<NdjsonDecoder> handler,
+                            Duration keepaliveTimeout, Duration minBackoff, Duration maxBackoff) {
+        this.transport = transport;
+        this.topicUrl = topicUrl.endsWith("/") ? topicUrl.substring(0, topicUrl.length() - 1) : topicUrl;
+        this.initialSince = initialSince;
+        this.handler = handler;
+        this.keepaliveTimeoutNanos = keepaliveTimeout.toNanos();
+        this.minBackoffMillis = minBackoff.toMillis();
+        this.maxBackoffMillis = maxBackoff.toMillis();
+    }
+
+    public synchronized NtfySubscription start() {
+        if (reader != null) throw new IllegalStateException("Subscription already started");
+        lastActivityNanos = System.nanoTime();
+        reader = Tasks.shared().start(Tasks.Kind.SUBSCRIPTION, this::run);
+        long period = Math.max(1, keepaliveTimeoutNanos / 4);
+        watchdog = WATCHDOG.scheduleAtFixedRate(this::checkStalled, period, period, TimeUnit.NANOSECONDS);
+        return this;
+    }
+
+    private void run() {
+        long backoff = minBackoffMillis;
+        boolean resumed = false;
+        while (!closed) {
+            String since = lastId != null ? lastId : initialSince;
+            String url = topicUrl + "/json" + (since == null ? "" : "?since=" + since);
+            long connectedAt = System.currentTimeMillis() / 1000;
+            boolean isResume = resumed;
+            delivered = false;
+            try (InputStream in = transport.openStream(url)) {
+                if (!attach(in)) break;
+                lastActivityNanos = System.nanoTime();
+                connected.complete(null);
+                decoder.decode(in, line -> {
+                    if (closed) throw new StreamClosed();
+                    lastActivityNanos = System.nanoTime();
+                    handleLine(line, isResume, connectedAt);
+                });
+            } catch (StreamClosed e) {
+                break;
+            } catch (IOException e) {
+                if (!closed) LOG.warn("ntfy subscription dropped: {}", e.getMessage());
+            } finally {
+                detach();
+                if (delivered) backoff = minBackoffMillis;
+            }
+
+            if (closed) break;
+            reconnects.incrementAndGet();
+            RECONNECTS.increment();
+            resumed = true;
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1));
+            } catch (InterruptedException e) {
+                if (closed) break;
+            }
+            backoff = Math.min(maxBackoffMillis, backoff * 2);
+        }
+    }
+
+    private void handleLine(NdjsonDecoder line, boolean resumed, long connectedAt) {
+        if (!line.isValid()) {
+            LOG.warn("Skipping malformed ntfy line from {}", topicUrl);
+            return;
+        }
+        if (!line.isMessageEvent()) return;
+
+        String id = line.id();
+        if (id != null) lastId = id;
+        messages.incrementAndGet();
+        delivered = true;
+        if (resumed && line.hasTime() && line.time() <= connectedAt) gapFill.incrementAndGet();
+        try {
+            handler.accept(line);
+        } catch (Exception e) {
+            LOG.error("Message handler failed for {}", topicUrl, e);
+        }
+    }
+
+    /** Unwinds the decode loop once the subscription has been closed. */
+    private static final class StreamClosed extends RuntimeException {
+        StreamClosed() {
+            super(null, null, false, false);
+        }
+    }
+
+    private void checkStalled() {
+        InputStream in = current;
+        if (in == null || closed) return;
+        if (System.nanoTime() - lastActivityNanos > keepaliveTimeoutNanos) {
+            stalls.incrementAndGet();
+            STALLS.increment();
+            lastActivityNanos = System.nanoTime();
+            abortCurrent();
+        }
+    }
+
+    /**
+     * Makes {@code in} the stream to abort; {@code false} if the subscription was closed meanwhile.
+     * Clears an interrupt aimed at the connect, so none is pending while the handler runs.
+     */
+    private synchronized boolean attach(InputStream in) {
+        Thread.interrupted();
+        if (closed) return false;
+        current = in;
+        return true;
+    }
+
+    private synchronized void detach() {
+        current = null;
+    }
+
+    /**
+     * Unblocks the reader. While a stream is open only the stream is closed: the handler runs on
+     * the reader thread, and an interrupt there would close interruptible channels it writes to,
+     * such as the {@link MessageCache} file. Connecting and backing off are interrupted instead.
+     */
+    private synchronized void abortCurrent() {
+        InputStream in = current;
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // Best effort; the read fails once the connection is gone.
+            }
+        } else if (reader != null) {
+            reader.interrupt();
+        }
+    }
+
+    /** Completes once the first stream is open; never completes if the subscription is closed before that. */
+    public CompletableFuture<Void> connected() {
+        return connected;
+    }
+
+    public String getLastId() { return lastId; }
+    public long getReconnectCount() { return reconnects.get(); }
+    public long getStallCount() { return stalls.get(); }
+    public long getGapFillCount() { return gapFill.get(); }
+    public long getMessageCount() { return messages.get(); }
+    public boolean isConnected() { return current != null; }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (watchdog != null) watchdog.cancel(false);
+        abortCurrent();
+    }
+}
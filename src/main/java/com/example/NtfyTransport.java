@@ -0,0 +1,47 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * HTTP operations HelloModel needs from an ntfy server. Implementations are expected to be
+ * thread-safe and to reuse connections between calls.
+ */
+public interface NtfyTransport extends AutoCloseable {
+
+    CompletableFuture<Response> postAsync(String url, byte[] body, Map<String, String> headers);
+
+    CompletableFuture<Response> putAsync(String url, Path file, Map<String, String> headers);
+
+    /**
+     * Streams {@code contentLength} bytes from {@code body}. No request timeout applies, since a
+     * throttled upload may legitimately take long; cancel through the publisher instead.
+     */
+    CompletableFuture<Response> putAsync(String url, Flow.Publisher<ByteBuffer> body, long contentLength,
+                                         Map<String, String> headers);
+
+    /** Opens a streaming GET; closing the returned stream aborts the request. */
+    InputStream openStream(String url) throws IOException;
+
+    @Override
+    void close();
+
+    record Response(int statusCode, String body, Map<String, List<String>> headers) {
+        public boolean isSuccess() {
+            return statusCode >= 200 && statusCode < 300;
+        }
+
+        public String header(String name) {
+            for (Map.Entry<String, List<String>> e : headers.entrySet()) {
+                if (e.getKey().equalsIgnoreCase(name) && !e.getValue().isEmpty()) return e.getValue().get(0);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,705 @@
+package com.example;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Durable queue of outgoing chat messages. A message is written to a memory-mapped journal before
+ * it is posted and acknowledged once ntfy answers with a 2xx, so messages typed while the server is
+ * unreachable survive until it is back, and a restart resends what was never acknowledged.
+ *
+ * <p>Each message carries a client id ({@code cid}) in its JSON. A message whose response was lost
+ * may have reached ntfy anyway, so {@link #acknowledgeEcho} acknowledges it when it comes back on
+ * the subscription, and receivers drop a second copy with the same {@code cid}.
+ *
+ * <p>{@link #send} only queues the message: a journal thread writes whatever has queued up and
+ * forces it to disk in one go, so the caller, typically the FX thread, never waits for the disk.
+ * A drain thread then posts pending messages with at most {@code maxConcurrent} in flight, but
+ * only one post per user at a time, so each user's messages arrive in the order they were sent.
+ * When several text messages of a user have queued up, e.g. during an outage, up to
+ * {@code maxCoalesce} of them are joined into one post like {@link SendPipeline} does. Such a batch
+ * gets a {@code cid} of its own and is journaled before it is posted, so a retry, also after a
+ * restart, posts exactly the same batch and receivers can still drop a second copy. After
+ * a failure it backs off exponentially, or as long as a 429 or 503 asks with {@code Retry-After};
+ * {@link #wake()} cuts the wait short when the connection is known to be back. 4xx answers other
+ * than 429 will not succeed on retry, so those messages are dropped with their response.
+ *
+ * <p>The journal starts with an 8 byte header (magic, version) followed by records of
+ * {@code [int length][int crc32][byte type][short cidLength][cid][json]}, the json only for
+ * {@code ENQUEUED}; a {@code BATCH} record holds the cids of its messages instead, one per line,
+ * and acknowledging a batch acknowledges them all. Every append also writes a zero length after the record, so the scan on open
+ * stops there even when older records follow. Enqueues are forced to disk; acknowledgements are
+ * not, as losing one only means a resend that receivers drop by {@code cid}. Once nothing is
+ * pending the journal is rewound to the start; when it has to grow while acknowledged records
+ * make up most of it, the pending records are copied to a fresh journal instead. A journal that
+ * would outgrow 2 GiB anyway rejects the message with an {@link IOException}.
+ */
+public class Outbox implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_CONCURRENT = 4;
+    public static final int DEFAULT_MAX_COALESCE = 32;
+    public static final Duration DEFAULT_RETRY_BASE = Duration.ofSeconds(1);
+    public static final Duration DEFAULT_RETRY_MAX = Duration.ofSeconds(30);
+
+    private static final Log LOG = Log.get(Outbox.class);
+    private static final Metrics.Counter JOURNALED = Metrics.shared().counter("ntfy_outbox_journaled_total",
+            "Messages written to the outbox journal");
+    private static final Metrics.Counter ACKED = Metrics.shared().counter("ntfy_outbox_acked_total",
+            "Outbox messages acknowledged by a 2xx response");
+    private static final Metrics.Counter ECHO_ACKED = Metrics.shared().counter("ntfy_outbox_echo_acked_total",
+            "Outbox messages acknowledged because they came back on the subscription");
+    private static final Metrics.Counter DROPPED = Metrics.shared().counter("ntfy_outbox_dropped_total",
+            "Outbox messages ntfy rejected for good");
+
+    private static final int MAGIC = 0x48465842; // "HFXB"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    private static final int GROWTH = 1024 * 1024;
+    private static final long MAX_JOURNAL_SIZE = Integer.MAX_VALUE;
+    private static final byte ENQUEUED = 1;
+    private static final byte ACKNOWLEDGED = 2;
+    private static final byte BATCH = 3;
+    /** ntfy's default message size limit; longer messages would turn into attachments. */
+    private static final int MAX_COALESCED_BYTES = 4096;
+
+    /** Called after the outbox went offline or online or its backlog changed while offline. */
+    @FunctionalInterface
+    public interface Listener {
+        void changed(int pending, boolean offline);
+    }
+
+    private static final class Pending {
+        final String cid;
+        final String user;
+        final JSONObject json;
+        final CompletableFuture<NtfyTransport.Response> result = new CompletableFuture<>();
+        /** Bytes of its record in the journal. */
+        int size;
+        /** Posted at least once, or left by an earlier run, so it may have reached ntfy on its own. */
+        boolean posted;
+        Batch batch;
+
+        Pending(String cid, JSONObject json) {
+            this.cid = cid;
+            this.user = json.optString("username", "");
+            this.json = json;
+        }
+    }
+
+    /** What one post sends: a single message under its own cid, or several joined under a new one. */
+    private static final class Batch {
+        final String cid;
+        final List<Pending> members;
+        final JSONObject json;
+        /** Bytes of its record in the journal; 0 for a single message. */
+        int size;
+
+        Batch(String cid, List<Pending> members) {
+            this.cid = cid;
+            this.members = members;
+            if (members.size() == 1 && members.get(0).cid.equals(cid)) {
+                json = members.get(0).json;
+                return;
+            }
+            StringBuilder text = new StringBuilder();
+            for (Pending p : members) {
+                if (!text.isEmpty()) text.append('\n');
+                text.append(p.json.optString("message", ""));
+            }
+            json = new JSONObject(members.get(0).json.toMap());
+            json.put("message", text.toString());
+            json.put("cid", cid);
+        }
+
+        String user() { return members.get(0).user; }
+    }
+
+    private final Path file;
+    private final Function<JSONObject, CompletableFuture<NtfyTransport.Response>> sender;
+    private final int maxConcurrent;
+    private final int maxCoalesce;
+    private final long retryBaseMillis;
+    private final long retryMaxMillis;
+    private final String clientPrefix = Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, 36) + "-";
+    private final AtomicLong nextCid = new AtomicLong();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    /** Sent but not journaled yet. */
+    private final List<Pending> unjournaled = new ArrayList<>();
+    /** Journaled and not acknowledged, in journal order. */
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+    /** The pending messages ready to post, per user. */
+    private final Map<String, ArrayDeque<Pending>> queues = new LinkedHashMap<>();
+    private final Set<String> posting = new HashSet<>();
+    /** Journaled batches by their cid, until acknowledged. */
+    private final Map<String, Batch> batches = new HashMap<>();
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int position;
+    private long liveBytes;
+    private int compactions;
+    private long backoff;
+    private long retryAt;
+    private boolean offline;
+    private volatile boolean closed;
+    private volatile Listener listener;
+
+    private final AtomicLong acked = new AtomicLong();
+    private final AtomicLong echoAcked = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public Outbox(Path file, Function<JSONObject, CompletableFuture<NtfyTransport.Response>> sender) throws IOException {
+        this(file, sender, DEFAULT_MAX_CONCURRENT, DEFAULT_MAX_COALESCE, DEFAULT_RETRY_BASE, DEFAULT_RETRY_MAX);
+    }
+
+    public Outbox(Path file, Function<JSONObject, CompletableFuture<NtfyTransport.Response>> sender,
+                  int maxConcurrent, int maxCoalesce, Duration retryBase, Duration retryMax) throws IOException {
+        if (maxConcurrent <= 0 || maxCoalesce <= 0) throw new IllegalArgumentException("maxConcurrent and maxCoalesce must be positive");
+        this.file = file;
+        this.sender = sender;
+        this.maxConcurrent = maxConcurrent;
+        this.maxCoalesce = maxCoalesce;
+        this.retryBaseMillis = Math.max(1, retryBase.toMillis());
+        this.retryMaxMillis = Math.max(retryBaseMillis, retryMax.toMillis());
+        this.backoff = retryBaseMillis;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        open();
+        for (Pending p : pending.values()) ready(p);
+        if (!pending.isEmpty()) LOG.info("Resending {} messages left in {}", pending.size(), file);
+        Tasks.shared().start(Tasks.Kind.WORKER, this::journal);
+        Tasks.shared().start(Tasks.Kind.WORKER, this::drain);
+    }
+
+    /** Journal file for a topic inside {@code directory}; the name is derived from the topic URL. */
+    public static Path fileFor(Path directory, String topicUrl) {
+        return directory.resolve(String.format("%016x.outbox", DedupIndex.hash(topicUrl)));
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = Math.max(channel.size(), GROWTH);
+        if (size > MAX_JOURNAL_SIZE) throw new IOException(file + " is too large for an outbox journal");
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            map.putInt(0, MAGIC).putInt(4, VERSION).putInt(HEADER_SIZE, 0);
+            map.force();
+            position = HEADER_SIZE;
+            return;
+        }
+        int pos = HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        while (pos + RECORD_HEADER_SIZE <= map.limit()) {
+            int length = map.getInt(pos);
+            if (length < 3 || length > MAX_RECORD_SIZE || pos + RECORD_HEADER_SIZE + length > map.limit()) break;
+            crc.reset();
+            crc.update(map.slice(pos + RECORD_HEADER_SIZE, length));
+            if ((int) crc.getValue() != map.getInt(pos + 4)) break;
+            replay(pos + RECORD_HEADER_SIZE, length);
+            pos += RECORD_HEADER_SIZE + length;
+        }
+        position = pos;
+        liveBytes = 0;
+        for (Pending p : pending.values()) liveBytes += p.size;
+        for (Batch b : batches.values()) liveBytes += b.size;
+        if (pending.isEmpty()) rewind();
+    }
+
+    private void replay(int at, int length) {
+        byte type = map.get(at);
+        int cidLength = map.getShort(at + 1);
+        byte[] cid = new byte[cidLength];
+        map.get(at + 3, cid);
+        String id = new String(cid, StandardCharsets.UTF_8);
+        byte[] data = new byte[length - 3 - cidLength];
+        map.get(at + 3 + cidLength, data);
+        if (type == ACKNOWLEDGED) {
+            Batch b = batches.remove(id);
+            if (b == null) pending.remove(id);
+            else for (Pending p : b.members) pending.remove(p.cid);
+        } else if (type == ENQUEUED) {
+            Pending p = new Pending(id, new JSONObject(new String(data, StandardCharsets.UTF_8)));
+            p.size = RECORD_HEADER_SIZE + length;
+            p.posted = true;
+            pending.put(id, p);
+        } else if (type == BATCH) {
+            List<Pending> members = new ArrayList<>();
+            for (String member : new String(data, StandardCharsets.UTF_8).split("\n")) {
+                Pending p = pending.get(member);
+                if (p != null) members.add(p);
+            }
+            if (members.isEmpty()) return;
+            Batch b = new Batch(id, members);
+            b.size = RECORD_HEADER_SIZE + length;
+            batches.put(id, b);
+            for (Pending p : members) p.batch = b;
+        }
+    }
+
+    /**
+     * Queues {@code json} with a new {@code cid} for the journal thread and returns at once. The
+     * future completes with the response once ntfy has accepted the message, which may be after the
+     * connection comes back; it fails with an {@link IOException} if the message could not be
+     * journaled and with a {@link RejectedExecutionException} once the outbox is closed.
+     */
+    public CompletableFuture<NtfyTransport.Response> send(JSONObject json) {
+        String cid = newCid();
+        json.put("cid", cid);
+        Pending p = new Pending(cid, json);
+        lock.lock();
+        try {
+            if (closed) {
+                p.result.completeExceptionally(new RejectedExecutionException("Outbox is closed"));
+            } else {
+                unjournaled.add(p);
+                work.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return p.result;
+    }
+
+    private String newCid() {
+        return clientPrefix + Long.toString(nextCid.incrementAndGet(), 36);
+    }
+
+    private void journal() {
+        while (true) {
+            int journaled;
+            lock.lock();
+            try {
+                while (unjournaled.isEmpty() && !closed) work.awaitUninterruptibly();
+                if (closed) return;
+                journaled = journalQueued();
+            } finally {
+                lock.unlock();
+            }
+            if (journaled > 0 && isOffline()) notifyListener();
+        }
+    }
+
+    /**
+     * Appends the queued messages, forces them to disk with one call and hands them to the drain
+     * thread; returns how many were journaled. Caller holds the lock.
+     */
+    private int journalQueued() {
+        List<Pending> batch = new ArrayList<>(unjournaled);
+        unjournaled.clear();
+        int from = -1;
+        List<Pending> journaled = new ArrayList<>(batch.size());
+        for (Pending p : batch) {
+            try {
+                int at = append(ENQUEUED, p.cid, p.json.toString().getBytes(StandardCharsets.UTF_8));
+                // A compaction starts a fresh map, whose records all need forcing.
+                if (from < 0 || at < from) from = at;
+                p.size = position - at;
+                liveBytes += p.size;
+                pending.put(p.cid, p);
+                journaled.add(p);
+            } catch (IOException e) {
+                p.result.completeExceptionally(e);
+            }
+        }
+        if (journaled.isEmpty()) return 0;
+        map.force(from, position - from);
+        for (Pending p : journaled) ready(p);
+        JOURNALED.add(journaled.size());
+        work.signalAll();
+        return journaled.size();
+    }
+
+    /** Queues a journaled message for posting after the user's earlier ones. Caller holds the lock. */
+    private void ready(Pending p) {
+        queues.computeIfAbsent(p.user, u -> new ArrayDeque<>()).add(p);
+    }
+
+    /**
+     * Acknowledges the message or batch with this {@code cid} if it is still pending; for messages
+     * seen on the subscription.
+     */
+    public void acknowledgeEcho(String cid) {
+        List<Pending> done = new ArrayList<>(1);
+        lock.lock();
+        try {
+            Batch b = batches.get(cid);
+            Pending p = pending.get(cid);
+            if (b != null) {
+                done = acknowledge(b);
+            } else if (p != null) {
+                done = acknowledge(new Batch(cid, List.of(p)));
+            } else {
+                // The echo can beat the journal thread.
+                for (Pending u : unjournaled) {
+                    if (u.cid.equals(cid)) done.add(u);
+                }
+                unjournaled.removeAll(done);
+            }
+        } finally {
+            lock.unlock();
+        }
+        echoAcked.addAndGet(done.size());
+        ECHO_ACKED.add(done.size());
+        for (Pending p : done) p.result.complete(new NtfyTransport.Response(200, "", Map.of()));
+    }
+
+    /** Removes the batch's messages that are still pending and returns them. */
+    private List<Pending> acknowledge(Batch b) {
+        lock.lock();
+        try {
+            List<Pending> done = new ArrayList<>(b.members.size());
+            for (Pending p : b.members) {
+                if (pending.remove(p.cid) == null) continue;
+                liveBytes -= p.size;
+                ArrayDeque<Pending> queue = queues.get(p.user);
+                if (queue != null && queue.remove(p) && queue.isEmpty()) queues.remove(p.user);
+                done.add(p);
+            }
+            if (batches.remove(b.cid) != null) liveBytes -= b.size;
+            if (done.isEmpty() || closed) return done;
+            if (pending.isEmpty()) {
+                rewind();
+            } else {
+                try {
+                    append(ACKNOWLEDGED, b.cid, new byte[0]);
+                } catch (IOException e) {
+                    // Worst case the message is sent again after a restart; receivers drop it by cid.
+                    LOG.warn("Could not journal acknowledgement: {}", e.getMessage());
+                }
+            }
+            return done;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Writes one record and a terminator after it; returns where the record starts. Caller holds the lock. */
+    private int append(byte type, String cid, byte[] json) throws IOException {
+        byte[] id = cid.getBytes(StandardCharsets.UTF_8);
+        int length = 3 + id.length + json.length;
+        if (length > MAX_RECORD_SIZE) throw new IOException("Message too large for the outbox");
+        long needed = (long) position + RECORD_HEADER_SIZE + length + 4;
+        if (needed > map.limit()) {
+            if (2 * liveBytes < position - HEADER_SIZE) {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    LOG.warn("Could not compact outbox journal {}: {}", file, e.getMessage());
+                }
+                needed = (long) position + RECORD_HEADER_SIZE + length + 4;
+            }
+            if (needed > MAX_JOURNAL_SIZE) throw new IOException("Outbox journal " + file + " is full");
+            if (needed > map.limit()) {
+                map = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(MAX_JOURNAL_SIZE, needed + GROWTH));
+            }
+        }
+        int at = position;
+        int body = at + RECORD_HEADER_SIZE;
+        map.put(body, type).putShort(body + 1, (short) id.length).put(body + 3, id).put(body + 3 + id.length, json);
+        CRC32 crc = new CRC32();
+        crc.update(map.slice(body, length));
+        map.putInt(body + length, 0);
+        map.putInt(at + 4, (int) crc.getValue());
+        map.putInt(at, length);
+        position = body + length;
+        return at;
+    }
+
+    /** Starts the journal over; only when nothing is pending. Caller holds the lock. */
+    private void rewind() {
+        position = HEADER_SIZE;
+        liveBytes = 0;
+        batches.clear();
+        map.putInt(HEADER_SIZE, 0);
+        map.force(HEADER_SIZE, 4);
+    }
+
+    /**
+     * Copies the pending records to a fresh journal and moves it over this one, so a crash on the
+     * way leaves the old journal in place. Caller holds the lock.
+     */
+    private void compact() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        FileChannel old = channel;
+        MappedByteBuffer oldMap = map;
+        int oldPosition = position;
+        long oldLiveBytes = liveBytes;
+        try {
+            channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(MAX_JOURNAL_SIZE, HEADER_SIZE + liveBytes + GROWTH));
+            map.putInt(0, MAGIC).putInt(4, VERSION).putInt(HEADER_SIZE, 0);
+            position = HEADER_SIZE;
+            liveBytes = 0;
+            for (Pending p : pending.values()) {
+                int at = append(ENQUEUED, p.cid, p.json.toString().getBytes(StandardCharsets.UTF_8));
+                p.size = position - at;
+                liveBytes += p.size;
+            }
+            for (Batch b : batches.values()) {
+                int at = append(BATCH, b.cid, memberCids(b));
+                b.size = position - at;
+                liveBytes += b.size;
+            }
+            map.force();
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            if (channel != old) channel.close();
+            channel = old;
+            map = oldMap;
+            position = oldPosition;
+            liveBytes = oldLiveBytes;
+            throw e;
+        }
+        old.close();
+        compactions++;
+    }
+
+    private void drain() {
+        while (true) {
+            Batch next;
+            lock.lock();
+            try {
+                while ((next = nextToPost()) == null && !closed) {
+                    long wait = retryAt - System.nanoTime();
+                    if (retryAt != 0 && wait > 0) work.awaitNanos(wait);
+                    else work.awaitUninterruptibly();
+                }
+                if (closed) return;
+                posting.add(next.user());
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            post(next);
+        }
+    }
+
+    /** The oldest pending messages of a user with nothing in flight, unless backing off or at the limit. Caller holds the lock. */
+    private Batch nextToPost() {
+        if (posting.size() >= maxConcurrent) return null;
+        if (retryAt != 0) {
+            if (retryAt - System.nanoTime() > 0) return null;
+            retryAt = 0;
+        }
+        for (Map.Entry<String, ArrayDeque<Pending>> queue : queues.entrySet()) {
+            if (!posting.contains(queue.getKey())) return batchFrom(queue.getValue());
+        }
+        return null;
+    }
+
+    /**
+     * The head of the queue, joined with the text messages after it unless one of them may have
+     * been posted on its own already. A new batch is journaled first. Caller holds the lock.
+     */
+    private Batch batchFrom(ArrayDeque<Pending> queue) {
+        Pending first = queue.peekFirst();
+        if (first.batch != null) return first.batch;
+        List<Pending> members = new ArrayList<>();
+        members.add(first);
+        if (!first.posted && isPlainText(first.json)) {
+            int bytes = utf8Length(first);
+            for (Pending p : queue) {
+                if (p == first) continue;
+                if (members.size() >= maxCoalesce || p.posted || !isPlainText(p.json)) break;
+                bytes += 1 + utf8Length(p);
+                if (bytes > MAX_COALESCED_BYTES) break;
+                members.add(p);
+            }
+        }
+        if (members.size() > 1) {
+            Batch b = new Batch(newCid(), members);
+            try {
+                int at = append(BATCH, b.cid, memberCids(b));
+                map.force(at, position - at);
+                b.size = position - at;
+                liveBytes += b.size;
+                batches.put(b.cid, b);
+                for (Pending p : members) {
+                    p.batch = b;
+                    p.posted = true;
+                }
+                return b;
+            } catch (IOException e) {
+                LOG.warn("Could not journal batch, posting one message: {}", e.getMessage());
+            }
+        }
+        first.posted = true;
+        return new Batch(first.cid, List.of(first));
+    }
+
+    private static boolean isPlainText(JSONObject json) {
+        return !json.has("fileName") && !json.has("fileUrl");
+    }
+
+    private static int utf8Length(Pending p) {
+        return p.json.optString("message", "").getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static byte[] memberCids(Batch b) {
+        StringBuilder cids = new StringBuilder();
+        for (Pending p : b.members) {
+            if (!cids.isEmpty()) cids.append('\n');
+            cids.append(p.cid);
+        }
+        return cids.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void post(Batch b) {
+        CompletableFuture<NtfyTransport.Response> posted;
+        try {
+            posted = sender.apply(b.json);
+        } catch (RuntimeException e) {
+            posted = CompletableFuture.failedFuture(e);
+        }
+        posted.whenComplete((resp, e) -> posted(b, resp, e));
+    }
+
+    private void posted(Batch b, NtfyTransport.Response resp, Throwable error) {
+        boolean delivered = error == null && resp.isSuccess();
+        boolean rejected = error == null && resp.statusCode() >= 400 && resp.statusCode() < 500 && resp.statusCode() != 429;
+        if (delivered) {
+            int done = acknowledge(b).size();
+            acked.addAndGet(done);
+            ACKED.add(done);
+            for (Pending p : b.members) p.result.complete(resp);
+        } else if (rejected) {
+            LOG.warn("ntfy rejected {} queued messages with HTTP {}, dropping them", b.members.size(), resp.statusCode());
+            acknowledge(b);
+            dropped.addAndGet(b.members.size());
+            DROPPED.add(b.members.size());
+            for (Pending p : b.members) p.result.complete(resp);
+        }
+        lock.lock();
+        try {
+            posting.remove(b.user());
+            if (delivered || rejected) {
+                backoff = retryBaseMillis;
+            } else if (retryAt == 0) {
+                // Posts that were already in flight fail too; only the first one backs off further.
+                long wait = ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+                long retryAfter = resp == null ? -1 : SendPipeline.retryAfterMillis(resp);
+                if (retryAfter >= 0) wait = Math.min(retryMaxMillis, retryAfter);
+                backoff = Math.min(retryMaxMillis, backoff * 2);
+                retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(1, wait));
+            }
+            work.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        setOffline(!delivered && !rejected);
+    }
+
+    private void setOffline(boolean now) {
+        boolean changed;
+        lock.lock();
+        try {
+            changed = offline != now;
+            offline = now;
+        } finally {
+            lock.unlock();
+        }
+        if (changed) {
+            LOG.info(now ? "ntfy unreachable, {} messages queued" : "ntfy reachable again, {} messages queued", getPendingCount());
+            notifyListener();
+        }
+    }
+
+    private void notifyListener() {
+        Listener l = listener;
+        if (l != null) l.changed(getPendingCount(), isOffline());
+    }
+
+    /** Retries right away instead of waiting out the backoff, e.g. when the subscription reconnected. */
+    public void wake() {
+        lock.lock();
+        try {
+            if (!offline) return;
+            retryAt = 0;
+            work.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setListener(Listener listener) { this.listener = listener; }
+
+    /** Messages sent and not acknowledged yet, including those still waiting for the journal. */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pending.size() + unjournaled.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isOffline() {
+        lock.lock();
+        try {
+            return offline;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getAckedCount() { return acked.get(); }
+    public long getEchoAckedCount() { return echoAcked.get(); }
+    public long getDroppedCount() { return dropped.get(); }
+    public Path getFile() { return file; }
+
+    public int getCompactions() {
+        lock.lock();
+        try {
+            return compactions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Stops sending; pending messages, including those not journaled yet, stay in the journal for the next start. */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) return;
+            journalQueued();
+            closed = true;
+            work.signalAll();
+            map.force();
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
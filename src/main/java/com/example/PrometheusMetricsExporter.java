@@ -0,0 +1,103 @@
+package com.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves the registry in the Prometheus text format at {@code http://127.0.0.1:<port>/metrics}.
+ * Histograms are exposed as summaries with 0.5, 0.9 and 0.99 quantiles. The endpoint only
+ * listens on the loopback interface.
+ */
+public class PrometheusMetricsExporter implements MetricsExporter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final HttpServer server;
+
+    /** Starts serving; {@code port} 0 picks a free port, see {@link #getPort()}. */
+    public PrometheusMetricsExporter(Metrics metrics, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> serve(exchange, metrics));
+        server.setExecutor(Tasks.shared().executor(Tasks.Kind.WORKER));
+        server.start();
+    }
+
+    private static void serve(HttpExchange exchange, Metrics metrics) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = format(metrics).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /** Renders every metric, with one {@code HELP}/{@code TYPE} header per family. */
+    static String format(Metrics metrics) {
+        // Sorted by name, but a family's labelled series can still be split by a longer family name.
+        Map<String, List<Metrics.Metric>> families = new LinkedHashMap<>();
+        for (Metrics.Metric metric : metrics.all()) families.computeIfAbsent(metric.family(), f -> new ArrayList<>()).add(metric);
+
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, List<Metrics.Metric>> family : families.entrySet()) {
+            Metrics.Metric first = family.getValue().getFirst();
+            String type = switch (first) {
+                case Metrics.Counter c -> "counter";
+                case Metrics.Gauge g -> "gauge";
+                case Metrics.Histogram h -> "summary";
+            };
+            sb.append("# HELP ").append(family.getKey()).append(' ').append(first.help()).append('\n');
+            sb.append("# TYPE ").append(family.getKey()).append(' ').append(type).append('\n');
+            for (Metrics.Metric metric : family.getValue()) {
+                switch (metric) {
+                    case Metrics.Counter c -> sample(sb, c.name(), null, c.get());
+                    case Metrics.Gauge g -> sample(sb, g.name(), null, g.get());
+                    case Metrics.Histogram h -> {
+                        for (double q : QUANTILES) sample(sb, h.name(), "quantile=\"" + q + "\"", h.percentile(q * 100));
+                        sample(sb, withSuffix(h.name(), "_sum"), null, h.sum());
+                        sample(sb, withSuffix(h.name(), "_count"), null, h.count());
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Appends {@code name{labels,extra} value}, merging {@code extra} into any labels the name already has. */
+    private static void sample(StringBuilder sb, String name, String extraLabel, long value) {
+        if (extraLabel == null) sb.append(name);
+        else if (name.endsWith("}")) sb.append(name, 0, name.length() - 1).append(',').append(extraLabel).append('}');
+        else sb.append(name).append('{').append(extraLabel).append('}');
+        sb.append(' ').append(value).append('\n');
+    }
+
+    private static String withSuffix(String name, String suffix) {
+        int brace = name.indexOf('{');
+        return brace < 0 ? name + suffix : name.substring(0, brace) + suffix + name.substring(brace);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,303 @@
+package com.example;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless entry point: the same ntfy client as the GUI, without JavaFX, for running as a bridge
+ * on servers. It follows topics and writes their chat messages to stdout as NDJSON or to binary
+ * {@link MessageCache} logs, and publishes chat messages read from stdin. Topics on one server
+ * share a single {@link TopicMultiplexer} stream. Run it from the class path: the module
+ * descriptor requires JavaFX for the GUI, but nothing here loads an FX class.
+ *
+ * <pre>
+ * java -cp hellofx.jar:json.jar com.example.Relay --subscribe URL[,URL...] [--since all|ID|TIME]
+ *      [--format ndjson|binary] [--out DIR]
+ * java -cp hellofx.jar:json.jar com.example.Relay --publish URL [--user NAME] [--batch N] [--unordered] &lt; lines
+ * </pre>
+ *
+ * Input lines are chat JSON ({@code {"username":..,"message":..}}) or plain text sent as
+ * {@code --user}. ntfy has no bulk publish endpoint, so {@code --batch N} joins up to N queued lines
+ * of one user into a single message (see {@link SendPipeline}); the default keeps lines separate.
+ * Lines of one user are published in order unless {@code --unordered} spreads them over all lanes.
+ * Output is written in batches and flushed once per batch. Both options can be combined.
+ */
+public final class Relay implements AutoCloseable {
+
+    static final String USAGE = """
+            usage: Relay --subscribe URL[,URL...] [--since all|ID|TIME] [--format ndjson|binary] [--out DIR]
+                   Relay --publish URL [--user NAME] [--batch N] [--lanes N] [--unordered]""";
+
+    private static final Log LOG = Log.get(Relay.class);
+    private static final Metrics.Counter RELAYED_OUT = Metrics.shared().counter("relay_messages_written_total",
+            "Messages the relay wrote to its output");
+    private static final Metrics.Counter RELAYED_IN = Metrics.shared().counter("relay_messages_published_total",
+            "Input lines the relay published");
+    /** Messages are written out as they arrive; the multiplexer keeps this many per topic for its duplicate check. */
+    private static final int RETAINED_PER_TOPIC = 1_000;
+
+    enum Format { NDJSON, BINARY }
+
+    record Options(List<String> subscribe, String since, Format format, Path out,
+                   String publish, String user, int batch, int lanes, boolean unordered) { }
+
+    /** Counts of one publish run. */
+    record PublishStats(long lines, long published, long failed, long millis) {
+        double perSecond() { return millis == 0 ? 0 : published * 1000.0 / millis; }
+    }
+
+    private final Options options;
+    private final NtfyTransport transport;
+    private final List<HelloModel> models = new ArrayList<>();
+    private final List<TopicMultiplexer> multiplexers = new ArrayList<>();
+    private final Map<String, MessageCache> caches = new LinkedHashMap<>();
+    private MessageBatcher<Entry> output;
+    private Writer writer;
+    private final AtomicLong written = new AtomicLong();
+
+    private record Entry(String topicUrl, ChatMessage msg) { }
+
+    Relay(Options options, NtfyTransport transport) {
+        this.options = options;
+        this.transport = transport;
+    }
+
+    static Options parse(String[] args) {
+        List<String> subscribe = new ArrayList<>();
+        String since = "all", publish = null, user = "relay";
+        Format format = Format.NDJSON;
+        Path out = null;
+        int batch = 1, lanes = SendPipeline.DEFAULT_LANES;
+        boolean unordered = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--subscribe" -> subscribe.addAll(List.of(value(args, ++i, arg).split(",")));
+                case "--since" -> since = value(args, ++i, arg);
+                case "--format" -> format = switch (value(args, ++i, arg)) {
+                    case "ndjson" -> Format.NDJSON;
+                    case "binary" -> Format.BINARY;
+                    default -> throw new IllegalArgumentException("--format must be ndjson or binary");
+                };
+                case "--out" -> out = Path.of(value(args, ++i, arg));
+                case "--publish" -> publish = value(args, ++i, arg);
+                case "--user" -> user = value(args, ++i, arg);
+                case "--batch" -> batch = positive(value(args, ++i, arg), arg);
+                case "--lanes" -> lanes = positive(value(args, ++i, arg), arg);
+                case "--unordered" -> unordered = true;
+                default -> throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+        if (subscribe.isEmpty() && publish == null) throw new IllegalArgumentException("nothing to do: give --subscribe or --publish");
+        if (format == Format.BINARY && out == null) throw new IllegalArgumentException("--format binary needs --out DIR");
+        return new Options(List.copyOf(subscribe), since, format, out, publish, user, batch, lanes, unordered);
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) throw new IllegalArgumentException(option + " needs a value");
+        return args[i];
+    }
+
+    private static int positive(String value, String option) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0) return n;
+        } catch (NumberFormatException ignored) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException(option + " must be a positive number");
+    }
+
+    /** Follows every {@code --subscribe} topic, writing to {@code stdout} or the {@code --out} logs. */
+    void subscribe(OutputStream stdout) throws IOException {
+        if (options.format() == Format.NDJSON) {
+            writer = new BufferedWriter(new OutputStreamWriter(stdout, StandardCharsets.UTF_8), 64 * 1024);
+        } else {
+            for (String url : options.subscribe()) {
+                caches.put(url, new MessageCache(MessageCache.fileFor(options.out(), url), Integer.MAX_VALUE / 2));
+            }
+        }
+        // One drain at a time, so output stays in arrival order.
+        output = new MessageBatcher<>(this::write, Tasks.shared().executor(Tasks.Kind.WORKER),
+                MessageBatcher.DEFAULT_MAX_BATCH_SIZE, Duration.ofMillis(50));
+        // Topics on the same server share one stream; the topic field of each message routes it back.
+        Map<String, Map<String, String>> urlsByServer = new LinkedHashMap<>();
+        for (String url : options.subscribe()) {
+            String[] serverAndTopic = TopicMultiplexer.splitTopicUrl(url);
+            urlsByServer.computeIfAbsent(serverAndTopic[0], k -> new LinkedHashMap<>()).put(serverAndTopic[1], url);
+        }
+        for (Map<String, String> urls : urlsByServer.values()) {
+            HelloModel model = new HelloModel(urls.values().iterator().next(), transport);
+            models.add(model);
+            TopicMultiplexer multiplexer = model.multiplex(options.since(), RETAINED_PER_TOPIC,
+                    (topic, msg) -> output.offer(new Entry(urls.get(topic.getName()), msg)));
+            for (String topic : urls.keySet()) multiplexer.addTopic(topic);
+            multiplexers.add(multiplexer.start());
+        }
+    }
+
+    /** Completes once the stream of every server is open. */
+    CompletableFuture<Void> connected() {
+        return CompletableFuture.allOf(multiplexers.stream().map(TopicMultiplexer::connected).toArray(CompletableFuture[]::new));
+    }
+
+    private void write(List<Entry> batch) {
+        try {
+            if (writer != null) {
+                for (Entry e : batch) {
+                    writer.write(toJson(e).toString());
+                    writer.write('\n');
+                }
+                writer.flush();
+            } else {
+                for (Entry e : batch) caches.get(e.topicUrl()).append(e.msg());
+                for (MessageCache cache : caches.values()) cache.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write relay output", e);
+        }
+        written.addAndGet(batch.size());
+        RELAYED_OUT.add(batch.size());
+    }
+
+    static JSONObject toJson(Entry e) {
+        ChatMessage msg = e.msg();
+        JSONObject json = new JSONObject();
+        json.put("topic", e.topicUrl());
+        json.put("id", msg.getId());
+        json.put("time", msg.getTime());
+        json.put("username", msg.getUsername());
+        json.put("message", msg.getMessage());
+        ChatMessage.Attachment file = msg.getAttachment();
+        if (file != null) {
+            json.put("fileName", file.fileName());
+            json.put("fileUrl", file.url());
+            json.put("mimeType", file.mimeType());
+        }
+        return json;
+    }
+
+    /** Publishes every non-blank line of {@code in} to {@code --publish}; returns once all have been answered. */
+    PublishStats publish(InputStream in) throws IOException, InterruptedException {
+        HelloModel model = new HelloModel(options.publish(), transport);
+        models.add(model);
+        long start = System.nanoTime();
+        AtomicLong published = new AtomicLong(), failed = new AtomicLong();
+        // One count for the reader and one per line in flight; whoever takes it to zero opens the latch.
+        AtomicLong pending = new AtomicLong(1);
+        CountDownLatch drained = new CountDownLatch(1);
+        long lines = 0;
+        try (SendPipeline pipeline = new SendPipeline(model::sendJsonAsync, SendPipeline.DEFAULT_CAPACITY * 4, options.lanes(),
+                SendPipeline.DEFAULT_MAX_ATTEMPTS, SendPipeline.DEFAULT_BASE_BACKOFF, SendPipeline.DEFAULT_MAX_BACKOFF, options.batch());
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                JSONObject json = parseLine(line, options.user());
+                String user = json.getString("username");
+                // The pipeline keeps one key's messages in order; spreading keys trades that for lanes.
+                String key = options.unordered() ? user + '#' + (lines % options.lanes()) : user;
+                lines++;
+                pending.incrementAndGet();
+                pipeline.submit(key, json).whenComplete((resp, e) -> {
+                    if (e == null && resp.isSuccess()) published.incrementAndGet();
+                    else failed.incrementAndGet();
+                    RELAYED_IN.increment();
+                    if (pending.decrementAndGet() == 0) drained.countDown();
+                });
+            }
+            if (pending.decrementAndGet() == 0) drained.countDown();
+            drained.await();
+        }
+        return new PublishStats(lines, published.get(), failed.get(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    static JSONObject parseLine(String line, String defaultUser) {
+        JSONObject json = null;
+        String trimmed = line.trim();
+        if (trimmed.startsWith("{") && trimmed.endsWith("}")) {
+            try {
+                json = new JSONObject(trimmed);
+            } catch (Exception ignored) {
+                // Not JSON after all; sent as text.
+            }
+        }
+        JSONObject out = new JSONObject();
+        String user = json == null ? defaultUser : json.optString("username", defaultUser);
+        out.put("username", user.isBlank() ? defaultUser : user);
+        out.put("message", json == null ? line : json.optString("message", ""));
+        out.put("time", json == null ? Instant.now().getEpochSecond() : json.optLong("time", Instant.now().getEpochSecond()));
+        return out;
+    }
+
+    long getWritten() { return written.get(); }
+
+    @Override
+    public void close() {
+        for (HelloModel model : models) model.close();
+        models.clear();
+        multiplexers.clear();
+        try {
+            if (writer != null) writer.flush();
+            for (MessageCache cache : caches.values()) cache.close();
+        } catch (IOException e) {
+            LOG.warn("Could not flush relay output: {}", e.getMessage());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        List<MetricsExporter> exporters = MetricsExporter.fromEnv(Metrics.shared());
+        Relay relay = new Relay(options, HttpClientTransport.shared());
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            relay.close();
+            for (MetricsExporter exporter : exporters) exporter.close();
+            Tasks.shared().close();
+            stopped.countDown();
+        }, "relay-shutdown"));
+
+        if (!options.subscribe().isEmpty()) relay.subscribe(System.out);
+        // Waits for the streams, so the reported startup time includes connecting.
+        relay.connected().get(30, TimeUnit.SECONDS);
+        LOG.info("Relay ready {} ms after JVM start", ManagementFactory.getRuntimeMXBean().getUptime());
+
+        if (options.publish() != null) {
+            PublishStats stats = relay.publish(System.in);
+            LOG.info("Published {} of {} lines in {} ms ({} msg/s), {} failed", stats.published(), stats.lines(),
+                    stats.millis(), Math.round(stats.perSecond()), stats.failed());
+            if (options.subscribe().isEmpty()) System.exit(stats.failed() == 0 ? 0 : 1);
+        }
+        stopped.await();
+    }
+}
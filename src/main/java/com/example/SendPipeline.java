@@ -0,0 +1,241 @@
+package com.example;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded outbound message queue. Messages are spread over a few lanes by username and every lane
+ * is drained by one virtual thread, so messages from the same user are published in order while
+ * different users do not block each other. Failed publishes (429, 5xx, I/O errors) are retried
+ * with jittered exponential backoff.
+ *
+ * <p>ntfy has no batch publish endpoint, so coalescing is opt-in: with {@code maxCoalesce > 1},
+ * consecutive queued text messages from the same user are joined into one publish.
+ */
+public class SendPipeline implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_LANES = 4;
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final Duration DEFAULT_BASE_BACKOFF = Duration.ofMillis(200);
+    public static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds(10);
+
+    private record Outgoing(String username, JSONObject json, CompletableFuture<NtfyTransport.Response> result,
+                            long enqueuedNanos) {}
+
+    private final Function<JSONObject, CompletableFuture<NtfyTransport.Response>> sender;
+    private final List<BlockingQueue<Outgoing>> lanes = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int maxCoalesce;
+    private volatile boolean closed;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public SendPipeline(Function<JSONObject, CompletableFuture<NtfyTransport.Response>> sender) {
+        this(sender, DEFAULT_CAPACITY, DEFAULT_LANES, DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_BACKOFF, DEFAULT_MAX_BACKOFF, 1);
+    }
+
+    public SendPipeline(Function<JSONObject, CompletableFuture<NtfyTransport.Response>> sender,
+                        int capacity, int laneCount, int maxAttempts,
+                        Duration baseBackoff, Duration maxBackoff, int maxCoalesce) {
+        if (capacity <= 0 || laneCount <= 0 || maxAttempts <= 0 || maxCoalesce <= 0) {
+            throw new IllegalArgumentException("capacity, laneCount, maxAttempts and maxCoalesce must be positive");
+        }
+        this.sender = sender;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMillis = baseBackoff.toMillis();
+        this.maxBackoffMillis = maxBackoff.toMillis();
+        this.maxCoalesce = maxCoalesce;
+
+        int perLane = Math.max(1, capacity / laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            BlockingQueue<Outgoing> lane = new ArrayBlockingQueue<>(perLane);
+            lanes.add(lane);
+            workers.add(Tasks.shared().start(Tasks.Kind.WORKER, () -> drain(lane)));
+        }
+    }
+
+    /**
+     * Enqueues without blocking; the future fails with {@link RejectedExecutionException} when the
+     * lane is full or the pipeline is closed.
+     */
+    public CompletableFuture<NtfyTransport.Response> offer(String username, JSONObject json) {
+        if (closed) return CompletableFuture.failedFuture(new RejectedExecutionException("Send pipeline closed"));
+        Outgoing out = new Outgoing(username, json, new CompletableFuture<>(), System.nanoTime());
+        BlockingQueue<Outgoing> lane = laneFor(username);
+        if (!lane.offer(out)) {
+            out.result().completeExceptionally(new RejectedExecutionException("Send queue is full"));
+            return out.result();
+        }
+        rejectIfClosed(lane, out);
+        return out.result();
+    }
+
+    /** Enqueues, waiting for space if the lane is full. */
+    public CompletableFuture<NtfyTransport.Response> submit(String username, JSONObject json) throws InterruptedException {
+        if (closed) throw new RejectedExecutionException("Send pipeline is closed");
+        Outgoing out = new Outgoing(username, json, new CompletableFuture<>(), System.nanoTime());
+        BlockingQueue<Outgoing> lane = laneFor(username);
+        lane.put(out);
+        rejectIfClosed(lane, out);
+        return out.result();
+    }
+
+    /** A message queued while {@link #close()} ran may have missed the workers' final sweep. */
+    private void rejectIfClosed(BlockingQueue<Outgoing> lane, Outgoing out) {
+        if (closed && lane.remove(out)) out.result().completeExceptionally(new RejectedExecutionException("Send pipeline closed"));
+    }
+
+    private BlockingQueue<Outgoing> laneFor(String username) {
+        return lanes.get(Math.floorMod(username == null ? 0 : username.hashCode(), lanes.size()));
+    }
+
+    private void drain(BlockingQueue<Outgoing> lane) {
+        List<Outgoing> batch = new ArrayList<>(maxCoalesce);
+        while (!closed) {
+            try {
+                batch.clear();
+                batch.add(lane.take());
+                if (maxCoalesce > 1) collectCoalescable(lane, batch);
+
+                inFlight.incrementAndGet();
+                try {
+                    deliver(batch);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                if (Thread.currentThread().isInterrupted()) break;
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        Outgoing left;
+        while ((left = lane.poll()) != null) left.result().completeExceptionally(new RejectedExecutionException("Send pipeline closed"));
+    }
+
+    private void collectCoalescable(BlockingQueue<Outgoing> lane, List<Outgoing> batch) {
+        Outgoing first = batch.get(0);
+        if (!isPlainText(first.json())) return;
+        Outgoing next;
+        while (batch.size() < maxCoalesce && (next = lane.peek()) != null
+                && Objects.equals(next.username(), first.username()) && isPlainText(next.json())) {
+            batch.add(lane.poll());
+        }
+    }
+
+    private static boolean isPlainText(JSONObject json) {
+        return !json.has("fileName") && !json.has("fileUrl");
+    }
+
+    /** Publishes the batch and completes its futures; on close they fail with {@link RejectedExecutionException}. */
+    private void deliver(List<Outgoing> batch) {
+        JSONObject json = batch.get(0).json();
+        if (batch.size() > 1) {
+            StringBuilder text = new StringBuilder();
+            for (Outgoing o : batch) {
+                if (!text.isEmpty()) text.append('\n');
+                text.append(o.json().optString("message", ""));
+            }
+            json = new JSONObject(json.toMap());
+            json.put("message", text.toString());
+        }
+
+        NtfyTransport.Response response = null;
+        Throwable error = null;
+        try {
+            for (int attempt = 0; attempt < maxAttempts; attempt++) {
+                if (attempt > 0) {
+                    retries.increment();
+                    Thread.sleep(backoffMillis(attempt, response));
+                }
+                try {
+                    response = sender.apply(json).get();
+                    error = null;
+                    if (!isRetryable(response.statusCode())) break;
+                } catch (ExecutionException e) {
+                    error = e.getCause();
+                    response = null;
+                } catch (RuntimeException e) {
+                    error = e;
+                    response = null;
+                }
+            }
+        } catch (InterruptedException e) {
+            failed.add(batch.size());
+            for (Outgoing o : batch) o.result().completeExceptionally(new RejectedExecutionException("Send pipeline closed"));
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (response != null && response.isSuccess()) sent.add(batch.size());
+        else failed.add(batch.size());
+        for (Outgoing o : batch) {
+            latency.recordNanos(now - o.enqueuedNanos());
+            if (response != null) o.result().complete(response);
+            else o.result().completeExceptionally(error instanceof IOException ? error : new IOException(error));
+        }
+    }
+
+    private static boolean isRetryable(int status) {
+        return status == 429 || status >= 500;
+    }
+
+    private long backoffMillis(int attempt, NtfyTransport.Response last) {
+        long retryAfter = last == null ? -1 : retryAfterMillis(last);
+        if (retryAfter >= 0) return Math.min(maxBackoffMillis, retryAfter);
+        long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /** The response's {@code Retry-After} in milliseconds, or -1 if it has none in the seconds form. */
+    static long retryAfterMillis(NtfyTransport.Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter == null) return -1;
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            // HTTP-date form; fall back to exponential backoff.
+            return -1;
+        }
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (BlockingQueue<Outgoing> lane : lanes) depth += lane.size();
+        return depth;
+    }
+
+    public int getInFlight() { return inFlight.get(); }
+    public long getSentCount() { return sent.sum(); }
+    public long getFailedCount() { return failed.sum(); }
+    public long getRetryCount() { return retries.sum(); }
+    public LatencyHistogram getLatency() { return latency; }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) worker.interrupt();
+    }
+}
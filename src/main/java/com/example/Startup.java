@@ -0,0 +1,216 @@
+package com.example;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * The part of opening the chat window that does not need JavaFX: reading {@code .env}, building the
+ * {@link HelloModel}, opening the message cache, attachment index and outbox, reading the cached
+ * history and connecting to ntfy. {@link HelloFX#main} starts it before the toolkit, so it runs while the
+ * FXML and CSS load; the controller picks up the result with {@link #await()}. Messages that arrive
+ * before the controller {@linkplain #attach attaches} are buffered and handed over in order.
+ *
+ * <p>Without cached history the topic is {@linkplain HelloModel#backfillHistory backfilled} instead of
+ * read in one serial {@code since=all} stream. {@link #await()} does not wait for it: the newest page
+ * is handed to the history sink as soon as it is in, the live subscription resumes after it, and the
+ * older pages follow in one piece once they are all in.
+ */
+public final class Startup {
+
+    /** With {@code -Dstartup.exitAfterFirstMessage=true} the app quits once a message is on screen, for benchmarks and AOT training runs. */
+    public static final boolean EXIT_AFTER_FIRST_MESSAGE = Boolean.getBoolean("startup.exitAfterFirstMessage");
+
+    private static final Log LOG = Log.get(Startup.class);
+
+    /** {@code cached} is empty when the history is backfilled; it then arrives through {@link #attach}. */
+    public record Ready(HelloModel model, MessageCache cache, AttachmentIndex attachments, List<ChatMessage> cached) { }
+
+    private final CompletableFuture<Ready> ready;
+    private final List<ChatMessage> early = new ArrayList<>();
+    private Consumer<ChatMessage> sink;
+    private final List<List<ChatMessage>> earlyHistory = new ArrayList<>();
+    private Consumer<List<ChatMessage>> historySink;
+    /** Messages the cache has not been given yet because the backfill before them is still running. */
+    private List<ChatMessage> uncached;
+    private final AtomicBoolean windowShown = new AtomicBoolean();
+    private final AtomicBoolean messageShown = new AtomicBoolean();
+
+    private Startup(Supplier<HelloModel> models, Supplier<Path> cacheDirectory, IntSupplier cacheCapacity) {
+        ready = Tasks.shared().submit(Tasks.Kind.WORKER, () -> open(models.get(), cacheDirectory.get(), cacheCapacity.getAsInt()));
+    }
+
+    /** Starts the pipeline for the topic and cache directory configured in {@code .env}. */
+    public static Startup begin() {
+        return new Startup(HelloModel::new, MessageCache::defaultDirectory,
+                () -> EnvLoader.getInt("CHAT_MAX_MESSAGES", MessageStore.DEFAULT_MAX_MESSAGES));
+    }
+
+    /** {@code cacheDirectory} may return {@code null} to run without a cache. */
+    static Startup begin(Supplier<HelloModel> models, Supplier<Path> cacheDirectory, int cacheCapacity) {
+        return new Startup(models, cacheDirectory, () -> cacheCapacity);
+    }
+
+    private Ready open(HelloModel model, Path dir, int capacity) {
+        AttachmentIndex attachments = null;
+        MessageCache cache = null;
+        if (dir != null) {
+            try {
+                attachments = new AttachmentIndex(dir.resolve("attachments.idx"));
+                model.getUploads().setAttachmentIndex(attachments);
+            } catch (IOException e) {
+                LOG.warn("Attachment dedup disabled: {}", e.getMessage());
+            }
+            try {
+                model.openOutbox(Outbox.fileFor(dir, model.getTopicUrl()));
+            } catch (IOException e) {
+                LOG.warn("Offline outbox disabled: {}", e.getMessage());
+            }
+            try {
+                cache = new MessageCache(MessageCache.fileFor(dir, model.getTopicUrl()), capacity);
+            } catch (IOException e) {
+                LOG.warn("Message cache disabled: {}", e.getMessage());
+            }
+        }
+        if (cache == null || cache.size() == 0) return backfill(model, cache, attachments);
+        List<ChatMessage> cached = List.of();
+        try {
+            cached = model.loadCached(cache);
+        } catch (IOException e) {
+            LOG.warn("Could not read message cache: {}", e.getMessage());
+        }
+        model.subscribe(cache, this::deliver);
+        return new Ready(model, cache, attachments, cached);
+    }
+
+    private Ready backfill(HelloModel model, MessageCache cache, AttachmentIndex attachments) {
+        CompletableFuture<HistoryBackfill.Page> newest = new CompletableFuture<>();
+        List<List<ChatMessage>> olderPages = new ArrayList<>();
+        CompletableFuture<HistoryBackfill.Result> done = model.backfillHistory(page -> {
+            if (!newest.complete(page)) olderPages.add(page.messages());
+        });
+        // An empty topic has no pages; a failed backfill falls back to reading everything live.
+        done.whenComplete((r, e) -> newest.complete(null));
+        CompletableFuture<Void> resumed = newest.thenAccept(first -> resume(model, cache, first));
+        done.whenComplete((r, e) -> resumed.whenComplete((v, x) -> finishBackfill(cache, olderPages, e)));
+        return new Ready(model, cache, attachments, List.of());
+    }
+
+    /** Hands over the newest page and subscribes live after it. */
+    private void resume(HelloModel model, MessageCache cache, HistoryBackfill.Page newest) {
+        List<ChatMessage> shown = newest != null ? newest.messages() : List.of();
+        if (cache != null) {
+            synchronized (this) {
+                uncached = new ArrayList<>(shown);
+            }
+        }
+        deliverHistory(shown);
+        model.subscribe(resumeAfter(newest), msg -> {
+            cacheLive(cache, msg);
+            deliver(msg);
+        });
+    }
+
+    /** The live subscription's {@code since}: the newest backfilled id, else the newest window's start. */
+    private static String resumeAfter(HistoryBackfill.Page newest) {
+        if (newest == null) return "all";
+        List<ChatMessage> messages = newest.messages();
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i).getId() != null) return messages.get(i).getId();
+        }
+        return String.valueOf(newest.fromTime());
+    }
+
+    private void cacheLive(MessageCache cache, ChatMessage msg) {
+        if (cache == null) return;
+        synchronized (this) {
+            if (uncached != null) {
+                uncached.add(msg);
+                return;
+            }
+        }
+        try {
+            cache.append(msg);
+        } catch (IOException e) {
+            LOG.warn("Failed to cache message: {}", e.getMessage());
+        }
+    }
+
+    /** Caches the backfilled history oldest first, followed by what arrived meanwhile, and hands the older pages over. */
+    private void finishBackfill(MessageCache cache, List<List<ChatMessage>> olderPages, Throwable error) {
+        if (error != null) LOG.warn("History backfill stopped early: {}", error.getMessage());
+        List<ChatMessage> older = new ArrayList<>();
+        for (int i = olderPages.size() - 1; i >= 0; i--) older.addAll(olderPages.get(i));
+        if (cache != null) {
+            synchronized (this) {
+                try {
+                    cache.appendAll(older);
+                    cache.appendAll(uncached);
+                } catch (IOException e) {
+                    LOG.warn("Failed to cache backfilled history: {}", e.getMessage());
+                }
+                uncached = null;
+            }
+        }
+        deliverHistory(older);
+    }
+
+    private synchronized void deliverHistory(List<ChatMessage> older) {
+        if (older.isEmpty()) return;
+        if (historySink == null) earlyHistory.add(older);
+        else historySink.accept(older);
+    }
+
+    private synchronized void deliver(ChatMessage msg) {
+        if (sink == null) early.add(msg);
+        else sink.accept(msg);
+    }
+
+    /** Waits for the pipeline; rethrows its failure, e.g. a missing {@code NTFY_URL}, unwrapped. */
+    public Ready await() {
+        try {
+            return ready.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException r) throw r;
+            throw e;
+        }
+    }
+
+    /**
+     * Hands over the buffered messages, then passes new ones straight to {@code sink}. Backfilled
+     * history goes to {@code olderHistory} in chunks, each older than everything handed over before
+     * it and oldest first within: the newest page, then all older pages at once.
+     */
+    public synchronized void attach(Consumer<ChatMessage> sink, Consumer<List<ChatMessage>> olderHistory) {
+        for (List<ChatMessage> chunk : earlyHistory) olderHistory.accept(chunk);
+        earlyHistory.clear();
+        historySink = olderHistory;
+        for (ChatMessage msg : early) sink.accept(msg);
+        early.clear();
+        this.sink = sink;
+    }
+
+    /** Logs time-to-window; later calls are ignored. */
+    public void windowShown() {
+        if (windowShown.compareAndSet(false, true)) LOG.info("Window shown {} ms after JVM start", uptimeMillis());
+    }
+
+    /** Logs time-to-first-message; returns {@code true} only for the first call. */
+    public boolean messageShown() {
+        if (!messageShown.compareAndSet(false, true)) return false;
+        LOG.info("First message shown {} ms after JVM start", uptimeMillis());
+        return true;
+    }
+
+    static long uptimeMillis() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+}
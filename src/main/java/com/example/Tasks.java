@@ -0,0 +1,283 @@
+package com.example;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Where background work runs. Every task gets its own virtual thread named after its {@link Kind},
+ * is counted per kind (active, completed, failed, cancelled, latency) and is interrupted by
+ * {@link #close()}, which the application calls when its window closes. Failures are logged with
+ * their kind instead of disappearing into a thread's default handler.
+ *
+ * <p>A {@link Scope} groups tasks that belong to one owner, such as a cache or a batch of
+ * requests: the owner can wait for all of them and cancels whatever is left when it closes, so
+ * no task outlives the component that started it.
+ */
+public final class Tasks implements AutoCloseable {
+
+    public enum Kind {
+        SEND, UPLOAD, SUBSCRIPTION, HISTORY, THUMBNAIL, WORKER;
+
+        private final String threadName = "ntfy-" + name().toLowerCase() + "-";
+    }
+
+    /** A snapshot of one kind's counters; latencies are wall time from start to finish. */
+    public record Stats(int active, long completed, long failed, long cancelled, long p50Micros, long p99Micros) {
+        public long finished() { return completed + failed + cancelled; }
+    }
+
+    public static final Duration SHUTDOWN_GRACE = Duration.ofSeconds(2);
+
+    private static final Log LOG = Log.get(Tasks.class);
+    private static final Tasks SHARED = new Tasks();
+
+    static {
+        for (Kind kind : Kind.values()) {
+            String label = "{kind=\"" + kind.name().toLowerCase() + "\"}";
+            Metrics.shared().gauge("ntfy_tasks_active" + label, "Background tasks running now", () -> SHARED.stats(kind).active());
+            Metrics.shared().gauge("ntfy_tasks_failed" + label, "Background tasks that ended with an error", () -> SHARED.stats(kind).failed());
+        }
+    }
+
+    private final Map<Kind, Counters> counters = new EnumMap<>(Kind.class);
+    private final Set<Thread> running = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    public Tasks() {
+        for (Kind kind : Kind.values()) counters.put(kind, new Counters());
+    }
+
+    /** The instance the application's components use; closed by {@code HelloFX.stop()}. */
+    public static Tasks shared() {
+        return SHARED;
+    }
+
+    private static final class Counters {
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicLong started = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong cancelled = new AtomicLong();
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    /** Runs {@code task} on a new virtual thread and returns that thread, already started. */
+    public Thread start(Kind kind, Runnable task) {
+        return launch(kind, () -> {
+            task.run();
+            return null;
+        }, null).thread;
+    }
+
+    /** Runs {@code task} on a new virtual thread; cancelling the future interrupts it. */
+    public <T> CompletableFuture<T> submit(Kind kind, Callable<T> task) {
+        return launch(kind, task, null).result;
+    }
+
+    /** An executor that starts each command as a task of {@code kind}, e.g. for {@code thenRunAsync}. */
+    public Executor executor(Kind kind) {
+        return command -> start(kind, command);
+    }
+
+    /**
+     * Counts an operation that runs elsewhere (such as an HTTP exchange on the client's own
+     * threads) as a task of {@code kind}, from now until {@code operation} completes.
+     */
+    public <T> CompletableFuture<T> track(Kind kind, CompletableFuture<T> operation) {
+        Counters c = counters.get(kind);
+        long start = System.nanoTime();
+        c.started.incrementAndGet();
+        c.active.incrementAndGet();
+        return operation.whenComplete((v, e) -> finish(c, start, e));
+    }
+
+    public Scope openScope(Kind kind) {
+        return new Scope(kind);
+    }
+
+    private record Handle<T>(Thread thread, CompletableFuture<T> result) { }
+
+    private <T> Handle<T> launch(Kind kind, Callable<T> body, Scope scope) {
+        if (closed) throw new RejectedExecutionException("Tasks are shut down");
+        Counters c = counters.get(kind);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Thread thread = Thread.ofVirtual().name(kind.threadName + c.started.incrementAndGet()).unstarted(() -> {
+            long start = System.nanoTime();
+            T value = null;
+            Throwable failure = null;
+            try {
+                value = body.call();
+            } catch (Throwable e) {
+                failure = e;
+            }
+            running.remove(Thread.currentThread());
+            if (scope != null) scope.members.remove(Thread.currentThread());
+            // Counters are final before anyone waiting on the result wakes up.
+            Throwable outcome = result.isCancelled() ? new CancellationException() : failure;
+            finish(c, start, outcome);
+            if (failure != null && !(outcome instanceof CancellationException) && !isInterruption(failure)) {
+                LOG.error("{} failed", Thread.currentThread().getName(), failure);
+            }
+            if (failure != null) result.completeExceptionally(failure);
+            else result.complete(value);
+            if (failure != null && scope != null) scope.onFailure(failure);
+        });
+        c.active.incrementAndGet();
+        running.add(thread);
+        if (scope != null) scope.members.add(thread);
+        result.whenComplete((v, e) -> {
+            if (result.isCancelled()) thread.interrupt();
+        });
+        thread.start();
+        return new Handle<>(thread, result);
+    }
+
+    private void finish(Counters c, long startNanos, Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (cause == null) c.completed.incrementAndGet();
+        else if (cause instanceof CancellationException || isInterruption(cause)) c.cancelled.incrementAndGet();
+        else c.failed.incrementAndGet();
+        c.latency.recordNanos(System.nanoTime() - startNanos);
+        c.active.decrementAndGet();
+    }
+
+    private boolean isInterruption(Throwable e) {
+        return e instanceof InterruptedException
+                || e instanceof java.nio.channels.ClosedByInterruptException
+                || (closed && e instanceof java.io.IOException);
+    }
+
+    public Stats stats(Kind kind) {
+        Counters c = counters.get(kind);
+        return new Stats(c.active.get(), c.completed.get(), c.failed.get(), c.cancelled.get(),
+                c.latency.percentileMicros(50), c.latency.percentileMicros(99));
+    }
+
+    /** Threads started here that have not finished yet. */
+    public int runningThreads() {
+        return running.size();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /** Rejects new tasks, interrupts running ones and waits up to {@link #SHUTDOWN_GRACE} for them to end. */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread t : running) t.interrupt();
+        awaitTermination(running, SHUTDOWN_GRACE);
+    }
+
+    private static void awaitTermination(Set<Thread> threads, Duration grace) {
+        long deadline = System.nanoTime() + grace.toNanos();
+        for (Thread t : Set.copyOf(threads)) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) return;
+            try {
+                t.join(Duration.ofNanos(left));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Tasks started through one owner. If one fails, its siblings are cancelled; {@link #join()}
+     * waits for all of them, and {@link #close()} cancels and waits for whatever is still running.
+     */
+    public final class Scope implements AutoCloseable, Executor {
+        private final Kind kind;
+        private final Set<Thread> members = ConcurrentHashMap.newKeySet();
+        private final Set<CompletableFuture<?>> results = ConcurrentHashMap.newKeySet();
+        private volatile Throwable firstFailure;
+        private volatile boolean scopeClosed;
+
+        private Scope(Kind kind) {
+            this.kind = kind;
+        }
+
+        public <T> CompletableFuture<T> fork(Callable<T> task) {
+            if (scopeClosed) throw new RejectedExecutionException("Scope is closed");
+            CompletableFuture<T> result = launch(kind, task, this).result;
+            results.add(result);
+            result.whenComplete((v, e) -> results.remove(result));
+            return result;
+        }
+
+        /** Runs {@code command} as a task of this scope; a failure does not cancel siblings. */
+        @Override
+        public void execute(Runnable command) {
+            fork(() -> {
+                try {
+                    command.run();
+                } catch (RuntimeException e) {
+                    LOG.error("{} failed", Thread.currentThread().getName(), e);
+                }
+                return null;
+            });
+        }
+
+        private void onFailure(Throwable e) {
+            if (firstFailure != null || e instanceof CancellationException || isInterruption(e)) return;
+            firstFailure = e;
+            cancelAll();
+        }
+
+        private void cancelAll() {
+            for (CompletableFuture<?> f : results) f.cancel(true);
+            for (Thread t : members) t.interrupt();
+        }
+
+        /** Waits for every forked task; throws the first failure, if any. */
+        public void join() throws InterruptedException, ExecutionException {
+            for (CompletableFuture<?> f : Set.copyOf(results)) {
+                try {
+                    f.get();
+                } catch (CancellationException | ExecutionException ignored) {
+                    // Reported through firstFailure below.
+                }
+            }
+            awaitTermination(members, Duration.ofDays(1));
+            if (firstFailure != null) throw new ExecutionException(firstFailure);
+        }
+
+        /** Like {@link #join()}, but gives up after {@code timeout}. */
+        public void join(Duration timeout) throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + timeout.toNanos();
+            for (CompletableFuture<?> f : Set.copyOf(results)) {
+                try {
+                    f.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (CancellationException | ExecutionException ignored) {
+                    // Reported through firstFailure below.
+                }
+            }
+            if (firstFailure != null) throw new ExecutionException(firstFailure);
+        }
+
+        public int activeCount() { return members.size(); }
+
+        @Override
+        public void close() {
+            scopeClosed = true;
+            cancelAll();
+            awaitTermination(members, SHUTDOWN_GRACE);
+        }
+    }
+}
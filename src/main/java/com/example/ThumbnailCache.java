@@ -0,0 +1,265 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads attachment images once and keeps small decoded versions around. Lookups go through a
+ * memory LRU bounded by decoded size, then an on-disk copy of the original bytes, then the network;
+ * concurrent requests for the same URL share one load. Decoding happens on background threads,
+ * at most one per core.
+ *
+ * <p>The decoded type is left to the caller so the cache works without a JavaFX toolkit; the
+ * controller plugs in a decoder that produces scaled {@code javafx.scene.image.Image}s.
+ */
+public class ThumbnailCache<T> implements AutoCloseable {
+
+    /** Turns original image bytes into a thumbnail no wider than {@code width}. */
+    @FunctionalInterface
+    public interface Decoder<T> {
+        T decode(InputStream in, int width) throws IOException;
+    }
+
+    /** Approximate retained size of a decoded thumbnail, in bytes. */
+    @FunctionalInterface
+    public interface Weigher<T> {
+        long weigh(T value);
+    }
+
+    private final NtfyTransport transport;
+    private final Path diskDir;
+    private final long maxDiskBytes;
+    private final long maxMemoryBytes;
+    private final int width;
+    private final Decoder<T> decoder;
+    private final Weigher<T> weigher;
+    private final Tasks.Scope loads = Tasks.shared().openScope(Tasks.Kind.THUMBNAIL);
+    private final Semaphore decodeSlots = new Semaphore(Runtime.getRuntime().availableProcessors());
+
+    private final LinkedHashMap<String, T> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+    private final Map<String, CompletableFuture<T>> inFlight = new ConcurrentHashMap<>();
+    private final Object diskLock = new Object();
+    /** Originals on disk with their sizes, least recently used first; read from the directory once. */
+    private final LinkedHashMap<Path, Long> disk = new LinkedHashMap<>(64, 0.75f, true);
+    private long diskBytes;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * @param diskDir directory for original bytes, or {@code null} to skip the disk tier
+     */
+    public ThumbnailCache(NtfyTransport transport, Path diskDir, long maxDiskBytes, long maxMemoryBytes, int width,
+                          Decoder<T> decoder, Weigher<T> weigher) throws IOException {
+        this.transport = transport;
+        this.diskDir = diskDir;
+        this.maxDiskBytes = maxDiskBytes;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.width = width;
+        this.decoder = decoder;
+        this.weigher = weigher;
+        if (diskDir != null) {
+            Files.createDirectories(diskDir);
+            scanDisk();
+        }
+    }
+
+    private void scanDisk() throws IOException {
+        List<Path> files = new ArrayList<>();
+        Map<Path, FileTime> touched = new HashMap<>();
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(diskDir, "*.img")) {
+            for (Path p : dir) {
+                files.add(p);
+                touched.put(p, Files.getLastModifiedTime(p));
+            }
+        }
+        files.sort(Comparator.comparing(touched::get));
+        synchronized (diskLock) {
+            for (Path p : files) {
+                long size = Files.size(p);
+                disk.put(p, size);
+                diskBytes += size;
+            }
+            trimDiskLocked();
+        }
+    }
+
+    /** The decoded thumbnail if it is in memory; does not count as a lookup. */
+    public synchronized T getIfPresent(String url) {
+        return memory.get(url);
+    }
+
+    public CompletableFuture<T> load(String url) {
+        T cached;
+        synchronized (this) {
+            cached = memory.get(url);
+        }
+        if (cached != null) {
+            memoryHits.incrementAndGet();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        CompletableFuture<T> existing = inFlight.putIfAbsent(url, mine);
+        if (existing != null) {
+            joined.incrementAndGet();
+            return existing;
+        }
+        synchronized (this) {
+            cached = memory.get(url);
+        }
+        if (cached != null) {
+            // Another load finished between the memory check and registering ours.
+            inFlight.remove(url, mine);
+            memoryHits.incrementAndGet();
+            mine.complete(cached);
+            return mine;
+        }
+        loads.execute(() -> {
+            // Deregister before completing, so a caller retrying on failure starts a fresh load.
+            T value;
+            try {
+                value = fetchAndDecode(url);
+                put(url, value);
+            } catch (Throwable e) {
+                failures.incrementAndGet();
+                inFlight.remove(url, mine);
+                mine.completeExceptionally(e);
+                return;
+            }
+            inFlight.remove(url, mine);
+            mine.complete(value);
+        });
+        return mine;
+    }
+
+    private T fetchAndDecode(String url) throws IOException, InterruptedException {
+        Path cachedFile = diskDir == null ? null : diskDir.resolve(String.format("%016x.img", DedupIndex.hash(url)));
+        if (cachedFile != null && Files.exists(cachedFile)) {
+            diskHits.incrementAndGet();
+            synchronized (diskLock) {
+                disk.get(cachedFile);
+            }
+            // The modification time carries the LRU order over to the next start.
+            Files.setLastModifiedTime(cachedFile, FileTime.fromMillis(System.currentTimeMillis()));
+            return decode(cachedFile);
+        }
+
+        misses.incrementAndGet();
+        if (cachedFile == null) {
+            try (InputStream in = open(url)) {
+                return decode(in);
+            }
+        }
+        Path tmp = Files.createTempFile(diskDir, "download", ".tmp");
+        try {
+            try (InputStream in = open(url)) {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(tmp, cachedFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        // Decode before trimming, which may pick this file when it alone exceeds the budget.
+        T value = decode(cachedFile);
+        addToDisk(cachedFile, Files.size(cachedFile));
+        return value;
+    }
+
+    private InputStream open(String url) throws IOException {
+        URI uri = URI.create(url);
+        if ("file".equalsIgnoreCase(uri.getScheme())) return Files.newInputStream(Path.of(uri));
+        return transport.openStream(url);
+    }
+
+    private T decode(Path file) throws IOException, InterruptedException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return decode(in);
+        }
+    }
+
+    private T decode(InputStream in) throws IOException, InterruptedException {
+        decodeSlots.acquire();
+        try {
+            T value = decoder.decode(in, width);
+            if (value == null) throw new IOException("Decoder returned no image");
+            return value;
+        } finally {
+            decodeSlots.release();
+        }
+    }
+
+    private synchronized void put(String url, T value) {
+        T previous = memory.put(url, value);
+        if (previous != null) memoryBytes -= weigher.weigh(previous);
+        memoryBytes += weigher.weigh(value);
+        Iterator<Map.Entry<String, T>> it = memory.entrySet().iterator();
+        // Keep the entry just added even if it alone exceeds the budget.
+        while (memoryBytes > maxMemoryBytes && memory.size() > 1 && it.hasNext()) {
+            Map.Entry<String, T> eldest = it.next();
+            memoryBytes -= weigher.weigh(eldest.getValue());
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void addToDisk(Path file, long size) throws IOException {
+        synchronized (diskLock) {
+            Long previous = disk.put(file, size);
+            diskBytes += size - (previous == null ? 0 : previous);
+            trimDiskLocked();
+        }
+    }
+
+    /** Deletes least recently used originals until the tracked total fits in {@code maxDiskBytes}. */
+    private void trimDiskLocked() throws IOException {
+        Iterator<Map.Entry<Path, Long>> it = disk.entrySet().iterator();
+        while (diskBytes > maxDiskBytes && it.hasNext()) {
+            Map.Entry<Path, Long> eldest = it.next();
+            diskBytes -= eldest.getValue();
+            it.remove();
+            Files.deleteIfExists(eldest.getKey());
+        }
+    }
+
+    public long getMemoryHits() { return memoryHits.get(); }
+    public long getDiskHits() { return diskHits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getJoinedRequests() { return joined.get(); }
+    public long getEvictions() { return evictions.get(); }
+    public long getFailures() { return failures.get(); }
+    public synchronized long getMemoryBytes() { return memoryBytes; }
+    public long getDiskBytes() {
+        synchronized (diskLock) {
+            return diskBytes;
+        }
+    }
+    public synchronized int size() { return memory.size(); }
+
+    @Override
+    public void close() {
+        loads.close();
+    }
+}
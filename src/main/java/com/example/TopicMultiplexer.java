@@ -0,0 +1,229 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Follows several topics on one ntfy server over a single streaming connection, using ntfy's
+ * comma-separated topic list ({@code /a,b,c/json}). Messages are routed by their {@code topic}
+ * field into one {@link MessageStore} per topic, and every topic except the active one counts
+ * unread messages.
+ *
+ * <p>Changing the topic set is make-before-break: a stream for the new set is opened, resuming
+ * from the last id the old stream delivered, and the old stream is closed once the new one is
+ * connected. Messages both streams deliver in the overlap are dropped by id. A topic added while
+ * running first gets its history from a one-off {@code poll=1} request, so its store stays in order.
+ */
+public class TopicMultiplexer implements AutoCloseable {
+
+    /** Called on a reader thread for every new message, after it has been stored. */
+    @FunctionalInterface
+    public interface Listener {
+        void onMessage(Topic topic, ChatMessage msg);
+    }
+
+    public static final Duration SWITCH_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final Log LOG = Log.get(TopicMultiplexer.class);
+
+    public static final class Topic {
+        private final String name;
+        private final MessageStore store;
+        private final AtomicInteger unread = new AtomicInteger();
+
+        private Topic(String name, MessageStore store) {
+            this.name = name;
+            this.store = store;
+        }
+
+        public String getName() { return name; }
+        public MessageStore getStore() { return store; }
+        public int getUnread() { return unread.get(); }
+    }
+
+    private final NtfyTransport transport;
+    private final String serverUrl;
+    private final String initialSince;
+    private final int maxMessagesPerTopic;
+    private final Listener listener;
+    private final Duration keepaliveTimeout;
+    private final Duration minBackoff;
+    private final Duration maxBackoff;
+
+    private final Map<String, Topic> topics = new ConcurrentSkipListMap<>();
+    private final DedupIndex seenIds = new DedupIndex();
+    private final Object deliveryLock = new Object();
+    private volatile String active;
+    private NtfySubscription current;
+    private long startedAt;
+    private boolean started;
+    private boolean closed;
+    /** Topic changes run one after another, each once the previous stream switch has finished. */
+    private CompletableFuture<Void> changes = CompletableFuture.completedFuture(null);
+
+    private final AtomicLong switches = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+
+    public TopicMultiplexer(NtfyTransport transport, String serverUrl, String initialSince, int maxMessagesPerTopic,
+                            Listener listener) {
+        this(transport, serverUrl, initialSince, maxMessagesPerTopic, listener, NtfySubscription.DEFAULT_KEEPALIVE_TIMEOUT,
+                NtfySubscription.DEFAULT_MIN_BACKOFF, NtfySubscription.DEFAULT_MAX_BACKOFF);
+    }
+
+    /**
+     * @param serverUrl    ntfy base URL without a topic, e.g. {@code https://ntfy.sh}
+     * @param initialSince {@code since} for topics present when {@link #start()} is called; topics
+     *                     added later always get their full history
+     */
+    public TopicMultiplexer(NtfyTransport transport, String serverUrl, String initialSince, int maxMessagesPerTopic,
+                            Listener listener, Duration keepaliveTimeout, Duration minBackoff, Duration maxBackoff) {
+        this.transport = transport;
+        this.serverUrl = serverUrl.endsWith("/") ? serverUrl.substring(0, serverUrl.length() - 1) : serverUrl;
+        this.initialSince = initialSince;
+        this.maxMessagesPerTopic = maxMessagesPerTopic;
+        this.listener = listener;
+        this.keepaliveTimeout = keepaliveTimeout;
+        this.minBackoff = minBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    /** Splits a topic URL like {@code https://ntfy.sh/chat} into server URL and topic name. */
+    public static String[] splitTopicUrl(String topicUrl) {
+        String url = topicUrl.endsWith("/") ? topicUrl.substring(0, topicUrl.length() - 1) : topicUrl;
+        int slash = url.lastIndexOf('/');
+        return new String[] {url.substring(0, slash), url.substring(slash + 1)};
+    }
+
+    public synchronized TopicMultiplexer start() {
+        if (started) throw new IllegalStateException("Multiplexer already started");
+        started = true;
+        startedAt = System.currentTimeMillis() / 1000;
+        changes = switchStream();
+        return this;
+    }
+
+    /**
+     * Adds a topic. Before {@link #start()} this only registers it; afterwards the returned future
+     * completes once its history has been loaded and the stream covering it is connected.
+     */
+    public synchronized CompletableFuture<Topic> addTopic(String name) {
+        if (closed) throw new IllegalStateException("Multiplexer closed");
+        Topic existing = topics.get(name);
+        if (existing != null) return CompletableFuture.completedFuture(existing);
+        MessageStore store = new MessageStore(maxMessagesPerTopic, null);
+        store.setEvictionListener(msg -> forgetId(msg.getId()));
+        Topic topic = new Topic(name, store);
+        topics.put(name, topic);
+        if (!started) return CompletableFuture.completedFuture(topic);
+        changes = changes.exceptionally(e -> null)
+                .thenRunAsync(() -> backfill(topic), Tasks.shared().executor(Tasks.Kind.HISTORY))
+                .thenCompose(v -> switchStream());
+        return changes.thenApply(v -> topic);
+    }
+
+    /** Removes a topic and its messages; the future completes once the stream no longer includes it. */
+    public synchronized CompletableFuture<Void> removeTopic(String name) {
+        Topic topic = topics.remove(name);
+        if (topic == null) return CompletableFuture.completedFuture(null);
+        if (name.equals(active)) active = null;
+        for (ChatMessage msg : topic.store.newest(topic.store.size())) forgetId(msg.getId());
+        if (!started) return CompletableFuture.completedFuture(null);
+        changes = changes.exceptionally(e -> null).thenCompose(v -> switchStream());
+        return changes;
+    }
+
+    /** Marks {@code name} as the topic being looked at: its unread count resets and stops growing. */
+    public void setActive(String name) {
+        active = name;
+        Topic topic = name == null ? null : topics.get(name);
+        if (topic != null) topic.unread.set(0);
+    }
+
+    private synchronized CompletableFuture<Void> switchStream() {
+        if (closed) return CompletableFuture.completedFuture(null);
+        NtfySubscription old = current;
+        if (topics.isEmpty()) {
+            current = null;
+            if (old != null) old.close();
+            return CompletableFuture.completedFuture(null);
+        }
+        String since;
+        if (old == null) since = initialSince;
+        else if (old.getLastId() != null) since = old.getLastId();
+        else since = initialSince != null ? initialSince : String.valueOf(startedAt);
+
+        String url = serverUrl + "/" + String.join(",", topics.keySet());
+        NtfySubscription next = new NtfySubscription(transport, url, since, this::deliver, keepaliveTimeout, minBackoff, maxBackoff);
+        current = next.start();
+        if (old == null) return CompletableFuture.completedFuture(null);
+        switches.incrementAndGet();
+        return next.connected()
+                .orTimeout(SWITCH_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((v, e) -> old.close());
+    }
+
+    private void backfill(Topic topic) {
+        String url = serverUrl + "/" + topic.name + "/json?since=all&poll=1";
+        try (InputStream in = transport.openStream(url)) {
+            new NdjsonDecoder().decode(in, line -> {
+                if (line.isValid() && line.isMessageEvent()) deliver(line);
+            });
+        } catch (IOException e) {
+            LOG.warn("Could not load history for {}: {}", topic.name, e.getMessage());
+        }
+    }
+
+    private void deliver(NdjsonDecoder line) {
+        if (!line.hasJsonPayload()) return;
+        // Both streams deliver during a switch; one at a time keeps each store in stream order.
+        synchronized (deliveryLock) {
+            Topic topic = topics.get(line.topic());
+            if (topic == null) return;
+            String id = line.id();
+            if (id != null && !seenIds.add(id)) {
+                duplicates.incrementAndGet();
+                HelloModel.DEDUP_HITS.increment();
+                return;
+            }
+            ChatMessage msg = line.toChatMessage();
+            if (msg == null) return;
+            topic.store.append(msg);
+            if (!topic.name.equals(active)) topic.unread.incrementAndGet();
+            listener.onMessage(topic, msg);
+        }
+    }
+
+    private void forgetId(String id) {
+        if (id != null) seenIds.remove(id);
+    }
+
+    public Topic getTopic(String name) { return topics.get(name); }
+    public List<Topic> getTopics() { return List.copyOf(topics.values()); }
+    public String getActive() { return active; }
+    public long getStreamSwitches() { return switches.get(); }
+    public long getDuplicatesDropped() { return duplicates.get(); }
+
+    /** Completes once the current stream is open; right away before {@link #start()} or without topics. */
+    public synchronized CompletableFuture<Void> connected() {
+        return current == null ? CompletableFuture.completedFuture(null) : current.connected();
+    }
+
+    public synchronized boolean isConnected() {
+        return current != null && current.isConnected();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (current != null) current.close();
+        current = null;
+    }
+}
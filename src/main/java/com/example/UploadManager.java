@@ -0,0 +1,455 @@
+package com.example;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Runs attachment uploads with at most {@code maxConcurrent} in flight and an optional shared
+ * bandwidth cap, so large files cannot crowd out chat sends (which bypass the cap). Files are
+ * streamed from a {@link FileChannel} in fixed-size chunks as the HTTP client asks for them,
+ * which is also where progress is measured and where cancellation takes effect.
+ *
+ * <p>With an {@link AttachmentIndex} set, each file is hashed first: contents already uploaded to
+ * the same topic are not sent again (the result is the stored attachment, see
+ * {@link AttachmentIndex.Entry#toResponse()}), and uploads of the same contents that overlap wait
+ * for the first one instead of sending the bytes twice.
+ */
+public class UploadManager implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_CONCURRENT = 2;
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    private static final long PROGRESS_INTERVAL_NANOS = 100_000_000L;
+
+    private static final Log LOG = Log.get(UploadManager.class);
+    private static final Metrics.Counter UPLOAD_BYTES = Metrics.shared().counter("ntfy_upload_bytes_total",
+            "File bytes handed to the HTTP client");
+    private static final Metrics.Histogram UPLOAD_RATE = Metrics.shared().histogram("ntfy_upload_rate",
+            "Throughput of each successful upload, from the first chunk to the response", "bytes/s");
+    private static final Metrics.Counter REUSED_BYTES = Metrics.shared().counter("ntfy_upload_reused_bytes_total",
+            "File bytes not uploaded because the same contents were already on the server");
+
+    public enum State { QUEUED, UPLOADING, DONE, FAILED, CANCELLED }
+
+    /** Snapshot of one upload, delivered on the upload's thread. */
+    public record Progress(Path file, long sent, long total, State state) {
+        public double fraction() {
+            return total == 0 ? (state == State.DONE ? 1 : 0) : (double) sent / total;
+        }
+    }
+
+    private final NtfyTransport transport;
+    private final Semaphore slots;
+    private final RateLimiter limiter;
+    private final int chunkSize;
+    private final Set<Upload> uploads = ConcurrentHashMap.newKeySet();
+    private final Map<String, CompletableFuture<NtfyTransport.Response>> sameContent = new ConcurrentHashMap<>();
+    private volatile AttachmentIndex index;
+    private volatile boolean closed;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    public UploadManager(NtfyTransport transport) {
+        this(transport, DEFAULT_MAX_CONCURRENT, 0, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param bytesPerSecond shared cap across all uploads, or {@code 0} for no cap
+     */
+    public UploadManager(NtfyTransport transport, int maxConcurrent, long bytesPerSecond, int chunkSize) {
+        if (maxConcurrent <= 0) throw new IllegalArgumentException("maxConcurrent must be positive");
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must be positive");
+        if (bytesPerSecond < 0) throw new IllegalArgumentException("bytesPerSecond must not be negative");
+        this.transport = transport;
+        this.slots = new Semaphore(maxConcurrent, true);
+        this.limiter = bytesPerSecond > 0 ? new RateLimiter(bytesPerSecond, Math.max(chunkSize, bytesPerSecond / 10)) : null;
+        this.chunkSize = chunkSize;
+    }
+
+    /** Enables skipping uploads of contents already sent, for uploads queued from now on; {@code null} disables it. */
+    public void setAttachmentIndex(AttachmentIndex index) {
+        this.index = index;
+    }
+
+    /** Queues an upload; {@code listener} may be {@code null}. */
+    public Upload upload(String url, Path file, Map<String, String> headers, Consumer<Progress> listener) {
+        if (closed) throw new IllegalStateException("UploadManager is closed");
+        Upload upload = new Upload(url, file, headers, listener, index);
+        queued.incrementAndGet();
+        uploads.add(upload);
+        upload.thread = Tasks.shared().start(Tasks.Kind.UPLOAD, upload::run);
+        // A cancel() that raced the assignment above could not interrupt the thread yet.
+        if (upload.cancelRequested) upload.thread.interrupt();
+        return upload;
+    }
+
+    public int getActive() { return active.get(); }
+    public int getQueued() { return queued.get(); }
+    public long getCompletedCount() { return completed.get(); }
+    public long getFailedCount() { return failed.get(); }
+    public long getCancelledCount() { return cancelled.get(); }
+    public long getBytesSent() { return bytesSent.get(); }
+    /** Uploads that completed without sending the file because its contents were already uploaded. */
+    public long getReusedCount() { return reused.get(); }
+
+    /** Rejects new uploads and cancels the ones still queued or running. */
+    @Override
+    public void close() {
+        closed = true;
+        for (Upload upload : uploads) upload.cancel();
+    }
+
+    /** One file upload. {@link #result()} completes with the server response, or exceptionally. */
+    public final class Upload {
+        private final String url;
+        private final Path file;
+        private final Map<String, String> headers;
+        private final Consumer<Progress> listener;
+        private final AttachmentIndex index;
+        private final CompletableFuture<NtfyTransport.Response> result = new CompletableFuture<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private Flow.Subscriber<? super ByteBuffer> subscriber;
+        private long demand;
+        private boolean clientCancelled;
+        private CompletableFuture<NtfyTransport.Response> response;
+        private volatile boolean cancelRequested;
+        private volatile long total = -1;
+        private volatile long sent;
+        private volatile Thread thread;
+        private long lastProgressNanos;
+        private long startNanos;
+        private String sha256;
+        private CompletableFuture<NtfyTransport.Response> leading;
+        private boolean dequeued;
+        private volatile boolean wasReused;
+
+        private Upload(String url, Path file, Map<String, String> headers, Consumer<Progress> listener, AttachmentIndex index) {
+            this.url = url;
+            this.file = file;
+            this.headers = headers;
+            this.listener = listener;
+            this.index = index;
+        }
+
+        public CompletableFuture<NtfyTransport.Response> result() { return result; }
+        public Path file() { return file; }
+        public long sent() { return sent; }
+        public long total() { return total; }
+        /** True once the upload completed by reusing an earlier upload of the same contents. */
+        public boolean wasReused() { return wasReused; }
+
+        /** Stops the upload whether it is still queued or already streaming. */
+        public void cancel() {
+            cancelRequested = true;
+            signal();
+            Thread t = thread;
+            if (t != null) t.interrupt();
+        }
+
+        private void run() {
+            NtfyTransport.Response resp = null;
+            Throwable failure = null;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                total = channel.size();
+                report(State.QUEUED, true);
+                checkCancelled();
+                if (index != null) {
+                    sha256 = AttachmentIndex.sha256(channel);
+                    checkCancelled();
+                    resp = reuse();
+                    wasReused = resp != null;
+                }
+                if (resp == null) resp = send(channel);
+            } catch (ExecutionException e) {
+                failure = e.getCause();
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                uploads.remove(this);
+                if (!dequeued) queued.decrementAndGet();
+                Thread.interrupted();
+            }
+            if (leading != null) finishLeading(resp, failure);
+
+            // Counters and progress are final before the result completes.
+            bytesSent.addAndGet(sent);
+            if (cancelRequested) {
+                finishCancelled();
+            } else if (failure != null) {
+                failed.incrementAndGet();
+                report(State.FAILED, true);
+                result.completeExceptionally(failure);
+            } else {
+                (resp.isSuccess() ? completed : failed).incrementAndGet();
+                if (wasReused) {
+                    reused.incrementAndGet();
+                    REUSED_BYTES.add(total);
+                } else if (resp.isSuccess()) {
+                    UPLOAD_RATE.record((long) (sent * 1e9 / Math.max(1, System.nanoTime() - startNanos)));
+                }
+                report(resp.isSuccess() ? State.DONE : State.FAILED, true);
+                result.complete(resp);
+            }
+        }
+
+        /** Waits for an upload slot, then streams the file to the server. */
+        private NtfyTransport.Response send(FileChannel channel) throws Exception {
+            slots.acquire();
+            dequeued = true;
+            queued.decrementAndGet();
+            active.incrementAndGet();
+            try {
+                checkCancelled();
+                report(State.UPLOADING, true);
+                startNanos = System.nanoTime();
+
+                response = transport.putAsync(url, this::subscribe, total, headers);
+                // Wake the streaming loop if the server answers (or the connection fails) early.
+                response.whenComplete((r, e) -> signal());
+                stream(channel);
+                return response.get();
+            } finally {
+                active.decrementAndGet();
+                slots.release();
+            }
+        }
+
+        /**
+         * Returns the stored upload of the same contents, waiting for one in progress, or {@code null}
+         * if this upload has to send the file (it then leads: later twins wait for it).
+         */
+        private NtfyTransport.Response reuse() throws InterruptedException {
+            String key = url + ' ' + sha256;
+            while (true) {
+                AttachmentIndex.Entry known = index.find(url, sha256);
+                if (known != null) return known.toResponse();
+                CompletableFuture<NtfyTransport.Response> mine = new CompletableFuture<>();
+                CompletableFuture<NtfyTransport.Response> first = sameContent.putIfAbsent(key, mine);
+                if (first == null) {
+                    leading = mine;
+                    return null;
+                }
+                try {
+                    NtfyTransport.Response resp = first.get();
+                    if (resp.isSuccess()) return resp;
+                } catch (ExecutionException | CancellationException e) {
+                    // The first upload failed; try again, possibly leading this time.
+                }
+                checkCancelled();
+            }
+        }
+
+        /** Records a successful upload in the index, then releases the uploads waiting for it. */
+        private void finishLeading(NtfyTransport.Response resp, Throwable failure) {
+            if (failure == null && !cancelRequested && resp.isSuccess()) remember(resp);
+            sameContent.remove(url + ' ' + sha256, leading);
+            if (failure == null && !cancelRequested) leading.complete(resp);
+            else leading.completeExceptionally(failure != null ? failure : new CancellationException());
+        }
+
+        private void remember(NtfyTransport.Response resp) {
+            try {
+                JSONObject attachment = resp.body() == null || resp.body().isBlank() ? null
+                        : new JSONObject(resp.body()).optJSONObject("attachment");
+                if (attachment == null || !attachment.has("url")) return;
+                index.put(new AttachmentIndex.Entry(sha256, total, attachment.optLong("expires", 0), url,
+                        attachment.getString("url"), attachment.optString("type", headers.get("Content-Type"))));
+            } catch (Exception e) {
+                LOG.warn("Could not index upload of {}: {}", file, e.getMessage());
+            }
+        }
+
+        private void signal() {
+            lock.lock();
+            try {
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void finishCancelled() {
+            cancelled.incrementAndGet();
+            Flow.Subscriber<? super ByteBuffer> s;
+            lock.lock();
+            try {
+                s = subscriber;
+                subscriber = null;
+            } finally {
+                lock.unlock();
+            }
+            if (s != null) s.onError(new CancellationException("Upload cancelled"));
+            report(State.CANCELLED, true);
+            result.completeExceptionally(new CancellationException("Upload cancelled: " + file.getFileName()));
+        }
+
+        private void checkCancelled() {
+            if (cancelRequested) throw new CancellationException();
+        }
+
+        /** Flow.Publisher side: the HTTP client subscribes once it is ready to send the body. */
+        private void subscribe(Flow.Subscriber<? super ByteBuffer> s) {
+            lock.lock();
+            try {
+                if (subscriber != null) {
+                    s.onSubscribe(new Flow.Subscription() {
+                        public void request(long n) { }
+                        public void cancel() { }
+                    });
+                    s.onError(new IllegalStateException("Upload body can only be sent once"));
+                    return;
+                }
+                subscriber = s;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            s.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    lock.lock();
+                    try {
+                        demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                        changed.signalAll();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    // The client gave up on the body (connection failure); the response future reports why.
+                    lock.lock();
+                    try {
+                        subscriber = null;
+                        clientCancelled = true;
+                        changed.signalAll();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            });
+        }
+
+        /** Reads the file chunk by chunk and hands each chunk to the subscriber as demand allows. */
+        private void stream(FileChannel channel) throws IOException, InterruptedException {
+            long position = 0;
+            while (position < total) {
+                Flow.Subscriber<? super ByteBuffer> s = awaitDemand();
+                if (s == null) return;
+                int length = (int) Math.min(chunkSize, total - position);
+                if (limiter != null) limiter.acquire(length);
+                checkCancelled();
+
+                // The client may hold on to a buffer after onNext, so each chunk gets its own.
+                ByteBuffer chunk = ByteBuffer.allocate(length);
+                while (chunk.hasRemaining()) {
+                    if (channel.read(chunk, position + chunk.position()) < 0) throw new IOException(file + " shrank during upload");
+                }
+                chunk.flip();
+                position += length;
+                sent = position;
+                UPLOAD_BYTES.add(length);
+                s.onNext(chunk);
+                report(State.UPLOADING, false);
+            }
+            Flow.Subscriber<? super ByteBuffer> s = awaitSubscriber();
+            if (s != null) s.onComplete();
+        }
+
+        private Flow.Subscriber<? super ByteBuffer> awaitDemand() throws InterruptedException {
+            lock.lock();
+            try {
+                while ((subscriber == null || demand == 0) && !clientCancelled && !response.isDone()) {
+                    checkCancelled();
+                    changed.await();
+                }
+                checkCancelled();
+                if (subscriber == null) return null;
+                demand--;
+                return subscriber;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Flow.Subscriber<? super ByteBuffer> awaitSubscriber() {
+            lock.lock();
+            try {
+                return subscriber;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void report(State state, boolean force) {
+            if (listener == null) return;
+            long now = System.nanoTime();
+            if (!force && now - lastProgressNanos < PROGRESS_INTERVAL_NANOS) return;
+            lastProgressNanos = now;
+            try {
+                listener.accept(new Progress(file, sent, Math.max(total, 0), state));
+            } catch (Exception e) {
+                LOG.error("Progress listener failed for {}", file, e);
+            }
+        }
+    }
+
+    /** Token bucket shared by all uploads; a fair lock hands bandwidth out in arrival order. */
+    static final class RateLimiter {
+        private final double bytesPerNano;
+        private final double burst;
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private double tokens;
+        private long lastRefillNanos = System.nanoTime();
+
+        RateLimiter(long bytesPerSecond, long burst) {
+            this.bytesPerNano = bytesPerSecond / 1e9;
+            this.burst = burst;
+            this.tokens = burst;
+        }
+
+        void acquire(long bytes) throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                refill();
+                tokens -= bytes;
+                // Sleeping with the lock held keeps later callers queued behind this one.
+                if (tokens < 0) TimeUnit.NANOSECONDS.sleep((long) (-tokens / bytesPerNano));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefillNanos) * bytesPerNano);
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -3,6 +3,8 @@ module hellofx {
     requires javafx.fxml;
     requires org.json;
     requires java.net.http;
+    requires java.management;
+    requires jdk.httpserver;
 
     opens com.example to javafx.fxml;
     exports com.example;
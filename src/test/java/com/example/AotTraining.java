@@ -0,0 +1,44 @@
+package com.example;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The {@code aot} profile's training run: launches the linked image once with
+ * {@code -XX:AOTCacheOutput} against a {@link FakeNtfyServer} seeded like the startup benchmark's, so
+ * the recorded cache does not depend on the developer's {@code .env} and the build cannot hang on an
+ * empty or unreachable topic. Exits with status 1 if the app did not show a message within the limit
+ * or no cache was written.
+ *
+ * <pre>
+ * AotTraining &lt;image java&gt; &lt;cache file&gt; [limit seconds]
+ * </pre>
+ */
+public final class AotTraining {
+
+    private AotTraining() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: AotTraining <image java> <cache file> [limit seconds]");
+            System.exit(2);
+        }
+        Path cache = Path.of(args[1]);
+        Duration limit = Duration.ofSeconds(args.length > 2 ? Long.parseLong(args[2]) : 120);
+        Files.deleteIfExists(cache);
+        try (FakeNtfyServer server = new FakeNtfyServer()) {
+            AppLauncher.seed(server, "training");
+            AppLauncher.Run run = AppLauncher.launch(List.of(args[0], "-XX:AOTCacheOutput=" + cache.toAbsolutePath()),
+                    server.topicUrl("training"), limit);
+            if (!Files.exists(cache)) throw new IllegalStateException("the training run wrote no AOT cache to " + cache);
+            System.out.printf("Recorded %s (%d KiB); training run showed the window after %d ms, a message after %d ms%n",
+                    cache, Files.size(cache) / 1024, run.windowMillis(), run.firstMessageMillis());
+        } catch (IllegalStateException e) {
+            System.err.println("AOT training failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Launches the chat app in a fresh JVM, in its own directory whose {@code .env} points at a
+ * {@link FakeNtfyServer} topic and at an empty cache, so the first message comes over the network.
+ * The app runs with {@code -Dstartup.exitAfterFirstMessage=true}; a launch that has not exited
+ * within its time limit is killed. Needs a display.
+ */
+final class AppLauncher {
+
+    static final int HISTORY = 2_000;
+
+    private static final Pattern WINDOW = Pattern.compile("Window shown (\\d+) ms");
+    private static final Pattern FIRST_MESSAGE = Pattern.compile("First message shown (\\d+) ms");
+
+    /** Times from JVM start, as {@link Startup} logs them. */
+    record Run(long windowMillis, long firstMessageMillis) { }
+
+    private AppLauncher() {
+    }
+
+    /** Seeds {@code topic} with {@link #HISTORY} messages from a few users, one a second up to now. */
+    static void seed(FakeNtfyServer server, String topic) {
+        long start = Instant.now().getEpochSecond() - HISTORY;
+        for (int i = 0; i < HISTORY; i++) {
+            server.seed(topic, start + i, "{\"username\":\"user" + (i % 7) + "\",\"message\":\"history " + i + "\"}");
+        }
+    }
+
+    /** Runs {@code jvm} (a command line up to the module to launch) until the app has shown a message and quit. */
+    static Run launch(List<String> jvm, String topicUrl, Duration limit) throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("startup");
+        try {
+            Files.writeString(dir.resolve(".env"), "NTFY_URL=" + topicUrl + "\nCHAT_CACHE_DIR=" + dir.resolve("cache") + "\n");
+            List<String> command = new ArrayList<>(jvm);
+            command.addAll(List.of("--enable-native-access=javafx.graphics", "-Dstartup.exitAfterFirstMessage=true",
+                    "-m", "hellofx/com.example.HelloFX"));
+            Process process = new ProcessBuilder(command).directory(dir.toFile()).redirectErrorStream(true).start();
+            CompletableFuture.delayedExecutor(limit.toMillis(), TimeUnit.MILLISECONDS).execute(process::destroyForcibly);
+            long window = -1, message = -1;
+            ArrayDeque<String> tail = new ArrayDeque<>();
+            try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = out.readLine()) != null) {
+                    if (tail.size() == 10) tail.removeFirst();
+                    tail.addLast(line);
+                    Matcher m = WINDOW.matcher(line);
+                    if (m.find()) window = Long.parseLong(m.group(1));
+                    m = FIRST_MESSAGE.matcher(line);
+                    if (m.find()) message = Long.parseLong(m.group(1));
+                }
+            }
+            int status = process.waitFor();
+            if (window < 0 || message < 0 || status != 0) {
+                throw new IllegalStateException("app exited with " + status + " before showing a message within " + limit
+                        + ":\n" + String.join("\n", tail));
+            }
+            return new Run(window, message);
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+            }
+        }
+    }
+}
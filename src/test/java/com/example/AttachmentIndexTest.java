@@ -0,0 +1,72 @@
+package com.example;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttachmentIndexTest {
+
+    @TempDir
+    Path dir;
+
+    private static final String HASH = "ab".repeat(32);
+
+    @Test
+    void testHashMatchesDigestAcrossMappedWindows() throws Exception {
+        byte[] data = new byte[1_000_003];
+        new Random(7).nextBytes(data);
+        Path file = Files.write(dir.resolve("data.bin"), data);
+        String expected = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        try (FileChannel channel = FileChannel.open(file)) {
+            assertEquals(expected, AttachmentIndex.sha256(channel));
+            assertEquals(expected, AttachmentIndex.sha256(channel, 4096));
+        }
+        try (FileChannel empty = FileChannel.open(Files.createFile(dir.resolve("empty.bin")))) {
+            assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", AttachmentIndex.sha256(empty));
+        }
+    }
+
+    @Test
+    void testEntriesSurviveReopenPerTopic() throws Exception {
+        Path file = dir.resolve("attachments.idx");
+        try (AttachmentIndex index = new AttachmentIndex(file)) {
+            index.put(new AttachmentIndex.Entry(HASH, 10, 0, "http://ntfy/a", "http://ntfy/file/x.png", "image/png"));
+            index.put(new AttachmentIndex.Entry(HASH, 10, 0, "http://ntfy/a", "http://ntfy/file/y.png", "image/png"));
+        }
+        try (AttachmentIndex index = new AttachmentIndex(file)) {
+            assertEquals("http://ntfy/file/y.png", index.find("http://ntfy/a", HASH).url(), "the later upload wins");
+            assertNull(index.find("http://ntfy/b", HASH), "entries are per topic");
+            assertEquals(1, index.size());
+        }
+        assertEquals(1, Files.readAllLines(file).size(), "superseded lines are dropped on open");
+    }
+
+    @Test
+    void testExpiredAndUnreadableLinesAreDropped() throws Exception {
+        Path file = dir.resolve("attachments.idx");
+        long now = Instant.now().getEpochSecond();
+        String soon = String.join("\t", HASH, "10", Long.toString(now + 60), "http://ntfy/a", "http://ntfy/file/old", "");
+        String later = String.join("\t", "cd".repeat(32), "10", Long.toString(now + 3600), "http://ntfy/a", "http://ntfy/file/new", "");
+        Files.write(file, (soon + "\nnot an entry\n" + later + "\n").getBytes(StandardCharsets.UTF_8));
+
+        try (AttachmentIndex index = new AttachmentIndex(file)) {
+            assertNull(index.find("http://ntfy/a", HASH), "expires within the margin");
+            AttachmentIndex.Entry entry = index.find("http://ntfy/a", "cd".repeat(32));
+            assertNotNull(entry);
+            JSONObject attachment = new JSONObject(entry.toResponse().body()).getJSONObject("attachment");
+            assertEquals("http://ntfy/file/new", attachment.getString("url"));
+        }
+        assertEquals(1, Files.readAllLines(file).size());
+    }
+}
@@ -0,0 +1,47 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatCellTest {
+
+    @Test
+    void testLayoutCacheRemembersHeightsForOneWidth() {
+        ChatCell.LayoutCache cache = new ChatCell.LayoutCache(10);
+        assertEquals(-1, cache.get("a", 400));
+        cache.put("a", 400, 42.0);
+        assertEquals(42.0, cache.get("a", 400));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        assertEquals(-1, cache.get("a", 300), "a new width clears the cache");
+        assertEquals(0, cache.size());
+        cache.put("a", 400, 42.0);
+        assertEquals(0, cache.size(), "heights for a stale width are ignored");
+    }
+
+    @Test
+    void testLayoutCacheEvictsLeastRecentlyUsed() {
+        ChatCell.LayoutCache cache = new ChatCell.LayoutCache(2);
+        cache.get("a", 400);
+        cache.put("a", 400, 1);
+        cache.put("b", 400, 2);
+        cache.get("a", 400);
+        cache.put("c", 400, 3);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.get("a", 400));
+        assertEquals(-1, cache.get("b", 400));
+    }
+
+    @Test
+    void testInvalidateDropsOneEntry() {
+        ChatCell.LayoutCache cache = new ChatCell.LayoutCache(10);
+        cache.get("a", 400);
+        cache.put("a", 400, 1);
+        cache.put("b", 400, 2);
+        cache.invalidate("a");
+        assertEquals(-1, cache.get("a", 400));
+        assertEquals(2, cache.get("b", 400));
+    }
+}
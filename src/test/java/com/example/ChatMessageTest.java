@@ -0,0 +1,84 @@
+package com.example;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.Reference;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.function.IntFunction;
+
+import static com.example.TestSupport.usedHeapAfterGc;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatMessageTest {
+
+    /** The layout before the compact model: seven strings, with the timestamp formatted per message. */
+    @SuppressWarnings("unused")
+    private record LegacyMessage(String id, String username, String message, String timestamp,
+                                 String fileName, String fileUrl, String mimeType, long time) { }
+
+    private static final DateTimeFormatter LEGACY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    @Test
+    void testTimestampIsFormattedFromEpochSeconds() {
+        long time = 1_735_732_800L;
+        ChatMessage msg = new ChatMessage("a", "alice", "hi", time);
+        assertEquals(LEGACY_FORMAT.format(Instant.ofEpochSecond(time).atZone(ZoneId.systemDefault())), msg.getTimestamp());
+        assertEquals(time, msg.getTime());
+    }
+
+    @Test
+    void testTextMessagesHaveNoAttachment() {
+        ChatMessage text = new ChatMessage("a", "alice", "hi", 0);
+        assertNull(text.getAttachment());
+        assertNull(text.getFileName());
+        assertNull(ChatMessage.Attachment.of(null, null, null));
+
+        ChatMessage file = new ChatMessage("b", "bob", "Sent file: cat.png", 0,
+                ChatMessage.Attachment.of("cat.png", "https://ntfy.sh/file/cat.png", "image/png"));
+        assertEquals("cat.png", file.getFileName());
+        assertEquals("https://ntfy.sh/file/cat.png", file.getFileUrl());
+        assertTrue(file.getAttachment().isImage());
+    }
+
+    @Test
+    void testSenderNamesAreShared() {
+        ChatMessage first = new ChatMessage("a", new String("Åsa"), "hi", 0);
+        ChatMessage second = new ChatMessage("b", new String("Åsa"), "hej", 0);
+        assertSame(first.getUsername(), second.getUsername());
+
+        InternTable table = new InternTable(1000);
+        assertEquals(1024, table.capacity());
+        for (int i = 0; i < 100_000; i++) assertEquals("user" + i, table.intern("user" + i));
+        assertNull(table.intern(null));
+    }
+
+    /** Heap measurement over a million messages; runs with {@code -Psoak}. */
+    @Test
+    @Tag("soak")
+    void testCompactLayoutSavesHeapForOneMillionTextMessages() throws InterruptedException {
+        int count = 1_000_000;
+        long start = 1_735_732_800L;
+        // As the decoders produce them: a fresh string per field, the sender repeating across messages.
+        double legacy = retainedBytesPerMessage(count, i -> new LegacyMessage("m" + (10_000_000 + i), "user" + (i % 50),
+                "message number " + i, LEGACY_FORMAT.format(Instant.ofEpochSecond(start + i).atZone(ZoneId.systemDefault())),
+                null, null, null, start + i));
+        double compact = retainedBytesPerMessage(count, i -> new ChatMessage("m" + (10_000_000 + i), "user" + (i % 50),
+                "message number " + i, start + i));
+
+        String report = String.format("bytes per text message: %.0f before, %.0f after", legacy, compact);
+        // The formatted timestamp and the per-message sender copy are about 100 bytes of the old layout.
+        assertTrue(compact < legacy * 0.7, report);
+    }
+
+    private static double retainedBytesPerMessage(int count, IntFunction<Object> create) throws InterruptedException {
+        Object[] messages = new Object[count];
+        long before = usedHeapAfterGc();
+        for (int i = 0; i < count; i++) messages[i] = create.apply(i);
+        long after = usedHeapAfterGc();
+        Reference.reachabilityFence(messages);
+        return (after - before) / (double) count;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DedupIndexTest {
+
+    @Test
+    void testRejectsDuplicates() {
+        DedupIndex index = new DedupIndex();
+        assertTrue(index.add("aBcDeFgHiJkL"));
+        assertFalse(index.add("aBcDeFgHiJkL"));
+        assertTrue(index.contains("aBcDeFgHiJkL"));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void testEvictsOldestIdsWhenFull() {
+        DedupIndex index = new DedupIndex(4, 1);
+        for (int i = 0; i < 6; i++) assertTrue(index.add("id-" + i));
+
+        assertEquals(4, index.size());
+        assertEquals(2, index.getEvictions());
+        assertFalse(index.contains("id-0"));
+        assertFalse(index.contains("id-1"));
+        for (int i = 2; i < 6; i++) assertTrue(index.contains("id-" + i));
+        assertTrue(index.add("id-0"), "evicted ids are accepted again");
+    }
+
+    @Test
+    void testRemoveKeepsOtherIdsReachable() {
+        DedupIndex index = new DedupIndex(1024, 1);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            ids.add("msg" + i);
+            index.add("msg" + i);
+        }
+        for (int i = 0; i < 1000; i += 2) index.remove(ids.get(i));
+
+        assertEquals(500, index.size());
+        for (int i = 0; i < 1000; i++) assertEquals(i % 2 == 1, index.contains(ids.get(i)), ids.get(i));
+    }
+
+    @Test
+    void testReAddedIdOutlivesItsRemovedSlot() {
+        DedupIndex index = new DedupIndex(4, 1);
+        index.add("x");
+        index.remove("x");
+        assertTrue(index.add("x"));
+        index.add("id-0");
+        index.add("id-1");
+        // The ring is full; this frees the slot x had before it was removed, not x itself.
+        index.add("id-2");
+        assertFalse(index.add("x"), "re-added id is still a duplicate");
+        assertEquals(0, index.getEvictions());
+    }
+
+    @Test
+    void testConcurrentProducersAcceptEachIdOnce() throws Exception {
+        DedupIndex index = new DedupIndex();
+        AtomicInteger accepted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    if (index.add("id-" + i)) accepted.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread t : threads) t.join();
+        assertEquals(20_000, accepted.get());
+    }
+
+    @Test
+    void testRejectsInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new DedupIndex(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new DedupIndex(10, 3));
+    }
+}
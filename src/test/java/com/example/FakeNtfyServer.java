@@ -0,0 +1,500 @@
+package com.example;
+
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal in-process HTTP/1.1 server speaking the subset of the ntfy API that HelloModel uses:
+ * publishing with POST/PUT to a topic, and {@code /<topic>/json} with {@code since} and {@code poll}.
+ * Without {@code poll=1} the JSON endpoint streams (chunked) the replay followed by live messages.
+ * Like ntfy, {@code /a,b/json} subscribes to several topics at once. Tests can make streams drop
+ * or stall to exercise reconnect logic, delay publish responses, and cap how many messages each
+ * topic keeps so long soak runs do not grow without bound.
+ */
+class FakeNtfyServer implements AutoCloseable {
+
+    record Request(String method, String path, String query, Map<String, String> headers, byte[] body) {
+        String header(String name) {
+            return headers.get(name.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    record Message(String id, long time, String topic, String message, JSONObject attachment) {
+        String toJson() {
+            JSONObject json = new JSONObject();
+            json.put("id", id);
+            json.put("time", time);
+            json.put("event", "message");
+            json.put("topic", topic);
+            json.put("message", message);
+            if (attachment != null) json.put("attachment", attachment);
+            return json.toString();
+        }
+    }
+
+    private static final class Stream {
+        final List<String> topics;
+        final BlockingQueue<Message> queue = new LinkedBlockingQueue<>();
+        volatile boolean dropped;
+
+        Stream(List<String> topics) {
+            this.topics = topics;
+        }
+    }
+
+    private final ServerSocket server;
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, List<Message>> topics = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final Object publishLock = new Object();
+    private final AtomicInteger connectionsAccepted = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicInteger failuresRemaining = new AtomicInteger();
+    private volatile int failureStatus = 503;
+    private final AtomicInteger lostResponsesRemaining = new AtomicInteger();
+    private volatile boolean offline;
+    private final List<Stream> streams = new CopyOnWriteArrayList<>();
+    private volatile int dropStreamsEvery;
+    private volatile boolean stalled;
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> fileDownloads = new ConcurrentHashMap<>();
+    private volatile long fileDelayMillis;
+    private volatile long keepaliveMillis;
+    private volatile long publishDelayMinMillis;
+    private volatile long publishDelayMaxMillis;
+    private volatile int retention;
+    /** The first accept failure, rethrown by {@link #close()} so the test fails instead of timing out quietly. */
+    private volatile IOException acceptFailure;
+
+    FakeNtfyServer() throws IOException {
+        server = new ServerSocket(0, 512, InetAddress.getLoopbackAddress());
+        Thread.ofVirtual().name("fake-ntfy-accept").start(this::acceptLoop);
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getLocalPort();
+    }
+
+    String topicUrl(String topic) {
+        return baseUrl() + "/" + topic;
+    }
+
+    List<Message> messages(String topic) {
+        List<Message> list = topics.get(topic);
+        if (list == null) return List.of();
+        synchronized (list) {
+            return new ArrayList<>(list);
+        }
+    }
+
+    /** Makes the next {@code count} publish requests fail with {@code status}. */
+    void failNextPublishes(int count, int status) {
+        failureStatus = status;
+        failuresRemaining.set(count);
+    }
+
+    /** Stores the next {@code count} publishes but closes the connection instead of answering. */
+    void loseNextResponses(int count) {
+        lostResponsesRemaining.set(count);
+    }
+
+    /** While offline every connection is closed before a request is answered, like an unreachable server. */
+    void setOffline(boolean offline) {
+        this.offline = offline;
+        if (offline) dropStreams();
+    }
+
+    /** Closes every open {@code /json} stream. */
+    void dropStreams() {
+        for (Stream stream : streams) stream.dropped = true;
+    }
+
+    /** Closes each {@code /json} stream after it has sent {@code lines} messages (0 disables). */
+    void dropStreamsEvery(int lines) {
+        dropStreamsEvery = lines;
+    }
+
+    /** While stalled, open streams stay connected but send nothing. */
+    void setStalled(boolean stalled) {
+        this.stalled = stalled;
+    }
+
+    /** Sends a keepalive event on idle streams this often (0 disables), so closed clients are noticed. */
+    void setKeepaliveInterval(long millis) {
+        keepaliveMillis = millis;
+    }
+
+    /** Delays each publish response by a random time between {@code minMillis} and {@code maxMillis}. */
+    void setPublishLatency(long minMillis, long maxMillis) {
+        publishDelayMinMillis = minMillis;
+        publishDelayMaxMillis = Math.max(minMillis, maxMillis);
+    }
+
+    /** Keeps only the newest {@code messages} per topic for replay, like ntfy's cache duration (0 keeps all). */
+    void setRetention(int messages) {
+        retention = messages;
+    }
+
+    /** Serves {@code data} at {@code /file/<name>} and returns its URL. */
+    String putFile(String name, byte[] data) {
+        files.put("/file/" + name, data);
+        return baseUrl() + "/file/" + name;
+    }
+
+    /** Forgets stored attachments, so benchmarks uploading large files do not keep them all in memory. */
+    void clearFiles() {
+        files.clear();
+    }
+
+    /** Delays every {@code /file/} download, to widen the window for concurrent requests. */
+    void setFileDelay(long millis) {
+        fileDelayMillis = millis;
+    }
+
+    int fileDownloads(String name) {
+        AtomicInteger count = fileDownloads.get("/file/" + name);
+        return count == null ? 0 : count.get();
+    }
+
+    int openStreams() { return streams.size(); }
+    int connectionsAccepted() { return connectionsAccepted.get(); }
+    long requests() { return requests.get(); }
+    long bytesReceived() { return bytesReceived.get(); }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                connectionsAccepted.incrementAndGet();
+                workers.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!server.isClosed() && acceptFailure == null) acceptFailure = e;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             InputStream in = new BufferedInputStream(socket.getInputStream());
+             OutputStream out = socket.getOutputStream()) {
+            Request request;
+            while ((request = readRequest(in)) != null) {
+                if (offline) break;
+                requests.incrementAndGet();
+                bytesReceived.addAndGet(request.body().length);
+                if (!handle(request, out)) break;
+                if ("close".equalsIgnoreCase(request.header("Connection"))) break;
+            }
+        } catch (IOException ignored) {
+            // Client went away.
+        }
+    }
+
+    /** Writes a response; returns {@code false} if the connection must be closed afterwards. */
+    protected boolean handle(Request request, OutputStream out) throws IOException {
+        String topic = request.path().substring(1);
+        if (request.method().equals("GET") && topic.endsWith("/json")) {
+            topic = topic.substring(0, topic.length() - "/json".length());
+            Map<String, String> params = parseQuery(request.query());
+            if ("1".equals(params.get("poll")) || "true".equals(params.get("poll"))) {
+                poll(since(List.of(topic.split(",")), params.get("since")), out);
+                return true;
+            }
+            stream(topic, params.get("since"), out);
+            return false;
+        }
+        if (request.method().equals("GET") && files.containsKey(request.path())) {
+            fileDownloads.computeIfAbsent(request.path(), k -> new AtomicInteger()).incrementAndGet();
+            if (fileDelayMillis > 0) {
+                try {
+                    Thread.sleep(fileDelayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            writeResponse(out, 200, "application/octet-stream", files.get(request.path()));
+            return true;
+        }
+        if (request.method().equals("POST") || request.method().equals("PUT")) {
+            if (failuresRemaining.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                writeResponse(out, failureStatus, "application/json", "{\"code\":" + failureStatus + "}");
+                return true;
+            }
+            long delay = publishDelayMaxMillis > 0
+                    ? ThreadLocalRandom.current().nextLong(publishDelayMinMillis, publishDelayMaxMillis + 1) : 0;
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            Message published = publish(topic, request);
+            if (lostResponsesRemaining.getAndUpdate(n -> Math.max(0, n - 1)) > 0) return false;
+            writeResponse(out, 200, "application/json", published.toJson());
+            return true;
+        }
+        writeResponse(out, 404, "text/plain", "not found");
+        return true;
+    }
+
+    protected Message publish(String topic, Request request) {
+        // Ids must reach streams in the order they are assigned: a stream skips ids it has passed.
+        synchronized (publishLock) {
+            return append(topic, request);
+        }
+    }
+
+    /** Adds a plain POSTed message with the given time, e.g. to build a history spanning days. */
+    Message seed(String topic, long time, String body) {
+        Request request = new Request("POST", "/" + topic, "", Map.of(), body.getBytes(StandardCharsets.UTF_8));
+        synchronized (publishLock) {
+            return append(topic, request, time);
+        }
+    }
+
+    private Message append(String topic, Request request) {
+        return append(topic, request, System.currentTimeMillis() / 1000);
+    }
+
+    private Message append(String topic, Request request, long time) {
+        String id = String.format("m%011d", nextId.incrementAndGet());
+        Message message;
+        if (request.method().equals("PUT")) {
+            String name = request.header("Filename") == null ? "file" : request.header("Filename");
+            JSONObject attachment = new JSONObject();
+            attachment.put("name", name);
+            attachment.put("type", request.header("Content-Type"));
+            attachment.put("size", request.body().length);
+            attachment.put("url", putFile(id + "-" + name, request.body()));
+            message = new Message(id, time, topic, "You received a file: " + name, attachment);
+        } else {
+            message = new Message(id, time, topic, new String(request.body(), StandardCharsets.UTF_8), null);
+        }
+        List<Message> list = topics.computeIfAbsent(topic, t -> new ArrayList<>());
+        synchronized (list) {
+            list.add(message);
+            if (retention > 0 && list.size() > retention + retention / 4) list.subList(0, list.size() - retention).clear();
+            for (Stream stream : streams) {
+                if (stream.topics.contains(topic)) stream.queue.add(message);
+            }
+        }
+        return message;
+    }
+
+    /** Replay for a stream over several topics, in publish order (ids grow across topics). */
+    List<Message> since(List<String> topics, String since) {
+        if (topics.size() == 1) return since(topics.get(0), since);
+        List<Message> all = new ArrayList<>();
+        for (String topic : topics) all.addAll(since(topic, since));
+        all.sort(Comparator.comparing(Message::id));
+        return all;
+    }
+
+    List<Message> since(String topic, String since) {
+        List<Message> all = messages(topic);
+        if (since == null || since.isEmpty()) return List.of();
+        if (since.equals("all")) return all;
+        if (since.chars().allMatch(Character::isDigit)) {
+            long time = Long.parseLong(since);
+            return all.stream().filter(m -> m.time() >= time).toList();
+        }
+        for (int i = 0; i < all.size(); i++) {
+            if (all.get(i).id().equals(since)) return all.subList(i + 1, all.size());
+        }
+        // ntfy resolves an id from any topic to its position in the shared message log.
+        if (since.startsWith("m") && since.length() == 12) return all.stream().filter(m -> m.id().compareTo(since) > 0).toList();
+        return all;
+    }
+
+    private void stream(String topic, String since, OutputStream out) throws IOException {
+        Stream stream = new Stream(List.of(topic.split(",")));
+        // Register before taking the replay snapshot so nothing published in between is missed.
+        streams.add(stream);
+        try {
+            String head = "HTTP/1.1 200 OK\r\nContent-Type: application/x-ndjson\r\nTransfer-Encoding: chunked\r\n\r\n";
+            out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+            JSONObject open = new JSONObject();
+            open.put("id", "open" + System.nanoTime());
+            open.put("time", System.currentTimeMillis() / 1000);
+            open.put("event", "open");
+            open.put("topic", topic);
+            writeChunk(out, open + "\n");
+
+            String lastSent = "";
+            int sent = 0;
+            for (Message m : since(stream.topics, since)) {
+                if (stream.dropped || stalled) break;
+                writeChunk(out, m.toJson() + "\n");
+                lastSent = m.id();
+                if (++sent == dropStreamsEvery) return;
+            }
+            long lastWrite = System.nanoTime();
+            while (!stream.dropped && !server.isClosed()) {
+                Message m = stream.queue.poll(50, TimeUnit.MILLISECONDS);
+                if (m == null && !stalled && keepaliveMillis > 0 && System.nanoTime() - lastWrite > keepaliveMillis * 1_000_000) {
+                    writeChunk(out, "{\"id\":\"ka" + System.nanoTime() + "\",\"event\":\"keepalive\",\"topic\":\"" + topic + "\"}\n");
+                    lastWrite = System.nanoTime();
+                }
+                if (m == null || stalled || m.id().compareTo(lastSent) <= 0) continue;
+                lastWrite = System.nanoTime();
+                writeChunk(out, m.toJson() + "\n");
+                lastSent = m.id();
+                if (++sent == dropStreamsEvery) return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            streams.remove(stream);
+        }
+    }
+
+    /**
+     * A {@code poll=1} response, chunked and written as it is produced like ntfy does, so a client
+     * that closes early stops the server from writing the rest.
+     */
+    private static void poll(List<Message> messages, OutputStream out) throws IOException {
+        String head = "HTTP/1.1 200 OK\r\nContent-Type: application/x-ndjson\r\nTransfer-Encoding: chunked\r\n\r\n";
+        out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        StringBuilder chunk = new StringBuilder();
+        for (Message m : messages) {
+            chunk.append(m.toJson()).append('\n');
+            if (chunk.length() >= 32 * 1024) {
+                writeChunk(out, chunk.toString());
+                chunk.setLength(0);
+            }
+        }
+        if (!chunk.isEmpty()) writeChunk(out, chunk.toString());
+        out.write("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    private static void writeChunk(OutputStream out, String data) throws IOException {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(bytes.length + 16);
+        chunk.write((Integer.toHexString(bytes.length) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        chunk.write(bytes);
+        chunk.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        out.write(chunk.toByteArray());
+        out.flush();
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (query == null || query.isEmpty()) return params;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq < 0) params.put(pair, "");
+            else params.put(pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    static void writeResponse(OutputStream out, int status, String contentType, String body) throws IOException {
+        writeResponse(out, status, contentType, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void writeResponse(OutputStream out, int status, String contentType, byte[] bytes) throws IOException {
+        String head = "HTTP/1.1 " + status + " " + (status < 400 ? "OK" : "Error") + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Length: " + bytes.length + "\r\n"
+                + "\r\n";
+        ByteArrayOutputStream response = new ByteArrayOutputStream(head.length() + bytes.length);
+        response.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        response.write(bytes);
+        out.write(response.toByteArray());
+        out.flush();
+    }
+
+    private static Request readRequest(InputStream in) throws IOException {
+        String requestLine = readLine(in);
+        if (requestLine == null || requestLine.isEmpty()) return null;
+        String[] parts = requestLine.split(" ");
+        String target = parts[1];
+        int q = target.indexOf('?');
+        String path = q < 0 ? target : target.substring(0, q);
+        String query = q < 0 ? "" : target.substring(q + 1);
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+        }
+
+        byte[] body = new byte[0];
+        String length = headers.get("content-length");
+        if (length != null) {
+            body = in.readNBytes(Integer.parseInt(length));
+            // The client went away mid-body (e.g. a cancelled upload): like ntfy, publish nothing.
+            if (body.length < Integer.parseInt(length)) return null;
+        } else if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+            body = readChunked(in);
+        }
+        return new Request(parts[0], path, query, headers, body);
+    }
+
+    private static byte[] readChunked(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        while (true) {
+            String sizeLine = readLine(in);
+            if (sizeLine == null) break;
+            int size = Integer.parseInt(sizeLine.split(";")[0].trim(), 16);
+            if (size == 0) {
+                readLine(in);
+                break;
+            }
+            body.write(in.readNBytes(size));
+            readLine(in);
+        }
+        return body.toByteArray();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') return sb.toString();
+            if (c != '\r') sb.append((char) c);
+        }
+        return sb.isEmpty() ? null : sb.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        workers.shutdownNow();
+        IOException failure = acceptFailure;
+        if (failure != null) throw new IOException("Accepting a connection failed", failure);
+    }
+}
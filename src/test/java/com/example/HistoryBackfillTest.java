@@ -0,0 +1,131 @@
+package com.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryBackfillTest {
+
+    private FakeNtfyServer server;
+    private HttpClientTransport transport;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeNtfyServer();
+        transport = new HttpClientTransport(Duration.ofSeconds(2), Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        transport.close();
+        server.close();
+    }
+
+    /** {@code count} chat messages, one every {@code spacing} seconds, ending a minute ago. */
+    private void seedHistory(FakeNtfyServer server, String topic, int count, long spacing) {
+        long start = Instant.now().getEpochSecond() - 60 - count * spacing;
+        for (int i = 0; i < count; i++) {
+            server.seed(topic, start + i * spacing, "{\"username\":\"user" + (i % 5) + "\",\"message\":\"history " + i + "\"}");
+            if (i % 100 == 0) server.seed(topic, start + i * spacing, "plain notification " + i);
+        }
+    }
+
+    @Test
+    void testWindowBoundsCoverTheWholeSpan() {
+        long[] bounds = HistoryBackfill.windowBounds(1000, 1999, 4);
+        assertArrayEquals(new long[] {1000, 1250, 1500, 1750, Long.MAX_VALUE}, bounds);
+
+        long[] narrow = HistoryBackfill.windowBounds(1000, 1002, 16);
+        assertArrayEquals(new long[] {1000, 1001, 1002, Long.MAX_VALUE}, narrow, "at least a second per window");
+        assertArrayEquals(new long[] {1000, Long.MAX_VALUE}, HistoryBackfill.windowBounds(1000, 900, 16));
+    }
+
+    @Test
+    void testPagesArriveNewestFirstAndRebuildHistoryInOrder() throws Exception {
+        seedHistory(server, "history", 2_000, 7);
+        List<HistoryBackfill.Page> pages = new CopyOnWriteArrayList<>();
+        HistoryBackfill.Result result;
+        try (HistoryBackfill backfill = new HistoryBackfill(transport, server.topicUrl("history"), 8, 3)) {
+            result = backfill.start(pages::add).get(30, TimeUnit.SECONDS);
+        }
+
+        assertEquals(8, result.windows());
+        assertEquals(2_000, result.messages());
+        assertTrue(result.firstPageMillis() <= result.totalMillis());
+        List<String> rebuilt = new ArrayList<>();
+        for (int i = 0; i < pages.size(); i++) {
+            HistoryBackfill.Page page = pages.get(i);
+            assertEquals(7 - i, page.index(), "newest window first");
+            for (ChatMessage msg : page.messages()) {
+                assertTrue(msg.getTime() >= page.fromTime() && msg.getTime() < page.untilTime());
+            }
+            rebuilt.addAll(0, page.messages().stream().map(ChatMessage::getId).toList());
+        }
+        assertTrue(pages.get(pages.size() - 1).isOldest());
+
+        List<String> expected = server.messages("history").stream()
+                .filter(m -> m.message().startsWith("{")).map(FakeNtfyServer.Message::id).toList();
+        assertEquals(expected, rebuilt);
+    }
+
+    @Test
+    void testEmptyTopicDeliversNothing() throws Exception {
+        List<HistoryBackfill.Page> pages = new CopyOnWriteArrayList<>();
+        try (HistoryBackfill backfill = new HistoryBackfill(transport, server.topicUrl("empty"))) {
+            HistoryBackfill.Result result = backfill.start(pages::add).get(10, TimeUnit.SECONDS);
+            assertEquals(0, result.messages());
+        }
+        assertTrue(pages.isEmpty());
+    }
+
+    @Test
+    void testFailedWindowFailsTheBackfill() throws Exception {
+        try (FakeNtfyServer failing = new FakeNtfyServer() {
+            @Override
+            protected boolean handle(Request request, OutputStream out) throws IOException {
+                // Every window except the oldest fails; the probe (since=all) still works.
+                if (request.query().contains("since=") && !request.query().contains("since=all")
+                        && !request.query().contains("since=" + messages("broken").get(0).time())) {
+                    writeResponse(out, 500, "text/plain", "boom");
+                    return true;
+                }
+                return super.handle(request, out);
+            }
+        }) {
+            seedHistory(failing, "broken", 500, 60);
+            List<HistoryBackfill.Page> pages = new CopyOnWriteArrayList<>();
+            try (HistoryBackfill backfill = new HistoryBackfill(transport, failing.topicUrl("broken"), 4, 2)) {
+                ExecutionException e = assertThrows(ExecutionException.class,
+                        () -> backfill.start(pages::add).get(10, TimeUnit.SECONDS));
+                assertInstanceOf(IOException.class, e.getCause());
+            }
+            assertTrue(pages.isEmpty(), "the newest window fails before anything is delivered");
+        }
+    }
+
+    @Test
+    void testModelSkipsMessagesItHasAlreadySeen() throws Exception {
+        seedHistory(server, "seen", 300, 30);
+        try (HelloModel model = new HelloModel(server.topicUrl("seen"), transport)) {
+            List<ChatMessage> first = new CopyOnWriteArrayList<>();
+            model.backfillHistory(page -> first.addAll(page.messages())).get(10, TimeUnit.SECONDS);
+            assertEquals(300, first.size());
+
+            List<ChatMessage> second = new CopyOnWriteArrayList<>();
+            model.backfillHistory(page -> second.addAll(page.messages())).get(10, TimeUnit.SECONDS);
+            assertTrue(second.isEmpty());
+        }
+    }
+}
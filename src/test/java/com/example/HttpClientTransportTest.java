@@ -0,0 +1,97 @@
+package com.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpClientTransportTest {
+
+    private FakeNtfyServer server;
+    private HttpClientTransport transport;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeNtfyServer();
+        transport = new HttpClientTransport(Duration.ofSeconds(2), Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        transport.close();
+        server.close();
+    }
+
+    @Test
+    void testSequentialSendsReuseOneConnection() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            NtfyTransport.Response resp = transport.postAsync(server.topicUrl("chat"),
+                    ("{\"message\":\"" + i + "\"}").getBytes(StandardCharsets.UTF_8), Map.of()).get(5, TimeUnit.SECONDS);
+            assertTrue(resp.isSuccess());
+        }
+        assertEquals(100, server.messages("chat").size());
+        assertEquals(1, server.connectionsAccepted());
+    }
+
+    @Test
+    void testAsyncSendsComplete() throws Exception {
+        List<CompletableFuture<NtfyTransport.Response>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(transport.postAsync(server.topicUrl("async"), ("msg " + i).getBytes(StandardCharsets.UTF_8), Map.of()));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        assertEquals(50, server.messages("async").size());
+    }
+
+    @Test
+    void testPutFileReturnsAttachmentUrl() throws Exception {
+        Path file = Files.createTempFile("upload", ".txt");
+        Files.writeString(file, "file contents");
+        try {
+            NtfyTransport.Response resp = transport.putAsync(server.topicUrl("files"), file,
+                    Map.of("Filename", "notes.txt")).get(5, TimeUnit.SECONDS);
+            assertTrue(resp.isSuccess());
+            assertTrue(resp.body().contains("notes.txt"));
+            assertEquals(13, server.bytesReceived());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testModelSendsAndReadsHistoryThroughTransport() throws Exception {
+        HelloModel model = new HelloModel(server.topicUrl("model"), transport);
+        model.sendMessage("Alice", "Hello");
+        model.sendMessage("Bob", "Hi Alice");
+
+        List<ChatMessage> received = new CopyOnWriteArrayList<>();
+        model.loadHistory(received::add);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (received.size() < 2 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertEquals(List.of("Hello", "Hi Alice"), received.stream().map(ChatMessage::getMessage).toList());
+        assertEquals("Bob", received.get(1).getUsername());
+    }
+
+    @Test
+    void testOpenStreamFailsOnErrorStatus() {
+        assertThrows(java.io.IOException.class, () -> {
+            try (InputStream ignored = transport.openStream(server.baseUrl() + "/missing")) {
+                fail("expected failure");
+            }
+        });
+    }
+}
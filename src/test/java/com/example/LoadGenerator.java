@@ -0,0 +1,146 @@
+package com.example;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulated chat users publishing to one topic, open loop: each user posts at its own steady rate
+ * (with random phase) whether or not earlier posts have been answered, up to a cap of outstanding
+ * requests per user, so a slow server shows up as latency and skipped sends instead of a lower
+ * offered rate. Payloads are chat JSON whose text carries the user, a per-user sequence number and
+ * the send time, see {@link #parse(ChatMessage)}.
+ *
+ * <p>{@code disruption}, if set, runs every {@code disruptEvery}, e.g. {@link FakeNtfyServer#dropStreams()}.
+ */
+final class LoadGenerator implements AutoCloseable {
+
+    static final int MAX_OUTSTANDING_PER_USER = 8;
+
+    /** What a receiver can recover from a generated message. */
+    record Sent(String user, long seq, long sentNanos) { }
+
+    private final NtfyTransport transport;
+    private final String topicUrl;
+    private final int users;
+    private final double messagesPerSecondPerUser;
+    private final Runnable disruption;
+    private final Duration disruptEvery;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+
+    private final AtomicLong attempted = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong disruptions = new AtomicLong();
+    private final LatencyHistogram publishLatency = new LatencyHistogram();
+
+    LoadGenerator(NtfyTransport transport, String topicUrl, int users, double messagesPerSecondPerUser) {
+        this(transport, topicUrl, users, messagesPerSecondPerUser, null, null);
+    }
+
+    LoadGenerator(NtfyTransport transport, String topicUrl, int users, double messagesPerSecondPerUser,
+                  Runnable disruption, Duration disruptEvery) {
+        this.transport = transport;
+        this.topicUrl = topicUrl;
+        this.users = users;
+        this.messagesPerSecondPerUser = messagesPerSecondPerUser;
+        this.disruption = disruption;
+        this.disruptEvery = disruptEvery;
+    }
+
+    synchronized LoadGenerator start() {
+        running = true;
+        for (int u = 0; u < users; u++) {
+            String user = "user-" + u;
+            threads.add(Thread.ofVirtual().name("load-" + user).start(() -> publishLoop(user)));
+        }
+        if (disruption != null) threads.add(Thread.ofVirtual().name("load-disruptor").start(this::disruptLoop));
+        return this;
+    }
+
+    private void publishLoop(String user) {
+        long intervalNanos = (long) (1e9 / messagesPerSecondPerUser);
+        long next = System.nanoTime() + ThreadLocalRandom.current().nextLong(intervalNanos);
+        Semaphore outstanding = new Semaphore(MAX_OUTSTANDING_PER_USER);
+        long seq = 0;
+        try {
+            while (running) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                next += intervalNanos;
+                if (!outstanding.tryAcquire()) {
+                    skipped.incrementAndGet();
+                    continue;
+                }
+                attempted.incrementAndGet();
+                long sentNanos = System.nanoTime();
+                String json = "{\"username\":\"" + user + "\",\"message\":\"seq " + seq++ + " at " + sentNanos
+                        + "\",\"time\":" + Instant.now().getEpochSecond() + "}";
+                transport.postAsync(topicUrl, json.getBytes(StandardCharsets.UTF_8), Map.of("Content-Type", "application/json"))
+                        .whenComplete((resp, e) -> {
+                            outstanding.release();
+                            publishLatency.recordNanos(System.nanoTime() - sentNanos);
+                            if (e == null && resp.isSuccess()) published.incrementAndGet();
+                            else failed.incrementAndGet();
+                        });
+            }
+        } catch (InterruptedException ignored) {
+            // Stopped.
+        }
+    }
+
+    private void disruptLoop() {
+        try {
+            while (running) {
+                Thread.sleep(disruptEvery);
+                if (!running) return;
+                disruption.run();
+                disruptions.incrementAndGet();
+            }
+        } catch (InterruptedException ignored) {
+            // Stopped.
+        }
+    }
+
+    /** The user, sequence number and send time of a generated message, or null for anything else. */
+    static Sent parse(ChatMessage msg) {
+        String text = msg.getMessage();
+        if (text == null || !text.startsWith("seq ")) return null;
+        int at = text.indexOf(" at ");
+        if (at < 0) return null;
+        return new Sent(msg.getUsername(), Long.parseLong(text.substring(4, at)), Long.parseLong(text.substring(at + 4)));
+    }
+
+    long published() { return published.get(); }
+    long failed() { return failed.get(); }
+    long skipped() { return skipped.get(); }
+    long inFlight() { return attempted.get() - published.get() - failed.get(); }
+    long disruptions() { return disruptions.get(); }
+    LatencyHistogram publishLatency() { return publishLatency; }
+    double offeredRate() { return users * messagesPerSecondPerUser; }
+
+    /** Stops publishing; posts already in flight still complete and are counted. */
+    @Override
+    public synchronized void close() {
+        running = false;
+        for (Thread t : threads) t.interrupt();
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        threads.clear();
+    }
+}
@@ -0,0 +1,78 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogTest {
+
+    /** Keeps what would have been printed; {@code minimum} plays the role of the configured level. */
+    private static final class CapturingLogger implements System.Logger {
+        final List<String> lines = new ArrayList<>();
+        final List<Throwable> thrown = new ArrayList<>();
+        final Level minimum;
+
+        CapturingLogger(Level minimum) {
+            this.minimum = minimum;
+        }
+
+        @Override public String getName() { return "test"; }
+        @Override public boolean isLoggable(Level level) { return level.getSeverity() >= minimum.getSeverity(); }
+
+        @Override
+        public void log(Level level, ResourceBundle bundle, String msg, Throwable t) {
+            lines.add(level + " " + msg);
+            thrown.add(t);
+        }
+
+        @Override
+        public void log(Level level, ResourceBundle bundle, String format, Object... params) {
+            lines.add(level + " " + format);
+            thrown.add(null);
+        }
+    }
+
+    @Test
+    void testFormatsPlaceholdersAndPassesTrailingThrowable() {
+        CapturingLogger logger = new CapturingLogger(System.Logger.Level.INFO);
+        Log log = new Log(logger);
+        IllegalStateException boom = new IllegalStateException("boom");
+        log.warn("{} of {} failed", "upload", "a.png", boom);
+        log.info("no placeholders", 1);
+        log.info("{} and {}", "only one");
+
+        assertEquals(List.of("WARNING upload of a.png failed", "INFO no placeholders", "INFO only one and {}"), logger.lines);
+        assertSame(boom, logger.thrown.getFirst());
+    }
+
+    @Test
+    void testDisabledLevelsAreNotFormatted() {
+        CapturingLogger logger = new CapturingLogger(System.Logger.Level.INFO);
+        Log log = new Log(logger);
+        Supplier<String> expensive = () -> fail("formatted a disabled message");
+        log.debug("value {}", new Object() {
+            @Override public String toString() { return expensive.get(); }
+        });
+        assertTrue(logger.lines.isEmpty());
+        assertFalse(log.isDebugEnabled());
+    }
+
+    @Test
+    void testRateLimitsEachTemplateAndReportsSuppressedCount() throws Exception {
+        CapturingLogger logger = new CapturingLogger(System.Logger.Level.INFO);
+        Log log = new Log(logger);
+        for (int i = 0; i < 100; i++) log.warn("dropped {}", i);
+        log.warn("other template");
+        assertEquals(Log.BURST + 1, logger.lines.size());
+        assertEquals("WARNING other template", logger.lines.getLast());
+
+        Thread.sleep(Log.WINDOW_NANOS / 1_000_000 + 50);
+        log.warn("dropped {}", 100);
+        assertEquals("WARNING dropped 100 (" + (100 - Log.BURST) + " similar messages suppressed)", logger.lines.getLast());
+    }
+}
@@ -0,0 +1,83 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.TestSupport.waitFor;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageBatcherTest {
+
+    @Test
+    void testLargeHistoryIsDeliveredInFewBatches() throws Exception {
+        List<Integer> delivered = new CopyOnWriteArrayList<>();
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        ExecutorService ui = Executors.newSingleThreadExecutor();
+        try {
+            MessageBatcher<Integer> batcher = new MessageBatcher<>(batch -> {
+                batchSizes.add(batch.size());
+                delivered.addAll(batch);
+            }, ui, 10_000, Duration.ofMillis(50));
+
+            for (int i = 0; i < 50_000; i++) batcher.offer(i);
+
+            waitFor(() -> delivered.size() == 50_000);
+            assertTrue(batchSizes.size() <= 10, "expected few batches but got " + batchSizes.size());
+            assertTrue(batchSizes.stream().allMatch(size -> size <= 10_000));
+            assertEquals(0, batcher.getQueueDepth());
+            assertEquals(50_000, batcher.getItemsDelivered());
+            for (int i = 0; i < 50_000; i++) assertEquals(i, delivered.get(i));
+        } finally {
+            ui.shutdownNow();
+        }
+    }
+
+    @Test
+    void testSingleItemIsDeliveredWithinLatencyBound() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        MessageBatcher<String> batcher = new MessageBatcher<>(batch -> latch.countDown(), Runnable::run, 100, Duration.ofMillis(20));
+
+        long start = System.nanoTime();
+        batcher.offer("hello");
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(20).toNanos());
+        assertEquals(1, batcher.getLastBatchSize());
+    }
+
+    @Test
+    void testConcurrentProducersLoseNothing() throws Exception {
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        ExecutorService ui = Executors.newSingleThreadExecutor();
+        try {
+            MessageBatcher<String> batcher = new MessageBatcher<>(delivered::addAll, ui, 500, Duration.ofMillis(5));
+            List<Thread> producers = new ArrayList<>();
+            for (int p = 0; p < 4; p++) {
+                final int producer = p;
+                producers.add(Thread.ofPlatform().start(() -> {
+                    for (int i = 0; i < 5_000; i++) batcher.offer(producer + ":" + i);
+                }));
+            }
+            for (Thread t : producers) t.join();
+
+            waitFor(() -> delivered.size() == 20_000);
+            assertEquals(20_000, delivered.stream().distinct().count());
+            assertTrue(batcher.getLargestBatchSize() <= 500);
+        } finally {
+            ui.shutdownNow();
+        }
+    }
+
+    @Test
+    void testRejectsInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new MessageBatcher<String>(b -> {}, Runnable::run, 0, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> new MessageBatcher<String>(b -> {}, Runnable::run, 1, Duration.ofMillis(-1)));
+    }
+}
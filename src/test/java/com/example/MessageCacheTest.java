@@ -0,0 +1,150 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.TestSupport.waitFor;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private static ChatMessage message(int i) {
+        return new ChatMessage("id" + i, "user" + (i % 3), "message " + i, 1_700_000_000L + i);
+    }
+
+    @Test
+    void testRoundTripsMessagesAcrossReopen() throws Exception {
+        Path file = dir.resolve("chat.cache");
+        ChatMessage attachment = new ChatMessage("f1", "Åsa", "Sent file: 😀.png", 1_700_000_100L,
+                new ChatMessage.Attachment("😀.png", "https://ntfy.sh/file/f1.png", "image/png"));
+        try (MessageCache cache = new MessageCache(file, 100)) {
+            cache.append(message(1));
+            cache.append(attachment);
+        }
+        try (MessageCache cache = new MessageCache(file, 100)) {
+            List<ChatMessage> read = cache.readAll();
+            assertEquals(2, read.size());
+            assertEquals("f1", cache.getLastId());
+            assertEquals("message 1", read.get(0).getMessage());
+            assertNull(read.get(0).getFileName());
+            ChatMessage copy = read.get(1);
+            assertEquals("Åsa", copy.getUsername());
+            assertEquals("😀.png", copy.getFileName());
+            assertEquals("https://ntfy.sh/file/f1.png", copy.getFileUrl());
+            assertEquals("image/png", copy.getMimeType());
+            assertEquals(1_700_000_100L, copy.getTime());
+            assertFalse(copy.getTimestamp().isEmpty());
+        }
+    }
+
+    @Test
+    void testTruncatesTornTailAndKeepsAppending() throws Exception {
+        Path file = dir.resolve("torn.cache");
+        try (MessageCache cache = new MessageCache(file, 100)) {
+            for (int i = 0; i < 10; i++) cache.append(message(i));
+        }
+        long intactSize = Files.size(file);
+        // Simulate a crash halfway through writing the next record.
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ch.write(ByteBuffer.allocate(11).putInt(200).putInt(1234).put("hal".getBytes(StandardCharsets.UTF_8)).flip());
+        }
+
+        try (MessageCache cache = new MessageCache(file, 100)) {
+            assertEquals(10, cache.size());
+            assertEquals(intactSize, Files.size(file));
+            assertEquals(11, cache.getTruncatedBytes());
+            assertEquals("id9", cache.getLastId());
+            cache.append(message(10));
+            assertEquals(11, cache.readAll().size());
+        }
+    }
+
+    @Test
+    void testDropsRecordsFromFirstCorruptOne() throws Exception {
+        Path file = dir.resolve("corrupt.cache");
+        long sizeAfterFour;
+        try (MessageCache cache = new MessageCache(file, 100)) {
+            for (int i = 0; i < 4; i++) cache.append(message(i));
+            sizeAfterFour = cache.getFileSize();
+            for (int i = 4; i < 8; i++) cache.append(message(i));
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(new byte[]{'X'}), sizeAfterFour + 20);
+        }
+        try (MessageCache cache = new MessageCache(file, 100)) {
+            List<ChatMessage> read = cache.readAll();
+            assertEquals(4, read.size());
+            assertEquals("id3", cache.getLastId());
+        }
+    }
+
+    @Test
+    void testCompactsToNewestRecords() throws Exception {
+        Path file = dir.resolve("compact.cache");
+        try (MessageCache cache = new MessageCache(file, 10)) {
+            for (int i = 0; i < 21; i++) cache.append(message(i));
+            assertEquals(1, cache.getCompactions());
+            assertEquals(10, cache.size());
+            List<ChatMessage> read = cache.readAll();
+            assertEquals("id11", read.get(0).getId());
+            assertEquals("id20", read.get(9).getId());
+            cache.append(message(21));
+        }
+        try (MessageCache cache = new MessageCache(file, 10)) {
+            assertEquals(11, cache.size());
+            assertEquals("id21", cache.getLastId());
+        }
+    }
+
+    @Test
+    void testModelRendersFromCacheThenFetchesOnlyNewerMessages() throws Exception {
+        Path file = MessageCache.fileFor(dir, "topic");
+        try (FakeNtfyServer server = new FakeNtfyServer();
+             HttpClientTransport transport = new HttpClientTransport(Duration.ofSeconds(2), Duration.ofSeconds(5))) {
+            String url = server.topicUrl("cached");
+            for (int i = 0; i < 5; i++) publish(transport, url, i);
+
+            List<ChatMessage> first = new CopyOnWriteArrayList<>();
+            try (MessageCache cache = new MessageCache(file, 100); HelloModel model = new HelloModel(url, transport)) {
+                assertTrue(model.loadCached(cache).isEmpty());
+                model.subscribe(cache, first::add);
+                waitFor(() -> first.size() == 5);
+            }
+
+            for (int i = 5; i < 8; i++) publish(transport, url, i);
+
+            List<ChatMessage> second = new CopyOnWriteArrayList<>();
+            try (MessageCache cache = new MessageCache(file, 100); HelloModel model = new HelloModel(url, transport)) {
+                List<ChatMessage> cached = model.loadCached(cache);
+                assertEquals(5, cached.size());
+                assertEquals("4", cached.get(4).getMessage());
+                NtfySubscription sub = model.subscribe(cache, second::add);
+                waitFor(() -> second.size() == 3);
+                assertEquals(3, sub.getMessageCount(), "only messages after the cached id are fetched");
+                assertEquals("5", second.get(0).getMessage());
+                assertEquals(8, cache.size());
+            }
+        }
+    }
+
+    private static void publish(HttpClientTransport transport, String url, int i) throws Exception {
+        String json = "{\"username\":\"erin\",\"message\":\"" + i + "\",\"time\":0}";
+        assertTrue(transport.postAsync(url, json.getBytes(StandardCharsets.UTF_8), Map.of())
+                .get(5, TimeUnit.SECONDS).isSuccess());
+    }
+}
@@ -0,0 +1,103 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageIndexTest {
+
+    private static final long DAY = LocalDate.of(2025, 1, 31).atStartOfDay(ZoneId.systemDefault()).toEpochSecond();
+
+    private static ChatMessage message(String id, String user, String text, long time) {
+        return new ChatMessage(id, user, text, time);
+    }
+
+    private static List<String> ids(List<ChatMessage> messages) {
+        return messages.stream().map(ChatMessage::getId).toList();
+    }
+
+    private static MessageStore store() {
+        MessageStore store = new MessageStore(100, null);
+        store.append(message("1", "alice", "Lunch at noon?", DAY + 3600));
+        store.append(message("2", "bob", "Sure, lunch sounds good", DAY + 3700));
+        store.append(message("3", "alice", "Meeting moved to Tuesday", DAY + 90_000));
+        store.append(new ChatMessage("4", "bob", "Sent file: lunch-menu.pdf", DAY + 91_000,
+                new ChatMessage.Attachment("lunch-menu.pdf", "https://ntfy.example/file/lunch-menu.pdf", "application/pdf")));
+        store.append(message("5", "carol", "Lunchtime!", DAY + 92_000));
+        return store;
+    }
+
+    @Test
+    void testParseSplitsTermsAndOperators() {
+        MessageQuery q = MessageQuery.parse("  Lunch, from:bob after:2025-01-31 MENU ");
+        assertEquals(List.of("lunch", "menu"), q.terms());
+        assertEquals("bob", q.fromUser());
+        assertEquals(DAY, q.since());
+        assertEquals(Long.MAX_VALUE, q.until());
+        assertSame(MessageQuery.ALL, MessageQuery.parse(" "));
+        assertEquals(List.of("after", "yesterday"), MessageQuery.parse("after:yesterday").terms());
+    }
+
+    @Test
+    void testSearchMatchesWordPrefixesInTextAndFileNames() {
+        MessageStore store = store();
+        assertEquals(List.of("1", "2", "4", "5"), ids(store.search(MessageQuery.parse("lunch"), 10)));
+        assertEquals(List.of("4"), ids(store.search(MessageQuery.parse("lunch men"), 10)));
+        assertEquals(List.of("3"), ids(store.search(MessageQuery.parse("tues"), 10)));
+        assertTrue(store.search(MessageQuery.parse("dinner"), 10).isEmpty());
+        assertEquals(List.of("4", "5"), ids(store.search(MessageQuery.parse("lunch"), 2)), "limit keeps the newest");
+    }
+
+    @Test
+    void testSearchByUserExcludedUserAndDate() {
+        MessageStore store = store();
+        assertEquals(List.of("1", "3"), ids(store.search(MessageQuery.parse("from:alice"), 10)));
+        assertEquals(List.of("2", "4"), ids(store.search(MessageQuery.parse("lunch from:bob"), 10)));
+        assertEquals(List.of("2", "4", "5"), ids(store.search(MessageQuery.ALL.excluding("alice"), 10)));
+        assertEquals(List.of("3", "4", "5"), ids(store.search(MessageQuery.parse("after:2025-02-01"), 10)));
+        assertEquals(List.of("1", "2"), ids(store.search(MessageQuery.parse("before:2025-02-01"), 10)));
+        assertEquals(List.of("4", "5"), ids(store.search(MessageQuery.parse("lunch after:2025-02-01"), 10)));
+    }
+
+    @Test
+    void testEmptyAndInvertedDateRangesMatchNothing() {
+        MessageStore store = store();
+        assertTrue(store.search(MessageQuery.parse("after:2025-02-01 before:2025-02-01"), 10).isEmpty());
+        assertTrue(store.search(MessageQuery.parse("after:2025-02-01 before:2025-01-01"), 10).isEmpty());
+        assertTrue(store.search(MessageQuery.parse("lunch after:2025-02-01 before:2025-01-01"), 10).isEmpty());
+    }
+
+    @Test
+    void testPagesOlderMatchesBeforeAnchor() {
+        MessageStore store = store();
+        MessageQuery lunch = MessageQuery.parse("lunch");
+        List<ChatMessage> window = store.search(lunch, 2);
+        assertEquals(List.of("1", "2"), ids(store.pageBefore(window.get(0), lunch, 10)));
+        assertEquals(List.of("2"), ids(store.pageBefore(window.get(0), lunch, 1)));
+    }
+
+    @Test
+    void testEvictedMessagesLeaveTheIndex() {
+        MessageStore store = new MessageStore(10, null);
+        for (int i = 0; i < 5000; i++) store.append(message("id-" + i, "user" + (i % 3), "word" + i + " common", DAY));
+
+        assertEquals(List.of("id-4999"), ids(store.search(MessageQuery.parse("word4999"), 10)));
+        assertTrue(store.search(MessageQuery.parse("word10"), 10).isEmpty());
+        assertEquals(10, store.search(MessageQuery.parse("common"), 100).size());
+        assertEquals(List.of("id-4990", "id-4993", "id-4996", "id-4999"), ids(store.search(MessageQuery.parse("from:user1"), 100)));
+    }
+
+    @Test
+    void testIndexSweepsWordsOnlyHeldByEvictedMessages() {
+        MessageIndex index = new MessageIndex();
+        for (int i = 0; i < 5000; i++) {
+            index.add(i, message("id-" + i, "u", "word" + i, DAY), DAY);
+            index.evictBefore(Math.max(0, i - 9));
+        }
+        assertTrue(index.wordCount() < 2100, "indexed words: " + index.wordCount());
+    }
+}
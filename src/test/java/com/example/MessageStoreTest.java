@@ -0,0 +1,108 @@
+package com.example;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.TestSupport.usedHeapAfterGc;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageStoreTest {
+
+    private static ChatMessage message(long i, long time) {
+        return new ChatMessage("id-" + i, "user" + (i % 50), "message number " + i, time);
+    }
+
+    @Test
+    void testEvictsOldestMessagesAndReportsThem() {
+        MessageStore store = new MessageStore(3, null);
+        List<String> evicted = new ArrayList<>();
+        store.setEvictionListener(msg -> evicted.add(msg.getId()));
+
+        long now = Instant.now().getEpochSecond();
+        for (int i = 0; i < 5; i++) store.append(message(i, now));
+
+        assertEquals(3, store.size());
+        assertEquals(List.of("id-0", "id-1"), evicted);
+        assertEquals(List.of("id-2", "id-3", "id-4"), store.newest(10).stream().map(ChatMessage::getId).toList());
+    }
+
+    @Test
+    void testEvictsMessagesOlderThanMaxAge() {
+        MessageStore store = new MessageStore(100, Duration.ofHours(1));
+        List<String> evicted = new ArrayList<>();
+        store.setEvictionListener(msg -> evicted.add(msg.getId()));
+
+        long now = Instant.now().getEpochSecond();
+        store.append(message(0, now - 7200));
+        store.append(message(1, now - 60));
+        store.append(message(2, now));
+
+        assertEquals(List.of("id-0"), evicted);
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void testPageBeforeReturnsOlderMessagesInOrder() {
+        MessageStore store = new MessageStore(100, null);
+        long now = Instant.now().getEpochSecond();
+        for (int i = 0; i < 20; i++) store.append(message(i, now));
+
+        List<ChatMessage> window = store.newest(5);
+        assertEquals("id-15", window.get(0).getId());
+
+        List<ChatMessage> page = store.pageBefore(window.get(0), 4);
+        assertEquals(List.of("id-11", "id-12", "id-13", "id-14"), page.stream().map(ChatMessage::getId).toList());
+
+        List<ChatMessage> first = store.pageBefore(store.newest(20).get(2), 10);
+        assertEquals(List.of("id-0", "id-1"), first.stream().map(ChatMessage::getId).toList());
+    }
+
+    @Test
+    void testPrependedHistoryPagesAndSearchesBeforeNewerMessages() {
+        MessageStore store = new MessageStore(5, null);
+        List<String> evicted = new ArrayList<>();
+        store.setEvictionListener(msg -> evicted.add(msg.getId()));
+        long now = Instant.now().getEpochSecond();
+        for (int i = 4; i < 7; i++) store.append(message(i, now));
+
+        store.prependAll(List.of(message(1, now), message(2, now), message(3, now)));
+
+        assertEquals(List.of("id-1"), evicted);
+        assertEquals(List.of("id-2", "id-3", "id-4", "id-5", "id-6"), store.newest(10).stream().map(ChatMessage::getId).toList());
+        assertEquals(List.of("id-2", "id-3"), store.pageBefore(store.newest(3).get(0), 10).stream().map(ChatMessage::getId).toList());
+        assertEquals(List.of("id-3", "id-4", "id-5", "id-6"), store.search(MessageQuery.parse("message"), 4)
+                .stream().map(ChatMessage::getId).toList());
+        assertEquals(List.of("id-2"), store.search(MessageQuery.parse("from:user2"), 10).stream().map(ChatMessage::getId).toList());
+    }
+
+    @Test
+    void testPageBeforeUnknownAnchorIsEmpty() {
+        MessageStore store = new MessageStore(10, null);
+        store.append(message(1, 0));
+        assertTrue(store.pageBefore(message(2, 0), 5).isEmpty());
+    }
+
+    /** Heap measurement over a million messages; runs with {@code -Psoak}. */
+    @Test
+    @Tag("soak")
+    void testHeapStaysFlatWhileStreamingOneMillionMessages() throws InterruptedException {
+        MessageStore store = new MessageStore(10_000, null);
+        long now = Instant.now().getEpochSecond();
+
+        for (int i = 0; i < 100_000; i++) store.append(message(i, now));
+        long warmHeap = usedHeapAfterGc();
+
+        for (int i = 100_000; i < 1_000_000; i++) store.append(message(i, now));
+        long steadyHeap = usedHeapAfterGc();
+
+        assertEquals(10_000, store.size());
+        assertEquals(990_000, store.getEvictedCount());
+        long growth = steadyHeap - warmHeap;
+        assertTrue(growth < 16L * 1024 * 1024, "heap grew by " + growth + " bytes");
+    }
+}
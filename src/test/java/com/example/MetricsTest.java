@@ -0,0 +1,126 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    @Test
+    void testRegistrationIsIdempotentAndTypeChecked() {
+        Metrics metrics = new Metrics();
+        Metrics.Counter counter = metrics.counter("a_total", "A");
+        assertSame(counter, metrics.counter("a_total", "A"));
+        assertThrows(IllegalArgumentException.class, () -> metrics.histogram("a_total", "A", "us"));
+        assertThrows(IllegalArgumentException.class, () -> metrics.gauge("a_total", "A", () -> 1));
+
+        counter.increment();
+        counter.add(4);
+        assertEquals(5, counter.get());
+        Metrics.Histogram h = metrics.histogram("b_us", "B", "us");
+        for (int i = 1; i <= 100; i++) h.record(i);
+        assertEquals(100, h.count());
+        assertEquals(5050, h.sum());
+        assertEquals(100, h.max());
+        assertEquals(50, h.percentile(50), 3);
+    }
+
+    @Test
+    void testPrometheusTextGroupsLabelledSeriesUnderOneHeader() {
+        Metrics metrics = new Metrics();
+        AtomicLong depth = new AtomicLong(7);
+        metrics.gauge("q{kind=\"send\"}", "Queue depth", depth::get);
+        metrics.counter("q_other_total", "Other").add(3);
+        metrics.gauge("q{kind=\"upload\"}", "Queue depth", () -> 2);
+        Metrics.Histogram h = metrics.histogram("lat_us{op=\"send\"}", "Latency", "us");
+        h.record(10);
+        h.record(20);
+
+        String text = PrometheusMetricsExporter.format(metrics);
+        assertEquals(1, text.lines().filter(l -> l.equals("# TYPE q gauge")).count());
+        assertTrue(text.contains("# TYPE q gauge\nq{kind=\"send\"} 7\nq{kind=\"upload\"} 2\n"), text);
+        assertTrue(text.contains("# TYPE q_other_total counter\nq_other_total 3\n"), text);
+        assertTrue(text.contains("# TYPE lat_us summary\n"), text);
+        assertTrue(text.contains("lat_us{op=\"send\",quantile=\"0.5\"} 10\n"), text);
+        assertTrue(text.contains("lat_us_sum{op=\"send\"} 30\n"), text);
+        assertTrue(text.contains("lat_us_count{op=\"send\"} 2\n"), text);
+    }
+
+    @Test
+    void testPrometheusEndpointServesCurrentValues() throws Exception {
+        Metrics metrics = new Metrics();
+        Metrics.Counter counter = metrics.counter("hits_total", "Hits");
+        try (PrometheusMetricsExporter exporter = new PrometheusMetricsExporter(metrics, 0);
+             HttpClient client = HttpClient.newHttpClient()) {
+            counter.add(42);
+            HttpResponse<String> resp = client.send(
+                    HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + exporter.getPort() + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, resp.statusCode());
+            assertEquals(PrometheusMetricsExporter.CONTENT_TYPE, resp.headers().firstValue("Content-Type").orElse(null));
+            assertTrue(resp.body().contains("hits_total 42\n"), resp.body());
+        }
+    }
+
+    @Test
+    void testJmxExposesEveryMetricAsAnAttribute() throws Exception {
+        Metrics metrics = new Metrics();
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        ObjectName name = new ObjectName(JmxMetricsExporter.OBJECT_NAME);
+        try (JmxMetricsExporter ignored = new JmxMetricsExporter(metrics, server, name)) {
+            metrics.counter("sent_total", "Sent").add(3);
+            metrics.gauge("tasks{kind=\"send\"}", "Tasks", () -> 2);
+            metrics.histogram("lat_us", "Latency", "us").record(5);
+
+            assertEquals(3L, server.getAttribute(name, "sent_total"));
+            assertEquals(2L, server.getAttribute(name, "tasks_kind_send"));
+            assertEquals(1L, server.getAttribute(name, "lat_us_count"));
+            assertEquals(5L, server.getAttribute(name, "lat_us_p99"));
+            assertEquals(6, server.getMBeanInfo(name).getAttributes().length);
+            assertInstanceOf(NoSuchMethodException.class,
+                    assertThrows(ReflectionException.class, () -> server.invoke(name, "reset", null, null)).getCause());
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    void testLogSnapshotSkipsIdleMetricsAndReportsRates() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.counter("idle_total", "Idle");
+        Metrics.Counter busy = metrics.counter("busy_total", "Busy");
+        metrics.histogram("lat_us", "Latency", "us").record(8);
+        try (LogMetricsExporter exporter = new LogMetricsExporter(metrics, Duration.ofHours(1))) {
+            busy.add(10);
+            String line = exporter.snapshot();
+            assertFalse(line.contains("idle_total"), line);
+            assertTrue(line.contains("busy_total=10 ("), line);
+            assertTrue(line.contains("lat_us{n=1 p50=8 p99=8 max=8 us}"), line);
+        }
+    }
+
+    @Test
+    void testDecoderCountsLinesAndParseFailures() throws Exception {
+        Metrics.Counter lines = Metrics.shared().counter("ntfy_lines_parsed_total", "");
+        Metrics.Counter failures = Metrics.shared().counter("ntfy_parse_failures_total", "");
+        long linesBefore = lines.get();
+        long failuresBefore = failures.get();
+        String ndjson = "{\"id\":\"a\",\"event\":\"message\"}\n\nnot json\n{\"id\":\"b\",\"event\":\"keepalive\"}";
+        new NdjsonDecoder().decode(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), line -> { });
+        // Other tests may decode concurrently, so these are lower bounds.
+        assertTrue(lines.get() - linesBefore >= 3);
+        assertTrue(failures.get() - failuresBefore >= 1);
+    }
+}
@@ -0,0 +1,138 @@
+package com.example;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NdjsonDecoderTest {
+
+    private static String envelope(String id, long time, String payload) {
+        JSONObject json = new JSONObject();
+        json.put("id", id);
+        json.put("time", time);
+        json.put("event", "message");
+        json.put("topic", "chat");
+        json.put("message", payload);
+        return json.toString();
+    }
+
+    private static String chat(String user, String text) {
+        JSONObject json = new JSONObject();
+        json.put("username", user);
+        json.put("message", text);
+        json.put("time", 1700000000L);
+        return json.toString();
+    }
+
+    private static List<ChatMessage> decodeAll(InputStream in) throws IOException {
+        List<ChatMessage> out = new ArrayList<>();
+        new NdjsonDecoder().decode(in, line -> {
+            ChatMessage msg = line.toChatMessage();
+            if (msg != null) out.add(msg);
+        });
+        return out;
+    }
+
+    @Test
+    void testMatchesJsonObjectParsing() throws Exception {
+        JSONObject file = new JSONObject(chat("Bob", "Sent file: cat.png"));
+        file.put("fileName", "cat.png");
+        file.put("fileUrl", "https://ntfy.sh/file/abc-cat.png");
+        file.put("mimeType", "image/png");
+        List<String> lines = List.of(
+                envelope("a1", 1700000001L, chat("Alice", "Hi there")),
+                envelope("a2", 1700000002L, chat("Åsa", "quotes \" and \\ and\nnewlines\ttabs")),
+                envelope("a3", 1700000003L, chat("Émile", "emoji 😀 and   separators")),
+                envelope("a4", 1700000004L, file.toString()),
+                envelope("a5", 1700000005L, "{\"message\":\"no user\",\"extra\":[1,{\"x\":\"}\"}],\"n\":null}"));
+
+        List<ChatMessage> decoded = decodeAll(new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8)));
+        try (HelloModel model = new HelloModel("http://localhost:1/chat")) {
+            assertEquals(lines.size(), decoded.size());
+            for (int i = 0; i < lines.size(); i++) {
+                ChatMessage expected = model.parseEnvelopeToChatMessage(new JSONObject(lines.get(i)));
+                ChatMessage actual = decoded.get(i);
+                assertEquals(expected.getId(), actual.getId());
+                assertEquals(expected.getUsername(), actual.getUsername());
+                assertEquals(expected.getMessage(), actual.getMessage());
+                assertEquals(expected.getTimestamp(), actual.getTimestamp());
+                assertEquals(expected.getTime(), actual.getTime());
+                assertEquals(expected.getFileName(), actual.getFileName());
+                assertEquals(expected.getFileUrl(), actual.getFileUrl());
+                assertEquals(expected.getMimeType(), actual.getMimeType());
+            }
+        }
+    }
+
+    @Test
+    void testRejectsNonChatLinesWithoutFailing() throws Exception {
+        String stream = String.join("\n",
+                "{\"id\":\"o1\",\"time\":1,\"event\":\"open\",\"topic\":\"chat\"}",
+                "",
+                "{\"id\":\"k1\",\"time\":2,\"event\":\"keepalive\",\"topic\":\"chat\"}",
+                envelope("p1", 3, "Just plain text"),
+                "this is not json",
+                "{\"id\":\"t1\",\"message\":\"{\\\"unterminated",
+                envelope("ok", 4, chat("Carol", "still here")));
+
+        List<String> events = new ArrayList<>();
+        List<ChatMessage> chats = new ArrayList<>();
+        new NdjsonDecoder().decode(new ByteArrayInputStream(stream.getBytes(StandardCharsets.UTF_8)), line -> {
+            events.add(!line.isValid() ? "invalid" : line.isMessageEvent() ? "message" : "other");
+            if (line.hasJsonPayload()) chats.add(line.toChatMessage());
+        });
+
+        assertEquals(List.of("other", "other", "message", "invalid", "invalid", "message"), events);
+        assertEquals(1, chats.size());
+        assertEquals("ok", chats.get(0).getId());
+        assertEquals("still here", chats.get(0).getMessage());
+    }
+
+    @Test
+    void testHandlesLinesSplitAcrossReadsAndLongerThanTheBuffer() throws Exception {
+        String longText = "x".repeat(200_000);
+        String stream = envelope("l1", 1, chat("Dave", "short")) + "\r\n"
+                + envelope("l2", 2, chat("Dave", longText)) + "\n"
+                + envelope("l3", 3, chat("Dave", "ü"));
+        byte[] bytes = stream.getBytes(StandardCharsets.UTF_8);
+
+        // Hand the bytes out a few at a time so lines and multi-byte characters straddle reads.
+        InputStream trickle = new InputStream() {
+            int pos;
+            @Override public int read() { return pos < bytes.length ? bytes[pos++] & 0xFF : -1; }
+            @Override public int read(byte[] b, int off, int len) {
+                if (pos >= bytes.length) return -1;
+                int n = Math.min(Math.min(len, 7), bytes.length - pos);
+                System.arraycopy(bytes, pos, b, off, n);
+                pos += n;
+                return n;
+            }
+        };
+
+        List<ChatMessage> decoded = decodeAll(trickle);
+        assertEquals(3, decoded.size());
+        assertEquals("short", decoded.get(0).getMessage());
+        assertEquals(longText, decoded.get(1).getMessage());
+        assertEquals("ü", decoded.get(2).getMessage());
+    }
+
+    @Test
+    void testDecodesUnicodeEscapes() {
+        String line = "{\"id\":\"u1\",\"time\":5,\"message\":\"{\\\"username\\\":\\\"\\\\u00c5sa\\\",\\\"message\\\":\\\"\\\\ud83d\\\\ude00\\\"}\"}";
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        NdjsonDecoder decoder = new NdjsonDecoder();
+        assertTrue(decoder.decodeLine(bytes, 0, bytes.length));
+        ChatMessage msg = decoder.toChatMessage();
+        assertNotNull(msg);
+        assertEquals("Åsa", msg.getUsername());
+        assertEquals("😀", msg.getMessage());
+    }
+}
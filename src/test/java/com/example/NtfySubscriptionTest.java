@@ -0,0 +1,126 @@
+package com.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.example.TestSupport.waitFor;
+import static org.junit.jupiter.api.Assertions.*;
+
+class NtfySubscriptionTest {
+
+    private FakeNtfyServer server;
+    private HttpClientTransport transport;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeNtfyServer();
+        transport = new HttpClientTransport(Duration.ofSeconds(2), Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        transport.close();
+        server.close();
+    }
+
+    private void publish(String topic, String user, int i) throws Exception {
+        String json = "{\"username\":\"" + user + "\",\"message\":\"" + i + "\",\"time\":0}";
+        assertTrue(transport.postAsync(server.topicUrl(topic), json.getBytes(StandardCharsets.UTF_8), Map.of())
+                .get(5, TimeUnit.SECONDS).isSuccess());
+    }
+
+    private static NtfySubscription subscription(HttpClientTransport transport, String url, List<String> ids) {
+        return new NtfySubscription(transport, url, "all", line -> ids.add(line.id()),
+                Duration.ofMillis(500), Duration.ofMillis(10), Duration.ofMillis(50));
+    }
+
+    @Test
+    void testResumesFromLastIdAfterDroppedConnections() throws Exception {
+        for (int i = 0; i < 30; i++) publish("drops", "alice", i);
+        server.dropStreamsEvery(7);
+
+        List<String> ids = new CopyOnWriteArrayList<>();
+        try (NtfySubscription sub = subscription(transport, server.topicUrl("drops"), ids).start()) {
+            waitFor(() -> ids.size() >= 30);
+            for (int i = 30; i < 60; i++) publish("drops", "bob", i);
+            waitFor(() -> ids.size() >= 60);
+
+            assertTrue(sub.getReconnectCount() >= 4, "reconnects: " + sub.getReconnectCount());
+            assertTrue(sub.getGapFillCount() > 0);
+            assertEquals(server.messages("drops").get(59).id(), sub.getLastId());
+        }
+        List<String> expected = server.messages("drops").stream().map(FakeNtfyServer.Message::id).toList();
+        assertEquals(expected, ids, "every message exactly once and in order");
+    }
+
+    @Test
+    void testReconnectsWhenStreamStalls() throws Exception {
+        publish("stall", "carol", 0);
+        List<String> ids = new CopyOnWriteArrayList<>();
+        try (NtfySubscription sub = subscription(transport, server.topicUrl("stall"), ids).start()) {
+            waitFor(() -> ids.size() == 1);
+            server.setStalled(true);
+            publish("stall", "carol", 1);
+            waitFor(() -> sub.getStallCount() >= 1);
+            server.setStalled(false);
+
+            waitFor(() -> ids.size() == 2);
+            assertTrue(sub.getReconnectCount() >= 1);
+        }
+    }
+
+    @Test
+    void testModelSubscriptionMergesHistoryAndLiveIntoOneFeed() throws Exception {
+        for (int i = 0; i < 5; i++) publish("merged", "dave", i);
+        List<ChatMessage> received = new CopyOnWriteArrayList<>();
+        NtfySubscription sub;
+        try (HelloModel model = new HelloModel(server.topicUrl("merged"), transport)) {
+            sub = model.subscribe("all", received::add);
+            waitFor(() -> received.size() == 5);
+            for (int i = 5; i < 10; i++) publish("merged", "dave", i);
+            waitFor(() -> received.size() == 10);
+        }
+        for (int i = 0; i < 10; i++) assertEquals(String.valueOf(i), received.get(i).getMessage());
+        waitFor(() -> !sub.isConnected());
+    }
+
+    @Test
+    void testSkipsNonMessageEvents() throws Exception {
+        List<String> ids = new CopyOnWriteArrayList<>();
+        publish("events", "erin", 1);
+        try (NtfySubscription sub = new NtfySubscription(transport, server.topicUrl("events"), "all",
+                line -> ids.add(line.isMessageEvent() ? line.id() : "not a message")).start()) {
+            waitFor(() -> ids.size() == 1);
+            assertEquals(List.of(server.messages("events").get(0).id()), ids);
+            assertEquals(1, sub.getMessageCount());
+        }
+    }
+
+    @Test
+    void testCloseDoesNotInterruptTheHandler() throws Exception {
+        publish("busy", "frank", 1);
+        CompletableFuture<Void> entered = new CompletableFuture<>();
+        AtomicBoolean released = new AtomicBoolean();
+        CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+        NtfySubscription sub = new NtfySubscription(transport, server.topicUrl("busy"), "all", line -> {
+            entered.complete(null);
+            // Stands in for a cache write, which an interrupt would abort with ClosedByInterruptException.
+            while (!released.get()) Thread.onSpinWait();
+            interrupted.complete(Thread.currentThread().isInterrupted());
+        }).start();
+        entered.get(5, TimeUnit.SECONDS);
+        sub.close();
+        released.set(true);
+        assertFalse(interrupted.get(5, TimeUnit.SECONDS));
+    }
+}
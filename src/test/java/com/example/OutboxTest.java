@@ -0,0 +1,322 @@
+package com.example;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static com.example.TestSupport.waitFor;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboxTest {
+
+    @TempDir
+    Path dir;
+
+    private static final NtfyTransport.Response OK = new NtfyTransport.Response(200, "{}", Map.of());
+
+    private static final Function<JSONObject, CompletableFuture<NtfyTransport.Response>> UNREACHABLE =
+            json -> CompletableFuture.failedFuture(new IOException("connection refused"));
+
+    private Outbox open(Path file, Function<JSONObject, CompletableFuture<NtfyTransport.Response>> sender) throws IOException {
+        // A long backoff parks a failed outbox; one message per post unless a test joins them.
+        return new Outbox(file, sender, 4, 1, Duration.ofMinutes(10), Duration.ofMinutes(10));
+    }
+
+    private static JSONObject chat(String text) {
+        return chat("u", text);
+    }
+
+    private static JSONObject chat(String user, String text) {
+        return new JSONObject().put("username", user).put("message", text);
+    }
+
+    @Test
+    void testPendingMessagesSurviveReopenInOrder() throws Exception {
+        Path file = dir.resolve("chat.outbox");
+        JSONObject second = chat("two");
+        try (Outbox outbox = open(file, UNREACHABLE)) {
+            outbox.send(chat("one"));
+            outbox.send(second);
+            outbox.send(chat("three"));
+            waitFor(outbox::isOffline);
+            outbox.acknowledgeEcho(second.getString("cid"));
+            assertEquals(2, outbox.getPendingCount());
+        }
+
+        List<String> resent = new CopyOnWriteArrayList<>();
+        try (Outbox outbox = open(file, json -> {
+            resent.add(json.getString("message"));
+            return CompletableFuture.completedFuture(OK);
+        })) {
+            waitFor(() -> outbox.getPendingCount() == 0);
+        }
+        assertEquals(List.of("one", "three"), resent);
+    }
+
+    @Test
+    void testRewoundJournalDoesNotBringBackAcknowledgedMessages() throws Exception {
+        Path file = dir.resolve("chat.outbox");
+        AtomicBoolean reachable = new AtomicBoolean(true);
+        try (Outbox outbox = open(file, json -> reachable.get() ? CompletableFuture.completedFuture(OK) : UNREACHABLE.apply(json))) {
+            for (int i = 0; i < 50; i++) outbox.send(chat("sent " + i)).get(5, TimeUnit.SECONDS);
+            reachable.set(false);
+            outbox.send(chat("queued"));
+            waitFor(outbox::isOffline);
+        }
+        List<String> resent = new CopyOnWriteArrayList<>();
+        try (Outbox outbox = open(file, json -> {
+            resent.add(json.getString("message"));
+            return CompletableFuture.completedFuture(OK);
+        })) {
+            waitFor(() -> outbox.getPendingCount() == 0);
+        }
+        assertEquals(List.of("queued"), resent);
+    }
+
+    @Test
+    void testTornRecordIsIgnoredOnOpen() throws Exception {
+        Path file = dir.resolve("chat.outbox");
+        try (Outbox outbox = open(file, UNREACHABLE)) {
+            outbox.send(chat("whole"));
+            outbox.send(chat("torn"));
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        String text = new String(bytes, StandardCharsets.ISO_8859_1);
+        bytes[text.indexOf("torn")] = 'T';
+        Files.write(file, bytes);
+
+        try (Outbox outbox = open(file, UNREACHABLE)) {
+            assertEquals(1, outbox.getPendingCount());
+        }
+    }
+
+    @Test
+    void testRejectedMessagesAreDroppedNotRetried() throws Exception {
+        List<String> posted = new CopyOnWriteArrayList<>();
+        try (Outbox outbox = open(dir.resolve("chat.outbox"), json -> {
+            posted.add(json.getString("message"));
+            return CompletableFuture.completedFuture(new NtfyTransport.Response(413, "", Map.of()));
+        })) {
+            assertEquals(413, outbox.send(chat("too large")).get(5, TimeUnit.SECONDS).statusCode());
+            assertEquals(0, outbox.getPendingCount());
+            assertEquals(1, outbox.getDroppedCount());
+        }
+        assertEquals(List.of("too large"), posted);
+    }
+
+    @Test
+    void testOutageUnderContinuousSendingLosesAndDuplicatesNothing() throws Exception {
+        int total = 600;
+        try (FakeNtfyServer server = new FakeNtfyServer();
+             HttpClientTransport senderTransport = new HttpClientTransport(Duration.ofSeconds(2), Duration.ofSeconds(5));
+             HttpClientTransport receiverTransport = new HttpClientTransport(Duration.ofSeconds(2), Duration.ofSeconds(5));
+             HelloModel sender = new HelloModel(server.topicUrl("chat"), senderTransport);
+             HelloModel receiver = new HelloModel(server.topicUrl("chat"), receiverTransport)) {
+            Outbox outbox = sender.openOutbox(dir.resolve("chat.outbox"), 4, Outbox.DEFAULT_MAX_COALESCE,
+                    Duration.ofMillis(50), Duration.ofMillis(400));
+            sender.subscribe("all", msg -> { }).connected().get(10, TimeUnit.SECONDS);
+            Set<String> received = ConcurrentHashMap.newKeySet();
+            List<String> deliveries = new CopyOnWriteArrayList<>();
+            receiver.subscribe("all", msg -> {
+                for (String line : msg.getMessage().split("\n")) {
+                    deliveries.add(line);
+                    received.add(line);
+                }
+            }).connected().get(10, TimeUnit.SECONDS);
+
+            for (int i = 0; i < total; i++) {
+                if (i == 100) server.setOffline(true);
+                if (i == 500) {
+                    server.setOffline(false);
+                    // Stored but unanswered: these are sent again and must still arrive once.
+                    server.loseNextResponses(5);
+                }
+                sender.enqueueMessage("u", "message " + i);
+                Thread.sleep(5);
+            }
+            waitFor(() -> outbox.getPendingCount() == 0);
+            waitFor(() -> received.size() == total);
+            Thread.sleep(200);
+
+            assertEquals(total, deliveries.size(), "every message exactly once");
+            for (int i = 0; i < total; i++) assertEquals("message " + i, deliveries.get(i), "in the order they were sent");
+            assertTrue(server.messages("chat").size() < total, "the backlog was flushed in joined posts");
+        }
+    }
+
+    @Test
+    void testEachUsersMessagesArePostedOneAtATimeInOrder() throws Exception {
+        Map<String, List<Integer>> posted = new ConcurrentHashMap<>();
+        Set<String> inFlight = ConcurrentHashMap.newKeySet();
+        AtomicInteger overlapping = new AtomicInteger();
+        AtomicInteger mostInFlight = new AtomicInteger();
+        AtomicBoolean twoPerUser = new AtomicBoolean();
+        try (Outbox outbox = open(dir.resolve("chat.outbox"), json -> {
+            String user = json.getString("username");
+            if (!inFlight.add(user)) twoPerUser.set(true);
+            mostInFlight.accumulateAndGet(overlapping.incrementAndGet(), Math::max);
+            posted.computeIfAbsent(user, u -> new CopyOnWriteArrayList<>()).add(Integer.parseInt(json.getString("message")));
+            return CompletableFuture.supplyAsync(() -> {
+                inFlight.remove(user);
+                overlapping.decrementAndGet();
+                return OK;
+            }, CompletableFuture.delayedExecutor(ThreadLocalRandom.current().nextInt(3), TimeUnit.MILLISECONDS));
+        })) {
+            List<CompletableFuture<NtfyTransport.Response>> sent = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                for (int user = 0; user < 6; user++) sent.add(outbox.send(chat("user" + user, Integer.toString(i))));
+            }
+            CompletableFuture.allOf(sent.toArray(CompletableFuture[]::new)).get(20, TimeUnit.SECONDS);
+        }
+        assertFalse(twoPerUser.get(), "a user had two messages in flight");
+        assertTrue(mostInFlight.get() > 1, "users are flushed concurrently");
+        assertTrue(mostInFlight.get() <= 4, "at most maxConcurrent posts in flight");
+        for (int user = 0; user < 6; user++) {
+            assertEquals(IntStream.range(0, 100).boxed().toList(), posted.get("user" + user));
+        }
+    }
+
+    @Test
+    void testQueuedTextMessagesOfOneUserAreJoinedInOrder() throws Exception {
+        CompletableFuture<Void> gate = new CompletableFuture<>();
+        Map<String, List<JSONObject>> posted = new ConcurrentHashMap<>();
+        List<CompletableFuture<NtfyTransport.Response>> sent = new ArrayList<>();
+        try (Outbox outbox = new Outbox(dir.resolve("chat.outbox"), json -> {
+            posted.computeIfAbsent(json.getString("username"), u -> new CopyOnWriteArrayList<>()).add(json);
+            return gate.thenApply(v -> OK);
+        }, 4, 10, Duration.ofMillis(10), Duration.ofMillis(10))) {
+            for (int i = 0; i < 40; i++) {
+                JSONObject json = chat(Integer.toString(i));
+                if (i == 20) json.put("fileName", "photo.png");
+                sent.add(outbox.send(json));
+                sent.add(outbox.send(chat("other", Integer.toString(i))));
+            }
+            gate.complete(null);
+            CompletableFuture.allOf(sent.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+            assertEquals(80, outbox.getAckedCount());
+        }
+        for (String user : List.of("u", "other")) {
+            List<String> lines = new ArrayList<>();
+            for (JSONObject json : posted.get(user)) {
+                String[] joined = json.getString("message").split("\n");
+                assertTrue(joined.length <= 10, "at most maxCoalesce messages per post");
+                if (json.has("fileName")) assertEquals(List.of("20"), List.of(joined), "a file message goes alone");
+                lines.addAll(List.of(joined));
+            }
+            assertEquals(IntStream.range(0, 40).mapToObj(Integer::toString).toList(), lines);
+            assertTrue(posted.get(user).size() < 40, user + " posted " + posted.get(user).size() + " times");
+        }
+    }
+
+    @Test
+    void testBatchIsResentUnchangedAndAcknowledgedByItsEcho() throws Exception {
+        Path file = dir.resolve("chat.outbox");
+        CompletableFuture<Void> gate = new CompletableFuture<>();
+        AtomicBoolean holding = new AtomicBoolean();
+        List<JSONObject> failed = new CopyOnWriteArrayList<>();
+        try (Outbox outbox = new Outbox(file, json -> {
+            if (json.getString("message").equals("one")) {
+                holding.set(true);
+                return gate.thenApply(v -> OK);
+            }
+            failed.add(json);
+            return UNREACHABLE.apply(json);
+        }, 4, 10, Duration.ofMillis(10), Duration.ofMillis(10))) {
+            outbox.send(chat("one"));
+            waitFor(holding::get);
+            outbox.send(chat("two"));
+            outbox.send(chat("three"));
+            waitFor(() -> journalContains(file, "three"));
+            gate.complete(null);
+            waitFor(() -> failed.size() >= 3);
+        }
+        JSONObject batch = failed.get(0);
+        assertEquals("two\nthree", batch.getString("message"));
+        for (JSONObject retry : failed) assertEquals(batch.toMap(), retry.toMap(), "retried unchanged");
+
+        List<JSONObject> resent = new CopyOnWriteArrayList<>();
+        try (Outbox outbox = open(file, json -> {
+            resent.add(json);
+            return UNREACHABLE.apply(json);
+        })) {
+            waitFor(() -> !resent.isEmpty());
+            assertEquals(batch.toMap(), resent.get(0).toMap(), "resent unchanged after a restart");
+            outbox.acknowledgeEcho(batch.getString("cid"));
+            assertEquals(0, outbox.getPendingCount());
+            assertEquals(2, outbox.getEchoAckedCount());
+        }
+        try (Outbox outbox = open(file, UNREACHABLE)) {
+            assertEquals(0, outbox.getPendingCount());
+        }
+    }
+
+    private static boolean journalContains(Path file, String text) {
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1).contains(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    void testRetryAfterIsWaitedOut() throws Exception {
+        List<Long> attempts = new CopyOnWriteArrayList<>();
+        try (Outbox outbox = new Outbox(dir.resolve("chat.outbox"), json -> {
+            attempts.add(System.nanoTime());
+            return CompletableFuture.completedFuture(attempts.size() == 1
+                    ? new NtfyTransport.Response(429, "", Map.of("retry-after", List.of("1")))
+                    : OK);
+        }, 4, 1, Duration.ofMillis(10), Duration.ofMinutes(1))) {
+            assertEquals(200, outbox.send(chat("limited")).get(10, TimeUnit.SECONDS).statusCode());
+        }
+        assertEquals(2, attempts.size());
+        assertTrue(attempts.get(1) - attempts.get(0) >= TimeUnit.MILLISECONDS.toNanos(1000), "retried before Retry-After");
+    }
+
+    @Test
+    void testJournalIsCompactedOnceAcknowledgedRecordsDominate() throws Exception {
+        Path file = dir.resolve("chat.outbox");
+        String filler = "x".repeat(1000);
+        try (Outbox outbox = open(file, json -> json.getString("username").equals("stuck")
+                ? new CompletableFuture<>()
+                : CompletableFuture.completedFuture(OK))) {
+            outbox.send(chat("stuck", "never answered"));
+            // 5 MB sent, but never more than 50 KB of it pending at once.
+            for (int round = 0; round < 100; round++) {
+                for (int i = 0; i < 50; i++) outbox.send(chat(filler));
+                waitFor(() -> outbox.getPendingCount() == 1);
+            }
+            assertTrue(outbox.getCompactions() > 0);
+            assertTrue(Files.size(file) < 2L * 1024 * 1024, "journal of " + Files.size(file) + " bytes");
+        }
+
+        List<String> resent = new CopyOnWriteArrayList<>();
+        try (Outbox outbox = open(file, json -> {
+            resent.add(json.getString("message"));
+            return CompletableFuture.completedFuture(OK);
+        })) {
+            waitFor(() -> outbox.getPendingCount() == 0);
+        }
+        assertEquals(List.of("never answered"), resent);
+    }
+}
@@ -0,0 +1,159 @@
+package com.example;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.TestSupport.waitFor;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RelayTest {
+
+    @TempDir
+    Path dir;
+
+    private FakeNtfyServer server;
+    private HttpClientTransport transport;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeNtfyServer();
+        transport = new HttpClientTransport(Duration.ofSeconds(2), Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        transport.close();
+        server.close();
+    }
+
+    @Test
+    void testParseOptions() {
+        Relay.Options options = Relay.parse(new String[] {"--subscribe", "http://a/x,http://a/y", "--since", "10m",
+                "--publish", "http://a/z", "--batch", "8", "--unordered"});
+        assertEquals(List.of("http://a/x", "http://a/y"), options.subscribe());
+        assertEquals("10m", options.since());
+        assertEquals(Relay.Format.NDJSON, options.format());
+        assertEquals("relay", options.user());
+        assertEquals(8, options.batch());
+        assertTrue(options.unordered());
+
+        assertThrows(IllegalArgumentException.class, () -> Relay.parse(new String[0]));
+        assertThrows(IllegalArgumentException.class, () -> Relay.parse(new String[] {"--subscribe", "u", "--format", "binary"}));
+        assertThrows(IllegalArgumentException.class, () -> Relay.parse(new String[] {"--publish", "u", "--batch", "0"}));
+        assertThrows(IllegalArgumentException.class, () -> Relay.parse(new String[] {"--publish"}));
+    }
+
+    @Test
+    void testParseLineAcceptsChatJsonAndPlainText() {
+        JSONObject chat = Relay.parseLine("{\"username\":\"alice\",\"message\":\"hi\",\"time\":42}", "relay");
+        assertEquals("alice", chat.getString("username"));
+        assertEquals("hi", chat.getString("message"));
+        assertEquals(42, chat.getLong("time"));
+
+        JSONObject text = Relay.parseLine("{not json}", "relay");
+        assertEquals("relay", text.getString("username"));
+        assertEquals("{not json}", text.getString("message"));
+    }
+
+    @Test
+    void testPublishesEveryInputLineInOrder() throws Exception {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            input.append(i % 2 == 0 ? "line " + i : "{\"username\":\"bob\",\"message\":\"line " + i + "\"}").append('\n');
+        }
+        input.append("\n   \n");
+        Relay.Options options = Relay.parse(new String[] {"--publish", server.topicUrl("out")});
+        Relay.PublishStats stats;
+        try (Relay relay = new Relay(options, transport)) {
+            stats = relay.publish(new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+        assertEquals(500, stats.lines(), "blank lines are skipped");
+        assertEquals(500, stats.published());
+        assertEquals(0, stats.failed());
+
+        List<FakeNtfyServer.Message> received = server.messages("out");
+        assertEquals(500, received.size());
+        int lastRelay = -1, lastBob = -1;
+        for (FakeNtfyServer.Message m : received) {
+            JSONObject json = new JSONObject(m.message());
+            int n = Integer.parseInt(json.getString("message").substring(5));
+            if (json.getString("username").equals("relay")) {
+                assertTrue(n > lastRelay, "one user's lines keep their order");
+                lastRelay = n;
+            } else {
+                assertTrue(n > lastBob, "one user's lines keep their order");
+                lastBob = n;
+            }
+        }
+    }
+
+    @Test
+    void testBatchJoinsQueuedLines() throws Exception {
+        server.setPublishLatency(20, 20);
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 200; i++) input.append("line ").append(i).append('\n');
+        Relay.Options options = Relay.parse(new String[] {"--publish", server.topicUrl("out"), "--batch", "50"});
+        try (Relay relay = new Relay(options, transport)) {
+            Relay.PublishStats stats = relay.publish(new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8)));
+            assertEquals(200, stats.published());
+        }
+        List<FakeNtfyServer.Message> received = server.messages("out");
+        assertTrue(received.size() < 200, "queued lines were coalesced, got " + received.size());
+        String joined = String.join("\n", received.stream().map(m -> new JSONObject(m.message()).getString("message")).toList());
+        assertEquals(input.toString().strip(), joined);
+    }
+
+    @Test
+    void testSubscribeWritesNdjsonOfEveryTopic() throws Exception {
+        long now = Instant.now().getEpochSecond();
+        server.seed("a", now - 5, "{\"username\":\"alice\",\"message\":\"old\"}");
+        server.seed("a", now - 4, "plain notification");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Relay.Options options = Relay.parse(new String[] {"--subscribe", server.topicUrl("a") + "," + server.topicUrl("b")});
+        try (Relay relay = new Relay(options, transport)) {
+            relay.subscribe(out);
+            relay.connected().get(10, TimeUnit.SECONDS);
+            assertEquals(1, server.openStreams(), "both topics share one stream");
+            // The history of a is replayed after connecting; publish to b once it is out.
+            waitFor(() -> relay.getWritten() == 1);
+            server.seed("b", now, "{\"username\":\"bob\",\"message\":\"new\"}");
+            waitFor(() -> relay.getWritten() == 2);
+        }
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        JSONObject first = new JSONObject(lines[0]);
+        assertEquals(server.topicUrl("a"), first.getString("topic"));
+        assertEquals("old", first.getString("message"));
+        JSONObject second = new JSONObject(lines[1]);
+        assertEquals(server.topicUrl("b"), second.getString("topic"));
+        assertEquals("bob", second.getString("username"));
+    }
+
+    @Test
+    void testSubscribeWritesBinaryLogPerTopic() throws Exception {
+        long now = Instant.now().getEpochSecond();
+        for (int i = 0; i < 100; i++) server.seed("a", now - 100 + i, "{\"username\":\"alice\",\"message\":\"m" + i + "\"}");
+        Relay.Options options = Relay.parse(new String[] {"--subscribe", server.topicUrl("a"), "--format", "binary", "--out", dir.toString()});
+        try (Relay relay = new Relay(options, transport)) {
+            relay.subscribe(new ByteArrayOutputStream());
+            waitFor(() -> relay.getWritten() == 100);
+        }
+        try (MessageCache cache = new MessageCache(MessageCache.fileFor(dir, server.topicUrl("a")), 1000)) {
+            List<ChatMessage> logged = cache.readAll();
+            assertEquals(100, logged.size());
+            assertEquals("m99", logged.get(99).getMessage());
+        }
+    }
+}
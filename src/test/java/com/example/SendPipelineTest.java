@@ -0,0 +1,169 @@
+package com.example;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SendPipelineTest {
+
+    private FakeNtfyServer server;
+    private HttpClientTransport transport;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeNtfyServer();
+        transport = new HttpClientTransport(Duration.ofSeconds(2), Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        transport.close();
+        server.close();
+    }
+
+    private Function<JSONObject, CompletableFuture<NtfyTransport.Response>> senderFor(String topic) {
+        String url = server.topicUrl(topic);
+        return json -> transport.postAsync(url, json.toString().getBytes(StandardCharsets.UTF_8), Map.of());
+    }
+
+    private static JSONObject message(String user, int seq) {
+        JSONObject json = new JSONObject();
+        json.put("username", user);
+        json.put("message", String.valueOf(seq));
+        return json;
+    }
+
+    @Test
+    void testTenThousandMessagesKeepPerUserOrderWithoutThreadExplosion() throws Exception {
+        int threadsBefore = Thread.getAllStackTraces().size();
+        AtomicInteger peakThreads = new AtomicInteger(threadsBefore);
+        Thread sampler = Thread.ofPlatform().daemon().start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakThreads.accumulateAndGet(Thread.getAllStackTraces().size(), Math::max);
+                try { Thread.sleep(20); } catch (InterruptedException e) { return; }
+            }
+        });
+
+        try (SendPipeline pipeline = new SendPipeline(senderFor("load"))) {
+            List<CompletableFuture<NtfyTransport.Response>> results = new ArrayList<>();
+            for (int i = 0; i < 10_000; i++) {
+                String user = "user" + (i % 20);
+                results.add(pipeline.submit(user, message(user, i)));
+            }
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+
+            assertEquals(10_000, pipeline.getSentCount());
+            assertEquals(0, pipeline.getQueueDepth());
+            assertTrue(pipeline.getLatency().percentileMicros(99) >= pipeline.getLatency().percentileMicros(50));
+        }
+
+        Map<String, Integer> lastSeen = new HashMap<>();
+        for (FakeNtfyServer.Message m : server.messages("load")) {
+            JSONObject json = new JSONObject(m.message());
+            int seq = Integer.parseInt(json.getString("message"));
+            Integer previous = lastSeen.put(json.getString("username"), seq);
+            assertTrue(previous == null || previous < seq, "out of order for " + json.getString("username"));
+        }
+        sampler.interrupt();
+        assertEquals(10_000, server.messages("load").size());
+        // Thread.getAllStackTraces only reports platform threads; the sampler itself accounts for one.
+        assertTrue(peakThreads.get() - threadsBefore < 20,
+                "platform threads grew from " + threadsBefore + " to " + peakThreads.get());
+    }
+
+    @Test
+    void testRetriesOnRateLimitAndServerErrors() throws Exception {
+        server.failNextPublishes(3, 429);
+        try (SendPipeline pipeline = new SendPipeline(senderFor("retry"), 16, 1, 5,
+                Duration.ofMillis(5), Duration.ofMillis(20), 1)) {
+            NtfyTransport.Response resp = pipeline.offer("alice", message("alice", 1)).get(10, TimeUnit.SECONDS);
+            assertTrue(resp.isSuccess());
+            assertEquals(3, pipeline.getRetryCount());
+        }
+        assertEquals(1, server.messages("retry").size());
+    }
+
+    @Test
+    void testGivesUpAfterMaxAttempts() throws Exception {
+        server.failNextPublishes(10, 503);
+        try (SendPipeline pipeline = new SendPipeline(senderFor("giveup"), 16, 1, 3,
+                Duration.ofMillis(1), Duration.ofMillis(5), 1)) {
+            NtfyTransport.Response resp = pipeline.offer("bob", message("bob", 1)).get(10, TimeUnit.SECONDS);
+            assertEquals(503, resp.statusCode());
+            assertEquals(1, pipeline.getFailedCount());
+        }
+    }
+
+    @Test
+    void testOfferRejectsWhenQueueIsFull() throws Exception {
+        CompletableFuture<NtfyTransport.Response> blocked = new CompletableFuture<>();
+        try (SendPipeline pipeline = new SendPipeline(json -> blocked, 2, 1, 1,
+                Duration.ofMillis(1), Duration.ofMillis(1), 1)) {
+            List<CompletableFuture<NtfyTransport.Response>> results = new ArrayList<>();
+            for (int i = 0; i < 5; i++) results.add(pipeline.offer("carol", message("carol", i)));
+
+            ExecutionException rejected = assertThrows(ExecutionException.class,
+                    () -> results.get(4).get(1, TimeUnit.SECONDS));
+            assertInstanceOf(RejectedExecutionException.class, rejected.getCause());
+            blocked.complete(new NtfyTransport.Response(200, "", Map.of()));
+        }
+    }
+
+    @Test
+    void testCloseFailsTheBatchInFlightAndTheQueue() throws Exception {
+        CompletableFuture<Void> posted = new CompletableFuture<>();
+        SendPipeline pipeline = new SendPipeline(json -> {
+            posted.complete(null);
+            return new CompletableFuture<>();
+        }, 8, 1, 1, Duration.ofMillis(1), Duration.ofMillis(1), 1);
+        CompletableFuture<NtfyTransport.Response> inFlight = pipeline.offer("erin", message("erin", 0));
+        CompletableFuture<NtfyTransport.Response> queued = pipeline.offer("erin", message("erin", 1));
+        posted.get(5, TimeUnit.SECONDS);
+        pipeline.close();
+
+        for (CompletableFuture<NtfyTransport.Response> result : List.of(inFlight, queued)) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        }
+        Throwable late = assertThrows(ExecutionException.class, () -> pipeline.offer("erin", message("erin", 2)).get()).getCause();
+        assertInstanceOf(RejectedExecutionException.class, late);
+        assertEquals("Send pipeline closed", late.getMessage());
+    }
+
+    @Test
+    void testCoalescesConsecutiveMessagesFromSameUser() throws Exception {
+        CompletableFuture<Void> gate = new CompletableFuture<>();
+        Function<JSONObject, CompletableFuture<NtfyTransport.Response>> sender = senderFor("coalesce");
+        try (SendPipeline pipeline = new SendPipeline(json -> gate.thenCompose(v -> sender.apply(json)), 64, 1, 1,
+                Duration.ofMillis(1), Duration.ofMillis(1), 10)) {
+            List<CompletableFuture<NtfyTransport.Response>> results = new ArrayList<>();
+            for (int i = 0; i < 6; i++) results.add(pipeline.offer("dave", message("dave", i)));
+            gate.complete(null);
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        }
+        List<FakeNtfyServer.Message> published = server.messages("coalesce");
+        assertTrue(published.size() < 6, "expected coalescing but got " + published.size() + " publishes");
+        StringBuilder all = new StringBuilder();
+        for (FakeNtfyServer.Message m : published) {
+            if (!all.isEmpty()) all.append('\n');
+            all.append(new JSONObject(m.message()).getString("message"));
+        }
+        assertEquals("0\n1\n2\n3\n4\n5", all.toString());
+    }
+}
@@ -0,0 +1,183 @@
+package com.example;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.example.TestSupport.platformThreads;
+import static com.example.TestSupport.usedHeapAfterGc;
+import static com.example.TestSupport.waitFor;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the real {@link HelloModel} against {@link FakeNtfyServer} under sustained load from a
+ * {@link LoadGenerator} while the model sends its own messages, then checks that every published
+ * message arrived exactly once and that throughput, end-to-end latency, heap and thread count
+ * stayed within bounds. A third test sends through an {@link Outbox} while ntfy is unreachable for
+ * half the run and checks that the backlog arrives exactly once. Excluded from the default build;
+ * run with {@code ./mvnw -Psoak test -Dsoak.seconds=600} (default 60 seconds per test).
+ */
+@Tag("soak")
+class SoakTest {
+
+    private static final Duration DURATION = Duration.ofSeconds(Long.getLong("soak.seconds", 60));
+    private static final int USERS = 50;
+    private static final double RATE_PER_USER = 2;
+    private static final double OWN_RATE = 10;
+    private static final long HEAP_GROWTH_LIMIT = 64L * 1024 * 1024;
+
+    @Test
+    void testSteadyLoadIsDeliveredExactlyOnceWithinBounds() throws Exception {
+        try (FakeNtfyServer server = new FakeNtfyServer()) {
+            soak(server, null, Duration.ofMillis(500));
+        }
+    }
+
+    @Test
+    void testDeliveryRecoversFromSlowPublishesAndDroppedStreams() throws Exception {
+        try (FakeNtfyServer server = new FakeNtfyServer()) {
+            server.setPublishLatency(5, 50);
+            soak(server, server::dropStreams, Duration.ofSeconds(3));
+        }
+    }
+
+    @Test
+    void testOutboxFlushesAnOutageWithoutLossOrDuplicates(@TempDir Path dir) throws Exception {
+        BitSet seen = new BitSet();
+        AtomicLong received = new AtomicLong();
+        AtomicLong duplicates = new AtomicLong();
+        AtomicLong reordered = new AtomicLong();
+        try (FakeNtfyServer server = new FakeNtfyServer();
+             HttpClientTransport own = new HttpClientTransport(Duration.ofSeconds(5), Duration.ofSeconds(30));
+             HttpClientTransport other = new HttpClientTransport(Duration.ofSeconds(5), Duration.ofSeconds(30));
+             HelloModel sender = new HelloModel(server.topicUrl("soak"), own);
+             HelloModel receiver = new HelloModel(server.topicUrl("soak"), other)) {
+            server.setRetention(1_000_000);
+            Outbox outbox = sender.openOutbox(dir.resolve("soak.outbox"), Outbox.DEFAULT_MAX_CONCURRENT,
+                    Outbox.DEFAULT_MAX_COALESCE, Duration.ofMillis(200), Duration.ofSeconds(2));
+            sender.subscribe("all", msg -> { }).connected().get(10, TimeUnit.SECONDS);
+            receiver.subscribe("all", msg -> {
+                // A flush joins queued messages into one post, one per line.
+                for (String line : msg.getMessage().split("\n")) {
+                    int seq = Integer.parseInt(line.substring("seq ".length()));
+                    synchronized (seen) {
+                        if (seen.get(seq)) duplicates.incrementAndGet();
+                        else if (seq < seen.length()) reordered.incrementAndGet();
+                        seen.set(seq);
+                    }
+                    received.incrementAndGet();
+                }
+            }).connected().get(10, TimeUnit.SECONDS);
+
+            // Offline for the middle half of the run, sending throughout.
+            long intervalNanos = (long) (1e9 / (OWN_RATE * 5));
+            long start = System.nanoTime(), next = start;
+            int sent = 0;
+            boolean offline = false;
+            for (long elapsed; (elapsed = System.nanoTime() - start) < DURATION.toNanos(); sent++) {
+                boolean outage = elapsed > DURATION.toNanos() / 4 && elapsed < DURATION.toNanos() * 3 / 4;
+                if (outage != offline) server.setOffline(offline = outage);
+                sender.enqueueMessage("me", "seq " + sent);
+                TimeUnit.NANOSECONDS.sleep(Math.max(0, (next += intervalNanos) - System.nanoTime()));
+            }
+            waitFor(() -> outbox.getPendingCount() == 0, Duration.ofSeconds(60));
+            int total = sent;
+            waitFor(() -> received.get() >= total, Duration.ofSeconds(30));
+
+            assertEquals(0, duplicates.get(), "duplicates delivered");
+            assertEquals(0, reordered.get(), "messages overtaking earlier ones");
+            assertEquals(total, seen.cardinality(), "messages lost");
+            assertEquals(0, outbox.getDroppedCount());
+        }
+    }
+
+    private void soak(FakeNtfyServer server, Runnable disruption, Duration p99Limit) throws Exception {
+        server.setRetention(10_000);
+        server.setKeepaliveInterval(1_000);
+        MessageStore store = new MessageStore(5_000, null);
+        Map<String, BitSet> seen = new ConcurrentHashMap<>();
+        AtomicLong received = new AtomicLong();
+        AtomicLong duplicates = new AtomicLong();
+        LatencyHistogram endToEnd = new LatencyHistogram();
+
+        try (HttpClientTransport clients = new HttpClientTransport(Duration.ofSeconds(5), Duration.ofSeconds(30));
+             HttpClientTransport own = new HttpClientTransport(Duration.ofSeconds(5), Duration.ofSeconds(30));
+             HelloModel model = new HelloModel(server.topicUrl("soak"), own)) {
+            NtfySubscription subscription = model.subscribe("all", msg -> {
+                store.append(msg);
+                LoadGenerator.Sent sent = LoadGenerator.parse(msg);
+                if (sent == null) return;
+                endToEnd.recordNanos(System.nanoTime() - sent.sentNanos());
+                BitSet bits = seen.computeIfAbsent(sent.user(), u -> new BitSet());
+                synchronized (bits) {
+                    if (bits.get((int) sent.seq())) duplicates.incrementAndGet();
+                    bits.set((int) sent.seq());
+                }
+                received.incrementAndGet();
+            });
+            subscription.connected().get(10, TimeUnit.SECONDS);
+
+            Duration disruptEvery = disruption == null ? null : Duration.ofSeconds(5);
+            LoadGenerator load = new LoadGenerator(clients, server.topicUrl("soak"), USERS, RATE_PER_USER, disruption, disruptEvery);
+            AtomicLong ownPublished = new AtomicLong();
+            AtomicLong ownFailed = new AtomicLong();
+            Thread ownSender = Thread.ofVirtual().name("soak-own-sender").start(() -> sendOwn(model, ownPublished, ownFailed));
+
+            long start = System.nanoTime();
+            load.start();
+            // Baselines once connections and caches have warmed up.
+            Thread.sleep(Math.min(10_000, DURATION.toMillis() / 6));
+            long heapBaseline = usedHeapAfterGc();
+            int threadBaseline = platformThreads();
+            Thread.sleep(Math.max(0, DURATION.toMillis() - (System.nanoTime() - start) / 1_000_000));
+            load.close();
+            ownSender.interrupt();
+            ownSender.join();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            waitFor(() -> load.inFlight() == 0 && model.getOutbound().getQueueDepth() == 0 && model.getOutbound().getInFlight() == 0,
+                    Duration.ofSeconds(30));
+            waitFor(() -> received.get() >= load.published() + ownPublished.get(), Duration.ofSeconds(30));
+            long heapGrowth = usedHeapAfterGc() - heapBaseline;
+            int threads = platformThreads();
+
+            assertEquals(0, duplicates.get(), "duplicates delivered");
+            assertEquals(load.published() + ownPublished.get(), received.get(), "messages lost");
+            assertEquals(0, load.failed() + ownFailed.get(), "publishes failed");
+            assertTrue(load.published() / seconds >= 0.9 * load.offeredRate(),
+                    "throughput " + load.published() / seconds + "/s below 90% of " + load.offeredRate() + "/s");
+            assertTrue(endToEnd.percentileMicros(99) <= p99Limit.toNanos() / 1_000,
+                    "end-to-end p99 " + endToEnd.percentileMicros(99) + " us over " + p99Limit);
+            assertTrue(store.size() <= 5_000);
+            assertTrue(heapGrowth <= HEAP_GROWTH_LIMIT, "heap grew by " + heapGrowth / 1024 + " KiB");
+            assertTrue(threads <= threadBaseline, "platform threads grew from " + threadBaseline + " to " + threads);
+            if (disruption != null) assertTrue(subscription.getReconnectCount() >= load.disruptions() / 2);
+        }
+    }
+
+    /** The model's own user, sending through its outbound queue at {@link #OWN_RATE} until interrupted. */
+    private static void sendOwn(HelloModel model, AtomicLong published, AtomicLong failed) {
+        long intervalNanos = (long) (1e9 / OWN_RATE);
+        long next = System.nanoTime();
+        try {
+            for (long seq = 0; ; seq++) {
+                TimeUnit.NANOSECONDS.sleep(Math.max(0, next - System.nanoTime()));
+                next += intervalNanos;
+                model.enqueueMessage("me", "seq " + seq + " at " + System.nanoTime()).whenComplete((resp, e) -> {
+                    if (e == null && resp.isSuccess()) published.incrementAndGet();
+                    else failed.incrementAndGet();
+                });
+            }
+        } catch (InterruptedException ignored) {
+            // Soak over.
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.example.TestSupport.waitFor;
+import static org.junit.jupiter.api.Assertions.*;
+
+class StartupTest {
+
+    @TempDir
+    Path dir;
+
+    private FakeNtfyServer server;
+    private HttpClientTransport transport;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeNtfyServer();
+        transport = new HttpClientTransport(Duration.ofSeconds(2), Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        transport.close();
+        server.close();
+    }
+
+    private Startup begin(Path cacheDir) {
+        return Startup.begin(() -> new HelloModel(server.topicUrl("chat"), transport), () -> cacheDir, 1000);
+    }
+
+    @Test
+    void testBackfillHandsOverTheNewestPageFirstAndResumesLiveAfterIt() throws Exception {
+        long now = Instant.now().getEpochSecond();
+        for (int i = 0; i < 50; i++) server.seed("chat", now - 50 + i, "{\"username\":\"u\",\"message\":\"m" + i + "\"}");
+        Startup startup = begin(null);
+        Startup.Ready ready = startup.await();
+        assertNull(ready.cache());
+        assertTrue(ready.cached().isEmpty(), "the backfill arrives through attach");
+
+        // Live messages and the history arrive before anyone listens.
+        Thread.sleep(300);
+        for (int i = 50; i < 75; i++) server.seed("chat", now, "{\"username\":\"u\",\"message\":\"m" + i + "\"}");
+        Thread.sleep(300);
+        List<String> seen = new CopyOnWriteArrayList<>();
+        List<List<String>> history = new CopyOnWriteArrayList<>();
+        startup.attach(msg -> seen.add(msg.getMessage()), chunk -> history.add(chunk.stream().map(ChatMessage::getMessage).toList()));
+        for (int i = 75; i < 100; i++) server.seed("chat", now, "{\"username\":\"u\",\"message\":\"m" + i + "\"}");
+        waitFor(() -> seen.size() == 50 && history.size() == 2);
+        Thread.sleep(100);
+
+        List<String> newest = history.get(0);
+        assertTrue(newest.size() < 50, "the newest window comes on its own");
+        assertEquals("m49", newest.get(newest.size() - 1));
+        List<String> all = new ArrayList<>(history.get(1));
+        all.addAll(newest);
+        all.addAll(seen);
+        assertEquals(100, all.size(), "nothing is delivered twice");
+        for (int i = 0; i < 100; i++) assertEquals("m" + i, all.get(i));
+        ready.model().close();
+    }
+
+    @Test
+    void testAwaitDoesNotWaitForTheNetwork() throws Exception {
+        server.seed("chat", Instant.now().getEpochSecond(), "{\"username\":\"u\",\"message\":\"hello\"}");
+        CountDownLatch answer = new CountDownLatch(1);
+        HttpClientTransport stalled = new HttpClientTransport(Duration.ofSeconds(2), Duration.ofSeconds(5)) {
+            @Override
+            public InputStream openStream(String url) throws IOException {
+                try {
+                    answer.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return super.openStream(url);
+            }
+        };
+        Startup startup = Startup.begin(() -> new HelloModel(server.topicUrl("chat"), stalled), () -> dir, 1000);
+        Startup.Ready ready = startup.await();
+        assertTrue(ready.cached().isEmpty());
+
+        List<List<ChatMessage>> history = new CopyOnWriteArrayList<>();
+        startup.attach(msg -> { }, history::add);
+        answer.countDown();
+        waitFor(() -> history.size() == 1);
+        assertEquals("hello", history.get(0).get(0).getMessage());
+        ready.model().close();
+        ready.cache().close();
+        ready.attachments().close();
+        stalled.close();
+    }
+
+    @Test
+    void testCachedHistoryIsReadAndSubscriptionResumesAfterIt() throws Exception {
+        long now = Instant.now().getEpochSecond();
+        for (int i = 0; i < 10; i++) server.seed("chat", now - 10 + i, "{\"username\":\"u\",\"message\":\"old" + i + "\"}");
+        Startup first = begin(dir);
+        first.attach(msg -> { }, older -> { });
+        Startup.Ready ready = first.await();
+        waitFor(() -> ready.cache().size() == 10);
+        ready.model().close();
+        ready.cache().close();
+        ready.attachments().close();
+
+        server.seed("chat", now, "{\"username\":\"u\",\"message\":\"new\"}");
+        Startup second = begin(dir);
+        Startup.Ready again = second.await();
+        assertEquals(10, again.cached().size());
+        for (int i = 0; i < 10; i++) assertEquals("old" + i, again.cached().get(i).getMessage(), "backfill is cached oldest first");
+        List<ChatMessage> resumed = new CopyOnWriteArrayList<>();
+        second.attach(resumed::add, older -> fail("cached history is not backfilled"));
+        waitFor(() -> resumed.size() == 1);
+        Thread.sleep(100);
+        assertEquals(List.of("new"), resumed.stream().map(ChatMessage::getMessage).toList(), "no cached message is delivered again");
+        again.model().close();
+        again.cache().close();
+        again.attachments().close();
+    }
+
+    @Test
+    void testFailureSurfacesFromAwait() {
+        Startup startup = Startup.begin(() -> new HelloModel(""), () -> null, 1000);
+        IllegalStateException e = assertThrows(IllegalStateException.class, startup::await);
+        assertTrue(e.getMessage().contains("NTFY_URL"));
+    }
+
+    @Test
+    void testMilestonesAreReportedOnce() {
+        Startup startup = Startup.begin(() -> new HelloModel(server.topicUrl("chat"), transport), () -> null, 1000);
+        assertTrue(startup.messageShown());
+        assertFalse(startup.messageShown());
+        startup.windowShown();
+        startup.windowShown();
+        startup.await().model().close();
+    }
+}
@@ -0,0 +1,156 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.TestSupport.platformThreads;
+import static com.example.TestSupport.waitFor;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TasksTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testCountsCompletedFailedAndCancelledPerKind() throws Exception {
+        try (Tasks tasks = new Tasks()) {
+            assertEquals("ok", tasks.submit(Tasks.Kind.SEND, () -> "ok").get(5, TimeUnit.SECONDS));
+            CompletableFuture<Object> failing = tasks.submit(Tasks.Kind.SEND, () -> {
+                throw new IllegalStateException("boom");
+            });
+            assertInstanceOf(IllegalStateException.class, assertThrows(ExecutionException.class, () -> failing.get(5, TimeUnit.SECONDS)).getCause());
+
+            CountDownLatch started = new CountDownLatch(1);
+            CompletableFuture<Object> blocked = tasks.submit(Tasks.Kind.UPLOAD, () -> {
+                started.countDown();
+                Thread.sleep(60_000);
+                return null;
+            });
+            started.await();
+            assertEquals(1, tasks.stats(Tasks.Kind.UPLOAD).active());
+            blocked.cancel(true);
+            waitFor(() -> tasks.stats(Tasks.Kind.UPLOAD).active() == 0);
+
+            Tasks.Stats send = tasks.stats(Tasks.Kind.SEND);
+            assertEquals(1, send.completed());
+            assertEquals(1, send.failed());
+            assertEquals(1, tasks.stats(Tasks.Kind.UPLOAD).cancelled());
+            assertEquals(0, tasks.runningThreads());
+        }
+    }
+
+    @Test
+    void testTracksOperationsRunningElsewhere() throws Exception {
+        try (Tasks tasks = new Tasks()) {
+            CompletableFuture<String> exchange = new CompletableFuture<>();
+            CompletableFuture<String> tracked = tasks.track(Tasks.Kind.SEND, exchange);
+            assertEquals(1, tasks.stats(Tasks.Kind.SEND).active());
+            exchange.complete("done");
+            assertEquals("done", tracked.get());
+            assertEquals(0, tasks.stats(Tasks.Kind.SEND).active());
+            assertEquals(1, tasks.stats(Tasks.Kind.SEND).completed());
+        }
+    }
+
+    @Test
+    void testScopeCancelsSiblingsOnFailureAndOnClose() throws Exception {
+        try (Tasks tasks = new Tasks()) {
+            try (Tasks.Scope scope = tasks.openScope(Tasks.Kind.HISTORY)) {
+                CompletableFuture<Object> slow = scope.fork(() -> {
+                    Thread.sleep(60_000);
+                    return null;
+                });
+                scope.fork(() -> {
+                    throw new IllegalStateException("page failed");
+                });
+                ExecutionException e = assertThrows(ExecutionException.class, scope::join);
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+                assertTrue(slow.isCancelled());
+            }
+
+            Tasks.Scope scope = tasks.openScope(Tasks.Kind.THUMBNAIL);
+            CountDownLatch started = new CountDownLatch(1);
+            scope.fork(() -> {
+                started.countDown();
+                Thread.sleep(60_000);
+                return null;
+            });
+            started.await();
+            scope.close();
+            assertEquals(0, scope.activeCount());
+            assertThrows(RejectedExecutionException.class, () -> scope.fork(() -> null));
+            waitFor(() -> tasks.stats(Tasks.Kind.THUMBNAIL).cancelled() == 1);
+        }
+    }
+
+    @Test
+    void testCloseInterruptsRunningTasksAndRejectsNewOnes() throws Exception {
+        Tasks tasks = new Tasks();
+        CountDownLatch started = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            tasks.start(Tasks.Kind.SUBSCRIPTION, () -> {
+                started.countDown();
+                try {
+                    Thread.sleep(60_000);
+                } catch (InterruptedException ignored) {
+                    // Expected on close.
+                }
+            });
+        }
+        started.await();
+        tasks.close();
+        assertEquals(0, tasks.runningThreads());
+        assertEquals(0, tasks.stats(Tasks.Kind.SUBSCRIPTION).active());
+        assertThrows(RejectedExecutionException.class, () -> tasks.start(Tasks.Kind.SEND, () -> { }));
+    }
+
+    @Test
+    void testNoPlatformThreadLeakAfterTenThousandSendsAndUploads() throws Exception {
+        File file = Files.writeString(dir.resolve("note.txt"), "attached").toFile();
+        try (FakeNtfyServer server = new FakeNtfyServer();
+             HttpClientTransport transport = new HttpClientTransport(Duration.ofSeconds(5), Duration.ofSeconds(30));
+             HelloModel model = new HelloModel(server.topicUrl("leak"), transport)) {
+            runOperations(model, file, 200);
+            int baseline = platformThreads();
+            Tasks.Stats sendBefore = Tasks.shared().stats(Tasks.Kind.SEND);
+            Tasks.Stats uploadBefore = Tasks.shared().stats(Tasks.Kind.UPLOAD);
+
+            runOperations(model, file, 10_000);
+
+            // Every upload is followed by the chat message announcing it, sent through the queue afterwards.
+            // The shared counters may also see stragglers from earlier tests, hence lower bounds.
+            waitFor(() -> Tasks.shared().stats(Tasks.Kind.SEND).finished() - sendBefore.finished() >= 10_000);
+            waitFor(() -> Tasks.shared().stats(Tasks.Kind.SEND).active() == 0 && Tasks.shared().stats(Tasks.Kind.UPLOAD).active() == 0);
+            assertTrue(Tasks.shared().stats(Tasks.Kind.UPLOAD).finished() - uploadBefore.finished() >= 2000);
+            assertEquals(0, Tasks.shared().stats(Tasks.Kind.SEND).failed() - sendBefore.failed());
+            assertTrue(platformThreads() <= baseline, "platform threads grew from " + baseline + " to " + platformThreads());
+        }
+    }
+
+    /** Every fifth operation is an upload, the rest are plain sends; runs them in waves of 500. */
+    private static void runOperations(HelloModel model, File file, int count) throws Exception {
+        for (int wave = 0; wave < count; wave += 500) {
+            List<CompletableFuture<?>> pending = new ArrayList<>();
+            for (int i = wave; i < Math.min(count, wave + 500); i++) {
+                if (i % 5 == 0) pending.add(model.uploadFile("loader", file, null).result());
+                else pending.add(model.sendMessageAsync("loader", "message " + i));
+            }
+            for (CompletableFuture<?> f : pending) f.get(30, TimeUnit.SECONDS);
+            // Let the announcements drain so the next wave does not overflow the sender's lane.
+            waitFor(() -> model.getOutbound().getQueueDepth() == 0 && model.getOutbound().getInFlight() == 0);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/** Polling and heap and thread probes shared by the tests. */
+final class TestSupport {
+
+    private static final Duration WAIT = Duration.ofSeconds(20);
+
+    private TestSupport() {}
+
+    static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        waitFor(condition, WAIT);
+    }
+
+    static void waitFor(java.util.function.BooleanSupplier condition, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) fail("condition not met in " + timeout);
+            Thread.sleep(5);
+        }
+    }
+
+    static long usedHeapAfterGc() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /** Platform threads other than the virtual-thread carriers and the common pool, which are bounded by core count. */
+    static int platformThreads() {
+        int count = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            String name = t.getName();
+            if (!name.startsWith("ForkJoinPool-") && !name.startsWith("ForkJoinPool.commonPool")) count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,156 @@
+package com.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThumbnailCacheTest {
+
+    /** Stand-in for a decoded image: the original bytes as text plus the width it was decoded at. */
+    record Thumb(String content, int width) { }
+
+    @TempDir
+    Path dir;
+
+    private FakeNtfyServer server;
+    private HttpClientTransport transport;
+    private final AtomicInteger decodes = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeNtfyServer();
+        transport = new HttpClientTransport(Duration.ofSeconds(2), Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        transport.close();
+        server.close();
+    }
+
+    private ThumbnailCache<Thumb> cache(Path diskDir, long maxMemoryBytes) throws IOException {
+        return cache(diskDir, 1024 * 1024, maxMemoryBytes);
+    }
+
+    private ThumbnailCache<Thumb> cache(Path diskDir, long maxDiskBytes, long maxMemoryBytes) throws IOException {
+        return new ThumbnailCache<>(transport, diskDir, maxDiskBytes, maxMemoryBytes, 200, (in, width) -> {
+            decodes.incrementAndGet();
+            String content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            if (content.startsWith("broken")) throw new IOException("not an image");
+            return new Thumb(content, width);
+        }, t -> t.content().length());
+    }
+
+    @Test
+    void testLoadsFileUrlOnceAndServesFromMemory() throws Exception {
+        Path image = Files.writeString(dir.resolve("cat.png"), "cat-pixels");
+        String url = image.toUri().toString();
+        try (ThumbnailCache<Thumb> thumbnails = cache(null, 1024)) {
+            assertNull(thumbnails.getIfPresent(url));
+            Thumb first = thumbnails.load(url).get(5, TimeUnit.SECONDS);
+            assertEquals(new Thumb("cat-pixels", 200), first);
+            assertSame(first, thumbnails.load(url).get(5, TimeUnit.SECONDS));
+            assertSame(first, thumbnails.getIfPresent(url));
+            assertEquals(1, thumbnails.getMisses());
+            assertEquals(1, thumbnails.getMemoryHits());
+            assertEquals(1, decodes.get());
+        }
+    }
+
+    @Test
+    void testConcurrentRequestsShareOneDownload() throws Exception {
+        String url = server.putFile("dog.png", "dog-pixels".getBytes(StandardCharsets.UTF_8));
+        server.setFileDelay(200);
+        try (ThumbnailCache<Thumb> thumbnails = cache(dir.resolve("disk"), 1024)) {
+            List<CompletableFuture<Thumb>> loads = new ArrayList<>();
+            for (int i = 0; i < 20; i++) loads.add(thumbnails.load(url));
+            for (CompletableFuture<Thumb> f : loads) assertEquals("dog-pixels", f.get(5, TimeUnit.SECONDS).content());
+            assertEquals(1, server.fileDownloads("dog.png"));
+            assertEquals(1, decodes.get());
+            assertEquals(19, thumbnails.getJoinedRequests());
+        }
+    }
+
+    @Test
+    void testDiskCacheSurvivesRestartAndMemoryIsBounded() throws Exception {
+        Path disk = dir.resolve("disk");
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 5; i++) urls.add(server.putFile("img" + i + ".png", ("image-" + i + "-" + "x".repeat(90)).getBytes(StandardCharsets.UTF_8)));
+
+        try (ThumbnailCache<Thumb> thumbnails = cache(disk, 300)) {
+            for (String url : urls) thumbnails.load(url).get(5, TimeUnit.SECONDS);
+            assertTrue(thumbnails.getMemoryBytes() <= 300);
+            assertEquals(2, thumbnails.getEvictions(), "each thumbnail weighs 98 bytes, so only 3 fit");
+            assertNull(thumbnails.getIfPresent(urls.get(0)), "least recently used is evicted first");
+            assertNotNull(thumbnails.getIfPresent(urls.get(4)));
+        }
+
+        try (ThumbnailCache<Thumb> restarted = cache(disk, 300)) {
+            for (String url : urls) restarted.load(url).get(5, TimeUnit.SECONDS);
+            assertEquals(5, restarted.getDiskHits());
+            assertEquals(0, restarted.getMisses());
+        }
+        for (int i = 0; i < 5; i++) assertEquals(1, server.fileDownloads("img" + i + ".png"));
+    }
+
+    @Test
+    void testDiskTierKeepsMostRecentlyUsedOriginalsWithinBudget() throws Exception {
+        Path disk = dir.resolve("disk");
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 5; i++) urls.add(server.putFile("img" + i + ".png", ("image-" + i + "-" + "x".repeat(90)).getBytes(StandardCharsets.UTF_8)));
+
+        // 98 bytes per original, so two fit.
+        try (ThumbnailCache<Thumb> thumbnails = cache(disk, 250, 1024)) {
+            for (String url : urls) thumbnails.load(url).get(5, TimeUnit.SECONDS);
+            assertEquals(196, thumbnails.getDiskBytes());
+        }
+        try (Stream<Path> files = Files.list(disk)) {
+            assertEquals(2, files.count());
+        }
+
+        try (ThumbnailCache<Thumb> restarted = cache(disk, 250, 1024)) {
+            assertEquals(196, restarted.getDiskBytes());
+            restarted.load(urls.get(3)).get(5, TimeUnit.SECONDS);
+            restarted.load(urls.get(0)).get(5, TimeUnit.SECONDS);
+            assertEquals(1, restarted.getDiskHits());
+            assertEquals(1, restarted.getMisses());
+            assertEquals(196, restarted.getDiskBytes());
+            // Reading img3 again left img4 as the least recently used original, so img0 replaced it.
+            restarted.load(urls.get(4)).get(5, TimeUnit.SECONDS);
+            assertEquals(2, restarted.getMisses());
+        }
+        assertEquals(1, server.fileDownloads("img3.png"));
+        assertEquals(2, server.fileDownloads("img0.png"));
+        assertEquals(2, server.fileDownloads("img4.png"));
+    }
+
+    @Test
+    void testFailedLoadIsReportedAndRetried() throws Exception {
+        Path image = Files.writeString(dir.resolve("bad.png"), "broken bytes");
+        String url = image.toUri().toString();
+        try (ThumbnailCache<Thumb> thumbnails = cache(null, 1024)) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> thumbnails.load(url).get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, e.getCause());
+            assertEquals(1, thumbnails.getFailures());
+
+            Files.writeString(image, "fixed");
+            assertEquals("fixed", thumbnails.load(url).get(5, TimeUnit.SECONDS).content());
+        }
+    }
+}
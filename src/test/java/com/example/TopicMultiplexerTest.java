@@ -0,0 +1,140 @@
+package com.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.TestSupport.platformThreads;
+import static com.example.TestSupport.waitFor;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopicMultiplexerTest {
+
+    private FakeNtfyServer server;
+    private HttpClientTransport transport;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeNtfyServer();
+        server.setKeepaliveInterval(50);
+        transport = new HttpClientTransport(Duration.ofSeconds(2), Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        transport.close();
+        server.close();
+    }
+
+    private void publish(String topic, String text) throws Exception {
+        String json = "{\"username\":\"" + topic + "-user\",\"message\":\"" + text + "\",\"time\":0}";
+        assertTrue(transport.postAsync(server.topicUrl(topic), json.getBytes(StandardCharsets.UTF_8), Map.of())
+                .get(5, TimeUnit.SECONDS).isSuccess());
+    }
+
+    private TopicMultiplexer multiplexer(List<String> received) {
+        return new TopicMultiplexer(transport, server.baseUrl(), "all", 100,
+                (topic, msg) -> received.add(topic.getName() + ":" + msg.getMessage()),
+                Duration.ofSeconds(5), Duration.ofMillis(10), Duration.ofMillis(50));
+    }
+
+    @Test
+    void testRoutesMessagesToPerTopicStoresWithUnreadCounts() throws Exception {
+        publish("a", "a1");
+        publish("b", "b1");
+        List<String> received = new CopyOnWriteArrayList<>();
+        try (TopicMultiplexer mux = multiplexer(received)) {
+            mux.addTopic("a");
+            mux.addTopic("b");
+            mux.setActive("a");
+            mux.start();
+            waitFor(() -> received.size() == 2);
+            publish("b", "b2");
+            publish("a", "a2");
+            waitFor(() -> received.size() == 4);
+
+            assertEquals(List.of("a1", "a2"), mux.getTopic("a").getStore().newest(10).stream().map(ChatMessage::getMessage).toList());
+            assertEquals(List.of("b1", "b2"), mux.getTopic("b").getStore().newest(10).stream().map(ChatMessage::getMessage).toList());
+            assertEquals(0, mux.getTopic("a").getUnread());
+            assertEquals(2, mux.getTopic("b").getUnread());
+            mux.setActive("b");
+            assertEquals(0, mux.getTopic("b").getUnread());
+            assertEquals(1, server.openStreams());
+        }
+    }
+
+    @Test
+    void testAddingTopicsKeepsOneStreamAndLosesNothing() throws Exception {
+        for (int i = 0; i < 3; i++) publish("t0", "old" + i);
+        List<String> received = new CopyOnWriteArrayList<>();
+        try (TopicMultiplexer mux = multiplexer(received)) {
+            mux.addTopic("t0");
+            mux.start();
+            waitFor(() -> received.size() == 3 && mux.isConnected());
+            int baseline = platformThreads();
+
+            for (int t = 1; t <= 5; t++) {
+                publish("t" + t, "history");
+                publish("t0", "live" + t);
+                mux.addTopic("t" + t).get(10, TimeUnit.SECONDS);
+                waitFor(() -> server.openStreams() == 1);
+            }
+            for (int t = 0; t <= 5; t++) publish("t" + t, "after");
+            waitFor(() -> received.size() == 3 + 5 * 2 + 6);
+
+            assertEquals(1, server.openStreams());
+            assertEquals(5, mux.getStreamSwitches());
+            int threads = platformThreads();
+            assertTrue(threads <= baseline, "platform threads grew from " + baseline + " to " + threads);
+            for (int t = 1; t <= 5; t++) {
+                assertEquals(List.of("history", "after"),
+                        mux.getTopic("t" + t).getStore().newest(10).stream().map(ChatMessage::getMessage).toList());
+            }
+            assertEquals(List.of("old0", "old1", "old2", "live1", "live2", "live3", "live4", "live5", "after"),
+                    mux.getTopic("t0").getStore().newest(20).stream().map(ChatMessage::getMessage).toList());
+        }
+    }
+
+    @Test
+    void testRemovedTopicStopsDelivering() throws Exception {
+        List<String> received = new CopyOnWriteArrayList<>();
+        try (TopicMultiplexer mux = multiplexer(received)) {
+            mux.addTopic("keep");
+            mux.addTopic("drop");
+            mux.start();
+            waitFor(mux::isConnected);
+            mux.removeTopic("drop").get(10, TimeUnit.SECONDS);
+            publish("drop", "ignored");
+            publish("keep", "kept");
+            waitFor(() -> received.contains("keep:kept"));
+
+            assertEquals(List.of("keep:kept"), received);
+            assertNull(mux.getTopic("drop"));
+            waitFor(() -> server.openStreams() == 1);
+        }
+    }
+
+    @Test
+    void testModelMultiplexesItsOwnTopic() throws Exception {
+        publish("home", "hi");
+        List<String> received = new CopyOnWriteArrayList<>();
+        try (HelloModel model = new HelloModel(server.topicUrl("home"), transport)) {
+            TopicMultiplexer mux = model.multiplex("all", 100, (topic, msg) -> received.add(topic.getName() + ":" + msg.getMessage()));
+            mux.start();
+            mux.addTopic("other");
+            waitFor(() -> received.contains("home:hi"));
+            publish("other", "yo");
+            waitFor(() -> received.contains("other:yo"));
+            assertEquals("home", mux.getActive());
+            assertEquals(1, mux.getTopic("other").getUnread());
+        }
+        waitFor(() -> server.openStreams() == 0);
+    }
+}
@@ -0,0 +1,210 @@
+package com.example;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadManagerTest {
+
+    @TempDir
+    Path dir;
+
+    private FakeNtfyServer server;
+    private HttpClientTransport transport;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeNtfyServer();
+        transport = new HttpClientTransport(Duration.ofSeconds(2), Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        transport.close();
+        server.close();
+    }
+
+    private Path file(String name, int size) throws Exception {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return Files.write(dir.resolve(name), data);
+    }
+
+    private static Map<String, String> headers(Path file) {
+        return Map.of("Filename", file.getFileName().toString(), "Content-Type", "application/octet-stream");
+    }
+
+    @Test
+    void testLimitsConcurrentUploadsAndDeliversEveryByte() throws Exception {
+        AtomicInteger peak = new AtomicInteger();
+        List<UploadManager.Upload> uploads = new ArrayList<>();
+        try (UploadManager manager = new UploadManager(transport, 2, 2 * 1024 * 1024, 16 * 1024)) {
+            for (int i = 0; i < 6; i++) {
+                Path f = file("f" + i + ".bin", 200_000 + i);
+                uploads.add(manager.upload(server.topicUrl("files"), f, headers(f),
+                        p -> peak.accumulateAndGet(manager.getActive(), Math::max)));
+            }
+            for (UploadManager.Upload u : uploads) assertTrue(u.result().get(20, TimeUnit.SECONDS).isSuccess());
+            assertEquals(6, manager.getCompletedCount());
+            assertEquals(0, manager.getActive());
+            assertEquals(0, manager.getQueued());
+        }
+        assertTrue(peak.get() <= 2, "at most two uploads at once, saw " + peak.get());
+        List<FakeNtfyServer.Message> stored = server.messages("files");
+        assertEquals(6, stored.size());
+        for (FakeNtfyServer.Message m : stored) {
+            String name = m.attachment().getString("name");
+            assertEquals(Files.size(dir.resolve(name)), m.attachment().getLong("size"));
+        }
+    }
+
+    @Test
+    void testBandwidthCapIsSharedFairlyAndChatBypassesIt() throws Exception {
+        long cap = 256 * 1024;
+        int size = 192 * 1024;
+        Path a = file("a.bin", size);
+        Path b = file("b.bin", size);
+        Map<Path, Long> sent = new ConcurrentHashMap<>(Map.of(a, 0L, b, 0L));
+        Map<Path, Long> otherWhenDone = new ConcurrentHashMap<>();
+        Consumer<UploadManager.Progress> listener = p -> {
+            sent.put(p.file(), p.sent());
+            if (p.sent() == size) otherWhenDone.putIfAbsent(p.file(), sent.get(p.file().equals(a) ? b : a));
+        };
+        try (UploadManager manager = new UploadManager(transport, 2, cap, 16 * 1024)) {
+            long start = System.nanoTime();
+            UploadManager.Upload ua = manager.upload(server.topicUrl("capped"), a, headers(a), listener);
+            UploadManager.Upload ub = manager.upload(server.topicUrl("capped"), b, headers(b), listener);
+            while (ua.sent() == 0 || ub.sent() == 0) Thread.sleep(5);
+
+            // Chat messages do not go through the limiter, so one posted now beats both uploads.
+            assertTrue(transport.postAsync(server.topicUrl("chat"), "{\"message\":\"hi\"}".getBytes(StandardCharsets.UTF_8), Map.of())
+                    .get(5, TimeUnit.SECONDS).isSuccess());
+            assertFalse(ua.result().isDone() && ub.result().isDone(), "chat waited for the uploads");
+
+            assertTrue(ua.result().get(20, TimeUnit.SECONDS).isSuccess());
+            assertTrue(ub.result().get(20, TimeUnit.SECONDS).isSuccess());
+            // The token bucket cannot hand out more than its burst ahead of the rate.
+            long burst = cap / 10;
+            assertTrue(System.nanoTime() - start >= TimeUnit.SECONDS.toNanos(2 * size - burst) / cap,
+                    "two uploads finished faster than the cap allows");
+        }
+        // Whichever finished first, the other had been sent alongside it rather than after it.
+        assertEquals(2, otherWhenDone.size());
+        for (long other : otherWhenDone.values()) assertTrue(other >= size / 2, "other upload had only " + other + " bytes out");
+    }
+
+    @Test
+    void testUncappedUploadSendsEveryByte() throws Exception {
+        Path big = file("big.bin", 16 * 1024 * 1024);
+        try (UploadManager manager = new UploadManager(transport)) {
+            assertTrue(manager.upload(server.topicUrl("big"), big, headers(big), null)
+                    .result().get(30, TimeUnit.SECONDS).isSuccess());
+            assertEquals(16 * 1024 * 1024, manager.getBytesSent());
+        }
+        assertEquals(16 * 1024 * 1024, server.messages("big").get(0).attachment().getLong("size"));
+    }
+
+    @Test
+    void testCancelStopsRunningAndQueuedUploads() throws Exception {
+        Path slow = file("slow.bin", 1024 * 1024);
+        Path waiting = file("waiting.bin", 1024);
+        List<UploadManager.State> states = new CopyOnWriteArrayList<>();
+        try (UploadManager manager = new UploadManager(transport, 1, 64 * 1024, 8 * 1024)) {
+            UploadManager.Upload running = manager.upload(server.topicUrl("cancel"), slow, headers(slow),
+                    p -> states.add(p.state()));
+            UploadManager.Upload queued = manager.upload(server.topicUrl("cancel"), waiting, headers(waiting), null);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (running.sent() == 0 && System.nanoTime() < deadline) Thread.sleep(10);
+            assertTrue(running.sent() > 0);
+
+            queued.cancel();
+            running.cancel();
+            for (UploadManager.Upload u : List.of(running, queued)) {
+                assertThrows(CancellationException.class, () -> u.result().get(5, TimeUnit.SECONDS));
+            }
+            assertTrue(running.sent() < running.total());
+            assertEquals(2, manager.getCancelledCount());
+            assertEquals(UploadManager.State.CANCELLED, states.get(states.size() - 1));
+        }
+        Thread.sleep(100);
+        assertTrue(server.messages("cancel").isEmpty(), "cancelled uploads must not be published");
+    }
+
+    @Test
+    void testIdenticalContentIsUploadedOncePerTopic() throws Exception {
+        Path original = file("photo.bin", 300_000);
+        Path copy = Files.copy(original, dir.resolve("copy.bin"));
+        try (UploadManager manager = new UploadManager(transport)) {
+            manager.setAttachmentIndex(new AttachmentIndex());
+            assertTrue(manager.upload(server.topicUrl("dedup"), original, headers(original), null).result().get(10, TimeUnit.SECONDS).isSuccess());
+            long received = server.bytesReceived();
+
+            UploadManager.Upload again = manager.upload(server.topicUrl("dedup"), copy, headers(copy), null);
+            String url = new JSONObject(again.result().get(10, TimeUnit.SECONDS).body()).getJSONObject("attachment").getString("url");
+            assertTrue(again.wasReused());
+            assertEquals(server.messages("dedup").get(0).attachment().getString("url"), url);
+            assertEquals(received, server.bytesReceived(), "no bytes sent for the copy");
+            assertEquals(1, server.messages("dedup").size());
+
+            assertTrue(manager.upload(server.topicUrl("other"), copy, headers(copy), null).result().get(10, TimeUnit.SECONDS).isSuccess());
+            assertEquals(1, server.messages("other").size(), "another topic gets its own upload");
+            assertEquals(1, manager.getReusedCount());
+            assertEquals(2 * 300_000, manager.getBytesSent());
+        }
+    }
+
+    @Test
+    void testConcurrentUploadsOfTheSameContentCollapse() throws Exception {
+        Path file = file("same.bin", 256 * 1024);
+        List<UploadManager.Upload> uploads = new ArrayList<>();
+        // A bandwidth cap keeps the first upload running while the others arrive.
+        try (UploadManager manager = new UploadManager(transport, 4, 512 * 1024, 16 * 1024)) {
+            manager.setAttachmentIndex(new AttachmentIndex());
+            for (int i = 0; i < 4; i++) uploads.add(manager.upload(server.topicUrl("twins"), file, headers(file), null));
+            for (UploadManager.Upload u : uploads) assertTrue(u.result().get(20, TimeUnit.SECONDS).isSuccess());
+            assertEquals(3, manager.getReusedCount());
+            assertEquals(256 * 1024, manager.getBytesSent());
+        }
+        assertEquals(1, server.messages("twins").size());
+    }
+
+    @Test
+    void testResentFilePublishesOnlyTheChatMessage() throws Exception {
+        Path file = file("report.pdf", 200_000);
+        try (HelloModel model = new HelloModel(server.topicUrl("resend"), transport)) {
+            model.getUploads().setAttachmentIndex(new AttachmentIndex());
+            assertTrue(model.uploadFile("alice", file.toFile(), null).result().get(10, TimeUnit.SECONDS).isSuccess());
+            UploadManager.Upload again = model.uploadFile("alice", file.toFile(), null);
+            assertTrue(again.result().get(10, TimeUnit.SECONDS).isSuccess());
+            assertTrue(again.wasReused());
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (server.messages("resend").size() < 3 && System.nanoTime() < deadline) Thread.sleep(10);
+        }
+        List<FakeNtfyServer.Message> messages = server.messages("resend");
+        assertEquals(3, messages.size(), "one attachment and two chat messages");
+        List<String> fileUrls = messages.stream().filter(m -> m.attachment() == null)
+                .map(m -> new JSONObject(m.message()).getString("fileUrl")).toList();
+        assertEquals(2, fileUrls.size());
+        assertEquals(fileUrls.get(0), fileUrls.get(1));
+    }
+}